@@ -60,6 +60,14 @@ public abstract class PhotoBaseFragment extends Fragment {
 	}
 
 
+	@Override
+	public void onStop() {
+		super.onStop();
+		// photos captured right before leaving are published now instead of at the end of the scan window
+		PhotoManager.flushMediaScans();
+	}
+
+
 	@Override
 	public void onSaveInstanceState(Bundle outState) {
 		super.onSaveInstanceState(outState);
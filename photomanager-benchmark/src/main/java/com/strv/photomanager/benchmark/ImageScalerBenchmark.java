@@ -0,0 +1,73 @@
+package com.strv.photomanager.benchmark;
+
+import com.strv.photomanager.ImageScaler;
+import com.strv.photomanager.ScaleSpec;
+import com.strv.photomanager.imageio.ImageIOBackend;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * the whole scaling pipeline with the javax.imageio backend - header, subsampled decode, transformation and quality search
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ImageScalerBenchmark {
+
+	@Param({SyntheticImages.SIZE_MEDIUM, SyntheticImages.SIZE_LARGE})
+	public String size;
+
+	// 0 decodes the image at once, 1 forces the decode in strips
+	@Param({"0", "1"})
+	public int tiled;
+
+	private File mSource;
+	private File mOutput;
+	private ImageScaler<BufferedImage> mScaler;
+	private final ScaleSpec mSpec = new ScaleSpec(1024, 768);
+
+
+	@Setup
+	public void setUp() throws IOException {
+		mSource = SyntheticImages.createJpegFile(SyntheticImages.createImage(size), 95);
+		mOutput = File.createTempFile("benchmark", ".jpg");
+		mScaler = ImageIOBackend.createScaler();
+		if(tiled != 0) {
+			mScaler.setTiledDecodeThreshold(0);
+		}
+	}
+
+
+	@TearDown
+	public void tearDown() {
+		mSource.delete();
+		mOutput.delete();
+	}
+
+
+	@Benchmark
+	public long scale() throws IOException {
+		mScaler.scale(mSource, mSpec, mOutput);
+		return mOutput.length();
+	}
+}
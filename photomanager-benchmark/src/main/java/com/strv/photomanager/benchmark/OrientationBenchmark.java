@@ -0,0 +1,60 @@
+package com.strv.photomanager.benchmark;
+
+import com.strv.photomanager.ScalePlan;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * planning of the scale and the EXIF orientation of an image, done from the header before the pixels are decoded
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class OrientationBenchmark {
+
+	// normal, rotated by 180, 90 and 270 degrees and transposed (rotated and mirrored)
+	@Param({"1", "3", "6", "8", "5"})
+	public int orientation;
+
+	@Param({SyntheticImages.SIZE_MEDIUM, SyntheticImages.SIZE_LARGE})
+	public String size;
+
+	private int mWidth;
+	private int mHeight;
+
+
+	@Setup
+	public void setUp() {
+		final int[] dimensions = SyntheticImages.parseSize(size);
+		mWidth = dimensions[0];
+		mHeight = dimensions[1];
+	}
+
+
+	@Benchmark
+	public ScalePlan createPlan() {
+		return ScalePlan.create(mWidth, mHeight, orientation, 1024, 768);
+	}
+
+
+	@Benchmark
+	public int rotationDegrees() {
+		return ScalePlan.getRotationDegrees(orientation) + (ScalePlan.isFlippedHorizontally(orientation) ? 1 : 0);
+	}
+}
@@ -0,0 +1,96 @@
+package com.strv.photomanager.benchmark;
+
+import com.strv.photomanager.QualitySearch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageWriter;
+
+
+/**
+ * search for the highest JPEG quality that fits into the byte budget, the JVM JPEG encoder stands in for Bitmap.compress(),
+ * the number of encodes per search is the same as on a device
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class QualitySearchBenchmark {
+
+	@Param({SyntheticImages.SIZE_SMALL, SyntheticImages.SIZE_MEDIUM, SyntheticImages.SIZE_LARGE})
+	public String size;
+
+	// the default budget of ScaleImageHelper
+	@Param({"327680"})
+	public int maxBytes;
+
+	private BufferedImage mImage;
+	private ImageWriter mWriter;
+	private QualitySearch mQualitySearch;
+	private QualitySearch.Encoder mEncoder;
+
+
+	@Setup
+	public void setUp() {
+		mImage = SyntheticImages.createImage(size);
+		mWriter = SyntheticImages.newJpegWriter();
+		mQualitySearch = new QualitySearch();
+		mEncoder = new QualitySearch.Encoder() {
+			@Override
+			public void encode(int quality, OutputStream outputStream) throws IOException {
+				SyntheticImages.encodeJpeg(mWriter, mImage, quality, outputStream);
+			}
+		};
+	}
+
+
+	@TearDown
+	public void tearDown() {
+		mWriter.dispose();
+	}
+
+
+	@Benchmark
+	public int bisection() throws IOException {
+		final int quality = mQualitySearch.search(mEncoder, maxBytes);
+		mQualitySearch.trim(2 * 1024 * 1024);
+		return quality;
+	}
+
+
+	/**
+	 * the loop the library used before the quality search - full quality, then 95 and lower in steps of 5
+	 * until the image fits, every attempt into a new buffer
+	 */
+	@Benchmark
+	public int linearBaseline() throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		mEncoder.encode(100, outputStream);
+		int quality = 95;
+		while(outputStream.size() > maxBytes && quality > 0) {
+			outputStream = new ByteArrayOutputStream();
+			mEncoder.encode(quality, outputStream);
+			quality -= 5;
+		}
+		return outputStream.size();
+	}
+}
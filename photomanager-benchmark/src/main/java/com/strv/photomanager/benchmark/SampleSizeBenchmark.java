@@ -0,0 +1,59 @@
+package com.strv.photomanager.benchmark;
+
+import com.strv.photomanager.ScalePlan;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * sample size calculation done for every image before it is decoded
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SampleSizeBenchmark {
+
+	@Param({SyntheticImages.SIZE_SMALL, SyntheticImages.SIZE_MEDIUM, SyntheticImages.SIZE_LARGE})
+	public String size;
+
+	// the size of the sample app previews
+	@Param({"1024x768"})
+	public String requiredSize;
+
+	private int mWidth;
+	private int mHeight;
+	private int mReqWidth;
+	private int mReqHeight;
+
+
+	@Setup
+	public void setUp() {
+		final int[] dimensions = SyntheticImages.parseSize(size);
+		final int[] requiredDimensions = SyntheticImages.parseSize(requiredSize);
+		mWidth = dimensions[0];
+		mHeight = dimensions[1];
+		mReqWidth = requiredDimensions[0];
+		mReqHeight = requiredDimensions[1];
+	}
+
+
+	@Benchmark
+	public int calculateInSampleSize() {
+		return ScalePlan.calculateInSampleSize(mWidth, mHeight, mReqWidth, mReqHeight);
+	}
+}
@@ -0,0 +1,144 @@
+package com.strv.photomanager.benchmark;
+
+import com.strv.photomanager.StreamCopier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * copy of an imported image into the app cache, the source is a JPEG file of the given image size,
+ * both files stay in the page cache so the numbers show the CPU and memory cost of the copy rather than the storage speed
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class StreamCopyBenchmark {
+
+	@Param({SyntheticImages.SIZE_SMALL, SyntheticImages.SIZE_MEDIUM, SyntheticImages.SIZE_LARGE})
+	public String size;
+
+	private File mSource;
+	private File mTarget;
+
+
+	@Setup
+	public void setUp() throws IOException {
+		mSource = SyntheticImages.createJpegFile(SyntheticImages.createImage(size), 95);
+		mTarget = File.createTempFile("benchmark", ".jpg");
+	}
+
+
+	@TearDown
+	public void tearDown() {
+		mSource.delete();
+		mTarget.delete();
+	}
+
+
+	/**
+	 * the copy the library used before StreamCopier - a 4 kB heap buffer
+	 */
+	@Benchmark
+	public long heapBufferBaseline() throws IOException {
+		final InputStream input = new BufferedInputStream(new FileInputStream(mSource));
+		final OutputStream output = new FileOutputStream(mTarget);
+		try {
+			final byte[] buffer = new byte[4 * 1024];
+			long copied = 0;
+			int read;
+			while((read = input.read(buffer)) != -1) {
+				output.write(buffer, 0, read);
+				copied += read;
+			}
+			return copied;
+		} finally {
+			input.close();
+			output.close();
+		}
+	}
+
+
+	/**
+	 * the copy alone of a provider handing out a file descriptor, comparable with the baseline
+	 */
+	@Benchmark
+	public long transfer() throws IOException {
+		final FileInputStream input = new FileInputStream(mSource);
+		final FileOutputStream output = new FileOutputStream(mTarget);
+		try {
+			return StreamCopier.transfer(input.getChannel(), output.getChannel(), input.getChannel().size());
+		} finally {
+			input.close();
+			output.close();
+		}
+	}
+
+
+	/**
+	 * the import of a provider handing out a file descriptor - kernel copy, then hashing of the copy for the import cache
+	 */
+	@Benchmark
+	public byte[] transferAndDigest() throws IOException, NoSuchAlgorithmException {
+		final FileInputStream input = new FileInputStream(mSource);
+		final FileOutputStream output = new FileOutputStream(mTarget);
+		try {
+			StreamCopier.transfer(input.getChannel(), output.getChannel(), input.getChannel().size());
+		} finally {
+			input.close();
+			output.close();
+		}
+
+		final MessageDigest digest = MessageDigest.getInstance("MD5");
+		final FileInputStream copy = new FileInputStream(mTarget);
+		try {
+			StreamCopier.digest(copy.getChannel(), digest);
+		} finally {
+			copy.close();
+		}
+		return digest.digest();
+	}
+
+
+	/**
+	 * the import of a provider handing out only a stream - copy through a pooled direct buffer hashed on the way
+	 */
+	@Benchmark
+	public byte[] streamCopyWithDigest() throws IOException, NoSuchAlgorithmException {
+		final MessageDigest digest = MessageDigest.getInstance("MD5");
+		final InputStream input = new FileInputStream(mSource);
+		final FileOutputStream output = new FileOutputStream(mTarget);
+		try {
+			StreamCopier.copy(Channels.newChannel(input), output.getChannel(), digest, null);
+		} finally {
+			input.close();
+			output.close();
+		}
+		return digest.digest();
+	}
+}
@@ -0,0 +1,147 @@
+package com.strv.photomanager.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+
+/**
+ * creates photo-like test images, a smooth gradient with sensor-like noise compresses about as well as a real photo,
+ * so the encoded sizes and the number of quality attempts are realistic
+ */
+final class SyntheticImages {
+
+	// sizes of the benchmark inputs - a thumbnail, a full HD frame and a 12 MP camera photo
+	static final String SIZE_SMALL = "640x480";
+	static final String SIZE_MEDIUM = "1920x1080";
+	static final String SIZE_LARGE = "4032x3024";
+
+	private static final long SEED = 42;
+	private static final int NOISE = 24;
+
+
+	private SyntheticImages() {}
+
+
+	/**
+	 * @param size size in the WIDTHxHEIGHT format
+	 * @return array with the width and the height
+	 */
+	static int[] parseSize(String size) {
+		final String[] parts = size.split("x");
+		return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+	}
+
+
+	/**
+	 * @param size size of the image in the WIDTHxHEIGHT format
+	 * @return image with the same content for every call
+	 */
+	static BufferedImage createImage(String size) {
+		final int[] dimensions = parseSize(size);
+		final int width = dimensions[0];
+		final int height = dimensions[1];
+		final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		final Random random = new Random(SEED);
+		final int[] row = new int[width];
+		for(int y = 0; y < height; y++) {
+			for(int x = 0; x < width; x++) {
+				final int red = clamp(255 * x / width + random.nextInt(NOISE));
+				final int green = clamp(255 * y / height + random.nextInt(NOISE));
+				final int blue = clamp(128 + random.nextInt(NOISE));
+				row[x] = (red << 16) | (green << 8) | blue;
+			}
+			image.setRGB(0, y, width, 1, row, 0, width);
+		}
+		return image;
+	}
+
+
+	/**
+	 * writes the image as a JPEG file
+	 *
+	 * @param image   image that should be written
+	 * @param quality JPEG quality from 0 to 100
+	 * @return temporary file deleted when the JVM exits
+	 * @throws IOException is thrown if the image cannot be written
+	 */
+	static File createJpegFile(BufferedImage image, int quality) throws IOException {
+		final File file = File.createTempFile("benchmark", ".jpg");
+		file.deleteOnExit();
+		final ImageWriter writer = newJpegWriter();
+		final OutputStream outputStream = new FileOutputStream(file);
+		try {
+			encodeJpeg(writer, image, quality, outputStream);
+		} finally {
+			outputStream.close();
+			writer.dispose();
+		}
+		return file;
+	}
+
+
+	/**
+	 * @param image   image that should be encoded
+	 * @param quality JPEG quality from 0 to 100
+	 * @return size of the encoded image in bytes
+	 * @throws IOException is thrown if the image cannot be encoded
+	 */
+	static int getJpegSize(BufferedImage image, int quality) throws IOException {
+		final ImageWriter writer = newJpegWriter();
+		try {
+			final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			encodeJpeg(writer, image, quality, outputStream);
+			return outputStream.size();
+		} finally {
+			writer.dispose();
+		}
+	}
+
+
+	static ImageWriter newJpegWriter() {
+		final Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+		if(!writers.hasNext()) {
+			throw new IllegalStateException("No JPEG writer available");
+		}
+		return writers.next();
+	}
+
+
+	/**
+	 * encodes the image with the writer, the counterpart of Bitmap.compress() on the JVM
+	 *
+	 * @param writer       JPEG writer, it can be reused for the next image
+	 * @param image        image that should be encoded
+	 * @param quality      JPEG quality from 0 to 100
+	 * @param outputStream stream the encoded image is written to
+	 * @throws IOException is thrown if the image cannot be encoded
+	 */
+	static void encodeJpeg(ImageWriter writer, BufferedImage image, int quality, OutputStream outputStream) throws IOException {
+		final ImageWriteParam param = writer.getDefaultWriteParam();
+		param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+		param.setCompressionQuality(quality / 100f);
+		final ImageOutputStream imageOutputStream = ImageIO.createImageOutputStream(outputStream);
+		try {
+			writer.setOutput(imageOutputStream);
+			writer.write(null, new IIOImage(image, null, null), param);
+		} finally {
+			imageOutputStream.close();
+		}
+	}
+
+
+	private static int clamp(int value) {
+		return Math.min(255, Math.max(0, value));
+	}
+}
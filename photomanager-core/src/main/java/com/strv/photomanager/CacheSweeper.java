@@ -0,0 +1,249 @@
+package com.strv.photomanager;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * keeps the files written by PhotoManager within a byte quota and deletes the ones left behind by jobs that never finished -
+ * a sweep deletes orphaned files (unfinished .part files and empty files older than the orphan age) first and then the oldest
+ * files until the quota directories fit into the quota again, files retained by a live job are never deleted
+ *
+ * a sweep only lists the directories without reading any file, so it can run after every batch
+ */
+public class CacheSweeper {
+
+	public static final long DEFAULT_ORPHAN_AGE_MILLIS = 60 * 60 * 1000;
+
+	private static final String PART_SUFFIX = ".part";
+
+	private final long mMaxBytes;
+	private final long mOrphanAgeMillis;
+	// directories whose files count into the quota and those where only orphans are deleted, e.g. the capture directories
+	private final Map<File, FileFilter> mQuotaDirectories = new LinkedHashMap<File, FileFilter>();
+	private final Map<File, FileFilter> mOrphanDirectories = new LinkedHashMap<File, FileFilter>();
+	// paths of the files used by live jobs with the number of jobs using them
+	private final Map<String, Integer> mLiveFiles = new HashMap<String, Integer>();
+	private int mDeletedCount;
+	private long mDeletedBytes;
+	private long mSize;
+
+
+	/**
+	 * @param maxBytes maximum size of the files in the quota directories in bytes
+	 */
+	public CacheSweeper(long maxBytes) {
+		this(maxBytes, DEFAULT_ORPHAN_AGE_MILLIS);
+	}
+
+
+	/**
+	 * @param maxBytes        maximum size of the files in the quota directories in bytes
+	 * @param orphanAgeMillis time since the last modification after which an unfinished or empty file is considered orphaned
+	 */
+	public CacheSweeper(long maxBytes, long orphanAgeMillis) {
+		mMaxBytes = maxBytes;
+		mOrphanAgeMillis = orphanAgeMillis;
+	}
+
+
+	/**
+	 * adds a directory whose files count into the quota, only the files accepted by the filter are ever deleted,
+	 * subdirectories are not swept
+	 *
+	 * @param directory directory owned by PhotoManager, e.g. the cache of imports
+	 * @param filter    filter accepting the files written by PhotoManager, null to accept all the files of the directory
+	 */
+	public synchronized void addDirectory(File directory, FileFilter filter) {
+		mQuotaDirectories.put(directory, filter);
+	}
+
+
+	/**
+	 * adds a directory where only orphaned files are deleted, e.g. a directory of captured photos that also contains the photos
+	 * the user wants to keep
+	 *
+	 * @param directory directory PhotoManager writes to
+	 * @param filter    filter accepting the files written by PhotoManager, null to accept all the files of the directory
+	 */
+	public synchronized void addOrphanDirectory(File directory, FileFilter filter) {
+		mOrphanDirectories.put(directory, filter);
+	}
+
+
+	/**
+	 * marks the file as used by a live job until it is released, its unfinished .part file is protected as well
+	 *
+	 * @param file file read or written by a job
+	 */
+	public synchronized void retain(File file) {
+		final String path = file.getPath();
+		final Integer count = mLiveFiles.get(path);
+		mLiveFiles.put(path, count != null ? count + 1 : 1);
+	}
+
+
+	/**
+	 * @param file file retained by {@link #retain(File)}
+	 */
+	public synchronized void release(File file) {
+		final String path = file.getPath();
+		final Integer count = mLiveFiles.get(path);
+		if(count == null || count <= 1) {
+			mLiveFiles.remove(path);
+		} else {
+			mLiveFiles.put(path, count - 1);
+		}
+	}
+
+
+	/**
+	 * deletes the orphaned files and then the oldest files until the quota directories fit into the quota
+	 *
+	 * @return number of bytes deleted
+	 */
+	public long sweep() {
+		final Map<File, FileFilter> quotaDirectories;
+		final Map<File, FileFilter> orphanDirectories;
+		synchronized(this) {
+			quotaDirectories = new LinkedHashMap<File, FileFilter>(mQuotaDirectories);
+			orphanDirectories = new LinkedHashMap<File, FileFilter>(mOrphanDirectories);
+		}
+
+		final long orphanedBefore = System.currentTimeMillis() - mOrphanAgeMillis;
+		long deletedBytes = 0;
+		for(Map.Entry<File, FileFilter> directory : orphanDirectories.entrySet()) {
+			for(Candidate candidate : list(directory.getKey(), directory.getValue())) {
+				if(candidate.isOrphaned(orphanedBefore) && delete(candidate)) {
+					deletedBytes += candidate.mLength;
+				}
+			}
+		}
+
+		final List<Candidate> candidates = new ArrayList<Candidate>();
+		long size = 0;
+		for(Map.Entry<File, FileFilter> directory : quotaDirectories.entrySet()) {
+			for(Candidate candidate : list(directory.getKey(), directory.getValue())) {
+				if(candidate.isOrphaned(orphanedBefore) && delete(candidate)) {
+					deletedBytes += candidate.mLength;
+				} else {
+					candidates.add(candidate);
+					size += candidate.mLength;
+				}
+			}
+		}
+
+		if(size > mMaxBytes) {
+			Collections.sort(candidates, new Comparator<Candidate>() {
+				@Override
+				public int compare(Candidate first, Candidate second) {
+					return first.mLastModified < second.mLastModified ? -1 : (first.mLastModified == second.mLastModified ? 0 : 1);
+				}
+			});
+			for(int i = 0; i < candidates.size() && size > mMaxBytes; i++) {
+				final Candidate candidate = candidates.get(i);
+				if(delete(candidate)) {
+					size -= candidate.mLength;
+					deletedBytes += candidate.mLength;
+				}
+			}
+		}
+
+		synchronized(this) {
+			mSize = size;
+		}
+		return deletedBytes;
+	}
+
+
+	public long getMaxBytes() {
+		return mMaxBytes;
+	}
+
+
+	/**
+	 * @return size of the files in the quota directories after the last sweep
+	 */
+	public synchronized long getSize() {
+		return mSize;
+	}
+
+
+	/**
+	 * @return number of files deleted by all the sweeps
+	 */
+	public synchronized int getDeletedCount() {
+		return mDeletedCount;
+	}
+
+
+	/**
+	 * @return number of bytes deleted by all the sweeps
+	 */
+	public synchronized long getDeletedBytes() {
+		return mDeletedBytes;
+	}
+
+
+	private static List<Candidate> list(File directory, FileFilter filter) {
+		final File[] files = directory.listFiles();
+		if(files == null) {
+			return Collections.emptyList();
+		}
+		final List<Candidate> candidates = new ArrayList<Candidate>(files.length);
+		for(File file : files) {
+			if(file.isFile() && (filter == null || filter.accept(file))) {
+				candidates.add(new Candidate(file));
+			}
+		}
+		return candidates;
+	}
+
+
+	/**
+	 * deletes the file unless a job has retained it since the directory was listed
+	 */
+	private synchronized boolean delete(Candidate candidate) {
+		final String path = candidate.mFile.getPath();
+		if(mLiveFiles.containsKey(path)
+				|| (path.endsWith(PART_SUFFIX) && mLiveFiles.containsKey(path.substring(0, path.length() - PART_SUFFIX.length())))) {
+			return false;
+		}
+		if(!candidate.mFile.delete()) {
+			return false;
+		}
+		mDeletedCount++;
+		mDeletedBytes += candidate.mLength;
+		return true;
+	}
+
+
+	private static class Candidate {
+
+		final File mFile;
+		final long mLength;
+		final long mLastModified;
+
+
+		Candidate(File file) {
+			mFile = file;
+			mLength = file.length();
+			mLastModified = file.lastModified();
+		}
+
+
+		/**
+		 * @return true if the file was left behind by a job that never finished
+		 */
+		boolean isOrphaned(long orphanedBefore) {
+			return (mLength == 0 || mFile.getName().endsWith(PART_SUFFIX)) && mLastModified < orphanedBefore;
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package com.strv.photomanager;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * reads the EXIF orientation tag of a JPEG image on platforms without android.media.ExifInterface, only the segments before
+ * the image data are read and only the first image directory of the EXIF data is parsed
+ */
+public final class ExifOrientation {
+
+	private static final int MARKER_START_OF_IMAGE = 0xD8;
+	private static final int MARKER_APP1 = 0xE1;
+	private static final int MARKER_START_OF_SCAN = 0xDA;
+	private static final int MARKER_END_OF_IMAGE = 0xD9;
+	private static final int TAG_ORIENTATION = 0x0112;
+	static final int TYPE_SHORT = 3;
+	static final int IFD_ENTRY_SIZE = 12;
+	// the TIFF data starts after the "Exif\0\0" identifier
+	static final int TIFF_HEADER_OFFSET = 6;
+
+
+	private ExifOrientation() {}
+
+
+	/**
+	 * @param file image file
+	 * @return value of the EXIF orientation tag, {@link ScalePlan#ORIENTATION_NORMAL} if the file is not a JPEG or has no orientation
+	 */
+	public static int read(File file) {
+		try {
+			final InputStream inputStream = new BufferedInputStream(new FileInputStream(file));
+			try {
+				return read(inputStream);
+			} finally {
+				inputStream.close();
+			}
+		} catch(IOException e) {
+			return ScalePlan.ORIENTATION_NORMAL;
+		}
+	}
+
+
+	/**
+	 * @param source encoded image, it is read only up to the EXIF data
+	 * @return value of the EXIF orientation tag, {@link ScalePlan#ORIENTATION_NORMAL} if the image is not a JPEG or has no orientation
+	 */
+	public static int read(ImageSource source) {
+		try {
+			final InputStream inputStream = source.openStream();
+			try {
+				return read(inputStream);
+			} finally {
+				inputStream.close();
+			}
+		} catch(IOException e) {
+			return ScalePlan.ORIENTATION_NORMAL;
+		}
+	}
+
+
+	/**
+	 * @param inputStream stream positioned at the start of the image, it is read only up to the EXIF data
+	 * @return value of the EXIF orientation tag, {@link ScalePlan#ORIENTATION_NORMAL} if the image is not a JPEG or has no orientation
+	 * @throws IOException is thrown if the stream cannot be read
+	 */
+	public static int read(InputStream inputStream) throws IOException {
+		final byte[] segment = readExifSegment(inputStream);
+		return segment != null ? parseOrientation(segment, TIFF_HEADER_OFFSET) : ScalePlan.ORIENTATION_NORMAL;
+	}
+
+
+	/**
+	 * @param inputStream stream positioned at the start of the image, it is read only up to the EXIF data
+	 * @return APP1 segment with the EXIF data starting with the "Exif" identifier or null if the image is not a JPEG or has no EXIF data
+	 * @throws IOException is thrown if the stream cannot be read
+	 */
+	static byte[] readExifSegment(InputStream inputStream) throws IOException {
+		final DataInputStream input = new DataInputStream(inputStream);
+		try {
+			if(input.readUnsignedByte() != 0xFF || input.readUnsignedByte() != MARKER_START_OF_IMAGE) {
+				return null;
+			}
+			while(true) {
+				if(input.readUnsignedByte() != 0xFF) {
+					return null;
+				}
+				int marker = input.readUnsignedByte();
+				// markers can be padded with any number of 0xFF bytes
+				while(marker == 0xFF) {
+					marker = input.readUnsignedByte();
+				}
+				if(marker == MARKER_START_OF_SCAN || marker == MARKER_END_OF_IMAGE) {
+					return null;
+				}
+
+				final int length = input.readUnsignedShort() - 2;
+				if(length < 0) {
+					return null;
+				}
+				if(marker == MARKER_APP1 && length >= TIFF_HEADER_OFFSET) {
+					final byte[] segment = new byte[length];
+					input.readFully(segment);
+					if(isExif(segment)) {
+						return segment;
+					}
+				} else {
+					skipFully(input, length);
+				}
+			}
+		} catch(EOFException e) {
+			return null;
+		}
+	}
+
+
+	/**
+	 * @param data   EXIF segment
+	 * @param offset start of the TIFF header in the segment
+	 * @return true if the TIFF data is little endian, null if the byte order mark is not valid
+	 */
+	static Boolean isLittleEndian(byte[] data, int offset) {
+		if(data.length < offset + 8) {
+			return null;
+		}
+		if(data[offset] == 'I' && data[offset + 1] == 'I') {
+			return Boolean.TRUE;
+		} else if(data[offset] == 'M' && data[offset + 1] == 'M') {
+			return Boolean.FALSE;
+		}
+		return null;
+	}
+
+
+	private static boolean isExif(byte[] segment) {
+		return segment[0] == 'E' && segment[1] == 'x' && segment[2] == 'i' && segment[3] == 'f' && segment[4] == 0 && segment[5] == 0;
+	}
+
+
+	/**
+	 * @param data   EXIF segment
+	 * @param offset start of the TIFF header in the segment
+	 * @return value of the orientation tag in the first image directory or normal orientation if there is none
+	 */
+	private static int parseOrientation(byte[] data, int offset) {
+		final Boolean littleEndian = isLittleEndian(data, offset);
+		if(littleEndian == null) {
+			return ScalePlan.ORIENTATION_NORMAL;
+		}
+
+		final long directory = offset + readInt(data, offset + 4, littleEndian);
+		if(directory < offset || directory + 2 > data.length) {
+			return ScalePlan.ORIENTATION_NORMAL;
+		}
+		final int entries = readShort(data, (int) directory, littleEndian);
+		for(int i = 0; i < entries; i++) {
+			final int entry = (int) directory + 2 + i * IFD_ENTRY_SIZE;
+			if(entry + IFD_ENTRY_SIZE > data.length) {
+				break;
+			}
+			if(readShort(data, entry, littleEndian) == TAG_ORIENTATION) {
+				if(readShort(data, entry + 2, littleEndian) != TYPE_SHORT) {
+					break;
+				}
+				// values up to 4 bytes are stored in the entry itself
+				final int orientation = readShort(data, entry + 8, littleEndian);
+				return orientation >= ScalePlan.ORIENTATION_NORMAL && orientation <= ScalePlan.ORIENTATION_ROTATE_270
+						? orientation : ScalePlan.ORIENTATION_NORMAL;
+			}
+		}
+		return ScalePlan.ORIENTATION_NORMAL;
+	}
+
+
+	static int readShort(byte[] data, int offset, boolean littleEndian) {
+		final int first = data[offset] & 0xFF;
+		final int second = data[offset + 1] & 0xFF;
+		return littleEndian ? (second << 8) | first : (first << 8) | second;
+	}
+
+
+	static long readInt(byte[] data, int offset, boolean littleEndian) {
+		final long high = readShort(data, littleEndian ? offset + 2 : offset, littleEndian);
+		final long low = readShort(data, littleEndian ? offset : offset + 2, littleEndian);
+		return (high << 16) | low;
+	}
+
+
+	private static void skipFully(DataInputStream input, int length) throws IOException {
+		int remaining = length;
+		while(remaining > 0) {
+			final int skipped = input.skipBytes(remaining);
+			if(skipped <= 0) {
+				throw new EOFException();
+			}
+			remaining -= skipped;
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package com.strv.photomanager;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * JPEG thumbnail embedded in the EXIF data of an image, most cameras store one of about 160x120 pixels in the same orientation
+ * as the main image, so small renditions can be made from it without decoding the main image at all
+ */
+public final class ExifThumbnail {
+
+	private static final int TAG_COMPRESSION = 0x0103;
+	private static final int TAG_JPEG_OFFSET = 0x0201;
+	private static final int TAG_JPEG_LENGTH = 0x0202;
+	private static final int TYPE_LONG = 4;
+	private static final int COMPRESSION_JPEG = 6;
+
+	private final byte[] mData;
+	private final int mOffset;
+	private final int mLength;
+	private final int mWidth;
+	private final int mHeight;
+
+
+	private ExifThumbnail(byte[] data, int offset, int length, int width, int height) {
+		mData = data;
+		mOffset = offset;
+		mLength = length;
+		mWidth = width;
+		mHeight = height;
+	}
+
+
+	/**
+	 * @param file image file
+	 * @return embedded thumbnail or null if the file is not a JPEG or has no JPEG thumbnail
+	 */
+	public static ExifThumbnail read(File file) {
+		try {
+			final InputStream inputStream = new BufferedInputStream(new FileInputStream(file));
+			try {
+				return read(inputStream);
+			} finally {
+				inputStream.close();
+			}
+		} catch(IOException e) {
+			return null;
+		}
+	}
+
+
+	/**
+	 * @param source encoded image, it is read only up to the EXIF data
+	 * @return embedded thumbnail or null if the image is not a JPEG or has no JPEG thumbnail
+	 */
+	public static ExifThumbnail read(ImageSource source) {
+		try {
+			final InputStream inputStream = source.openStream();
+			try {
+				return read(inputStream);
+			} finally {
+				inputStream.close();
+			}
+		} catch(IOException e) {
+			return null;
+		}
+	}
+
+
+	/**
+	 * @param inputStream stream positioned at the start of the image, it is read only up to the EXIF data
+	 * @return embedded thumbnail or null if the image is not a JPEG or has no JPEG thumbnail
+	 * @throws IOException is thrown if the stream cannot be read
+	 */
+	public static ExifThumbnail read(InputStream inputStream) throws IOException {
+		final byte[] segment = ExifOrientation.readExifSegment(inputStream);
+		return segment != null ? parse(segment, ExifOrientation.TIFF_HEADER_OFFSET) : null;
+	}
+
+
+	/**
+	 * @return array the encoded thumbnail is stored in, it is shared and should not be modified
+	 */
+	public byte[] getData() {
+		return mData;
+	}
+
+
+	/**
+	 * @return start of the encoded thumbnail in the data
+	 */
+	public int getOffset() {
+		return mOffset;
+	}
+
+
+	/**
+	 * @return length of the encoded thumbnail in bytes
+	 */
+	public int getLength() {
+		return mLength;
+	}
+
+
+	/**
+	 * @return width of the thumbnail as stored in the file, before the EXIF orientation is applied
+	 */
+	public int getWidth() {
+		return mWidth;
+	}
+
+
+	/**
+	 * @return height of the thumbnail as stored in the file, before the EXIF orientation is applied
+	 */
+	public int getHeight() {
+		return mHeight;
+	}
+
+
+	/**
+	 * @param data   EXIF segment
+	 * @param offset start of the TIFF header in the segment
+	 * @return thumbnail described by the second image directory or null if there is none
+	 */
+	private static ExifThumbnail parse(byte[] data, int offset) {
+		final Boolean littleEndian = ExifOrientation.isLittleEndian(data, offset);
+		if(littleEndian == null) {
+			return null;
+		}
+
+		// the thumbnail is described by the directory following the one of the main image
+		final long firstDirectory = offset + ExifOrientation.readInt(data, offset + 4, littleEndian);
+		if(firstDirectory < offset || firstDirectory + 2 > data.length) {
+			return null;
+		}
+		final long next = firstDirectory + 2 + ExifOrientation.readShort(data, (int) firstDirectory, littleEndian) * ExifOrientation.IFD_ENTRY_SIZE;
+		if(next + 4 > data.length) {
+			return null;
+		}
+		final long nextOffset = ExifOrientation.readInt(data, (int) next, littleEndian);
+		final long directory = offset + nextOffset;
+		if(nextOffset == 0 || directory < offset || directory + 2 > data.length) {
+			return null;
+		}
+
+		long jpegOffset = -1;
+		long jpegLength = -1;
+		final int entries = ExifOrientation.readShort(data, (int) directory, littleEndian);
+		for(int i = 0; i < entries; i++) {
+			final int entry = (int) directory + 2 + i * ExifOrientation.IFD_ENTRY_SIZE;
+			if(entry + ExifOrientation.IFD_ENTRY_SIZE > data.length) {
+				break;
+			}
+			final int tag = ExifOrientation.readShort(data, entry, littleEndian);
+			final long value = readValue(data, entry, littleEndian);
+			if(tag == TAG_COMPRESSION && value != COMPRESSION_JPEG) {
+				// uncompressed thumbnails are rare and not worth a decoder of their own
+				return null;
+			} else if(tag == TAG_JPEG_OFFSET) {
+				jpegOffset = value;
+			} else if(tag == TAG_JPEG_LENGTH) {
+				jpegLength = value;
+			}
+		}
+		if(jpegOffset < 0 || jpegLength <= 0 || offset + jpegOffset + jpegLength > data.length) {
+			return null;
+		}
+		return parseJpeg(data, (int) (offset + jpegOffset), (int) jpegLength);
+	}
+
+
+	/**
+	 * @return value of a short or long directory entry, -1 for other types
+	 */
+	private static long readValue(byte[] data, int entry, boolean littleEndian) {
+		final int type = ExifOrientation.readShort(data, entry + 2, littleEndian);
+		if(type == ExifOrientation.TYPE_SHORT) {
+			return ExifOrientation.readShort(data, entry + 8, littleEndian);
+		} else if(type == TYPE_LONG) {
+			return ExifOrientation.readInt(data, entry + 8, littleEndian);
+		}
+		return -1;
+	}
+
+
+	/**
+	 * reads the size of the thumbnail from its start of frame segment
+	 *
+	 * @return thumbnail or null if the data is not a valid JPEG
+	 */
+	private static ExifThumbnail parseJpeg(byte[] data, int offset, int length) {
+		final int end = offset + length;
+		if(length < 4 || (data[offset] & 0xFF) != 0xFF || (data[offset + 1] & 0xFF) != 0xD8) {
+			return null;
+		}
+		int position = offset + 2;
+		while(position + 4 <= end) {
+			if((data[position] & 0xFF) != 0xFF) {
+				return null;
+			}
+			final int marker = data[position + 1] & 0xFF;
+			if(marker == 0xFF) {
+				position++;
+				continue;
+			}
+			final int segmentLength = ExifOrientation.readShort(data, position + 2, false);
+			// start of frame markers, except for the huffman table, JPEG extension and arithmetic coding ones
+			if(marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+				if(position + 9 > end) {
+					return null;
+				}
+				final int height = ExifOrientation.readShort(data, position + 5, false);
+				final int width = ExifOrientation.readShort(data, position + 7, false);
+				return width > 0 && height > 0 ? new ExifThumbnail(data, offset, length, width, height) : null;
+			}
+			position += 2 + segmentLength;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,77 @@
+package com.strv.photomanager;
+
+import java.io.IOException;
+
+
+/**
+ * decodes images for {@link ImageScaler}, implemented for each platform, all the reads of an image go through the same {@link ImageSource}
+ *
+ * @param <T> type of the decoded image of the platform
+ */
+public interface ImageDecoder<T> {
+
+	/**
+	 * reads the size and the orientation of the image without decoding its pixels
+	 *
+	 * @param source encoded image
+	 * @return header of the image
+	 * @throws IOException is thrown if the source is not an image that can be decoded
+	 */
+	ImageHeader decodeHeader(ImageSource source) throws IOException;
+
+	/**
+	 * decodes the whole image subsampled by the sample size of the plan
+	 *
+	 * @param source encoded image
+	 * @param header header of the image read by {@link #decodeHeader(ImageSource)}
+	 * @param plan   plan computed from the header of the image
+	 * @return decoded image or null if the image cannot be decoded
+	 * @throws IOException is thrown if the source cannot be read
+	 */
+	T decode(ImageSource source, ImageHeader header, ScalePlan plan) throws IOException;
+
+	/**
+	 * decodes an image encoded in memory, e.g. the EXIF thumbnail of a JPEG, subsampled by the sample size of the plan,
+	 * the image is a JPEG, so it is opaque
+	 *
+	 * @param data   array the encoded image is stored in
+	 * @param offset start of the encoded image in the array
+	 * @param length length of the encoded image in bytes
+	 * @param plan   plan computed for the size of the encoded image
+	 * @return decoded image or null if the image cannot be decoded
+	 * @throws IOException is thrown if the data cannot be read
+	 */
+	T decode(byte[] data, int offset, int length, ScalePlan plan) throws IOException;
+
+	/**
+	 * @param header header of the image read by {@link #decodeHeader(ImageSource)}
+	 * @return number of bytes a pixel of the decoded image takes, for the estimate of the memory needed by a scaling
+	 */
+	int getBytesPerPixel(ImageHeader header);
+
+	/**
+	 * opens the image for decoding of horizontal strips, so that huge images never need to be in memory at once
+	 *
+	 * @param source encoded image
+	 * @param header header of the image read by {@link #decodeHeader(ImageSource)}
+	 * @return decoder of strips or null if the format or the source doesn't support decoding of regions
+	 * @throws IOException is thrown if the source cannot be read
+	 */
+	RegionDecoder<T> openRegionDecoder(ImageSource source, ImageHeader header) throws IOException;
+
+
+	interface RegionDecoder<T> {
+		/**
+		 * decodes a horizontal strip over the whole width of the image
+		 *
+		 * @param top        first row of the strip in the encoded image
+		 * @param bottom     row after the last row of the strip in the encoded image
+		 * @param sampleSize subsampling of the decoded strip
+		 * @return decoded strip or null if it cannot be decoded
+		 * @throws IOException is thrown if the file cannot be read
+		 */
+		T decodeStrip(int top, int bottom, int sampleSize) throws IOException;
+
+		void close();
+	}
+}
@@ -0,0 +1,22 @@
+package com.strv.photomanager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * encodes the output images of {@link ImageScaler}, implemented for each platform
+ *
+ * @param <T> type of the image of the platform
+ */
+public interface ImageEncoder<T> {
+
+	/**
+	 * @param image        image that should be encoded
+	 * @param format       format the image is encoded in
+	 * @param quality      compression quality from 0 to 100, it is ignored by lossless formats
+	 * @param outputStream stream the encoded image is written to
+	 * @throws IOException is thrown if the image cannot be encoded, e.g. if the platform has no encoder for the format
+	 */
+	void encode(T image, OutputFormat format, int quality, OutputStream outputStream) throws IOException;
+}
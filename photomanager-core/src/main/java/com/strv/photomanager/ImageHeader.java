@@ -0,0 +1,59 @@
+package com.strv.photomanager;
+
+/**
+ * information about an image read from its header without decoding the pixels
+ */
+public final class ImageHeader {
+
+	private final int mWidth;
+	private final int mHeight;
+	private final int mOrientation;
+	private final boolean mOpaque;
+
+
+	/**
+	 * @param width       width of the encoded image as stored in the file
+	 * @param height      height of the encoded image as stored in the file
+	 * @param orientation value of the EXIF orientation tag, {@link ScalePlan#ORIENTATION_NORMAL} if the image has none
+	 */
+	public ImageHeader(int width, int height, int orientation) {
+		this(width, height, orientation, false);
+	}
+
+
+	/**
+	 * @param width       width of the encoded image as stored in the file
+	 * @param height      height of the encoded image as stored in the file
+	 * @param orientation value of the EXIF orientation tag, {@link ScalePlan#ORIENTATION_NORMAL} if the image has none
+	 * @param opaque      true if the format of the image cannot have transparent pixels, e.g. JPEG
+	 */
+	public ImageHeader(int width, int height, int orientation, boolean opaque) {
+		mWidth = width;
+		mHeight = height;
+		mOrientation = orientation;
+		mOpaque = opaque;
+	}
+
+
+	public int getWidth() {
+		return mWidth;
+	}
+
+
+	public int getHeight() {
+		return mHeight;
+	}
+
+
+	public int getOrientation() {
+		return mOrientation;
+	}
+
+
+	/**
+	 * @return true if the image has no alpha channel, so it can be decoded into a format without one
+	 */
+	public boolean isOpaque() {
+		return mOpaque;
+	}
+}
@@ -0,0 +1,732 @@
+package com.strv.photomanager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * scales and reorients images with the same policy on every platform - the plan is computed from the header, the pixels are decoded once
+ * with the planned sample size (in strips for huge images), drawn into the output in a single transformation and encoded
+ * with the highest quality that fits into the byte budget, small outputs are made from the embedded EXIF thumbnail if it is large enough,
+ * several renditions of an image can be made from a single decode
+ *
+ * the pixels are handled by the decoder, transformer and encoder of the platform, e.g. the Android backend used by ScaleImageHelper
+ * or the javax.imageio backend of the photomanager-imageio module, a scaler holds no state of a single image,
+ * so it can be shared by threads if its backend can
+ *
+ * @param <T> type of the image of the platform
+ */
+public class ImageScaler<T> {
+
+	public static final long DEFAULT_TILED_DECODE_THRESHOLD_PIXELS = 24 * 1000 * 1000;
+
+	// number of decoded pixels in one strip of the tiled decode, 4 MB in ARGB_8888
+	private static final int TILE_PIXELS = 1024 * 1024;
+
+	// embedded thumbnails are looked up only for outputs up to this size, EXIF limits them to 64 KB so they are never larger
+	private static final int MAX_EMBEDDED_THUMBNAIL_SIZE = 640;
+
+	// relative difference of the aspect ratios above which the embedded thumbnail is considered letterboxed
+	private static final double EMBEDDED_THUMBNAIL_ASPECT_TOLERANCE = 0.02;
+
+	// outputs are drawn with 32 bits per pixel by every backend
+	private static final int OUTPUT_BYTES_PER_PIXEL = 4;
+
+	// encode buffers above this size are not kept for the next image
+	private static final int MAX_RETAINED_BUFFER_BYTES = 2 * 1024 * 1024;
+
+	private static final ThreadLocal<QualitySearch> sQualitySearch = new ThreadLocal<QualitySearch>() {
+		@Override
+		protected QualitySearch initialValue() {
+			return new QualitySearch();
+		}
+	};
+
+	private final ImageDecoder<T> mDecoder;
+	private final ImageTransformer<T> mTransformer;
+	private final ImageEncoder<T> mEncoder;
+	private volatile long mTiledDecodeThreshold = DEFAULT_TILED_DECODE_THRESHOLD_PIXELS;
+	private volatile Executor mEncodeExecutor;
+	private volatile boolean mEmbeddedThumbnailEnabled = true;
+	private volatile MemoryBudget mMemoryBudget;
+
+
+	public ImageScaler(ImageDecoder<T> decoder, ImageTransformer<T> transformer, ImageEncoder<T> encoder) {
+		mDecoder = decoder;
+		mTransformer = transformer;
+		mEncoder = encoder;
+	}
+
+
+	/**
+	 * sets the number of source pixels above which the image is decoded in strips that are downscaled one by one,
+	 * so that only the output image and a single strip are in memory at the same time
+	 *
+	 * @param pixels number of pixels of the source image, 24 MP by default
+	 */
+	public void setTiledDecodeThreshold(long pixels) {
+		mTiledDecodeThreshold = pixels;
+	}
+
+
+	/**
+	 * sets the executor the renditions of a multi-rendition scaling are encoded on in parallel, the calling thread encodes
+	 * the renditions no thread of the executor has picked up yet, so it never waits for a busy executor
+	 *
+	 * @param executor executor for the encodes, null to encode the renditions one by one on the calling thread
+	 */
+	public void setEncodeExecutor(Executor executor) {
+		mEncodeExecutor = executor;
+	}
+
+
+	/**
+	 * sets whether small outputs are made from the JPEG thumbnail embedded in the EXIF data when it is large enough,
+	 * which skips the decode of the main image entirely
+	 *
+	 * @param enabled true to use embedded thumbnails, true by default
+	 */
+	public void setEmbeddedThumbnailEnabled(boolean enabled) {
+		mEmbeddedThumbnailEnabled = enabled;
+	}
+
+
+	/**
+	 * sets the budget the scalings reserve their estimated peak bitmap bytes from before they decode, the estimate is computed
+	 * from the header and the planned sample size, so parallel scalings of huge images wait for each other instead of running out of memory
+	 *
+	 * @param memoryBudget budget shared by all the scalers running in parallel, null to never wait, null by default
+	 */
+	public void setMemoryBudget(MemoryBudget memoryBudget) {
+		mMemoryBudget = memoryBudget;
+	}
+
+
+	/**
+	 * scales the image file into the output file, the output file appears only when it is complete
+	 *
+	 * @param source image file that should be scaled
+	 * @param spec   required size and byte budget of the output image
+	 * @param output file the scaled image is written to
+	 * @throws IOException is thrown if the image cannot be decoded or the scaled image cannot be written
+	 */
+	public void scale(File source, ScaleSpec spec, File output) throws IOException {
+		scale(source, spec, output, null);
+	}
+
+
+	/**
+	 * scales the image file into the output file, the output file appears only when it is complete
+	 *
+	 * @param source image file that should be scaled
+	 * @param spec   required size and byte budget of the output image
+	 * @param output file the scaled image is written to
+	 * @param job    job the scaling is done for, it stops between the stages if the job is cancelled and the stages are reported to it,
+	 *               can be null
+	 * @throws IOException           is thrown if the image cannot be decoded or the scaled image cannot be written
+	 * @throws CancellationException is thrown if the job was cancelled
+	 */
+	public void scale(File source, ScaleSpec spec, File output, PhotoJob job) throws IOException {
+		scale(source, Collections.singletonList(spec), Collections.singletonList(output), job, null);
+	}
+
+
+	/**
+	 * scales the image file into several renditions from a single decode - the image is decoded with the sample size of the largest
+	 * rendition and every smaller rendition is downscaled from the next larger one, the renditions are encoded in parallel
+	 * on the encode executor
+	 *
+	 * @param source  image file that should be scaled
+	 * @param specs   required sizes and byte budgets of the renditions
+	 * @param outputs files the renditions are written to, in the same order as the specs
+	 * @param job     job the scaling is done for, it stops between the stages if the job is cancelled and the stages are reported to it,
+	 *                can be null
+	 * @throws IOException           is thrown if the image cannot be decoded or a rendition cannot be written
+	 * @throws CancellationException is thrown if the job was cancelled
+	 */
+	public void scale(File source, List<? extends ScaleSpec> specs, List<File> outputs, PhotoJob job) throws IOException {
+		scale(source, specs, outputs, job, null);
+	}
+
+
+	/**
+	 * @param metrics record the stages are measured into, null if the job is not measured
+	 */
+	void scale(File source, List<? extends ScaleSpec> specs, List<File> outputs, PhotoJob job, PhotoMetrics metrics) throws IOException {
+		final ImageSource imageSource = ImageSource.fromFile(source);
+		try {
+			scale(imageSource, specs, outputs, job, metrics);
+		} finally {
+			imageSource.close();
+		}
+	}
+
+
+	/**
+	 * scales the image into several renditions like {@link #scale(File, List, List, PhotoJob)}, the source is opened only once
+	 * for the header, the EXIF data and the pixels, which matters on slow storage and for images provided by other apps
+	 *
+	 * @param source  image that should be scaled, it is not closed
+	 * @param specs   required sizes and byte budgets of the renditions
+	 * @param outputs files the renditions are written to, in the same order as the specs
+	 * @param job     job the scaling is done for, it stops between the stages if the job is cancelled and the stages are reported to it,
+	 *                can be null
+	 * @throws IOException           is thrown if the image cannot be decoded or a rendition cannot be written
+	 * @throws CancellationException is thrown if the job was cancelled
+	 */
+	public void scale(ImageSource source, List<? extends ScaleSpec> specs, List<File> outputs, PhotoJob job) throws IOException {
+		scale(source, specs, outputs, job, null);
+	}
+
+
+	/**
+	 * @param metrics record the stages are measured into, null if the job is not measured
+	 */
+	void scale(ImageSource source, List<? extends ScaleSpec> specs, List<File> outputs, PhotoJob job, PhotoMetrics metrics) throws IOException {
+		final List<ImageSink> sinks = new ArrayList<ImageSink>(outputs.size());
+		for(File output : outputs) {
+			sinks.add(ImageSink.toFile(output));
+		}
+		scaleToSinks(source, specs, sinks, job, metrics);
+	}
+
+
+	/**
+	 * scales the image into a single sink, e.g. into memory or into the body of an upload request without writing a file
+	 *
+	 * @param source image that should be scaled, it is not closed
+	 * @param spec   required size, byte budget and format of the output image
+	 * @param sink   destination of the encoded image
+	 * @param job    job the scaling is done for, it stops between the stages if the job is cancelled and the stages are reported to it,
+	 *               can be null
+	 * @throws IOException           is thrown if the image cannot be decoded or the scaled image cannot be written
+	 * @throws CancellationException is thrown if the job was cancelled
+	 */
+	public void scale(ImageSource source, ScaleSpec spec, ImageSink sink, PhotoJob job) throws IOException {
+		scaleToSinks(source, Collections.singletonList(spec), Collections.singletonList(sink), job, null);
+	}
+
+
+	/**
+	 * scales the image into several renditions like {@link #scale(ImageSource, List, List, PhotoJob)}, the renditions are written
+	 * to sinks instead of files
+	 *
+	 * @param source image that should be scaled, it is not closed
+	 * @param specs  required sizes, byte budgets and formats of the renditions
+	 * @param sinks  destinations of the renditions, in the same order as the specs
+	 * @param job    job the scaling is done for, it stops between the stages if the job is cancelled and the stages are reported to it,
+	 *               can be null
+	 * @throws IOException           is thrown if the image cannot be decoded or a rendition cannot be written
+	 * @throws CancellationException is thrown if the job was cancelled
+	 */
+	public void scaleToSinks(ImageSource source, List<? extends ScaleSpec> specs, List<? extends ImageSink> sinks, PhotoJob job) throws IOException {
+		scaleToSinks(source, specs, sinks, job, null);
+	}
+
+
+	/**
+	 * @param metrics record the stages are measured into, null if the job is not measured
+	 */
+	void scaleToSinks(ImageSource source, List<? extends ScaleSpec> specs, List<? extends ImageSink> outputs, PhotoJob job, PhotoMetrics metrics) throws IOException {
+		if(specs.size() != outputs.size()) {
+			throw new IllegalArgumentException("Every rendition needs an output");
+		}
+		final ImageHeader header = mDecoder.decodeHeader(source);
+		if(header.getWidth() <= 0 || header.getHeight() <= 0) {
+			throw new IOException("Cannot decode bounds of " + source);
+		}
+
+		// everything about the outputs is known from the header, pixels are decoded only once
+		final int count = specs.size();
+		final ScalePlan[] plans = new ScalePlan[count];
+		for(int i = 0; i < count; i++) {
+			final ScaleSpec spec = specs.get(i);
+			plans[i] = ScalePlan.create(header.getWidth(), header.getHeight(), header.getOrientation(), spec.getWidth(), spec.getHeight());
+		}
+		final Integer[] order = sortBySize(plans);
+
+		// the largest rendition needs the most pixels, the smaller ones never need more than it has
+		final ExifThumbnail thumbnail = mEmbeddedThumbnailEnabled
+				&& Math.max(plans[order[0]].getOutputWidth(), plans[order[0]].getOutputHeight()) <= MAX_EMBEDDED_THUMBNAIL_SIZE
+				? ExifThumbnail.read(source) : null;
+		final ScalePlan thumbnailPlan = thumbnail != null ? planThumbnail(thumbnail, header, specs.get(order[0])) : null;
+		checkCancelled(job);
+
+		// the reservation is sized once it is known which decode runs - the embedded thumbnail, a single strip or the whole image
+		final Reservation reservation = new Reservation(mMemoryBudget, job);
+		final List<T> images = new ArrayList<T>(Collections.<T>nCopies(count, null));
+		try {
+			T largest = null;
+			if(thumbnailPlan != null) {
+				reservation.resize(estimatePeakBytes(header, plans, thumbnailPlan, false));
+				largest = decodeThumbnailAndTransform(thumbnail, thumbnailPlan, job, metrics);
+				if(largest != null) {
+					plans[order[0]] = thumbnailPlan;
+				}
+			}
+			if(largest == null) {
+				largest = decodeAndTransform(source, header, plans, plans[order[0]], reservation, job, metrics);
+			}
+			images.set(order[0], largest);
+
+			final long cascadeStart = startStage(metrics);
+			long liveBytes = mTransformer.getByteCount(images.get(order[0]));
+			for(int i = 1; i < count; i++) {
+				checkCancelled(job);
+				final ScalePlan larger = plans[order[i - 1]];
+				final ScalePlan plan = plans[order[i]];
+				final ScalePlan resize = ScalePlan.createResize(larger.getOutputWidth(), larger.getOutputHeight(), plan.getOutputWidth(), plan.getOutputHeight());
+				final T image = mTransformer.createOutput(resize);
+				images.set(order[i], image);
+				mTransformer.draw(images.get(order[i - 1]), image, resize, 0);
+				liveBytes += mTransformer.getByteCount(image);
+			}
+			if(metrics != null && count > 1) {
+				metrics.setDuration(PhotoJob.Stage.SCALED, metrics.getDurationNanos(PhotoJob.Stage.SCALED) + System.nanoTime() - cascadeStart);
+				metrics.updatePeakBitmapBytes(liveBytes);
+			}
+
+			checkCancelled(job);
+			final long encodeStart = startStage(metrics);
+			encodeAll(images, specs, outputs, job, metrics);
+			endStage(metrics, PhotoJob.Stage.ENCODED, encodeStart);
+			reportStage(job, PhotoJob.Stage.ENCODED);
+		} finally {
+			for(T image : images) {
+				if(image != null) {
+					mTransformer.release(image);
+				}
+			}
+			reservation.release();
+		}
+	}
+
+
+	/**
+	 * estimates the bitmap bytes a scaling needs at its peak - the decoded image (or a single strip of a tiled decode)
+	 * together with all the renditions, which are kept until they are encoded
+	 *
+	 * @param decodePlan plan the pixels are decoded with, of the main image or of the embedded thumbnail
+	 * @param tiled      true if the pixels are decoded in strips
+	 */
+	private long estimatePeakBytes(ImageHeader header, ScalePlan[] plans, ScalePlan decodePlan, boolean tiled) {
+		final int sampleSize = decodePlan.getSampleSize();
+		final long decodedWidth = (decodePlan.getSourceWidth() + sampleSize - 1) / sampleSize;
+		long decodedPixels = decodedWidth * ((decodePlan.getSourceHeight() + sampleSize - 1) / sampleSize);
+		if(tiled) {
+			decodedPixels = Math.min(decodedPixels, Math.max(1, TILE_PIXELS / Math.max(1, decodedWidth)) * decodedWidth);
+		}
+
+		long outputPixels = 0;
+		for(ScalePlan plan : plans) {
+			outputPixels += (long) plan.getOutputWidth() * plan.getOutputHeight();
+		}
+		return decodedPixels * mDecoder.getBytesPerPixel(header) + outputPixels * OUTPUT_BYTES_PER_PIXEL;
+	}
+
+
+	/**
+	 * decodes the image with the sample size of the plan and transforms it into the output of the plan, the reservation is sized
+	 * for the decode that actually runs - a single strip only if the source can be decoded in strips, the whole image otherwise
+	 */
+	private T decodeAndTransform(ImageSource source, ImageHeader header, ScalePlan[] plans, ScalePlan plan, Reservation reservation, PhotoJob job, PhotoMetrics metrics) throws IOException {
+		if((long) plan.getSourceWidth() * plan.getSourceHeight() > mTiledDecodeThreshold) {
+			// streams and formats without a region decoder are decoded whole, which is known before anything is reserved
+			final ImageDecoder.RegionDecoder<T> regionDecoder = mDecoder.openRegionDecoder(source, header);
+			if(regionDecoder != null) {
+				try {
+					reservation.resize(estimatePeakBytes(header, plans, plan, true));
+					final long tiledStart = startStage(metrics);
+					final T scaled = scaleTiled(regionDecoder, plan, job, metrics);
+					if(scaled != null) {
+						// every strip is decoded, scaled and rotated at once
+						endStage(metrics, PhotoJob.Stage.DECODED, tiledStart);
+						reportStage(job, PhotoJob.Stage.DECODED);
+						reportTransformed(job, plan);
+						return scaled;
+					}
+				} finally {
+					regionDecoder.close();
+				}
+			}
+		}
+
+		// a failed strip falls back to the whole image, which is admitted again with its own estimate
+		reservation.resize(estimatePeakBytes(header, plans, plan, false));
+		final long decodeStart = startStage(metrics);
+		final T decoded = mDecoder.decode(source, header, plan);
+		if(decoded == null) {
+			throw new IOException("Cannot decode " + source);
+		}
+		endStage(metrics, PhotoJob.Stage.DECODED, decodeStart);
+		reportStage(job, PhotoJob.Stage.DECODED);
+		return transform(decoded, plan, job, metrics);
+	}
+
+
+	/**
+	 * plans the output from the thumbnail embedded in the image if it doesn't need to be upscaled and has the aspect ratio of the image
+	 *
+	 * @return plan of the output from the embedded thumbnail or null if the main image has to be decoded
+	 */
+	private static ScalePlan planThumbnail(ExifThumbnail thumbnail, ImageHeader header, ScaleSpec spec) {
+		// the thumbnail is stored in the orientation of the main image, so the same EXIF orientation applies to it
+		final double aspectDifference = Math.abs((double) thumbnail.getWidth() * header.getHeight() - (double) thumbnail.getHeight() * header.getWidth())
+				/ ((double) thumbnail.getHeight() * header.getWidth());
+		if(aspectDifference > EMBEDDED_THUMBNAIL_ASPECT_TOLERANCE) {
+			return null;
+		}
+		final ScalePlan thumbnailPlan = ScalePlan.create(thumbnail.getWidth(), thumbnail.getHeight(), header.getOrientation(), spec.getWidth(), spec.getHeight());
+		if(thumbnailPlan.getScaledWidth() > thumbnail.getWidth() || thumbnailPlan.getScaledHeight() > thumbnail.getHeight()) {
+			return null;
+		}
+		return thumbnailPlan;
+	}
+
+
+	/**
+	 * decodes the thumbnail embedded in the image and transforms it into the output of the plan
+	 *
+	 * @return scaled and rotated thumbnail or null if it cannot be decoded
+	 */
+	private T decodeThumbnailAndTransform(ExifThumbnail thumbnail, ScalePlan plan, PhotoJob job, PhotoMetrics metrics) throws IOException {
+		final long decodeStart = startStage(metrics);
+		final T decoded = mDecoder.decode(thumbnail.getData(), thumbnail.getOffset(), thumbnail.getLength(), plan);
+		if(decoded == null) {
+			return null;
+		}
+		endStage(metrics, PhotoJob.Stage.DECODED, decodeStart);
+		reportStage(job, PhotoJob.Stage.DECODED);
+		return transform(decoded, plan, job, metrics);
+	}
+
+
+	/**
+	 * transforms the decoded image into the output of the plan, the decoded image is released
+	 */
+	private T transform(T decoded, ScalePlan plan, PhotoJob job, PhotoMetrics metrics) {
+		T scaled = null;
+		try {
+			checkCancelled(job);
+			final long scaleStart = startStage(metrics);
+			scaled = mTransformer.createOutput(plan);
+			mTransformer.draw(decoded, scaled, plan, 0);
+			endStage(metrics, PhotoJob.Stage.SCALED, scaleStart);
+			if(metrics != null) {
+				metrics.updatePeakBitmapBytes(mTransformer.getByteCount(decoded) + mTransformer.getByteCount(scaled));
+			}
+		} catch(RuntimeException e) {
+			if(scaled != null) {
+				mTransformer.release(scaled);
+			}
+			throw e;
+		} finally {
+			mTransformer.release(decoded);
+		}
+		reportTransformed(job, plan);
+		return scaled;
+	}
+
+
+	/**
+	 * @return indexes of the plans ordered from the largest output to the smallest one
+	 */
+	private static Integer[] sortBySize(final ScalePlan[] plans) {
+		final Integer[] order = new Integer[plans.length];
+		for(int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer first, Integer second) {
+				final long firstPixels = (long) plans[first].getOutputWidth() * plans[first].getOutputHeight();
+				final long secondPixels = (long) plans[second].getOutputWidth() * plans[second].getOutputHeight();
+				return firstPixels > secondPixels ? -1 : (firstPixels == secondPixels ? 0 : 1);
+			}
+		});
+		return order;
+	}
+
+
+	/**
+	 * encodes all the renditions, on the encode executor if there is one and on the calling thread otherwise
+	 */
+	private void encodeAll(List<T> images, List<? extends ScaleSpec> specs, List<? extends ImageSink> outputs, PhotoJob job, PhotoMetrics metrics) throws IOException {
+		final List<EncodeTask> tasks = new ArrayList<EncodeTask>(images.size());
+		for(int i = 0; i < images.size(); i++) {
+			tasks.add(new EncodeTask(images.get(i), specs.get(i), outputs.get(i), job));
+		}
+
+		final Executor executor = mEncodeExecutor;
+		if(executor != null && tasks.size() > 1) {
+			final PhotoJob.Priority priority = job != null ? job.getPriority() : PhotoJob.Priority.INTERACTIVE;
+			for(int i = 1; i < tasks.size(); i++) {
+				executor.execute(new PhotoJob(priority, job, tasks.get(i)));
+			}
+		}
+		// the tasks not picked up by the executor yet are encoded here, so this thread never waits for a queue
+		for(EncodeTask task : tasks) {
+			task.run(job);
+		}
+
+		// the images are released by the caller, so no encode may be running when this returns, even if an earlier one failed
+		boolean interrupted = false;
+		for(EncodeTask task : tasks) {
+			interrupted |= task.awaitUninterruptibly();
+		}
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+
+		int attempts = 0;
+		long bytes = 0;
+		for(EncodeTask task : tasks) {
+			task.rethrowError();
+			attempts += task.mAttempts;
+			bytes += task.mBytes;
+		}
+		if(metrics != null) {
+			metrics.setEncodeAttempts(attempts);
+			metrics.setOutputBytes(bytes);
+		}
+	}
+
+
+	/**
+	 * decodes the image in horizontal strips and draws every strip scaled and rotated into the output image right away,
+	 * the memory needed is the output image plus a single strip regardless of the size of the source image
+	 *
+	 * @param regionDecoder decoder of the strips, it is not closed
+	 * @return scaled and rotated image or null if a strip cannot be decoded
+	 */
+	private T scaleTiled(ImageDecoder.RegionDecoder<T> regionDecoder, ScalePlan plan, PhotoJob job, PhotoMetrics metrics) throws IOException {
+		final int sampleSize = plan.getSampleSize();
+		final int sourceWidth = plan.getSourceWidth();
+		final int sourceHeight = plan.getSourceHeight();
+		// strips start at multiples of the sample size so that they map to whole rows of the decoded image
+		final int stripHeight = Math.max(1, TILE_PIXELS / Math.max(1, sourceWidth / sampleSize)) * sampleSize;
+
+		final T output = mTransformer.createOutput(plan);
+		boolean complete = false;
+		try {
+			for(int top = 0; top < sourceHeight; top += stripHeight) {
+				checkCancelled(job);
+				final T strip = regionDecoder.decodeStrip(top, Math.min(top + stripHeight, sourceHeight), sampleSize);
+				if(strip == null) {
+					return null;
+				}
+
+				try {
+					mTransformer.draw(strip, output, plan, top);
+					if(metrics != null) {
+						metrics.updatePeakBitmapBytes(mTransformer.getByteCount(output) + mTransformer.getByteCount(strip));
+					}
+				} finally {
+					mTransformer.release(strip);
+				}
+			}
+			complete = true;
+			return output;
+		} finally {
+			if(!complete) {
+				mTransformer.release(output);
+			}
+		}
+	}
+
+
+	/**
+	 * encodes a single rendition, it is run by the first of the calling thread and a thread of the encode executor that gets to it
+	 */
+	private class EncodeTask implements PhotoJob.Work {
+
+		private final T mImage;
+		private final OutputFormat mFormat;
+		private final int mMaxBytes;
+		private final ImageSink mOutput;
+		private final PhotoJob mJob;
+		private final AtomicBoolean mStarted = new AtomicBoolean();
+		private final CountDownLatch mDone = new CountDownLatch(1);
+		private Throwable mError;
+		private int mAttempts;
+		private long mBytes;
+
+
+		EncodeTask(T image, ScaleSpec spec, ImageSink output, PhotoJob job) {
+			mImage = image;
+			mFormat = spec.getFormat();
+			// the size of a lossless encoding doesn't depend on the quality, so it is not searched for
+			mMaxBytes = mFormat.isLossy() ? spec.getMaxBytes() : 0;
+			mOutput = output;
+			mJob = job;
+		}
+
+
+		@Override
+		public void run(PhotoJob job) {
+			if(!mStarted.compareAndSet(false, true)) {
+				return;
+			}
+			try {
+				encode();
+			} catch(IOException e) {
+				mError = e;
+			} catch(RuntimeException e) {
+				mError = e;
+			} catch(Error e) {
+				mError = e;
+			} finally {
+				mDone.countDown();
+			}
+		}
+
+
+		/**
+		 * waits until the rendition is encoded, an interrupt doesn't stop the wait as the image must not be released before
+		 *
+		 * @return true if the thread was interrupted while it waited
+		 */
+		boolean awaitUninterruptibly() {
+			boolean interrupted = false;
+			while(true) {
+				try {
+					mDone.await();
+					return interrupted;
+				} catch(InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+
+
+		/**
+		 * @throws IOException           is thrown if the encoding failed
+		 * @throws CancellationException is thrown if the job was cancelled
+		 */
+		void rethrowError() throws IOException {
+			if(mError instanceof IOException) {
+				throw (IOException) mError;
+			} else if(mError instanceof RuntimeException) {
+				throw (RuntimeException) mError;
+			} else if(mError instanceof Error) {
+				throw (Error) mError;
+			}
+		}
+
+
+		/**
+		 * encodes the image with the highest quality that fits into the byte budget and writes it to the sink,
+		 * the sink is written only once, a file appears under its final name only when it is complete
+		 */
+		private void encode() throws IOException {
+			final QualitySearch qualitySearch = sQualitySearch.get();
+			try {
+				qualitySearch.search(new QualitySearch.Encoder() {
+					@Override
+					public void encode(int quality, OutputStream outputStream) throws IOException {
+						checkCancelled(mJob);
+						mEncoder.encode(mImage, mFormat, quality, outputStream);
+					}
+				}, mMaxBytes);
+				mAttempts = qualitySearch.getAttempts();
+				mBytes = qualitySearch.getSize();
+
+				mOutput.write(qualitySearch.getBuffer(), 0, qualitySearch.getSize());
+			} finally {
+				qualitySearch.trim(MAX_RETAINED_BUFFER_BYTES);
+			}
+		}
+	}
+
+
+	/**
+	 * bytes a scaling holds in the memory budget, resized whenever the decode that runs differs from the one it was estimated for
+	 */
+	private static class Reservation {
+
+		private final MemoryBudget mMemoryBudget;
+		private final PhotoJob mJob;
+		private long mBytes;
+
+
+		Reservation(MemoryBudget memoryBudget, PhotoJob job) {
+			mMemoryBudget = memoryBudget;
+			mJob = job;
+		}
+
+
+		/**
+		 * replaces the reservation with one of the given size, the old one is returned first so that two scalings
+		 * that resize their reservations never wait for each other
+		 *
+		 * @throws InterruptedIOException is thrown if the thread is interrupted while waiting
+		 * @throws CancellationException  is thrown if the job was cancelled while waiting
+		 */
+		void resize(long bytes) throws InterruptedIOException {
+			if(mMemoryBudget == null || bytes == mBytes) {
+				return;
+			}
+			release();
+			mMemoryBudget.acquire(bytes, mJob);
+			mBytes = bytes;
+		}
+
+
+		void release() {
+			if(mMemoryBudget != null && mBytes > 0) {
+				mMemoryBudget.release(mBytes);
+				mBytes = 0;
+			}
+		}
+	}
+
+
+	private static void checkCancelled(PhotoJob job) {
+		if(job != null) {
+			job.checkCancelled();
+		}
+	}
+
+
+	private static void reportStage(PhotoJob job, PhotoJob.Stage stage) {
+		if(job != null) {
+			job.reportStage(stage);
+		}
+	}
+
+
+	// scale and rotation are applied by a single transformation, both stages are completed together
+	private static void reportTransformed(PhotoJob job, ScalePlan plan) {
+		reportStage(job, PhotoJob.Stage.SCALED);
+		if(plan.needsReorientation()) {
+			reportStage(job, PhotoJob.Stage.ROTATED);
+		}
+	}
+
+
+	/**
+	 * @return start time of a stage measured for the metrics, 0 if the job is not measured
+	 */
+	private static long startStage(PhotoMetrics metrics) {
+		return metrics != null ? System.nanoTime() : 0;
+	}
+
+
+	private static void endStage(PhotoMetrics metrics, PhotoJob.Stage stage, long start) {
+		if(metrics != null) {
+			metrics.setDuration(stage, System.nanoTime() - start);
+		}
+	}
+}
@@ -0,0 +1,239 @@
+package com.strv.photomanager;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+
+/**
+ * destination of an encoded image - a file, a stream of the caller (e.g. the body of an upload request) or memory,
+ * the image is encoded into memory by the quality search anyway, so a stream or memory sink gets it without any disk write and read-back
+ *
+ * every sink receives the complete encoded image in a single write, either from the buffer of the encoder or from a file,
+ * e.g. a cached rendition, a sink is used by one scaling at a time
+ */
+public abstract class ImageSink {
+
+	private long mLength = -1;
+
+
+	ImageSink() {}
+
+
+	/**
+	 * @param file file the image is written to, it appears only when it is complete
+	 * @return sink writing the image to the file
+	 */
+	public static ImageSink toFile(File file) {
+		return new FileSink(file);
+	}
+
+
+	/**
+	 * @param outputStream stream the image is written to, it is not closed
+	 * @return sink writing the image to the stream
+	 */
+	public static ImageSink toOutputStream(OutputStream outputStream) {
+		return new StreamSink(outputStream);
+	}
+
+
+	/**
+	 * @return sink keeping the image in memory, it can be read as an array or a buffer once the scaling is done
+	 */
+	public static MemorySink toMemory() {
+		return new MemorySink();
+	}
+
+
+	/**
+	 * writes the complete encoded image
+	 *
+	 * @param data   array the encoded image is stored in, it is reused for the next image after the call returns
+	 * @param offset start of the encoded image in the array
+	 * @param length length of the encoded image in bytes
+	 * @throws IOException is thrown if the image cannot be written
+	 */
+	public final void write(byte[] data, int offset, int length) throws IOException {
+		onWrite(data, offset, length);
+		mLength = length;
+	}
+
+
+	/**
+	 * writes the complete encoded image stored in a file, e.g. a cached rendition, files and streams get it by the kernel
+	 * without reading it into memory
+	 *
+	 * @param input channel of the file with the encoded image, it is read from its start and is not closed
+	 * @param size  length of the encoded image in bytes
+	 * @throws IOException is thrown if the image cannot be read or written
+	 */
+	public final void write(FileChannel input, long size) throws IOException {
+		onWrite(input, size);
+		mLength = size;
+	}
+
+
+	/**
+	 * @return file the image is written to or null if the sink is not a file
+	 */
+	public File getFile() {
+		return null;
+	}
+
+
+	/**
+	 * @return length of the written image in bytes, -1 if nothing was written yet
+	 */
+	public long getLength() {
+		return mLength;
+	}
+
+
+	abstract void onWrite(byte[] data, int offset, int length) throws IOException;
+
+	abstract void onWrite(FileChannel input, long size) throws IOException;
+
+
+	private static class FileSink extends ImageSink {
+
+		private final File mFile;
+
+
+		FileSink(File file) {
+			mFile = file;
+		}
+
+
+		@Override
+		public File getFile() {
+			return mFile;
+		}
+
+
+		@Override
+		public String toString() {
+			return mFile.getPath();
+		}
+
+
+		@Override
+		void onWrite(byte[] data, int offset, int length) throws IOException {
+			final File partFile = new File(mFile.getPath() + ".part");
+			OutputStream outputStream = new FileOutputStream(partFile);
+			try {
+				outputStream.write(data, offset, length);
+			} finally {
+				outputStream.close();
+			}
+			publish(partFile);
+		}
+
+
+		@Override
+		void onWrite(FileChannel input, long size) throws IOException {
+			final File partFile = new File(mFile.getPath() + ".part");
+			FileOutputStream outputStream = new FileOutputStream(partFile);
+			try {
+				StreamCopier.transfer(input, outputStream.getChannel(), size);
+			} finally {
+				outputStream.close();
+			}
+			publish(partFile);
+		}
+
+
+		private void publish(File partFile) throws IOException {
+			if(!partFile.renameTo(mFile)) {
+				partFile.delete();
+				throw new IOException("Cannot rename " + partFile + " to " + mFile);
+			}
+		}
+	}
+
+
+	private static class StreamSink extends ImageSink {
+
+		private final OutputStream mOutputStream;
+
+
+		StreamSink(OutputStream outputStream) {
+			mOutputStream = outputStream;
+		}
+
+
+		@Override
+		public String toString() {
+			return "stream";
+		}
+
+
+		@Override
+		void onWrite(byte[] data, int offset, int length) throws IOException {
+			mOutputStream.write(data, offset, length);
+			mOutputStream.flush();
+		}
+
+
+		@Override
+		void onWrite(FileChannel input, long size) throws IOException {
+			StreamCopier.transfer(input, Channels.newChannel(mOutputStream), size);
+			mOutputStream.flush();
+		}
+	}
+
+
+	public static final class MemorySink extends ImageSink {
+
+		private byte[] mData;
+
+
+		MemorySink() {}
+
+
+		/**
+		 * @return encoded image or null if nothing was written yet
+		 */
+		public byte[] toByteArray() {
+			return mData;
+		}
+
+
+		/**
+		 * @return read-only buffer of the encoded image or null if nothing was written yet
+		 */
+		public ByteBuffer toByteBuffer() {
+			return mData != null ? ByteBuffer.wrap(mData).asReadOnlyBuffer() : null;
+		}
+
+
+		@Override
+		public String toString() {
+			return "memory";
+		}
+
+
+		@Override
+		void onWrite(byte[] data, int offset, int length) {
+			mData = Arrays.copyOfRange(data, offset, offset + length);
+		}
+
+
+		@Override
+		void onWrite(FileChannel input, long size) throws IOException {
+			final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+			while(buffer.hasRemaining() && input.read(buffer, buffer.position()) > 0) {
+				// the whole image is kept in memory anyway
+			}
+			if(buffer.hasRemaining()) {
+				throw new IOException("The image is shorter than " + size + " B");
+			}
+			mData = buffer.array();
+		}
+	}
+}
@@ -0,0 +1,239 @@
+package com.strv.photomanager;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * encoded image that is opened only once for all the reads of a scaling - the header, the EXIF data and the pixels are all read
+ * through a single file descriptor that is rewound before every read, or through a single stream that is marked and reset
+ *
+ * a source is used by one scaling at a time, descriptors and streams passed in by the app are not closed by the source
+ */
+public abstract class ImageSource implements Closeable {
+
+	// the header and the EXIF data of a stream are read within this many bytes, the EXIF data alone is limited to 64 KB
+	private static final int STREAM_MARK_LIMIT = 1024 * 1024;
+	private static final int STREAM_BUFFER_SIZE = 16 * 1024;
+
+
+	ImageSource() {}
+
+
+	/**
+	 * @param file image file, it is opened on the first read and closed by {@link #close()}
+	 * @return source reading the file through a single descriptor
+	 */
+	public static ImageSource fromFile(File file) {
+		return new FileSource(file);
+	}
+
+
+	/**
+	 * @param fileDescriptor descriptor of a seekable file, e.g. of a ParcelFileDescriptor opened by a ContentResolver,
+	 *                       descriptors of pipes have to be read as a stream
+	 * @param length         length of the file in bytes, -1 if it is not known
+	 * @return source reading the image through the descriptor
+	 */
+	public static ImageSource fromFileDescriptor(FileDescriptor fileDescriptor, long length) {
+		return new DescriptorSource(fileDescriptor, length, fileDescriptor.toString());
+	}
+
+
+	/**
+	 * @param inputStream stream positioned at the start of the image, it is read only once and kept open
+	 * @return source reading the image from the stream, the header is re-read from the marked start of the stream
+	 */
+	public static ImageSource fromInputStream(InputStream inputStream) {
+		return new StreamSource(inputStream);
+	}
+
+
+	/**
+	 * opens the image for reading from its start, the previously opened stream of the source cannot be used anymore
+	 *
+	 * @return stream of the whole image, closing it doesn't close the source
+	 * @throws IOException is thrown if the source cannot be read or rewound
+	 */
+	public abstract InputStream openStream() throws IOException;
+
+
+	/**
+	 * rewinds the descriptor of the source to the start of the image, so that it can be passed to a native decoder
+	 *
+	 * @return descriptor positioned at the start of the image or null if the source is not a seekable file
+	 * @throws IOException is thrown if the source cannot be read or rewound
+	 */
+	public FileDescriptor openFileDescriptor() throws IOException {
+		return null;
+	}
+
+
+	/**
+	 * @return file the image is read from or null if the source is not a file, e.g. for the lookup in the rendition cache
+	 */
+	public File getFile() {
+		return null;
+	}
+
+
+	/**
+	 * @return length of the encoded image in bytes, -1 if it is not known
+	 */
+	public long getLength() {
+		return -1;
+	}
+
+
+	@Override
+	public void close() throws IOException {}
+
+
+	private static class DescriptorSource extends ImageSource {
+
+		private final FileDescriptor mFileDescriptor;
+		private final long mLength;
+		private final String mName;
+		// kept for the lifetime of the source, the descriptor is shared with it and must not be closed with a stream
+		private FileInputStream mInputStream;
+
+
+		DescriptorSource(FileDescriptor fileDescriptor, long length, String name) {
+			mFileDescriptor = fileDescriptor;
+			mLength = length;
+			mName = name;
+		}
+
+
+		@Override
+		public InputStream openStream() throws IOException {
+			return new BufferedInputStream(new UnclosableInputStream(rewind()), STREAM_BUFFER_SIZE);
+		}
+
+
+		@Override
+		public FileDescriptor openFileDescriptor() throws IOException {
+			rewind();
+			return mFileDescriptor;
+		}
+
+
+		@Override
+		public long getLength() {
+			return mLength;
+		}
+
+
+		@Override
+		public String toString() {
+			return mName;
+		}
+
+
+		FileInputStream rewind() throws IOException {
+			if(mInputStream == null) {
+				mInputStream = new FileInputStream(mFileDescriptor);
+			}
+			mInputStream.getChannel().position(0);
+			return mInputStream;
+		}
+	}
+
+
+	private static class FileSource extends DescriptorSource {
+
+		private final File mFile;
+		private FileInputStream mOwnedInputStream;
+
+
+		FileSource(File file) {
+			super(null, file.length(), file.getPath());
+			mFile = file;
+		}
+
+
+		@Override
+		public FileDescriptor openFileDescriptor() throws IOException {
+			return rewind().getFD();
+		}
+
+
+		@Override
+		public File getFile() {
+			return mFile;
+		}
+
+
+		@Override
+		public void close() throws IOException {
+			if(mOwnedInputStream != null) {
+				mOwnedInputStream.close();
+				mOwnedInputStream = null;
+			}
+		}
+
+
+		@Override
+		FileInputStream rewind() throws IOException {
+			if(mOwnedInputStream == null) {
+				mOwnedInputStream = new FileInputStream(mFile);
+			}
+			mOwnedInputStream.getChannel().position(0);
+			return mOwnedInputStream;
+		}
+	}
+
+
+	private static class StreamSource extends ImageSource {
+
+		private final BufferedInputStream mInputStream;
+		private boolean mOpened;
+
+
+		StreamSource(InputStream inputStream) {
+			mInputStream = new BufferedInputStream(inputStream, STREAM_BUFFER_SIZE);
+			mInputStream.mark(STREAM_MARK_LIMIT);
+		}
+
+
+		@Override
+		public InputStream openStream() throws IOException {
+			if(mOpened) {
+				try {
+					mInputStream.reset();
+				} catch(IOException e) {
+					throw new IOException("Cannot rewind the stream, more than " + STREAM_MARK_LIMIT + " bytes of it were read");
+				}
+				mInputStream.mark(STREAM_MARK_LIMIT);
+			}
+			mOpened = true;
+			return new UnclosableInputStream(mInputStream);
+		}
+
+
+		@Override
+		public String toString() {
+			return "stream";
+		}
+	}
+
+
+	private static class UnclosableInputStream extends FilterInputStream {
+
+		UnclosableInputStream(InputStream inputStream) {
+			super(inputStream);
+		}
+
+
+		@Override
+		public void close() {
+			// the stream belongs to the source
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package com.strv.photomanager;
+
+/**
+ * creates the output images of {@link ImageScaler} and draws the decoded images into them, implemented for each platform
+ *
+ * @param <T> type of the image of the platform
+ */
+public interface ImageTransformer<T> {
+
+	/**
+	 * @param plan plan computed from the header of the image
+	 * @return empty image of the output size of the plan
+	 */
+	T createOutput(ScalePlan plan);
+
+	/**
+	 * draws a decoded strip scaled, rotated and mirrored according to the plan into the output image,
+	 * the transformation is the one of {@link ScalePlan#getTransformation(float, float, float)}
+	 *
+	 * @param strip     decoded strip, it is the whole decoded image if it is not decoded in strips
+	 * @param output    image created by {@link #createOutput(ScalePlan)}
+	 * @param plan      plan computed from the header of the image
+	 * @param sourceTop first row of the strip in the encoded image
+	 */
+	void draw(T strip, T output, ScalePlan plan, int sourceTop);
+
+	/**
+	 * @param image image created by the decoder or the transformer
+	 * @return number of bytes of memory used by the pixels of the image
+	 */
+	long getByteCount(T image);
+
+	/**
+	 * releases an image created by the decoder or the transformer that is not needed anymore
+	 *
+	 * @param image image that should be released
+	 */
+	void release(T image);
+}
@@ -0,0 +1,270 @@
+package com.strv.photomanager;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+
+/**
+ * cache of imported images that stores every distinct content only once - files are named by the hash of their content
+ * and an index remembers which source (identified by its Uri, size and last modification time) produced which content,
+ * so a source that was imported before is found without reading it again
+ *
+ * the index is an append-only file of key and hash lines, a line with an empty hash removes the key, it is compacted when it is loaded
+ */
+public class ImportCache {
+
+	private static final String INDEX_FILE_NAME = "index";
+	private static final String HASH_ALGORITHM = "MD5";
+	private static final String FILE_SUFFIX = ".jpg";
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private final File mDirectory;
+	private final Map<String, String> mIndex = new HashMap<String, String>();
+	private boolean mIndexLoaded;
+	private int mHitCount;
+	private int mMissCount;
+
+
+	/**
+	 * @param directory directory where the cached files and the index are stored
+	 */
+	public ImportCache(File directory) {
+		mDirectory = directory;
+	}
+
+
+	/**
+	 * creates a key identifying a source by its metadata
+	 *
+	 * @param source       identity of the source, e.g. its Uri
+	 * @param size         size of the source in bytes
+	 * @param lastModified last modification time of the source
+	 * @return key of the source or null if the metadata is not known
+	 */
+	public static String createKey(String source, long size, long lastModified) {
+		if(source == null || size < 0 || lastModified <= 0) {
+			return null;
+		}
+		return source + "|" + size + "|" + lastModified;
+	}
+
+
+	/**
+	 * @return new digest that has to be fed with the content of the imported file
+	 */
+	public static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+
+	/**
+	 * finds the file imported from a source with the given key, this is the cheap check that doesn't need to read the source
+	 *
+	 * @param key  key of the source created by {@link #createKey(String, long, long)}
+	 * @param size size of the source in bytes
+	 * @return cached file or null if the source wasn't imported before
+	 */
+	public synchronized File get(String key, long size) {
+		if(key == null) {
+			return null;
+		}
+		loadIndex();
+		final String hash = mIndex.get(key);
+		if(hash != null) {
+			final File file = getFile(hash);
+			if(file.length() == size) {
+				mHitCount++;
+				return file;
+			}
+			// the file was deleted or replaced, the entry must not come back with the next load
+			mIndex.remove(key);
+			appendToIndex(key, "");
+		}
+		return null;
+	}
+
+
+	/**
+	 * @return file where new imports should be copied before they are added by {@link #put(File, MessageDigest, String)}
+	 * @throws IOException is thrown if the file cannot be created
+	 */
+	public File createTempFile() throws IOException {
+		if(!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+			throw new IOException("Cannot create " + mDirectory);
+		}
+		return File.createTempFile("import", ".part", mDirectory);
+	}
+
+
+	/**
+	 * adds a freshly copied file to the cache, if the same content is already cached the copy is deleted and the cached file is returned
+	 *
+	 * @param copiedFile file created by {@link #createTempFile()} containing the copied content
+	 * @param digest     digest that was fed with the whole content of the file
+	 * @param key        key of the source or null if its metadata is not known
+	 * @return cached file with the content
+	 * @throws IOException is thrown if the file cannot be moved into the cache
+	 */
+	public synchronized File put(File copiedFile, MessageDigest digest, String key) throws IOException {
+		loadIndex();
+		final String hash = toHex(digest.digest());
+		final File file = getFile(hash);
+		if(file.exists() && file.length() == copiedFile.length()) {
+			// the same content was imported from a different source or the source has changed its metadata
+			copiedFile.delete();
+			mHitCount++;
+		} else {
+			if(!copiedFile.renameTo(file)) {
+				copiedFile.delete();
+				throw new IOException("Cannot move " + copiedFile + " to " + file);
+			}
+			mMissCount++;
+		}
+
+		if(key != null && !hash.equals(mIndex.get(key))) {
+			mIndex.put(key, hash);
+			appendToIndex(key, hash);
+		}
+		return file;
+	}
+
+
+	public synchronized int getHitCount() {
+		return mHitCount;
+	}
+
+
+	public synchronized int getMissCount() {
+		return mMissCount;
+	}
+
+
+	/**
+	 * @return ratio of imports that didn't create a new file, 0 if nothing was imported yet
+	 */
+	public synchronized float getHitRate() {
+		final int total = mHitCount + mMissCount;
+		return total == 0 ? 0 : (float) mHitCount / total;
+	}
+
+
+	/**
+	 * @return directory where the cached files are stored
+	 */
+	public File getDirectory() {
+		return mDirectory;
+	}
+
+
+	private File getFile(String hash) {
+		return new File(mDirectory, hash + FILE_SUFFIX);
+	}
+
+
+	private void loadIndex() {
+		if(mIndexLoaded) {
+			return;
+		}
+		mIndexLoaded = true;
+
+		final File indexFile = new File(mDirectory, INDEX_FILE_NAME);
+		if(!indexFile.exists()) {
+			return;
+		}
+		int lineCount = 0;
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"));
+			try {
+				String line;
+				while((line = reader.readLine()) != null) {
+					lineCount++;
+					final int separator = line.lastIndexOf('\t');
+					if(separator <= 0) {
+						continue;
+					}
+					final String hash = line.substring(separator + 1);
+					if(hash.isEmpty()) {
+						mIndex.remove(line.substring(0, separator));
+					} else {
+						mIndex.put(line.substring(0, separator), hash);
+					}
+				}
+			} finally {
+				reader.close();
+			}
+
+			// files might have been deleted by the system or by the app, their entries are dropped
+			final Iterator<Map.Entry<String, String>> iterator = mIndex.entrySet().iterator();
+			while(iterator.hasNext()) {
+				if(!getFile(iterator.next().getValue()).exists()) {
+					iterator.remove();
+				}
+			}
+			// replaced, removed and stale entries are left out of the rewritten index
+			if(lineCount > mIndex.size()) {
+				writeIndex();
+			}
+		} catch(IOException e) {
+			e.printStackTrace();
+			mIndex.clear();
+			indexFile.delete();
+		}
+	}
+
+
+	private void writeIndex() throws IOException {
+		final File indexFile = new File(mDirectory, INDEX_FILE_NAME);
+		final File partFile = new File(mDirectory, INDEX_FILE_NAME + ".part");
+		Writer writer = new OutputStreamWriter(new FileOutputStream(partFile), "UTF-8");
+		try {
+			for(Map.Entry<String, String> entry : mIndex.entrySet()) {
+				writer.write(entry.getKey() + '\t' + entry.getValue() + '\n');
+			}
+		} finally {
+			writer.close();
+		}
+		if(!partFile.renameTo(indexFile)) {
+			throw new IOException("Cannot rename " + partFile + " to " + indexFile);
+		}
+	}
+
+
+	private void appendToIndex(String key, String hash) {
+		try {
+			Writer writer = new OutputStreamWriter(new FileOutputStream(new File(mDirectory, INDEX_FILE_NAME), true), "UTF-8");
+			try {
+				writer.write(key + '\t' + hash + '\n');
+			} finally {
+				writer.close();
+			}
+		} catch(IOException e) {
+			// the index is only an optimization, the entry stays in memory
+			e.printStackTrace();
+		}
+	}
+
+
+	private static String toHex(byte[] bytes) {
+		final char[] chars = new char[bytes.length * 2];
+		for(int i = 0; i < bytes.length; i++) {
+			chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+			chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+}
@@ -0,0 +1,436 @@
+package com.strv.photomanager;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * append-only journal of the batches of jobs, so a batch interrupted by the death of the process can be resumed -
+ * every item of a batch is marked complete only once its output is verified on disk, after a restart only the items that are neither
+ * complete nor failed are run again, an item whose output has disappeared since it completed is run again as well
+ *
+ * only the batches read from the journal when it is opened are offered for resuming, batches begun by the running process are still running,
+ * a batch is dropped from the journal when it ends, the journal is rewritten in a compact form once it contains too many redundant lines
+ */
+public class JobJournal {
+
+	private static final String JOURNAL_HEADER = "photomanager.JobJournal 1";
+	private static final String BEGIN = "B";
+	private static final String INPUT = "I";
+	private static final String COMPLETE = "C";
+	private static final String FAIL = "F";
+	private static final String END = "E";
+	private static final int MIN_REDUNDANT_OPS_TO_COMPACT = 200;
+
+	private final File mFile;
+	// batches in the order they were begun
+	private final Map<String, Batch> mBatches = new LinkedHashMap<String, Batch>();
+	// ids of the batches left unfinished by a previous process that were not taken for resuming yet
+	private final Set<String> mRecoveredIds = new LinkedHashSet<String>();
+	private int mRedundantOpCount;
+	private long mNextId;
+	private Writer mJournalWriter;
+	private boolean mInitialized;
+
+
+	/**
+	 * @param file file the journal is stored in, it should be in the internal storage, which is not cleared like the cache
+	 */
+	public JobJournal(File file) {
+		mFile = file;
+	}
+
+
+	/**
+	 * records a new batch before any of its items is started
+	 *
+	 * @param type   type of the batch, e.g. "import", it is only for the app to tell the batches apart
+	 * @param args   parameters shared by all the items, e.g. the size of the scaled images
+	 * @param inputs inputs of the items, e.g. Uris or paths of the source files
+	 * @return id of the batch
+	 */
+	public synchronized String beginBatch(String type, List<String> args, List<String> inputs) {
+		initialize();
+		final String id = Long.toString(System.currentTimeMillis(), 36) + '-' + mNextId++;
+		final Batch batch = new Batch(id, type, args, inputs);
+		mBatches.put(id, batch);
+
+		final StringBuilder line = new StringBuilder(encode(id)).append(' ').append(encode(type));
+		for(String arg : args) {
+			line.append(' ').append(encode(arg));
+		}
+		appendToJournal(BEGIN, line.toString());
+		for(int i = 0; i < inputs.size(); i++) {
+			appendToJournal(INPUT, encode(id) + ' ' + i + ' ' + encode(inputs.get(i)));
+		}
+		return id;
+	}
+
+
+	/**
+	 * marks the item complete if its output exists and is not empty
+	 *
+	 * @param batchId id returned by {@link #beginBatch(String, List, List)}
+	 * @param index   index of the item in the batch
+	 * @param output  output of the item
+	 * @return true if the output was verified and the item is marked complete
+	 */
+	public synchronized boolean complete(String batchId, int index, File output) {
+		initialize();
+		final Batch batch = mBatches.get(batchId);
+		if(batch == null || index < 0 || index >= batch.mOutputs.length || !output.isFile() || output.length() == 0) {
+			return false;
+		}
+		batch.mOutputs[index] = output.getPath();
+		appendToJournal(COMPLETE, encode(batchId) + ' ' + index + ' ' + encode(output.getPath()));
+		return true;
+	}
+
+
+	/**
+	 * marks the item failed, e.g. an unreadable image, so it is not run again
+	 *
+	 * @param batchId id returned by {@link #beginBatch(String, List, List)}
+	 * @param index   index of the item in the batch
+	 */
+	public synchronized void fail(String batchId, int index) {
+		initialize();
+		final Batch batch = mBatches.get(batchId);
+		if(batch == null || index < 0 || index >= batch.mFailed.length) {
+			return;
+		}
+		batch.mFailed[index] = true;
+		appendToJournal(FAIL, encode(batchId) + ' ' + index);
+	}
+
+
+	/**
+	 * drops the batch once its results are delivered or it is cancelled
+	 *
+	 * @param batchId id returned by {@link #beginBatch(String, List, List)}
+	 */
+	public synchronized void endBatch(String batchId) {
+		initialize();
+		final Batch batch = mBatches.remove(batchId);
+		mRecoveredIds.remove(batchId);
+		if(batch == null) {
+			return;
+		}
+		// the lines of the batch are not needed anymore
+		mRedundantOpCount += 2 + batch.mInputs.size();
+		appendToJournal(END, encode(batchId));
+	}
+
+
+	/**
+	 * @return copies of the batches left unfinished by a previous process, e.g. one that was killed, that were not taken yet
+	 */
+	public synchronized List<Batch> getUnfinishedBatches() {
+		initialize();
+		final List<Batch> batches = new ArrayList<Batch>(mRecoveredIds.size());
+		for(String id : mRecoveredIds) {
+			batches.add(mBatches.get(id).copy());
+		}
+		return batches;
+	}
+
+
+	/**
+	 * takes the batches left unfinished by a previous process for resuming, each of them is returned only once,
+	 * so the batches are not resumed twice when it is called again
+	 *
+	 * @return copies of the batches that were not taken yet
+	 */
+	public synchronized List<Batch> takeUnfinishedBatches() {
+		final List<Batch> batches = getUnfinishedBatches();
+		mRecoveredIds.clear();
+		return batches;
+	}
+
+
+	private void initialize() {
+		if(mInitialized) {
+			return;
+		}
+		mInitialized = true;
+		final File directory = mFile.getParentFile();
+		if(directory != null) {
+			directory.mkdirs();
+		}
+
+		if(mFile.exists()) {
+			try {
+				readJournal();
+			} catch(IOException e) {
+				// a broken journal means the interrupted batches are unknown, they cannot be resumed
+				e.printStackTrace();
+				mBatches.clear();
+			}
+		}
+		// outputs deleted since they completed, e.g. by the cache sweeper, have to be made again
+		for(Batch batch : mBatches.values()) {
+			for(int i = 0; i < batch.mOutputs.length; i++) {
+				if(batch.mOutputs[i] != null && !new File(batch.mOutputs[i]).isFile()) {
+					batch.mOutputs[i] = null;
+				}
+			}
+		}
+		mRecoveredIds.addAll(mBatches.keySet());
+		rebuildJournal();
+	}
+
+
+	private void readJournal() throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(mFile), "UTF-8"));
+		try {
+			if(!JOURNAL_HEADER.equals(reader.readLine())) {
+				throw new IOException("Unexpected journal header");
+			}
+			final Map<String, List<String>> inputs = new LinkedHashMap<String, List<String>>();
+			final List<String[]> progress = new ArrayList<String[]>();
+			String line;
+			while((line = reader.readLine()) != null) {
+				// empty values, e.g. an empty last argument, are kept
+				final String[] parts = line.split(" ", -1);
+				if(BEGIN.equals(parts[0]) && parts.length >= 3) {
+					final List<String> args = new ArrayList<String>();
+					for(int i = 3; i < parts.length; i++) {
+						args.add(decode(parts[i]));
+					}
+					final String id = decode(parts[1]);
+					mBatches.put(id, new Batch(id, decode(parts[2]), args, Collections.<String>emptyList()));
+					inputs.put(id, new ArrayList<String>());
+				} else if(INPUT.equals(parts[0]) && parts.length == 4 && inputs.containsKey(decode(parts[1]))) {
+					inputs.get(decode(parts[1])).add(decode(parts[3]));
+				} else if((COMPLETE.equals(parts[0]) && parts.length == 4) || (FAIL.equals(parts[0]) && parts.length == 3)) {
+					progress.add(parts);
+				} else if(END.equals(parts[0]) && parts.length == 2) {
+					mBatches.remove(decode(parts[1]));
+					inputs.remove(decode(parts[1]));
+				}
+				// an incomplete last line is left by a process that was killed while writing, it is ignored
+			}
+
+			// the inputs are written right after the batch, the items are known once all of them are read
+			for(Map.Entry<String, List<String>> entry : inputs.entrySet()) {
+				final Batch batch = mBatches.get(entry.getKey());
+				mBatches.put(entry.getKey(), new Batch(batch.mId, batch.mType, batch.mArgs, entry.getValue()));
+			}
+			for(String[] parts : progress) {
+				final Batch batch = mBatches.get(decode(parts[1]));
+				final int index = Integer.parseInt(parts[2]);
+				if(batch == null || index < 0 || index >= batch.mOutputs.length) {
+					continue;
+				}
+				if(COMPLETE.equals(parts[0])) {
+					batch.mOutputs[index] = decode(parts[3]);
+				} else {
+					batch.mFailed[index] = true;
+				}
+			}
+		} catch(NumberFormatException e) {
+			throw new IOException(e.toString());
+		} finally {
+			reader.close();
+		}
+	}
+
+
+	// writes a journal containing only the unfinished batches
+	private void rebuildJournal() {
+		closeJournal();
+		final File partFile = new File(mFile.getPath() + ".part");
+		try {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(partFile), "UTF-8"));
+			try {
+				writer.write(JOURNAL_HEADER + '\n');
+				for(Batch batch : mBatches.values()) {
+					writer.write(BEGIN + ' ' + encode(batch.mId) + ' ' + encode(batch.mType));
+					for(String arg : batch.mArgs) {
+						writer.write(' ' + encode(arg));
+					}
+					writer.write('\n');
+					for(int i = 0; i < batch.mInputs.size(); i++) {
+						writer.write(INPUT + ' ' + encode(batch.mId) + ' ' + i + ' ' + encode(batch.mInputs.get(i)) + '\n');
+					}
+					for(int i = 0; i < batch.mOutputs.length; i++) {
+						if(batch.mOutputs[i] != null) {
+							writer.write(COMPLETE + ' ' + encode(batch.mId) + ' ' + i + ' ' + encode(batch.mOutputs[i]) + '\n');
+						} else if(batch.mFailed[i]) {
+							writer.write(FAIL + ' ' + encode(batch.mId) + ' ' + i + '\n');
+						}
+					}
+				}
+			} finally {
+				writer.close();
+			}
+			if(!partFile.renameTo(mFile)) {
+				throw new IOException("Cannot rename " + partFile + " to " + mFile);
+			}
+			mJournalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mFile, true), "UTF-8"));
+			mRedundantOpCount = 0;
+		} catch(IOException e) {
+			// the batches keep running, they just cannot be resumed after a restart
+			e.printStackTrace();
+			mJournalWriter = null;
+		}
+	}
+
+
+	private void appendToJournal(String operation, String value) {
+		if(END.equals(operation)) {
+			mRedundantOpCount++;
+		}
+		if(mJournalWriter != null) {
+			try {
+				mJournalWriter.write(operation + ' ' + value + '\n');
+				mJournalWriter.flush();
+			} catch(IOException e) {
+				e.printStackTrace();
+				closeJournal();
+			}
+		}
+		if(mRedundantOpCount >= MIN_REDUNDANT_OPS_TO_COMPACT) {
+			rebuildJournal();
+		}
+	}
+
+
+	private void closeJournal() {
+		if(mJournalWriter != null) {
+			try {
+				mJournalWriter.close();
+			} catch(IOException e) {
+				e.printStackTrace();
+			}
+			mJournalWriter = null;
+		}
+	}
+
+
+	// values are encoded so that they never contain a space or a line break
+	private static String encode(String value) {
+		try {
+			return URLEncoder.encode(value, "UTF-8");
+		} catch(UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+
+	private static String decode(String value) {
+		try {
+			return URLDecoder.decode(value, "UTF-8");
+		} catch(UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+
+	/**
+	 * batch of items recorded in the journal
+	 */
+	public static final class Batch {
+
+		private final String mId;
+		private final String mType;
+		private final List<String> mArgs;
+		private final List<String> mInputs;
+		private final String[] mOutputs;
+		private final boolean[] mFailed;
+
+
+		Batch(String id, String type, List<String> args, List<String> inputs) {
+			mId = id;
+			mType = type;
+			mArgs = Collections.unmodifiableList(new ArrayList<String>(args));
+			mInputs = Collections.unmodifiableList(new ArrayList<String>(inputs));
+			mOutputs = new String[inputs.size()];
+			mFailed = new boolean[inputs.size()];
+		}
+
+
+		public String getId() {
+			return mId;
+		}
+
+
+		public String getType() {
+			return mType;
+		}
+
+
+		public List<String> getArgs() {
+			return mArgs;
+		}
+
+
+		public List<String> getInputs() {
+			return mInputs;
+		}
+
+
+		/**
+		 * @param index index of the item
+		 * @return verified output of a complete item or null if the item is not complete
+		 */
+		public File getOutput(int index) {
+			return mOutputs[index] != null ? new File(mOutputs[index]) : null;
+		}
+
+
+		/**
+		 * @param index index of the item
+		 * @return true if the item is complete or failed, so it should not be run again
+		 */
+		public boolean isDone(int index) {
+			return mOutputs[index] != null || mFailed[index];
+		}
+
+
+		/**
+		 * @return number of items that have to be run again
+		 */
+		public int getPendingCount() {
+			int count = 0;
+			for(int i = 0; i < mOutputs.length; i++) {
+				if(!isDone(i)) {
+					count++;
+				}
+			}
+			return count;
+		}
+
+
+		Batch copy() {
+			final Batch copy = new Batch(mId, mType, mArgs, mInputs);
+			System.arraycopy(mOutputs, 0, copy.mOutputs, 0, mOutputs.length);
+			System.arraycopy(mFailed, 0, copy.mFailed, 0, mFailed.length);
+			return copy;
+		}
+
+
+		@Override
+		public String toString() {
+			return mType + " " + mId + " " + Arrays.toString(mOutputs);
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package com.strv.photomanager;
+
+import java.io.InterruptedIOException;
+import java.util.LinkedList;
+import java.util.concurrent.CancellationException;
+
+
+/**
+ * admits scaling jobs against a budget of bitmap bytes instead of a fixed number of threads - every job reserves its estimated
+ * peak bitmap bytes before it decodes and waits while the reservations of the running jobs don't leave enough of the budget,
+ * so small images are scaled widely in parallel and huge ones one at a time
+ *
+ * jobs are admitted in the order they asked, interactive jobs before bulk ones, so a huge job is not starved by a stream of small ones,
+ * a job larger than the whole budget is admitted once it is the only one
+ */
+public class MemoryBudget {
+
+	// waiting jobs check this often whether they were cancelled
+	private static final long CANCEL_CHECK_MILLIS = 100;
+
+	private final long mMaxBytes;
+	// waiting jobs in the order they are admitted
+	private final LinkedList<Waiter> mWaiters = new LinkedList<Waiter>();
+	private long mUsedBytes;
+	private long mPeakUsedBytes;
+	private int mWaitCount;
+
+
+	/**
+	 * @param maxBytes maximum sum of the estimated peak bitmap bytes of the jobs running at the same time
+	 */
+	public MemoryBudget(long maxBytes) {
+		mMaxBytes = maxBytes;
+	}
+
+
+	/**
+	 * reserves the bytes for a job, waits until the running jobs leave enough of the budget
+	 *
+	 * @param bytes estimated peak bitmap bytes of the job
+	 * @param job   job the bytes are reserved for, it stops waiting if the job is cancelled and its priority orders the waiting jobs,
+	 *              can be null
+	 * @throws InterruptedIOException is thrown if the thread is interrupted while waiting
+	 * @throws CancellationException  is thrown if the job was cancelled while waiting
+	 */
+	public synchronized void acquire(long bytes, PhotoJob job) throws InterruptedIOException {
+		if(mWaiters.isEmpty() && fits(bytes)) {
+			reserve(bytes);
+			return;
+		}
+
+		final Waiter waiter = new Waiter(job != null ? job.getPriority() : PhotoJob.Priority.INTERACTIVE);
+		enqueue(waiter);
+		mWaitCount++;
+		try {
+			while(mWaiters.getFirst() != waiter || !fits(bytes)) {
+				if(job != null) {
+					job.checkCancelled();
+				}
+				wait(CANCEL_CHECK_MILLIS);
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} finally {
+			mWaiters.remove(waiter);
+			// the next job may fit now that this one is not in front of it anymore
+			notifyAll();
+		}
+		reserve(bytes);
+	}
+
+
+	/**
+	 * @param bytes bytes reserved by {@link #acquire(long, PhotoJob)}
+	 */
+	public synchronized void release(long bytes) {
+		mUsedBytes -= bytes;
+		notifyAll();
+	}
+
+
+	public long getMaxBytes() {
+		return mMaxBytes;
+	}
+
+
+	/**
+	 * @return bytes reserved by the running jobs
+	 */
+	public synchronized long getUsedBytes() {
+		return mUsedBytes;
+	}
+
+
+	/**
+	 * @return highest number of bytes reserved at the same time
+	 */
+	public synchronized long getPeakUsedBytes() {
+		return mPeakUsedBytes;
+	}
+
+
+	/**
+	 * @return number of jobs that had to wait to be admitted
+	 */
+	public synchronized int getWaitCount() {
+		return mWaitCount;
+	}
+
+
+	private boolean fits(long bytes) {
+		return mUsedBytes == 0 || mUsedBytes + bytes <= mMaxBytes;
+	}
+
+
+	private void reserve(long bytes) {
+		mUsedBytes += bytes;
+		mPeakUsedBytes = Math.max(mPeakUsedBytes, mUsedBytes);
+	}
+
+
+	// interactive jobs go after the waiting interactive ones but before all the bulk ones
+	private void enqueue(Waiter waiter) {
+		if(waiter.mPriority == PhotoJob.Priority.INTERACTIVE) {
+			int index = 0;
+			while(index < mWaiters.size() && mWaiters.get(index).mPriority == PhotoJob.Priority.INTERACTIVE) {
+				index++;
+			}
+			mWaiters.add(index, waiter);
+		} else {
+			mWaiters.add(waiter);
+		}
+	}
+
+
+	private static class Waiter {
+
+		final PhotoJob.Priority mPriority;
+
+
+		Waiter(PhotoJob.Priority priority) {
+			mPriority = priority;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package com.strv.photomanager;
+
+import java.io.File;
+import java.util.Locale;
+
+
+/**
+ * format the scaled images are encoded in - WebP keeps the visual quality of JPEG at about a third fewer bytes,
+ * PNG is lossless, so its byte budget cannot be met by lowering the quality and it is always encoded once
+ */
+public enum OutputFormat {
+
+	JPEG("image/jpeg", ".jpg", true),
+	WEBP("image/webp", ".webp", true),
+	PNG("image/png", ".png", false);
+
+	private final String mMimeType;
+	private final String mExtension;
+	private final boolean mLossy;
+
+
+	OutputFormat(String mimeType, String extension, boolean lossy) {
+		mMimeType = mimeType;
+		mExtension = extension;
+		mLossy = lossy;
+	}
+
+
+	/**
+	 * @param file file written by PhotoManager
+	 * @return format of the file according to its extension or null if it is not a known one
+	 */
+	public static OutputFormat fromFile(File file) {
+		final String name = file.getName().toLowerCase(Locale.US);
+		for(OutputFormat format : values()) {
+			if(name.endsWith(format.mExtension)) {
+				return format;
+			}
+		}
+		return name.endsWith(".jpeg") ? JPEG : null;
+	}
+
+
+	/**
+	 * @return MIME type of the encoded images, e.g. for the Content-Type of an upload
+	 */
+	public String getMimeType() {
+		return mMimeType;
+	}
+
+
+	/**
+	 * @return extension of the output files including the dot
+	 */
+	public String getExtension() {
+		return mExtension;
+	}
+
+
+	/**
+	 * @return true if the size of the encoded image depends on the quality
+	 */
+	public boolean isLossy() {
+		return mLossy;
+	}
+}
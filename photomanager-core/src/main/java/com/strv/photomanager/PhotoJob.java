@@ -0,0 +1,288 @@
+package com.strv.photomanager;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * handle of an import or scaling job started by PhotoManager, it can be used to cancel the job when its result is not needed anymore,
+ * e.g. when the fragment that started it goes away - a cancelled job stops at the next checkpoint (inside the copy loop and between
+ * the decode, scale and encode stages) and its listener is not called
+ *
+ * jobs waiting for a thread are ordered by their priority, jobs with the same priority run in the order they were started
+ *
+ * the progress of a job can be observed with {@link #setOnProgressListener(OnProgressListener)}, a batch reports the progress of all its files together
+ */
+public class PhotoJob implements Runnable, Comparable<PhotoJob> {
+
+	public enum Priority {
+		// work on a photo the user is waiting for
+		INTERACTIVE,
+		// background work on batches
+		BULK
+	}
+
+
+	public enum Stage {
+		// the image was copied from its Uri into a file
+		COPIED,
+		// the pixels of the image were decoded
+		DECODED,
+		// the image was scaled to the required size
+		SCALED,
+		// the image was rotated according to its EXIF orientation, only reported for images that need it
+		ROTATED,
+		// the scaled image was encoded into the output file, this is the only stage reported for an already cached image
+		ENCODED
+	}
+
+
+	public interface OnProgressListener {
+		/**
+		 * called while the image data is copied, at most once per progress interval apart from the call for the last bytes
+		 *
+		 * @param job        job the progress is reported for
+		 * @param bytes      number of bytes copied so far
+		 * @param totalBytes number of bytes that will be copied, -1 if the source doesn't report its size
+		 */
+		void onBytesCopied(PhotoJob job, long bytes, long totalBytes);
+
+		/**
+		 * called when a stage of the work of the job is completed, for a batch it is called for every file
+		 *
+		 * @param job   job the progress is reported for
+		 * @param stage stage that was completed
+		 */
+		void onStageCompleted(PhotoJob job, Stage stage);
+	}
+
+
+	interface Work {
+		/**
+		 * @param job job the work is done for, the work should call {@link PhotoJob#checkCancelled()} at its checkpoints
+		 */
+		void run(PhotoJob job);
+	}
+
+
+	public static final long DEFAULT_PROGRESS_INTERVAL_MILLIS = 100;
+
+	private static final AtomicLong sSequence = new AtomicLong();
+
+	private final Priority mPriority;
+	private final PhotoJob mParent;
+	private final Work mWork;
+	private final long mSequence = sSequence.getAndIncrement();
+	private volatile boolean mCancelled;
+	private volatile boolean mDone;
+	private final AtomicLong mBytes = new AtomicLong();
+	private final AtomicLong mTotalBytes = new AtomicLong();
+	private volatile boolean mTotalBytesUnknown;
+	private volatile OnProgressListener mProgressListener;
+	private volatile long mProgressIntervalNanos;
+	private final AtomicLong mLastProgressNanos = new AtomicLong();
+	private Executor mCallbackExecutor;
+
+
+	/**
+	 * @param priority priority of the job in the queue of the executor
+	 * @param parent   job this job is part of (e.g. a batch), cancelling the parent cancels this job too, can be null
+	 * @param work     work of the job, it is always run (even if the job is cancelled before it starts) so that it can release its resources,
+	 *                 can be null for jobs that only group other jobs
+	 */
+	PhotoJob(Priority priority, PhotoJob parent, Work work) {
+		mPriority = priority;
+		mParent = parent;
+		mWork = work;
+	}
+
+
+	/**
+	 * cancels the job, the job stops at the next checkpoint and its listener is not called
+	 *
+	 * @return false if the job was already done, true otherwise
+	 */
+	public boolean cancel() {
+		if(mDone) {
+			return false;
+		}
+		mCancelled = true;
+		return true;
+	}
+
+
+	/**
+	 * sets the listener observing the progress of the job, the byte progress is reported at most every {@value #DEFAULT_PROGRESS_INTERVAL_MILLIS} ms
+	 *
+	 * @param listener listener that should be notified about the progress, null to stop the notifications
+	 * @return this job
+	 */
+	public PhotoJob setOnProgressListener(OnProgressListener listener) {
+		return setOnProgressListener(listener, DEFAULT_PROGRESS_INTERVAL_MILLIS);
+	}
+
+
+	/**
+	 * sets the listener observing the progress of the job, the listener is called on the main thread for jobs started by PhotoManager
+	 * and it is not called anymore once the job is cancelled
+	 *
+	 * @param listener       listener that should be notified about the progress, null to stop the notifications
+	 * @param intervalMillis minimal time between two byte progress calls, the last bytes are always reported
+	 * @return this job
+	 */
+	public PhotoJob setOnProgressListener(OnProgressListener listener, long intervalMillis) {
+		mProgressIntervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+		mProgressListener = listener;
+		return this;
+	}
+
+
+	public boolean isCancelled() {
+		return mCancelled || (mParent != null && mParent.isCancelled());
+	}
+
+
+	public boolean isDone() {
+		return mDone;
+	}
+
+
+	public Priority getPriority() {
+		return mPriority;
+	}
+
+
+	/**
+	 * checkpoint of the work of the job
+	 *
+	 * @throws CancellationException is thrown if the job was cancelled
+	 */
+	public void checkCancelled() throws CancellationException {
+		if(isCancelled()) {
+			throw new CancellationException();
+		}
+	}
+
+
+	@Override
+	public void run() {
+		try {
+			if(mWork != null) {
+				mWork.run(this);
+			}
+		} finally {
+			mDone = true;
+		}
+	}
+
+
+	@Override
+	public int compareTo(PhotoJob another) {
+		final int priority = mPriority.compareTo(another.mPriority);
+		if(priority != 0) {
+			return priority;
+		}
+		return mSequence < another.mSequence ? -1 : (mSequence == another.mSequence ? 0 : 1);
+	}
+
+
+	/**
+	 * @param executor executor the progress listener is called on, by default it is called on the thread doing the work
+	 */
+	void setCallbackExecutor(Executor executor) {
+		mCallbackExecutor = executor;
+	}
+
+
+	/**
+	 * adds the size of a source that is going to be copied to the total of the job and its parents
+	 *
+	 * @param bytes size of the source, negative if it is not known
+	 */
+	void addTotalBytes(long bytes) {
+		if(bytes < 0) {
+			mTotalBytesUnknown = true;
+		} else {
+			mTotalBytes.addAndGet(bytes);
+		}
+		if(mParent != null) {
+			mParent.addTotalBytes(bytes);
+		}
+	}
+
+
+	/**
+	 * reports bytes copied for the job and its parents, cheap enough to be called for every buffer of a copy loop
+	 *
+	 * @param bytes number of bytes copied since the last call
+	 */
+	void addBytes(long bytes) {
+		final long copied = mBytes.addAndGet(bytes);
+		final OnProgressListener listener = mProgressListener;
+		if(listener != null) {
+			final long totalBytes = mTotalBytesUnknown ? -1 : mTotalBytes.get();
+			final long now = System.nanoTime();
+			final long last = mLastProgressNanos.get();
+			// the threads of a batch share the interval, only the one that wins it reports
+			if(copied == totalBytes || (now - last >= mProgressIntervalNanos && mLastProgressNanos.compareAndSet(last, now))) {
+				deliver(new Runnable() {
+					@Override
+					public void run() {
+						listener.onBytesCopied(PhotoJob.this, copied, totalBytes);
+					}
+				});
+			}
+		}
+		if(mParent != null) {
+			mParent.addBytes(bytes);
+		}
+	}
+
+
+	/**
+	 * reports a completed stage of the job to its listener and the listeners of its parents
+	 *
+	 * @param stage stage that was completed
+	 */
+	void reportStage(final Stage stage) {
+		final OnProgressListener listener = mProgressListener;
+		if(listener != null) {
+			deliver(new Runnable() {
+				@Override
+				public void run() {
+					listener.onStageCompleted(PhotoJob.this, stage);
+				}
+			});
+		}
+		if(mParent != null) {
+			mParent.reportStage(stage);
+		}
+	}
+
+
+	private void deliver(final Runnable callback) {
+		final Runnable checkedCallback = new Runnable() {
+			@Override
+			public void run() {
+				if(!isCancelled()) {
+					callback.run();
+				}
+			}
+		};
+		if(mCallbackExecutor != null) {
+			mCallbackExecutor.execute(checkedCallback);
+		} else {
+			checkedCallback.run();
+		}
+	}
+
+
+	/**
+	 * marks a job that only groups other jobs or that completed without running on an executor as done
+	 */
+	void markDone() {
+		mDone = true;
+	}
+}
@@ -0,0 +1,220 @@
+package com.strv.photomanager;
+
+import java.util.Arrays;
+
+
+/**
+ * record of a single import or scaling job passed to {@link PhotoManager.OnMetricsListener}, it tells where the time of the job went -
+ * the copy from the provider, the decode, the scale or the encode - and how much memory and output it needed
+ *
+ * durations are measured only while a metrics listener is set, stages that were not performed have a duration of -1
+ */
+public final class PhotoMetrics {
+
+	public enum Type {
+		// copy of an image from a Uri into a file
+		IMPORT,
+		// scaling of an image file
+		SCALE
+	}
+
+
+	private final Type mType;
+	private final String mSource;
+	private final long mStartNanos;
+	private final long[] mStageNanos = new long[PhotoJob.Stage.values().length];
+	private long mTotalNanos = -1;
+	private long mBytesRead;
+	private long mOutputBytes;
+	private long mPeakBitmapBytes;
+	private int mEncodeAttempts;
+	private boolean mCached;
+	private boolean mSucceeded;
+
+
+	PhotoMetrics(Type type, String source) {
+		mType = type;
+		mSource = source;
+		mStartNanos = System.nanoTime();
+		Arrays.fill(mStageNanos, -1);
+	}
+
+
+	public Type getType() {
+		return mType;
+	}
+
+
+	/**
+	 * @return path or Uri of the source image
+	 */
+	public String getSource() {
+		return mSource;
+	}
+
+
+	/**
+	 * @param stage stage of the job
+	 * @return duration of the stage in nanoseconds, -1 if the stage was not performed
+	 */
+	public long getDurationNanos(PhotoJob.Stage stage) {
+		return mStageNanos[stage.ordinal()];
+	}
+
+
+	/**
+	 * @return time spent copying the image from its Uri in milliseconds, -1 for scaling jobs
+	 */
+	public double getCopyMillis() {
+		return toMillis(getDurationNanos(PhotoJob.Stage.COPIED));
+	}
+
+
+	/**
+	 * @return time spent decoding the pixels in milliseconds, for images decoded in strips it includes the scale of the strips
+	 */
+	public double getDecodeMillis() {
+		return toMillis(getDurationNanos(PhotoJob.Stage.DECODED));
+	}
+
+
+	/**
+	 * @return time spent scaling the decoded image in milliseconds, the EXIF rotation is applied in the same draw and is included
+	 */
+	public double getScaleMillis() {
+		return toMillis(getDurationNanos(PhotoJob.Stage.SCALED));
+	}
+
+
+	/**
+	 * @return time spent searching the quality and writing the output file in milliseconds
+	 */
+	public double getEncodeMillis() {
+		return toMillis(getDurationNanos(PhotoJob.Stage.ENCODED));
+	}
+
+
+	/**
+	 * @return time of the whole job in milliseconds
+	 */
+	public double getTotalMillis() {
+		return toMillis(mTotalNanos);
+	}
+
+
+	public long getTotalNanos() {
+		return mTotalNanos;
+	}
+
+
+	/**
+	 * @return number of bytes read from the source - the copied bytes for imports, the size of the source file for scaling jobs
+	 */
+	public long getBytesRead() {
+		return mBytesRead;
+	}
+
+
+	/**
+	 * @return size of the output file in bytes
+	 */
+	public long getOutputBytes() {
+		return mOutputBytes;
+	}
+
+
+	/**
+	 * @return largest number of bitmap bytes held by the job at the same time
+	 */
+	public long getPeakBitmapBytes() {
+		return mPeakBitmapBytes;
+	}
+
+
+	/**
+	 * @return number of JPEG encodes needed to fit the byte budget
+	 */
+	public int getEncodeAttempts() {
+		return mEncodeAttempts;
+	}
+
+
+	/**
+	 * @return true if the result was found in the import or rendition cache and no work was done
+	 */
+	public boolean isCached() {
+		return mCached;
+	}
+
+
+	/**
+	 * @return false if the job failed or was cancelled
+	 */
+	public boolean isSucceeded() {
+		return mSucceeded;
+	}
+
+
+	@Override
+	public String toString() {
+		return mType + " " + mSource + (mCached ? " cached" : "") + (mSucceeded ? "" : " failed")
+				+ ": total " + formatMillis(mTotalNanos)
+				+ ", copy " + formatMillis(getDurationNanos(PhotoJob.Stage.COPIED))
+				+ ", decode " + formatMillis(getDurationNanos(PhotoJob.Stage.DECODED))
+				+ ", scale " + formatMillis(getDurationNanos(PhotoJob.Stage.SCALED))
+				+ ", encode " + formatMillis(getDurationNanos(PhotoJob.Stage.ENCODED))
+				+ " (" + mEncodeAttempts + " attempts)"
+				+ ", read " + mBytesRead + " B, output " + mOutputBytes + " B, peak bitmaps " + mPeakBitmapBytes + " B";
+	}
+
+
+	void setDuration(PhotoJob.Stage stage, long nanos) {
+		mStageNanos[stage.ordinal()] = nanos;
+	}
+
+
+	void setBytesRead(long bytes) {
+		mBytesRead = bytes;
+	}
+
+
+	void setOutputBytes(long bytes) {
+		mOutputBytes = bytes;
+	}
+
+
+	void setEncodeAttempts(int attempts) {
+		mEncodeAttempts = attempts;
+	}
+
+
+	void updatePeakBitmapBytes(long bytes) {
+		mPeakBitmapBytes = Math.max(mPeakBitmapBytes, bytes);
+	}
+
+
+	void setCached(boolean cached) {
+		mCached = cached;
+	}
+
+
+	/**
+	 * ends the measurement of the job
+	 *
+	 * @param succeeded false if the job failed or was cancelled
+	 */
+	void finish(boolean succeeded) {
+		mSucceeded = succeeded;
+		mTotalNanos = System.nanoTime() - mStartNanos;
+	}
+
+
+	private static double toMillis(long nanos) {
+		return nanos < 0 ? -1 : nanos / 1000000d;
+	}
+
+
+	private static String formatMillis(long nanos) {
+		return nanos < 0 ? "-" : String.format("%.1f ms", nanos / 1000000d);
+	}
+}
@@ -0,0 +1,163 @@
+package com.strv.photomanager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * finds the highest compression quality (in steps of {@link #QUALITY_STEP}) for which the encoded image fits into a byte budget,
+ * the quality is searched by bisection and every attempt is encoded into a reusable in-memory buffer so nothing touches the disk
+ * until the winning encoding is known
+ */
+public final class QualitySearch {
+
+	public static final int MAX_QUALITY = 100;
+	public static final int MIN_QUALITY = 10;
+	public static final int QUALITY_STEP = 5;
+
+	private static final int LEVELS = (MAX_QUALITY - MIN_QUALITY) / QUALITY_STEP + 1;
+
+	private EncodedBuffer mBest = new EncodedBuffer();
+	private EncodedBuffer mScratch = new EncodedBuffer();
+	private int mQuality;
+	private int mAttempts;
+
+
+	public interface Encoder {
+		void encode(int quality, OutputStream outputStream) throws IOException;
+	}
+
+
+	/**
+	 * encodes the image with the highest quality that fits into the byte budget, if even the lowest quality does not fit,
+	 * the lowest quality encoding is kept
+	 *
+	 * @param encoder  encoder of the image
+	 * @param maxBytes byte budget of the encoded image, 0 or less means no limit
+	 * @return quality of the kept encoding
+	 * @throws IOException is thrown if the encoding fails
+	 */
+	public int search(Encoder encoder, int maxBytes) throws IOException {
+		mAttempts = 0;
+
+		// most small images fit at full quality straight away
+		if(attempt(encoder, MAX_QUALITY) <= maxBytes || maxBytes <= 0) {
+			keep(MAX_QUALITY);
+			return mQuality;
+		}
+
+		int low = 0;
+		int high = LEVELS - 2;
+		boolean found = false;
+		while(low <= high) {
+			final int mid = (low + high) >>> 1;
+			final int quality = MIN_QUALITY + mid * QUALITY_STEP;
+			if(attempt(encoder, quality) <= maxBytes) {
+				keep(quality);
+				found = true;
+				low = mid + 1;
+			} else {
+				if(mid == 0 && !found) {
+					// nothing fits, the smallest encoding is the best we can do
+					keep(quality);
+				}
+				high = mid - 1;
+			}
+		}
+		return mQuality;
+	}
+
+
+	/**
+	 * writes the kept encoding to the output stream
+	 *
+	 * @param outputStream stream the encoding is written to
+	 * @throws IOException is thrown if writing fails
+	 */
+	public void writeTo(OutputStream outputStream) throws IOException {
+		mBest.writeTo(outputStream);
+	}
+
+
+	/**
+	 * @return buffer holding the kept encoding, only the first {@link #getSize()} bytes are valid
+	 */
+	public byte[] getBuffer() {
+		return mBest.getBuffer();
+	}
+
+
+	/**
+	 * @return size of the kept encoding in bytes
+	 */
+	public int getSize() {
+		return mBest.size();
+	}
+
+
+	/**
+	 * @return quality of the kept encoding
+	 */
+	public int getQuality() {
+		return mQuality;
+	}
+
+
+	/**
+	 * @return number of encodings done by the last search
+	 */
+	public int getAttempts() {
+		return mAttempts;
+	}
+
+
+	/**
+	 * drops the buffers if they grew larger than the given size so that a single huge image doesn't hold the memory forever
+	 *
+	 * @param maxRetainedBytes maximum capacity of a buffer that is kept for reuse
+	 */
+	public void trim(int maxRetainedBytes) {
+		if(mBest.capacity() > maxRetainedBytes) {
+			mBest = new EncodedBuffer();
+		}
+		if(mScratch.capacity() > maxRetainedBytes) {
+			mScratch = new EncodedBuffer();
+		}
+	}
+
+
+	private int attempt(Encoder encoder, int quality) throws IOException {
+		mAttempts++;
+		mScratch.reset();
+		encoder.encode(quality, mScratch);
+		return mScratch.size();
+	}
+
+
+	private void keep(int quality) {
+		final EncodedBuffer best = mBest;
+		mBest = mScratch;
+		mScratch = best;
+		mQuality = quality;
+	}
+
+
+	// gives access to the internal buffer so the encoding can be reused without copying
+	private static class EncodedBuffer extends ByteArrayOutputStream {
+
+		public EncodedBuffer() {
+			super(64 * 1024);
+		}
+
+
+		public byte[] getBuffer() {
+			return buf;
+		}
+
+
+		public int capacity() {
+			return buf.length;
+		}
+	}
+}
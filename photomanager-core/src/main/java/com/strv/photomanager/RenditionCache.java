@@ -0,0 +1,391 @@
+package com.strv.photomanager;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * disk cache of scaled images with a byte capacity and least recently used eviction,
+ * the content of the cache is described by an append-only journal, so the cache is restored after a process restart without
+ * scanning the directory - the journal is rewritten in a compact form once it contains too many redundant lines
+ *
+ * the files returned by {@link #get(String)} and {@link #put(String, File)} are pinned until they are released, a pinned file
+ * is never evicted, so it can be read or copied out of the cache while other renditions are added, renditions larger
+ * than the whole capacity are not cached at all
+ */
+public class RenditionCache {
+
+	private static final String JOURNAL_FILE_NAME = "journal";
+	private static final String JOURNAL_HEADER = "photomanager.RenditionCache 1";
+	private static final String PUT = "P";
+	private static final String ACCESS = "A";
+	private static final String DELETE = "D";
+	private static final int MIN_REDUNDANT_OPS_TO_COMPACT = 1000;
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private final File mDirectory;
+	private final long mMaxBytes;
+	// access ordered, the eldest entry is the least recently used one
+	private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+	// keys of the pinned entries with the number of pins
+	private final Map<String, Integer> mPins = new HashMap<String, Integer>();
+	private long mSize;
+	private int mRedundantOpCount;
+	private Writer mJournalWriter;
+	private boolean mInitialized;
+	private int mHitCount;
+	private int mMissCount;
+
+
+	/**
+	 * @param directory directory where the cached files and the journal are stored, it should not be used for anything else
+	 * @param maxBytes  maximum size of all the cached files in bytes
+	 */
+	public RenditionCache(File directory, long maxBytes) {
+		mDirectory = directory;
+		mMaxBytes = maxBytes;
+	}
+
+
+	/**
+	 * creates a key of a rendition, the source is identified by its path, size and last modification time,
+	 * so a changed source file doesn't hit an old rendition
+	 *
+	 * @param source   source image file
+	 * @param width    required width of the rendition
+	 * @param height   required height of the rendition
+	 * @param format   output format of the rendition
+	 * @param maxBytes byte budget of the rendition
+	 * @return key of the rendition
+	 */
+	public static String createKey(File source, int width, int height, String format, int maxBytes) {
+		final String identity = source.getAbsolutePath() + '|' + source.length() + '|' + source.lastModified()
+				+ '|' + width + 'x' + height + '|' + format + '|' + maxBytes;
+		try {
+			final byte[] hash = MessageDigest.getInstance("MD5").digest(identity.getBytes("UTF-8"));
+			final char[] chars = new char[hash.length * 2];
+			for(int i = 0; i < hash.length; i++) {
+				chars[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0xf];
+				chars[i * 2 + 1] = HEX_DIGITS[hash[i] & 0xf];
+			}
+			return new String(chars);
+		} catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch(UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+
+	/**
+	 * creates a key of a rendition that ends with the extension of the format, so the cached file has the right extension
+	 *
+	 * @param source   source image file
+	 * @param width    required width of the rendition
+	 * @param height   required height of the rendition
+	 * @param format   output format of the rendition
+	 * @param maxBytes byte budget of the rendition
+	 * @return key of the rendition
+	 */
+	public static String createKey(File source, int width, int height, OutputFormat format, int maxBytes) {
+		return createKey(source, width, height, format, maxBytes, null);
+	}
+
+
+	/**
+	 * creates a key of a rendition that also depends on how the source is decoded, e.g. a rendition decoded in RGB_565
+	 * must not be served to a request for a full color decode
+	 *
+	 * @param source        source image file
+	 * @param width         required width of the rendition
+	 * @param height        required height of the rendition
+	 * @param format        output format of the rendition
+	 * @param maxBytes      byte budget of the rendition
+	 * @param decodeVariant description of the decode settings, e.g. the decode profile, null for the default decode
+	 * @return key of the rendition
+	 */
+	public static String createKey(File source, int width, int height, OutputFormat format, int maxBytes, String decodeVariant) {
+		final String formatIdentity = decodeVariant != null ? format.name() + '|' + decodeVariant : format.name();
+		return createKey(source, width, height, formatIdentity, maxBytes) + format.getExtension();
+	}
+
+
+	/**
+	 * @param key key created by {@link #createKey(File, int, int, String, int)}
+	 * @return cached file or null if there is no rendition for the key, the file is pinned until {@link #release(String)} is called
+	 */
+	public synchronized File get(String key) {
+		initialize();
+		if(mEntries.get(key) == null) {
+			mMissCount++;
+			return null;
+		}
+
+		final File file = getFile(key);
+		if(!file.exists()) {
+			// the file was deleted by the app or by the system
+			mSize -= mEntries.remove(key);
+			appendToJournal(DELETE, key);
+			mMissCount++;
+			return null;
+		}
+
+		mHitCount++;
+		appendToJournal(ACCESS, key);
+		pin(key);
+		return file;
+	}
+
+
+	/**
+	 * moves the file into the cache, least recently used renditions that are not pinned are evicted if the cache grows over its capacity
+	 *
+	 * @param key  key created by {@link #createKey(File, int, int, String, int)}
+	 * @param file file containing the rendition, it must be on the same file system as the cache directory
+	 * @return cached file that replaced the given one, it is pinned until {@link #release(String)} is called,
+	 * a file larger than the capacity of the cache is not moved and is returned as it is
+	 * @throws IOException is thrown if the file cannot be moved into the cache
+	 */
+	public synchronized File put(String key, File file) throws IOException {
+		initialize();
+		if(file.length() > mMaxBytes) {
+			// it would be evicted right away
+			return file;
+		}
+		final File cachedFile = getFile(key);
+		if(!file.renameTo(cachedFile)) {
+			throw new IOException("Cannot move " + file + " to " + cachedFile);
+		}
+
+		final long size = cachedFile.length();
+		final Long previousSize = mEntries.put(key, size);
+		if(previousSize != null) {
+			mSize -= previousSize;
+			mRedundantOpCount++;
+		}
+		mSize += size;
+		appendToJournal(PUT, key + ' ' + size);
+		pin(key);
+		trimToSize();
+		return cachedFile;
+	}
+
+
+	/**
+	 * releases the pin of a file returned by {@link #get(String)} or {@link #put(String, File)}, once all its pins are released
+	 * the file can be evicted
+	 *
+	 * @param key key the file was returned for
+	 */
+	public synchronized void release(String key) {
+		final Integer count = mPins.get(key);
+		if(count == null) {
+			return;
+		}
+		if(count > 1) {
+			mPins.put(key, count - 1);
+			return;
+		}
+		mPins.remove(key);
+		// the entry might have kept the cache over its capacity
+		trimToSize();
+	}
+
+
+	public synchronized long getSize() {
+		initialize();
+		return mSize;
+	}
+
+
+	public long getMaxBytes() {
+		return mMaxBytes;
+	}
+
+
+	public synchronized int getHitCount() {
+		return mHitCount;
+	}
+
+
+	public synchronized int getMissCount() {
+		return mMissCount;
+	}
+
+
+	/**
+	 * @return directory where the cached files are stored
+	 */
+	public File getDirectory() {
+		return mDirectory;
+	}
+
+
+	private File getFile(String key) {
+		return new File(mDirectory, key);
+	}
+
+
+	private void pin(String key) {
+		final Integer count = mPins.get(key);
+		mPins.put(key, count != null ? count + 1 : 1);
+	}
+
+
+	private void trimToSize() {
+		final Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+		while(mSize > mMaxBytes && iterator.hasNext()) {
+			final Map.Entry<String, Long> eldest = iterator.next();
+			if(mPins.containsKey(eldest.getKey())) {
+				continue;
+			}
+			iterator.remove();
+			getFile(eldest.getKey()).delete();
+			mSize -= eldest.getValue();
+			appendToJournal(DELETE, eldest.getKey());
+		}
+	}
+
+
+	private void initialize() {
+		if(mInitialized) {
+			return;
+		}
+		mInitialized = true;
+		mDirectory.mkdirs();
+
+		final File journalFile = new File(mDirectory, JOURNAL_FILE_NAME);
+		if(journalFile.exists()) {
+			try {
+				readJournal(journalFile);
+			} catch(IOException e) {
+				// a broken journal means the cache content is unknown, it is started again
+				e.printStackTrace();
+				clearDirectory();
+			}
+		}
+		trimToSize();
+		rebuildJournal();
+	}
+
+
+	private void readJournal(File journalFile) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), "UTF-8"));
+		try {
+			if(!JOURNAL_HEADER.equals(reader.readLine())) {
+				throw new IOException("Unexpected journal header");
+			}
+			int lineCount = 0;
+			String line;
+			while((line = reader.readLine()) != null) {
+				lineCount++;
+				final String[] parts = line.split(" ");
+				if(PUT.equals(parts[0]) && parts.length == 3) {
+					final Long previousSize = mEntries.put(parts[1], Long.parseLong(parts[2]));
+					if(previousSize != null) {
+						mSize -= previousSize;
+					}
+					mSize += Long.parseLong(parts[2]);
+				} else if(ACCESS.equals(parts[0]) && parts.length == 2) {
+					mEntries.get(parts[1]);
+				} else if(DELETE.equals(parts[0]) && parts.length == 2) {
+					final Long size = mEntries.remove(parts[1]);
+					if(size != null) {
+						mSize -= size;
+					}
+				}
+				// an incomplete last line is left by a process that was killed while writing, it is ignored
+			}
+			mRedundantOpCount = lineCount - mEntries.size();
+		} catch(NumberFormatException e) {
+			throw new IOException(e.toString());
+		} finally {
+			reader.close();
+		}
+	}
+
+
+	// writes a journal containing only the current entries in the least recently used order
+	private void rebuildJournal() {
+		closeJournal();
+		final File journalFile = new File(mDirectory, JOURNAL_FILE_NAME);
+		final File partFile = new File(mDirectory, JOURNAL_FILE_NAME + ".part");
+		try {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(partFile), "UTF-8"));
+			try {
+				writer.write(JOURNAL_HEADER + '\n');
+				for(Map.Entry<String, Long> entry : mEntries.entrySet()) {
+					writer.write(PUT + ' ' + entry.getKey() + ' ' + entry.getValue() + '\n');
+				}
+			} finally {
+				writer.close();
+			}
+			if(!partFile.renameTo(journalFile)) {
+				throw new IOException("Cannot rename " + partFile + " to " + journalFile);
+			}
+			mJournalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile, true), "UTF-8"));
+			mRedundantOpCount = 0;
+		} catch(IOException e) {
+			// the cache keeps working in memory, it is just not restored after a restart
+			e.printStackTrace();
+			mJournalWriter = null;
+		}
+	}
+
+
+	private void appendToJournal(String operation, String value) {
+		if(!PUT.equals(operation)) {
+			mRedundantOpCount++;
+		}
+		if(mJournalWriter != null) {
+			try {
+				mJournalWriter.write(operation + ' ' + value + '\n');
+				mJournalWriter.flush();
+			} catch(IOException e) {
+				e.printStackTrace();
+				closeJournal();
+			}
+		}
+		if(mRedundantOpCount >= MIN_REDUNDANT_OPS_TO_COMPACT && mRedundantOpCount >= mEntries.size()) {
+			rebuildJournal();
+		}
+	}
+
+
+	private void closeJournal() {
+		if(mJournalWriter != null) {
+			try {
+				mJournalWriter.close();
+			} catch(IOException e) {
+				e.printStackTrace();
+			}
+			mJournalWriter = null;
+		}
+	}
+
+
+	private void clearDirectory() {
+		mEntries.clear();
+		mSize = 0;
+		final File[] files = mDirectory.listFiles();
+		if(files != null) {
+			for(File file : files) {
+				file.delete();
+			}
+		}
+	}
+}
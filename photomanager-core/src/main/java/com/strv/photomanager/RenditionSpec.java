@@ -0,0 +1,57 @@
+package com.strv.photomanager;
+
+/**
+ * describes one of several renditions made from a single decode of an image, e.g. a thumbnail, a feed image and an upload image
+ */
+public class RenditionSpec extends ScaleSpec {
+
+	private final String mName;
+
+
+	/**
+	 * @param name   name of the rendition, e.g. "thumbnail", it is only for the app to tell the renditions apart
+	 * @param width  required width of the output image
+	 * @param height required height of the output image
+	 */
+	public RenditionSpec(String name, int width, int height) {
+		super(width, height);
+		mName = name;
+	}
+
+
+	/**
+	 * @param name     name of the rendition, e.g. "thumbnail", it is only for the app to tell the renditions apart
+	 * @param width    required width of the output image
+	 * @param height   required height of the output image
+	 * @param maxBytes maximum size of the output file in bytes, 0 or less means the image is always encoded at full quality
+	 */
+	public RenditionSpec(String name, int width, int height, int maxBytes) {
+		super(width, height, maxBytes);
+		mName = name;
+	}
+
+
+	/**
+	 * @param name     name of the rendition, e.g. "thumbnail", it is only for the app to tell the renditions apart
+	 * @param width    required width of the output image
+	 * @param height   required height of the output image
+	 * @param maxBytes maximum size of the output file in bytes, 0 or less means the image is always encoded at full quality,
+	 *                 the budget of a lossless format is not enforced
+	 * @param format   format of the output file, the renditions of a single image can each have a different one
+	 */
+	public RenditionSpec(String name, int width, int height, int maxBytes, OutputFormat format) {
+		super(width, height, maxBytes, format);
+		mName = name;
+	}
+
+
+	public String getName() {
+		return mName;
+	}
+
+
+	@Override
+	public String toString() {
+		return mName + " " + getWidth() + "x" + getHeight();
+	}
+}
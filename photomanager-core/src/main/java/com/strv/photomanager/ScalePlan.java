@@ -0,0 +1,301 @@
+package com.strv.photomanager;
+
+/**
+ * describes how a source image is turned into a scaled image - computed purely from the image header (bounds and EXIF orientation)
+ * before any pixels are decoded, so that the decode can be done once with the right sample size and the scale and rotation
+ * can be applied in a single transformation
+ */
+public final class ScalePlan {
+
+	// values of the EXIF orientation tag, same as the ones in android.media.ExifInterface
+	public static final int ORIENTATION_NORMAL = 1;
+	public static final int ORIENTATION_FLIP_HORIZONTAL = 2;
+	public static final int ORIENTATION_ROTATE_180 = 3;
+	public static final int ORIENTATION_FLIP_VERTICAL = 4;
+	public static final int ORIENTATION_TRANSPOSE = 5;
+	public static final int ORIENTATION_ROTATE_90 = 6;
+	public static final int ORIENTATION_TRANSVERSE = 7;
+	public static final int ORIENTATION_ROTATE_270 = 8;
+
+	private final int mSourceWidth;
+	private final int mSourceHeight;
+	private final int mSampleSize;
+	private final int mScaledWidth;
+	private final int mScaledHeight;
+	private final int mOutputWidth;
+	private final int mOutputHeight;
+	private final int mRotationDegrees;
+	private final boolean mFlipHorizontal;
+
+
+	private ScalePlan(int sourceWidth, int sourceHeight, int sampleSize, int scaledWidth, int scaledHeight, int rotationDegrees, boolean flipHorizontal) {
+		mSourceWidth = sourceWidth;
+		mSourceHeight = sourceHeight;
+		mSampleSize = sampleSize;
+		mScaledWidth = scaledWidth;
+		mScaledHeight = scaledHeight;
+		mRotationDegrees = rotationDegrees;
+		mFlipHorizontal = flipHorizontal;
+		if(isSwappingDimensions()) {
+			mOutputWidth = scaledHeight;
+			mOutputHeight = scaledWidth;
+		} else {
+			mOutputWidth = scaledWidth;
+			mOutputHeight = scaledHeight;
+		}
+	}
+
+
+	/**
+	 * creates a plan for scaling an image with the given header information to the required size,
+	 * the required size is applied to the image as it is displayed (after the EXIF orientation is applied) -
+	 * landscape images get the required width, portrait images get the required height and square images get both
+	 *
+	 * @param sourceWidth  width of the encoded image as stored in the file
+	 * @param sourceHeight height of the encoded image as stored in the file
+	 * @param orientation  value of the EXIF orientation tag
+	 * @param reqWidth     required width of the output image
+	 * @param reqHeight    required height of the output image
+	 * @return plan describing the sample size, the scaled size and the rotation of the image
+	 */
+	public static ScalePlan create(int sourceWidth, int sourceHeight, int orientation, int reqWidth, int reqHeight) {
+		final int rotationDegrees = getRotationDegrees(orientation);
+		final boolean flipHorizontal = isFlippedHorizontally(orientation);
+		final boolean swap = rotationDegrees == 90 || rotationDegrees == 270;
+
+		// size of the image as it is displayed
+		double width = swap ? sourceHeight : sourceWidth;
+		double height = swap ? sourceWidth : sourceHeight;
+		if(width > height) {
+			// landscape
+			double ratio = width / reqWidth;
+			width = reqWidth;
+			height = height / ratio;
+		} else if(height > width) {
+			// portrait
+			double ratio = height / reqHeight;
+			height = reqHeight;
+			width = width / ratio;
+		} else {
+			// square
+			height = reqHeight;
+			width = reqWidth;
+		}
+
+		// size of the scaled image before it is rotated
+		final int scaledWidth = Math.max(1, (int) (swap ? height : width));
+		final int scaledHeight = Math.max(1, (int) (swap ? width : height));
+		final int sampleSize = calculateInSampleSize(sourceWidth, sourceHeight, scaledWidth, scaledHeight);
+
+		return new ScalePlan(sourceWidth, sourceHeight, sampleSize, scaledWidth, scaledHeight, rotationDegrees, flipHorizontal);
+	}
+
+
+	/**
+	 * creates a plan for resizing an already oriented image to an exact size, e.g. to cascade a smaller rendition from a larger one
+	 *
+	 * @param sourceWidth  width of the oriented image
+	 * @param sourceHeight height of the oriented image
+	 * @param outputWidth  width of the resized image
+	 * @param outputHeight height of the resized image
+	 * @return plan without sampling and rotation
+	 */
+	public static ScalePlan createResize(int sourceWidth, int sourceHeight, int outputWidth, int outputHeight) {
+		return new ScalePlan(sourceWidth, sourceHeight, 1, outputWidth, outputHeight, 0, false);
+	}
+
+
+	/**
+	 * calculates the largest power of 2 sample size that keeps both dimensions of the decoded image larger than the required ones
+	 *
+	 * @param width     width of the encoded image
+	 * @param height    height of the encoded image
+	 * @param reqWidth  required width of the decoded image
+	 * @param reqHeight required height of the decoded image
+	 * @return sample size that should be used for decoding
+	 */
+	public static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+		int inSampleSize = 1;
+
+		if(height > reqHeight || width > reqWidth) {
+
+			final int halfHeight = height / 2;
+			final int halfWidth = width / 2;
+
+			// Calculate the largest inSampleSize value that is a power of 2 and keeps both
+			// height and width larger than the requested height and width.
+			while((halfHeight / inSampleSize) > reqHeight && (halfWidth / inSampleSize) > reqWidth) {
+				inSampleSize *= 2;
+			}
+		}
+
+		return inSampleSize;
+	}
+
+
+	/**
+	 * @param orientation value of the EXIF orientation tag
+	 * @return clockwise rotation in degrees that needs to be applied to display the image correctly
+	 */
+	public static int getRotationDegrees(int orientation) {
+		switch(orientation) {
+			case ORIENTATION_ROTATE_180:
+			case ORIENTATION_FLIP_VERTICAL:
+				return 180;
+			case ORIENTATION_ROTATE_90:
+			case ORIENTATION_TRANSPOSE:
+				return 90;
+			case ORIENTATION_ROTATE_270:
+			case ORIENTATION_TRANSVERSE:
+				return 270;
+			default:
+				return 0;
+		}
+	}
+
+
+	/**
+	 * @param orientation value of the EXIF orientation tag
+	 * @return true if the image needs to be mirrored horizontally after it is rotated
+	 */
+	public static boolean isFlippedHorizontally(int orientation) {
+		return orientation == ORIENTATION_FLIP_HORIZONTAL
+				|| orientation == ORIENTATION_FLIP_VERTICAL
+				|| orientation == ORIENTATION_TRANSPOSE
+				|| orientation == ORIENTATION_TRANSVERSE;
+	}
+
+
+	public int getSourceWidth() {
+		return mSourceWidth;
+	}
+
+
+	public int getSourceHeight() {
+		return mSourceHeight;
+	}
+
+
+	public int getSampleSize() {
+		return mSampleSize;
+	}
+
+
+	/**
+	 * @return width of the scaled image before the rotation is applied
+	 */
+	public int getScaledWidth() {
+		return mScaledWidth;
+	}
+
+
+	/**
+	 * @return height of the scaled image before the rotation is applied
+	 */
+	public int getScaledHeight() {
+		return mScaledHeight;
+	}
+
+
+	/**
+	 * @return width of the final image after the rotation is applied
+	 */
+	public int getOutputWidth() {
+		return mOutputWidth;
+	}
+
+
+	/**
+	 * @return height of the final image after the rotation is applied
+	 */
+	public int getOutputHeight() {
+		return mOutputHeight;
+	}
+
+
+	public int getRotationDegrees() {
+		return mRotationDegrees;
+	}
+
+
+	public boolean isFlipHorizontal() {
+		return mFlipHorizontal;
+	}
+
+
+	/**
+	 * @return true if the rotation turns a landscape image into a portrait one or vice versa
+	 */
+	public boolean isSwappingDimensions() {
+		return mRotationDegrees == 90 || mRotationDegrees == 270;
+	}
+
+
+	/**
+	 * @return true if the image needs to be rotated or mirrored
+	 */
+	public boolean needsReorientation() {
+		return mRotationDegrees != 0 || mFlipHorizontal;
+	}
+
+
+	/**
+	 * creates an affine transformation mapping a horizontal strip of the decoded image onto the output image - it scales the strip,
+	 * rotates and mirrors it according to the orientation and moves it to its place, a whole decoded image is a strip starting at 0
+	 *
+	 * @param decodedWidth  width of the whole decoded image
+	 * @param decodedHeight height of the whole decoded image
+	 * @param decodedTop    top of the strip in the rows of the decoded image
+	 * @return 3x3 matrix in the row-major order used by android.graphics.Matrix.setValues()
+	 */
+	public float[] getTransformation(float decodedWidth, float decodedHeight, float decodedTop) {
+		// x' = a * x + b * y + tx, y' = c * x + d * y + ty
+		float a = mScaledWidth / decodedWidth;
+		float b = 0;
+		float c = 0;
+		float d = mScaledHeight / decodedHeight;
+		float tx = 0;
+		float ty = 0;
+
+		// clockwise rotation in the y-down coordinates of an image, moved back into the output bounds
+		switch(mRotationDegrees) {
+			case 90: {
+				final float a2 = -c, b2 = -d, c2 = a, d2 = b;
+				a = a2;
+				b = b2;
+				c = c2;
+				d = d2;
+				tx = mOutputWidth;
+				break;
+			}
+			case 180:
+				a = -a;
+				b = -b;
+				c = -c;
+				d = -d;
+				tx = mOutputWidth;
+				ty = mOutputHeight;
+				break;
+			case 270: {
+				final float a2 = c, b2 = d, c2 = -a, d2 = -b;
+				a = a2;
+				b = b2;
+				c = c2;
+				d = d2;
+				ty = mOutputHeight;
+				break;
+			}
+		}
+		if(mFlipHorizontal) {
+			a = -a;
+			b = -b;
+			tx = mOutputWidth - tx;
+		}
+
+		// the strip is moved to its place before it is transformed
+		tx += b * decodedTop;
+		ty += d * decodedTop;
+
+		return new float[]{a, b, tx, c, d, ty, 0, 0, 1};
+	}
+}
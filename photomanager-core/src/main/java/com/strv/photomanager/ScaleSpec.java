@@ -0,0 +1,68 @@
+package com.strv.photomanager;
+
+/**
+ * describes the output of a scaling request - required size of the image, the byte budget and the format of the encoded file
+ */
+public class ScaleSpec {
+
+	public static final int DEFAULT_MAX_BYTES = 320 * 1024;
+
+	private final int mWidth;
+	private final int mHeight;
+	private final int mMaxBytes;
+	private final OutputFormat mFormat;
+
+
+	/**
+	 * @param width  required width of the output image
+	 * @param height required height of the output image
+	 */
+	public ScaleSpec(int width, int height) {
+		this(width, height, DEFAULT_MAX_BYTES);
+	}
+
+
+	/**
+	 * @param width    required width of the output image
+	 * @param height   required height of the output image
+	 * @param maxBytes maximum size of the output file in bytes, 0 or less means the image is always encoded at full quality
+	 */
+	public ScaleSpec(int width, int height, int maxBytes) {
+		this(width, height, maxBytes, OutputFormat.JPEG);
+	}
+
+
+	/**
+	 * @param width    required width of the output image
+	 * @param height   required height of the output image
+	 * @param maxBytes maximum size of the output file in bytes, 0 or less means the image is always encoded at full quality,
+	 *                 the budget of a lossless format is not enforced
+	 * @param format   format of the output file
+	 */
+	public ScaleSpec(int width, int height, int maxBytes, OutputFormat format) {
+		mWidth = width;
+		mHeight = height;
+		mMaxBytes = maxBytes;
+		mFormat = format;
+	}
+
+
+	public int getWidth() {
+		return mWidth;
+	}
+
+
+	public int getHeight() {
+		return mHeight;
+	}
+
+
+	public int getMaxBytes() {
+		return mMaxBytes;
+	}
+
+
+	public OutputFormat getFormat() {
+		return mFormat;
+	}
+}
@@ -0,0 +1,202 @@
+package com.strv.photomanager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+
+/**
+ * copies image data into files with as few system calls and copies as possible - file to file copies are done by the kernel
+ * (FileChannel.transferTo), other streams are copied through large pooled direct buffers
+ */
+public final class StreamCopier {
+
+	public static final int BUFFER_SIZE = 256 * 1024;
+
+	// the kernel copy is split so that a cancelled job stops soon and the progress moves even on a slow SD card
+	private static final long TRANSFER_CHUNK_SIZE = 1024 * 1024;
+
+	// enough for the parallel imports, more buffers are allocated if needed but not kept
+	private static final int MAX_POOLED_BUFFERS = 4;
+
+	private static final ConcurrentLinkedQueue<ByteBuffer> sBufferPool = new ConcurrentLinkedQueue<ByteBuffer>();
+
+
+	private StreamCopier() {}
+
+
+	/**
+	 * copies the whole content of a file channel to another file channel without copying the data through the Java heap
+	 *
+	 * @param input  channel of the source file
+	 * @param output channel of the target file
+	 * @param size   number of bytes in the source file
+	 * @return number of bytes copied
+	 * @throws IOException is thrown if the copy fails
+	 */
+	public static long transfer(FileChannel input, FileChannel output, long size) throws IOException {
+		return transfer(input, output, size, null);
+	}
+
+
+	/**
+	 * copies the whole content of a file channel to another file channel without copying the data through the Java heap,
+	 * the copy is done in chunks so that the job can be cancelled in the middle of a large file and its progress can be reported
+	 *
+	 * @param input  channel of the source file
+	 * @param output channel of the target file
+	 * @param size   number of bytes in the source file
+	 * @param job    job the copy is done for, the copied bytes are reported to it, can be null
+	 * @return number of bytes copied
+	 * @throws IOException           is thrown if the copy fails
+	 * @throws CancellationException is thrown if the job was cancelled
+	 */
+	public static long transfer(FileChannel input, FileChannel output, long size, PhotoJob job) throws IOException {
+		long position = 0;
+		while(position < size) {
+			checkCancelled(job);
+			final long transferred = input.transferTo(position, Math.min(TRANSFER_CHUNK_SIZE, size - position), output);
+			if(transferred <= 0) {
+				// the file got shorter while copying, the rest is copied the slow way
+				input.position(position);
+				return position + copy(input, output, null, job);
+			}
+			position += transferred;
+			reportBytes(job, transferred);
+		}
+		return position;
+	}
+
+
+	/**
+	 * copies the whole content of a file channel to the channel of a stream, e.g. the body of an upload request,
+	 * the kernel copies the data straight into the stream if the platform supports it for the stream
+	 *
+	 * @param input  channel of the source file
+	 * @param output channel of the target stream
+	 * @param size   number of bytes in the source file
+	 * @return number of bytes copied
+	 * @throws IOException is thrown if the copy fails
+	 */
+	public static long transfer(FileChannel input, WritableByteChannel output, long size) throws IOException {
+		long position = 0;
+		while(position < size) {
+			final long transferred = input.transferTo(position, Math.min(TRANSFER_CHUNK_SIZE, size - position), output);
+			if(transferred <= 0) {
+				// the file got shorter while copying
+				break;
+			}
+			position += transferred;
+		}
+		return position;
+	}
+
+
+	/**
+	 * copies the whole content of a channel to a file channel through a pooled direct buffer
+	 *
+	 * @param input  channel of the source stream
+	 * @param output channel of the target file
+	 * @return number of bytes copied
+	 * @throws IOException is thrown if the copy fails
+	 */
+	public static long copy(ReadableByteChannel input, FileChannel output) throws IOException {
+		return copy(input, output, null, null);
+	}
+
+
+	/**
+	 * copies the whole content of a channel to a file channel through a pooled direct buffer and feeds the content to the digest
+	 *
+	 * @param input  channel of the source stream
+	 * @param output channel of the target file
+	 * @param digest digest that should be updated with the copied content, can be null
+	 * @param job    job the copy is done for, the copied bytes are reported to it, can be null
+	 * @return number of bytes copied
+	 * @throws IOException           is thrown if the copy fails
+	 * @throws CancellationException is thrown if the job was cancelled
+	 */
+	public static long copy(ReadableByteChannel input, FileChannel output, MessageDigest digest, PhotoJob job) throws IOException {
+		final ByteBuffer buffer = obtainBuffer();
+		try {
+			long copied = 0;
+			while(input.read(buffer) != -1) {
+				checkCancelled(job);
+				buffer.flip();
+				if(digest != null) {
+					digest.update(buffer.duplicate());
+				}
+				final int remaining = buffer.remaining();
+				while(buffer.hasRemaining()) {
+					output.write(buffer);
+				}
+				copied += remaining;
+				reportBytes(job, remaining);
+				buffer.clear();
+			}
+			return copied;
+		} finally {
+			recycleBuffer(buffer);
+		}
+	}
+
+
+	/**
+	 * feeds the whole content of a file to the digest
+	 *
+	 * @param input  channel of the file
+	 * @param digest digest that should be updated with the content
+	 * @throws IOException is thrown if reading fails
+	 */
+	public static void digest(FileChannel input, MessageDigest digest) throws IOException {
+		final ByteBuffer buffer = obtainBuffer();
+		try {
+			long position = 0;
+			int read;
+			while((read = input.read(buffer, position)) != -1) {
+				position += read;
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		} finally {
+			recycleBuffer(buffer);
+		}
+	}
+
+
+	private static void checkCancelled(PhotoJob job) {
+		if(job != null) {
+			job.checkCancelled();
+		}
+	}
+
+
+	private static void reportBytes(PhotoJob job, long bytes) {
+		if(job != null) {
+			job.addBytes(bytes);
+		}
+	}
+
+
+	private static ByteBuffer obtainBuffer() {
+		final ByteBuffer buffer = sBufferPool.poll();
+		if(buffer != null) {
+			return buffer;
+		}
+		return ByteBuffer.allocateDirect(BUFFER_SIZE);
+	}
+
+
+	private static void recycleBuffer(ByteBuffer buffer) {
+		buffer.clear();
+		if(sBufferPool.size() < MAX_POOLED_BUFFERS) {
+			sBufferPool.offer(buffer);
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package com.strv.photomanager;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.*;
+
+
+public class CacheSweeperTest {
+
+	private static final long HOUR = 60 * 60 * 1000;
+
+	@Rule
+	public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+
+	@Test
+	public void sweep_deletesOldOrphans() throws Exception {
+		final File directory = mTemporaryFolder.newFolder();
+		final File oldPart = createFile(directory, "old.jpg.part", 10, 2 * HOUR);
+		final File newPart = createFile(directory, "new.jpg.part", 10, 0);
+		final File oldEmpty = createFile(directory, "empty.jpg", 0, 2 * HOUR);
+		final File oldFile = createFile(directory, "old.jpg", 10, 2 * HOUR);
+
+		final CacheSweeper cacheSweeper = new CacheSweeper(1000);
+		cacheSweeper.addDirectory(directory, null);
+		assertEquals(10, cacheSweeper.sweep());
+
+		assertFalse(oldPart.exists());
+		assertFalse(oldEmpty.exists());
+		assertTrue(newPart.exists());
+		assertTrue(oldFile.exists());
+		assertEquals(20, cacheSweeper.getSize());
+		assertEquals(2, cacheSweeper.getDeletedCount());
+	}
+
+
+	@Test
+	public void sweep_deletesOldestOverQuota() throws Exception {
+		final File directory = mTemporaryFolder.newFolder();
+		final File oldest = createFile(directory, "a.jpg", 40, 3 * HOUR);
+		final File older = createFile(directory, "b.jpg", 40, 2 * HOUR);
+		final File newest = createFile(directory, "c.jpg", 40, HOUR);
+
+		final CacheSweeper cacheSweeper = new CacheSweeper(50);
+		cacheSweeper.addDirectory(directory, null);
+		assertEquals(80, cacheSweeper.sweep());
+
+		assertFalse(oldest.exists());
+		assertFalse(older.exists());
+		assertTrue(newest.exists());
+		assertEquals(40, cacheSweeper.getSize());
+		assertEquals(80, cacheSweeper.getDeletedBytes());
+	}
+
+
+	@Test
+	public void sweep_keepsRetainedFiles() throws Exception {
+		final File directory = mTemporaryFolder.newFolder();
+		final File retained = createFile(directory, "a.jpg", 40, 3 * HOUR);
+		final File retainedPart = createFile(directory, "b.jpg.part", 40, 3 * HOUR);
+		final File other = createFile(directory, "c.jpg", 40, 2 * HOUR);
+
+		final CacheSweeper cacheSweeper = new CacheSweeper(50);
+		cacheSweeper.addDirectory(directory, null);
+		cacheSweeper.retain(retained);
+		// the unfinished output of a live job is protected by its final name
+		cacheSweeper.retain(new File(directory, "b.jpg"));
+		cacheSweeper.sweep();
+
+		assertTrue(retained.exists());
+		assertTrue(retainedPart.exists());
+		assertFalse(other.exists());
+
+		cacheSweeper.release(retained);
+		cacheSweeper.sweep();
+		assertFalse(retained.exists());
+		assertTrue(retainedPart.exists());
+	}
+
+
+	@Test
+	public void retain_isCounted() throws Exception {
+		final File directory = mTemporaryFolder.newFolder();
+		final File file = createFile(directory, "a.jpg", 40, HOUR);
+
+		final CacheSweeper cacheSweeper = new CacheSweeper(0);
+		cacheSweeper.addDirectory(directory, null);
+		cacheSweeper.retain(file);
+		cacheSweeper.retain(file);
+		cacheSweeper.release(file);
+		cacheSweeper.sweep();
+		assertTrue(file.exists());
+
+		cacheSweeper.release(file);
+		cacheSweeper.sweep();
+		assertFalse(file.exists());
+	}
+
+
+	@Test
+	public void sweep_deletesOnlyOrphansInOrphanDirectories() throws Exception {
+		final File directory = mTemporaryFolder.newFolder();
+		final File orphan = createFile(directory, "capture.jpg", 0, 2 * HOUR);
+		final File photo = createFile(directory, "photo.jpg", 100, 2 * HOUR);
+
+		final CacheSweeper cacheSweeper = new CacheSweeper(0);
+		cacheSweeper.addOrphanDirectory(directory, null);
+		cacheSweeper.sweep();
+
+		assertFalse(orphan.exists());
+		assertTrue(photo.exists());
+		assertEquals(0, cacheSweeper.getSize());
+	}
+
+
+	@Test
+	public void sweep_deletesOnlyFilteredFiles() throws Exception {
+		final File directory = mTemporaryFolder.newFolder();
+		final File photo = createFile(directory, "photo.jpg", 40, 2 * HOUR);
+		final File foreign = createFile(directory, "notes.txt", 40, 3 * HOUR);
+
+		final CacheSweeper cacheSweeper = new CacheSweeper(0);
+		cacheSweeper.addDirectory(directory, new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.getName().endsWith(".jpg");
+			}
+		});
+		cacheSweeper.sweep();
+
+		assertFalse(photo.exists());
+		assertTrue(foreign.exists());
+	}
+
+
+	private static File createFile(File directory, String name, int size, long ageMillis) throws IOException {
+		final File file = new File(directory, name);
+		final OutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(new byte[size]);
+		} finally {
+			outputStream.close();
+		}
+		// whole seconds, some file systems don't store more
+		assertTrue(file.setLastModified((System.currentTimeMillis() - ageMillis) / 1000 * 1000));
+		return file;
+	}
+}
@@ -0,0 +1,122 @@
+package com.strv.photomanager;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+
+public class ExifOrientationTest {
+
+	@Test
+	public void read_bigEndian() throws Exception {
+		assertEquals(ScalePlan.ORIENTATION_ROTATE_90, read(createJpeg(createExif(ScalePlan.ORIENTATION_ROTATE_90, false))));
+	}
+
+
+	@Test
+	public void read_littleEndian() throws Exception {
+		assertEquals(ScalePlan.ORIENTATION_ROTATE_90, read(createJpeg(createExif(ScalePlan.ORIENTATION_ROTATE_90, true))));
+		assertEquals(ScalePlan.ORIENTATION_TRANSVERSE, read(createJpeg(createExif(ScalePlan.ORIENTATION_TRANSVERSE, true))));
+	}
+
+
+	@Test
+	public void read_invalidOrientationIsNormal() throws Exception {
+		assertEquals(ScalePlan.ORIENTATION_NORMAL, read(createJpeg(createExif(9, false))));
+		assertEquals(ScalePlan.ORIENTATION_NORMAL, read(createJpeg(createExif(0, true))));
+	}
+
+
+	@Test
+	public void read_withoutExifIsNormal() throws Exception {
+		assertEquals(ScalePlan.ORIENTATION_NORMAL, read(createJpeg(null)));
+	}
+
+
+	@Test
+	public void read_notJpegIsNormal() throws Exception {
+		assertEquals(ScalePlan.ORIENTATION_NORMAL, read(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'}));
+		assertEquals(ScalePlan.ORIENTATION_NORMAL, read(new byte[0]));
+	}
+
+
+	@Test
+	public void read_truncatedExifIsNormal() throws Exception {
+		final byte[] jpeg = createJpeg(createExif(ScalePlan.ORIENTATION_ROTATE_180, false));
+		final byte[] truncated = new byte[30];
+		System.arraycopy(jpeg, 0, truncated, 0, truncated.length);
+		assertEquals(ScalePlan.ORIENTATION_NORMAL, read(truncated));
+	}
+
+
+	private static int read(byte[] jpeg) throws IOException {
+		return ExifOrientation.read(new ByteArrayInputStream(jpeg));
+	}
+
+
+	/**
+	 * @return TIFF data with a single image directory holding the orientation tag
+	 */
+	private static byte[] createExif(int orientation, boolean littleEndian) throws IOException {
+		final ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+		tiff.write(littleEndian ? 'I' : 'M');
+		tiff.write(littleEndian ? 'I' : 'M');
+		writeShort(tiff, 42, littleEndian);
+		writeInt(tiff, 8, littleEndian);
+		// directory with a single entry
+		writeShort(tiff, 1, littleEndian);
+		writeShort(tiff, 0x0112, littleEndian);
+		writeShort(tiff, 3, littleEndian);
+		writeInt(tiff, 1, littleEndian);
+		writeShort(tiff, orientation, littleEndian);
+		writeShort(tiff, 0, littleEndian);
+		writeInt(tiff, 0, littleEndian);
+		return tiff.toByteArray();
+	}
+
+
+	/**
+	 * @param tiff TIFF data of the APP1 segment or null for an image without EXIF data
+	 * @return JPEG with a JFIF segment, the EXIF segment and the start of the image data
+	 */
+	private static byte[] createJpeg(byte[] tiff) throws IOException {
+		final ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+		jpeg.write(new byte[]{(byte) 0xFF, (byte) 0xD8});
+		jpeg.write(new byte[]{(byte) 0xFF, (byte) 0xE0, 0, 16, 'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0});
+		if(tiff != null) {
+			// a fill byte before the marker is allowed
+			jpeg.write(new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xE1});
+			writeShort(jpeg, 2 + 6 + tiff.length, false);
+			jpeg.write(new byte[]{'E', 'x', 'i', 'f', 0, 0});
+			jpeg.write(tiff);
+		}
+		jpeg.write(new byte[]{(byte) 0xFF, (byte) 0xDA, 0, 2});
+		return jpeg.toByteArray();
+	}
+
+
+	private static void writeShort(ByteArrayOutputStream output, int value, boolean littleEndian) {
+		if(littleEndian) {
+			output.write(value & 0xFF);
+			output.write((value >> 8) & 0xFF);
+		} else {
+			output.write((value >> 8) & 0xFF);
+			output.write(value & 0xFF);
+		}
+	}
+
+
+	private static void writeInt(ByteArrayOutputStream output, int value, boolean littleEndian) {
+		if(littleEndian) {
+			writeShort(output, value & 0xFFFF, true);
+			writeShort(output, (value >> 16) & 0xFFFF, true);
+		} else {
+			writeShort(output, (value >> 16) & 0xFFFF, false);
+			writeShort(output, value & 0xFFFF, false);
+		}
+	}
+}
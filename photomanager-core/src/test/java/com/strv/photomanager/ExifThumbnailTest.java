@@ -0,0 +1,200 @@
+package com.strv.photomanager;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+
+public class ExifThumbnailTest {
+
+	private static final int COMPRESSION_JPEG = 6;
+	private static final int COMPRESSION_NONE = 1;
+
+
+	@Test
+	public void read_bigEndian() throws Exception {
+		final byte[] thumbnail = createThumbnail(160, 120, false);
+		final ExifThumbnail exifThumbnail = read(createJpeg(createExif(thumbnail, COMPRESSION_JPEG, 0, false)));
+		assertThumbnail(thumbnail, 160, 120, exifThumbnail);
+	}
+
+
+	@Test
+	public void read_littleEndian() throws Exception {
+		final byte[] thumbnail = createThumbnail(120, 160, false);
+		final ExifThumbnail exifThumbnail = read(createJpeg(createExif(thumbnail, COMPRESSION_JPEG, 0, true)));
+		assertThumbnail(thumbnail, 120, 160, exifThumbnail);
+	}
+
+
+	@Test
+	public void read_skipsTablesBeforeFrame() throws Exception {
+		final byte[] thumbnail = createThumbnail(160, 120, true);
+		assertThumbnail(thumbnail, 160, 120, read(createJpeg(createExif(thumbnail, COMPRESSION_JPEG, 0, false))));
+	}
+
+
+	@Test
+	public void read_withoutThumbnailDirectoryIsNull() throws Exception {
+		assertNull(read(createJpeg(createExif(null, COMPRESSION_JPEG, 0, false))));
+		assertNull(read(createJpeg(null)));
+	}
+
+
+	@Test
+	public void read_uncompressedThumbnailIsNull() throws Exception {
+		assertNull(read(createJpeg(createExif(createThumbnail(160, 120, false), COMPRESSION_NONE, 0, true))));
+	}
+
+
+	@Test
+	public void read_thumbnailOutsideOfExifIsNull() throws Exception {
+		assertNull(read(createJpeg(createExif(createThumbnail(160, 120, false), COMPRESSION_JPEG, 1, false))));
+	}
+
+
+	@Test
+	public void read_thumbnailWithoutFrameIsNull() throws Exception {
+		final byte[] thumbnail = new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xD9};
+		assertNull(read(createJpeg(createExif(thumbnail, COMPRESSION_JPEG, 0, false))));
+	}
+
+
+	private static void assertThumbnail(byte[] expectedData, int expectedWidth, int expectedHeight, ExifThumbnail exifThumbnail) {
+		assertNotNull(exifThumbnail);
+		assertEquals(expectedWidth, exifThumbnail.getWidth());
+		assertEquals(expectedHeight, exifThumbnail.getHeight());
+		assertEquals(expectedData.length, exifThumbnail.getLength());
+		for(int i = 0; i < expectedData.length; i++) {
+			assertEquals(expectedData[i], exifThumbnail.getData()[exifThumbnail.getOffset() + i]);
+		}
+	}
+
+
+	private static ExifThumbnail read(byte[] jpeg) throws IOException {
+		return ExifThumbnail.read(new ByteArrayInputStream(jpeg));
+	}
+
+
+	/**
+	 * @return JPEG thumbnail that has only the markers needed to find its size
+	 */
+	private static byte[] createThumbnail(int width, int height, boolean withHuffmanTable) {
+		final ByteArrayOutputStream thumbnail = new ByteArrayOutputStream();
+		thumbnail.write(0xFF);
+		thumbnail.write(0xD8);
+		if(withHuffmanTable) {
+			// the huffman table marker is in the range of the frame markers
+			thumbnail.write(0xFF);
+			thumbnail.write(0xC4);
+			writeShort(thumbnail, 6, false);
+			writeInt(thumbnail, 0, false);
+		}
+		thumbnail.write(0xFF);
+		thumbnail.write(0xC0);
+		writeShort(thumbnail, 11, false);
+		thumbnail.write(8);
+		writeShort(thumbnail, height, false);
+		writeShort(thumbnail, width, false);
+		thumbnail.write(1);
+		thumbnail.write(1);
+		thumbnail.write(0x11);
+		thumbnail.write(0);
+		thumbnail.write(0xFF);
+		thumbnail.write(0xD9);
+		return thumbnail.toByteArray();
+	}
+
+
+	/**
+	 * @param thumbnail   JPEG thumbnail described by the second directory or null for EXIF data with the main image directory only
+	 * @param compression value of the compression tag of the thumbnail
+	 * @param extraOffset bytes added to the stored offset of the thumbnail
+	 * @return TIFF data with the main image directory and the thumbnail directory followed by the thumbnail
+	 */
+	private static byte[] createExif(byte[] thumbnail, int compression, int extraOffset, boolean littleEndian) throws IOException {
+		final ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+		tiff.write(littleEndian ? 'I' : 'M');
+		tiff.write(littleEndian ? 'I' : 'M');
+		writeShort(tiff, 42, littleEndian);
+		writeInt(tiff, 8, littleEndian);
+
+		// main image directory at 8 with the orientation only
+		writeShort(tiff, 1, littleEndian);
+		writeEntry(tiff, 0x0112, 3, ScalePlan.ORIENTATION_ROTATE_90, littleEndian);
+		if(thumbnail == null) {
+			writeInt(tiff, 0, littleEndian);
+			return tiff.toByteArray();
+		}
+		final int thumbnailDirectory = 8 + 2 + 12 + 4;
+		writeInt(tiff, thumbnailDirectory, littleEndian);
+
+		// thumbnail directory followed by the thumbnail
+		final int thumbnailOffset = thumbnailDirectory + 2 + 3 * 12 + 4;
+		writeShort(tiff, 3, littleEndian);
+		writeEntry(tiff, 0x0103, 3, compression, littleEndian);
+		writeEntry(tiff, 0x0201, 4, thumbnailOffset + extraOffset, littleEndian);
+		writeEntry(tiff, 0x0202, 4, thumbnail.length, littleEndian);
+		writeInt(tiff, 0, littleEndian);
+		tiff.write(thumbnail);
+		return tiff.toByteArray();
+	}
+
+
+	/**
+	 * @param tiff TIFF data of the APP1 segment or null for an image without EXIF data
+	 * @return JPEG with the EXIF segment and the start of the image data
+	 */
+	private static byte[] createJpeg(byte[] tiff) throws IOException {
+		final ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+		jpeg.write(new byte[]{(byte) 0xFF, (byte) 0xD8});
+		if(tiff != null) {
+			jpeg.write(new byte[]{(byte) 0xFF, (byte) 0xE1});
+			writeShort(jpeg, 2 + 6 + tiff.length, false);
+			jpeg.write(new byte[]{'E', 'x', 'i', 'f', 0, 0});
+			jpeg.write(tiff);
+		}
+		jpeg.write(new byte[]{(byte) 0xFF, (byte) 0xDA, 0, 2});
+		return jpeg.toByteArray();
+	}
+
+
+	private static void writeEntry(ByteArrayOutputStream output, int tag, int type, int value, boolean littleEndian) {
+		writeShort(output, tag, littleEndian);
+		writeShort(output, type, littleEndian);
+		writeInt(output, 1, littleEndian);
+		if(type == 3) {
+			// a short value is stored in the first two bytes of the value field
+			writeShort(output, value, littleEndian);
+			writeShort(output, 0, littleEndian);
+		} else {
+			writeInt(output, value, littleEndian);
+		}
+	}
+
+
+	private static void writeShort(ByteArrayOutputStream output, int value, boolean littleEndian) {
+		if(littleEndian) {
+			output.write(value & 0xFF);
+			output.write((value >> 8) & 0xFF);
+		} else {
+			output.write((value >> 8) & 0xFF);
+			output.write(value & 0xFF);
+		}
+	}
+
+
+	private static void writeInt(ByteArrayOutputStream output, int value, boolean littleEndian) {
+		if(littleEndian) {
+			writeShort(output, value & 0xFFFF, true);
+			writeShort(output, (value >> 16) & 0xFFFF, true);
+		} else {
+			writeShort(output, (value >> 16) & 0xFFFF, false);
+			writeShort(output, value & 0xFFFF, false);
+		}
+	}
+}
@@ -0,0 +1,453 @@
+package com.strv.photomanager;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+
+public class ImageScalerTest {
+
+	private static final int BYTES_PER_PIXEL = 4;
+
+
+	@Test
+	public void scale_decodesOnceAndDrawsOnce() throws Exception {
+		final FakeBackend backend = new FakeBackend(4000, 3000);
+		backend.mOrientation = ScalePlan.ORIENTATION_ROTATE_90;
+		final List<PhotoJob.Stage> stages = new ArrayList<PhotoJob.Stage>();
+		scale(backend, null, new ScaleSpec(1000, 1000), createJob(stages));
+
+		assertEquals(1, backend.mDecodeCount);
+		assertEquals(2, backend.mDecodedSampleSize);
+		// scale and rotation are a single draw into the upright output
+		assertEquals(1, backend.mDrawCount);
+		assertEquals(1, backend.mEncoded.size());
+		assertEquals(750, backend.mEncoded.get(0).mWidth);
+		assertEquals(1000, backend.mEncoded.get(0).mHeight);
+		assertEquals(Arrays.asList(PhotoJob.Stage.DECODED, PhotoJob.Stage.SCALED, PhotoJob.Stage.ROTATED, PhotoJob.Stage.ENCODED), stages);
+		assertEquals(backend.mCreatedCount, backend.mReleasedCount);
+	}
+
+
+	@Test
+	public void scale_uprightImageSkipsRotatedStage() throws Exception {
+		final FakeBackend backend = new FakeBackend(4000, 3000);
+		final List<PhotoJob.Stage> stages = new ArrayList<PhotoJob.Stage>();
+		scale(backend, null, new ScaleSpec(1000, 1000), createJob(stages));
+
+		assertEquals(1000, backend.mEncoded.get(0).mWidth);
+		assertEquals(750, backend.mEncoded.get(0).mHeight);
+		assertEquals(Arrays.asList(PhotoJob.Stage.DECODED, PhotoJob.Stage.SCALED, PhotoJob.Stage.ENCODED), stages);
+	}
+
+
+	@Test
+	public void scale_cancelledJobReleasesImages() throws Exception {
+		final FakeBackend backend = new FakeBackend(4000, 3000);
+		final PhotoJob job = new PhotoJob(PhotoJob.Priority.INTERACTIVE, null, null);
+		backend.mCancelOnDecode = job;
+		try {
+			scale(backend, null, new ScaleSpec(1000, 1000), job);
+			fail("the cancelled job was encoded");
+		} catch(CancellationException e) {
+			// expected
+		}
+		assertTrue(backend.mEncoded.isEmpty());
+		assertEquals(backend.mCreatedCount, backend.mReleasedCount);
+	}
+
+
+	@Test(expected = IOException.class)
+	public void scale_undecodableImageFails() throws Exception {
+		final FakeBackend backend = new FakeBackend(0, 0);
+		scale(backend, null, new ScaleSpec(1000, 1000), null);
+	}
+
+
+	@Test
+	public void scale_withoutRegionDecoderReservesWholeDecode() throws Exception {
+		final FakeBackend backend = new FakeBackend(8000, 6000);
+		final MemoryBudget memoryBudget = new MemoryBudget(1024 * 1024 * 1024);
+		scale(backend, memoryBudget, new ScaleSpec(4000, 3000), null);
+
+		assertEquals(0, backend.mStripCount);
+		assertEquals(estimateWholeDecode(8000, 6000, 4000, 3000), backend.mReservedAtDecode);
+		assertEquals(0, memoryBudget.getUsedBytes());
+	}
+
+
+	@Test
+	public void scale_tiledReservesStrip() throws Exception {
+		final FakeBackend backend = new FakeBackend(8000, 6000);
+		backend.mRegionDecoderSupported = true;
+		final MemoryBudget memoryBudget = new MemoryBudget(1024 * 1024 * 1024);
+		scale(backend, memoryBudget, new ScaleSpec(4000, 3000), null);
+
+		assertTrue(backend.mStripCount > 1);
+		assertEquals(-1, backend.mReservedAtDecode);
+		final ScalePlan plan = ScalePlan.create(8000, 6000, ScalePlan.ORIENTATION_NORMAL, 4000, 3000);
+		final long decodedWidth = 8000 / plan.getSampleSize();
+		final long stripPixels = 1024 * 1024 / decodedWidth * decodedWidth;
+		assertEquals((stripPixels + plan.getOutputWidth() * plan.getOutputHeight()) * BYTES_PER_PIXEL, backend.mReservedAtStrip);
+		assertTrue(backend.mReservedAtStrip < estimateWholeDecode(8000, 6000, 4000, 3000));
+		assertEquals(0, memoryBudget.getUsedBytes());
+	}
+
+
+	@Test
+	public void scale_failedStripReservesWholeDecode() throws Exception {
+		final FakeBackend backend = new FakeBackend(8000, 6000);
+		backend.mRegionDecoderSupported = true;
+		backend.mFailingStrip = 0;
+		final MemoryBudget memoryBudget = new MemoryBudget(1024 * 1024 * 1024);
+		scale(backend, memoryBudget, new ScaleSpec(4000, 3000), null);
+
+		assertEquals(1, backend.mStripCount);
+		assertEquals(estimateWholeDecode(8000, 6000, 4000, 3000), backend.mReservedAtDecode);
+		assertEquals(0, memoryBudget.getUsedBytes());
+	}
+
+
+	@Test
+	public void scale_tiledStripsCoverWholeImage() throws Exception {
+		final FakeBackend backend = new FakeBackend(8000, 6000);
+		backend.mRegionDecoderSupported = true;
+		scale(backend, null, new ScaleSpec(4000, 3000), null);
+
+		final ScalePlan plan = ScalePlan.create(8000, 6000, ScalePlan.ORIENTATION_NORMAL, 4000, 3000);
+		assertEquals(0, backend.mDecodeCount);
+		assertTrue(backend.mStripTops.size() > 1);
+		assertEquals(0, (int) backend.mStripTops.get(0));
+		for(int i = 0; i < backend.mStripTops.size(); i++) {
+			// strips are contiguous and start on whole rows of the decoded image
+			assertEquals(0, backend.mStripTops.get(i) % plan.getSampleSize());
+			if(i > 0) {
+				assertEquals(backend.mStripBottoms.get(i - 1), backend.mStripTops.get(i));
+			}
+		}
+		assertEquals(6000, (int) backend.mStripBottoms.get(backend.mStripBottoms.size() - 1));
+		// every strip is drawn into the output at its own position
+		assertEquals(backend.mStripTops, backend.mDrawTops);
+		assertEquals(4000, backend.mEncoded.get(0).mWidth);
+		assertEquals(3000, backend.mEncoded.get(0).mHeight);
+		assertEquals(1, backend.mRegionDecoderCloseCount);
+		assertEquals(backend.mCreatedCount, backend.mReleasedCount);
+	}
+
+
+	@Test
+	public void scale_smallImageIsNotTiled() throws Exception {
+		final FakeBackend backend = new FakeBackend(4000, 3000);
+		backend.mRegionDecoderSupported = true;
+		scale(backend, null, new ScaleSpec(1000, 1000), null);
+
+		assertEquals(0, backend.mStripCount);
+		assertEquals(1, backend.mDecodeCount);
+	}
+
+
+	@Test
+	public void scale_failedStripFallsBackToWholeDecode() throws Exception {
+		final FakeBackend backend = new FakeBackend(8000, 6000);
+		backend.mRegionDecoderSupported = true;
+		backend.mFailingStrip = 2;
+		scale(backend, null, new ScaleSpec(4000, 3000), null);
+
+		assertEquals(3, backend.mStripCount);
+		assertEquals(1, backend.mDecodeCount);
+		assertEquals(1, backend.mRegionDecoderCloseCount);
+		assertEquals(1, backend.mEncoded.size());
+		assertEquals(4000, backend.mEncoded.get(0).mWidth);
+		assertEquals(3000, backend.mEncoded.get(0).mHeight);
+		// the partly drawn output and the decoded strips are released
+		assertEquals(backend.mCreatedCount, backend.mReleasedCount);
+	}
+
+
+	@Test
+	public void scaleToSinks_decodesOnceForAllRenditions() throws Exception {
+		final FakeBackend backend = new FakeBackend(4000, 3000);
+		final List<Integer> widths = scaleRenditions(backend, null, Arrays.asList(new ScaleSpec(500, 500), new ScaleSpec(200, 200), new ScaleSpec(1000, 1000)));
+
+		assertEquals(1, backend.mDecodeCount);
+		// the largest rendition decides the sample size
+		final int sampleSize = ScalePlan.create(4000, 3000, ScalePlan.ORIENTATION_NORMAL, 1000, 1000).getSampleSize();
+		assertTrue(sampleSize < ScalePlan.create(4000, 3000, ScalePlan.ORIENTATION_NORMAL, 200, 200).getSampleSize());
+		assertEquals(sampleSize, backend.mDecodedSampleSize);
+		// every sink gets the rendition of its own spec
+		assertEquals(Arrays.asList(500, 200, 1000), widths);
+		assertEquals(3, backend.mEncoded.size());
+		assertEquals(backend.mCreatedCount, backend.mReleasedCount);
+	}
+
+
+	@Test
+	public void scaleToSinks_cascadesFromNextLargerRendition() throws Exception {
+		final FakeBackend backend = new FakeBackend(4000, 3000);
+		scaleRenditions(backend, null, Arrays.asList(new ScaleSpec(200, 200), new ScaleSpec(1000, 1000), new ScaleSpec(500, 500)));
+
+		// the decoded image is drawn into the largest rendition, every smaller one is drawn from the one before it
+		final int decodedWidth = 4000 / backend.mDecodedSampleSize;
+		assertEquals(Arrays.asList(decodedWidth, 1000, 500), backend.mDrawSourceWidths);
+	}
+
+
+	@Test
+	public void scaleToSinks_encodesOnExecutor() throws Exception {
+		final FakeBackend backend = new FakeBackend(4000, 3000);
+		final ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			final List<Integer> widths = scaleRenditions(backend, executor, Arrays.asList(new ScaleSpec(2000, 2000), new ScaleSpec(1000, 1000), new ScaleSpec(500, 500), new ScaleSpec(200, 200)));
+			assertEquals(Arrays.asList(2000, 1000, 500, 200), widths);
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(1, backend.mDecodeCount);
+		assertEquals(4, backend.mEncoded.size());
+		assertEquals(backend.mCreatedCount, backend.mReleasedCount);
+	}
+
+
+	@Test(expected = IllegalArgumentException.class)
+	public void scaleToSinks_needsSinkForEverySpec() throws Exception {
+		final ImageScaler<FakeImage> imageScaler = new ImageScaler<FakeImage>(new FakeBackend(4000, 3000), null, null);
+		imageScaler.scaleToSinks(ImageSource.fromInputStream(new ByteArrayInputStream(new byte[0])), Arrays.asList(new ScaleSpec(1000, 1000)), Collections.<ImageSink>emptyList(), null);
+	}
+
+
+	@Test
+	public void scale_losslessFormatIsEncodedOnce() throws Exception {
+		final FakeBackend backend = new FakeBackend(4000, 3000);
+		// the budget cannot be met, lowering the quality of a PNG wouldn't help
+		scale(backend, null, new ScaleSpec(1000, 1000, 1, OutputFormat.PNG), null);
+		assertEquals(Arrays.asList(OutputFormat.PNG), backend.mEncodedFormats);
+	}
+
+
+	@Test
+	public void scale_lossyFormatSearchesQuality() throws Exception {
+		final FakeBackend backend = new FakeBackend(4000, 3000);
+		scale(backend, null, new ScaleSpec(1000, 1000, 1, OutputFormat.WEBP), null);
+		assertTrue(backend.mEncodedFormats.size() > 1);
+		assertFalse(backend.mEncodedFormats.contains(OutputFormat.JPEG));
+	}
+
+
+	private static void scale(FakeBackend backend, MemoryBudget memoryBudget, ScaleSpec spec, PhotoJob job) throws IOException {
+		final ImageScaler<FakeImage> imageScaler = new ImageScaler<FakeImage>(backend, backend, backend);
+		imageScaler.setMemoryBudget(memoryBudget);
+		backend.mMemoryBudget = memoryBudget;
+		imageScaler.setEmbeddedThumbnailEnabled(false);
+		final ImageSink.MemorySink sink = ImageSink.toMemory();
+		imageScaler.scale(ImageSource.fromInputStream(new ByteArrayInputStream(new byte[0])), spec, sink, job);
+		assertTrue(sink.getLength() > 0);
+	}
+
+
+	/**
+	 * @return width of the image encoded into every sink
+	 */
+	private static List<Integer> scaleRenditions(FakeBackend backend, Executor encodeExecutor, List<ScaleSpec> specs) throws IOException {
+		final ImageScaler<FakeImage> imageScaler = new ImageScaler<FakeImage>(backend, backend, backend);
+		imageScaler.setEmbeddedThumbnailEnabled(false);
+		imageScaler.setEncodeExecutor(encodeExecutor);
+		final List<ImageSink.MemorySink> sinks = new ArrayList<ImageSink.MemorySink>();
+		for(int i = 0; i < specs.size(); i++) {
+			sinks.add(ImageSink.toMemory());
+		}
+		imageScaler.scaleToSinks(ImageSource.fromInputStream(new ByteArrayInputStream(new byte[0])), specs, sinks, null);
+
+		final List<Integer> widths = new ArrayList<Integer>();
+		for(ImageSink.MemorySink sink : sinks) {
+			final ByteBuffer data = sink.toByteBuffer();
+			final byte[] bytes = new byte[data.remaining()];
+			data.get(bytes);
+			widths.add(Integer.valueOf(new String(bytes, "US-ASCII")));
+		}
+		return widths;
+	}
+
+
+	private static PhotoJob createJob(final List<PhotoJob.Stage> stages) {
+		return new PhotoJob(PhotoJob.Priority.INTERACTIVE, null, null).setOnProgressListener(new PhotoJob.OnProgressListener() {
+			@Override
+			public void onBytesCopied(PhotoJob job, long bytes, long totalBytes) {}
+
+
+			@Override
+			public void onStageCompleted(PhotoJob job, PhotoJob.Stage stage) {
+				stages.add(stage);
+			}
+		});
+	}
+
+
+	private static long estimateWholeDecode(int sourceWidth, int sourceHeight, int reqWidth, int reqHeight) {
+		final ScalePlan plan = ScalePlan.create(sourceWidth, sourceHeight, ScalePlan.ORIENTATION_NORMAL, reqWidth, reqHeight);
+		final long decodedPixels = (long) (sourceWidth / plan.getSampleSize()) * (sourceHeight / plan.getSampleSize());
+		return (decodedPixels + plan.getOutputWidth() * plan.getOutputHeight()) * BYTES_PER_PIXEL;
+	}
+
+
+	private static class FakeImage {
+
+		final int mWidth;
+		final int mHeight;
+
+
+		FakeImage(int width, int height) {
+			mWidth = width;
+			mHeight = height;
+		}
+	}
+
+
+	/**
+	 * backend that only keeps the sizes of the images and records what the scaling does with them
+	 */
+	private static class FakeBackend implements ImageDecoder<FakeImage>, ImageTransformer<FakeImage>, ImageEncoder<FakeImage> {
+
+		private final int mWidth;
+		private final int mHeight;
+		int mOrientation = ScalePlan.ORIENTATION_NORMAL;
+		boolean mRegionDecoderSupported;
+		int mFailingStrip = -1;
+		PhotoJob mCancelOnDecode;
+		MemoryBudget mMemoryBudget;
+		long mReservedAtDecode = -1;
+		long mReservedAtStrip = -1;
+		int mDecodeCount;
+		int mDecodedSampleSize;
+		int mStripCount;
+		int mRegionDecoderCloseCount;
+		final List<Integer> mStripTops = new ArrayList<Integer>();
+		final List<Integer> mStripBottoms = new ArrayList<Integer>();
+		final List<Integer> mDrawTops = new ArrayList<Integer>();
+		final List<Integer> mDrawSourceWidths = new ArrayList<Integer>();
+		int mDrawCount;
+		int mCreatedCount;
+		int mReleasedCount;
+		final List<FakeImage> mEncoded = Collections.synchronizedList(new ArrayList<FakeImage>());
+		final List<OutputFormat> mEncodedFormats = Collections.synchronizedList(new ArrayList<OutputFormat>());
+
+
+		FakeBackend(int width, int height) {
+			mWidth = width;
+			mHeight = height;
+		}
+
+
+		@Override
+		public ImageHeader decodeHeader(ImageSource source) {
+			return new ImageHeader(mWidth, mHeight, mOrientation, true);
+		}
+
+
+		@Override
+		public FakeImage decode(ImageSource source, ImageHeader header, ScalePlan plan) {
+			mDecodeCount++;
+			mDecodedSampleSize = plan.getSampleSize();
+			mReservedAtDecode = getReservedBytes();
+			if(mCancelOnDecode != null) {
+				mCancelOnDecode.cancel();
+			}
+			return create(plan.getSourceWidth() / plan.getSampleSize(), plan.getSourceHeight() / plan.getSampleSize());
+		}
+
+
+		@Override
+		public FakeImage decode(byte[] data, int offset, int length, ScalePlan plan) {
+			return null;
+		}
+
+
+		@Override
+		public int getBytesPerPixel(ImageHeader header) {
+			return BYTES_PER_PIXEL;
+		}
+
+
+		@Override
+		public RegionDecoder<FakeImage> openRegionDecoder(ImageSource source, ImageHeader header) {
+			if(!mRegionDecoderSupported) {
+				return null;
+			}
+			return new RegionDecoder<FakeImage>() {
+				@Override
+				public FakeImage decodeStrip(int top, int bottom, int sampleSize) {
+					mReservedAtStrip = Math.max(mReservedAtStrip, getReservedBytes());
+					if(mStripCount++ == mFailingStrip) {
+						return null;
+					}
+					mStripTops.add(top);
+					mStripBottoms.add(bottom);
+					return create(mWidth / sampleSize, (bottom - top) / sampleSize);
+				}
+
+
+				@Override
+				public void close() {
+					mRegionDecoderCloseCount++;
+				}
+			};
+		}
+
+
+		@Override
+		public FakeImage createOutput(ScalePlan plan) {
+			return create(plan.getOutputWidth(), plan.getOutputHeight());
+		}
+
+
+		@Override
+		public synchronized void draw(FakeImage strip, FakeImage output, ScalePlan plan, int sourceTop) {
+			mDrawCount++;
+			mDrawTops.add(sourceTop);
+			mDrawSourceWidths.add(strip.mWidth);
+		}
+
+
+		@Override
+		public long getByteCount(FakeImage image) {
+			return (long) image.mWidth * image.mHeight * BYTES_PER_PIXEL;
+		}
+
+
+		@Override
+		public synchronized void release(FakeImage image) {
+			mReleasedCount++;
+		}
+
+
+		@Override
+		public void encode(FakeImage image, OutputFormat format, int quality, OutputStream outputStream) throws IOException {
+			mEncoded.add(image);
+			mEncodedFormats.add(format);
+			outputStream.write(String.valueOf(image.mWidth).getBytes("US-ASCII"));
+		}
+
+
+		private synchronized FakeImage create(int width, int height) {
+			mCreatedCount++;
+			return new FakeImage(width, height);
+		}
+
+
+		private long getReservedBytes() {
+			return mMemoryBudget != null ? mMemoryBudget.getUsedBytes() : 0;
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package com.strv.photomanager;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+
+public class ImageSinkTest {
+
+	private static final byte[] CONTENT = {1, 2, 3, 4, 5, 6, 7, 8};
+
+	@Rule
+	public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+
+	@Test
+	public void toFile_publishesCompleteFile() throws Exception {
+		final File file = new File(mTemporaryFolder.getRoot(), "output.jpg");
+		final ImageSink sink = ImageSink.toFile(file);
+		assertEquals(file, sink.getFile());
+		assertEquals(-1, sink.getLength());
+
+		sink.write(CONTENT, 2, 4);
+		assertArrayEquals(new byte[]{3, 4, 5, 6}, readFile(file));
+		assertEquals(4, sink.getLength());
+		// the partial file is renamed, nothing is left behind
+		assertFalse(new File(file.getPath() + ".part").exists());
+	}
+
+
+	@Test
+	public void toFile_copiesFromChannel() throws Exception {
+		final File file = new File(mTemporaryFolder.getRoot(), "output.jpg");
+		final ImageSink sink = ImageSink.toFile(file);
+		writeFromFile(sink, CONTENT);
+		assertArrayEquals(CONTENT, readFile(file));
+		assertEquals(CONTENT.length, sink.getLength());
+		assertFalse(new File(file.getPath() + ".part").exists());
+	}
+
+
+	@Test
+	public void toOutputStream_writesToStream() throws Exception {
+		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		final ImageSink sink = ImageSink.toOutputStream(outputStream);
+		assertNull(sink.getFile());
+		sink.write(CONTENT, 0, 3);
+		assertArrayEquals(new byte[]{1, 2, 3}, outputStream.toByteArray());
+
+		outputStream.reset();
+		writeFromFile(sink, CONTENT);
+		assertArrayEquals(CONTENT, outputStream.toByteArray());
+		assertEquals(CONTENT.length, sink.getLength());
+	}
+
+
+	@Test
+	public void toMemory_copiesArray() throws Exception {
+		final ImageSink.MemorySink sink = ImageSink.toMemory();
+		assertNull(sink.toByteArray());
+		assertNull(sink.toByteBuffer());
+
+		final byte[] data = CONTENT.clone();
+		sink.write(data, 1, 3);
+		// the encoder reuses its buffer for the next image
+		data[1] = 0;
+		assertArrayEquals(new byte[]{2, 3, 4}, sink.toByteArray());
+		assertEquals(3, sink.getLength());
+
+		final ByteBuffer buffer = sink.toByteBuffer();
+		assertTrue(buffer.isReadOnly());
+		assertEquals(3, buffer.remaining());
+	}
+
+
+	@Test
+	public void toMemory_readsFromChannel() throws Exception {
+		final ImageSink.MemorySink sink = ImageSink.toMemory();
+		writeFromFile(sink, CONTENT);
+		assertArrayEquals(CONTENT, sink.toByteArray());
+		assertEquals(CONTENT.length, sink.getLength());
+	}
+
+
+	@Test(expected = IOException.class)
+	public void toMemory_shortFileFails() throws Exception {
+		final File file = writeFile(CONTENT);
+		final FileInputStream inputStream = new FileInputStream(file);
+		try {
+			ImageSink.toMemory().write(inputStream.getChannel(), CONTENT.length + 1);
+		} finally {
+			inputStream.close();
+		}
+	}
+
+
+	private void writeFromFile(ImageSink sink, byte[] content) throws IOException {
+		final FileInputStream inputStream = new FileInputStream(writeFile(content));
+		try {
+			sink.write(inputStream.getChannel(), content.length);
+		} finally {
+			inputStream.close();
+		}
+	}
+
+
+	private File writeFile(byte[] content) throws IOException {
+		final File file = mTemporaryFolder.newFile();
+		final FileOutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(content);
+		} finally {
+			outputStream.close();
+		}
+		return file;
+	}
+
+
+	private static byte[] readFile(File file) throws IOException {
+		final byte[] content = new byte[(int) file.length()];
+		final FileInputStream inputStream = new FileInputStream(file);
+		try {
+			int offset = 0;
+			int read;
+			while(offset < content.length && (read = inputStream.read(content, offset, content.length - offset)) != -1) {
+				offset += read;
+			}
+		} finally {
+			inputStream.close();
+		}
+		return content;
+	}
+}
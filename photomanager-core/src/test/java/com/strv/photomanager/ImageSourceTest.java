@@ -0,0 +1,138 @@
+package com.strv.photomanager;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+
+public class ImageSourceTest {
+
+	private static final byte[] CONTENT = {1, 2, 3, 4, 5, 6, 7, 8};
+
+	@Rule
+	public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+
+	@Test
+	public void fromFile_rewindsForEveryRead() throws Exception {
+		final File file = writeFile(CONTENT);
+		final ImageSource source = ImageSource.fromFile(file);
+		try {
+			assertEquals(file, source.getFile());
+			assertEquals(CONTENT.length, source.getLength());
+			assertEquals(1, source.openStream().read());
+			assertNotNull(source.openFileDescriptor());
+			// closing a stream of the source keeps the descriptor open
+			final InputStream inputStream = source.openStream();
+			assertEquals(1, inputStream.read());
+			inputStream.close();
+			assertEquals(1, source.openStream().read());
+		} finally {
+			source.close();
+		}
+	}
+
+
+	@Test
+	public void fromFileDescriptor_keepsDescriptorOfApp() throws Exception {
+		final FileInputStream fileInputStream = new FileInputStream(writeFile(CONTENT));
+		try {
+			final ImageSource source = ImageSource.fromFileDescriptor(fileInputStream.getFD(), CONTENT.length);
+			assertNull(source.getFile());
+			assertEquals(CONTENT.length, source.getLength());
+			assertArrayEquals(CONTENT, readAll(source.openStream()));
+			assertSame(fileInputStream.getFD(), source.openFileDescriptor());
+			assertArrayEquals(CONTENT, readAll(source.openStream()));
+			source.close();
+
+			// the descriptor passed in by the app is still open
+			assertTrue(fileInputStream.getFD().valid());
+		} finally {
+			fileInputStream.close();
+		}
+	}
+
+
+	@Test
+	public void fromInputStream_resetsToMarkedStart() throws Exception {
+		final CloseTrackingInputStream inputStream = new CloseTrackingInputStream(new ByteArrayInputStream(CONTENT));
+		final ImageSource source = ImageSource.fromInputStream(inputStream);
+		assertNull(source.openFileDescriptor());
+		assertNull(source.getFile());
+		assertEquals(-1, source.getLength());
+
+		final InputStream header = source.openStream();
+		assertEquals(1, header.read());
+		assertEquals(2, header.read());
+		header.close();
+		assertArrayEquals(CONTENT, readAll(source.openStream()));
+		assertArrayEquals(CONTENT, readAll(source.openStream()));
+		source.close();
+		assertFalse(inputStream.mClosed);
+	}
+
+
+	@Test
+	public void fromInputStream_cannotRewindPastMark() throws Exception {
+		final ImageSource source = ImageSource.fromInputStream(new ByteArrayInputStream(new byte[2 * 1024 * 1024]));
+		assertEquals(2 * 1024 * 1024, readAll(source.openStream()).length);
+		try {
+			source.openStream();
+			fail("the stream was rewound after it was read past its mark");
+		} catch(IOException e) {
+			// expected, the caller decodes the stream once without a retry
+		}
+	}
+
+
+	private File writeFile(byte[] content) throws IOException {
+		final File file = mTemporaryFolder.newFile();
+		final FileOutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(content);
+		} finally {
+			outputStream.close();
+		}
+		return file;
+	}
+
+
+	private static byte[] readAll(InputStream inputStream) throws IOException {
+		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[8192];
+		int read;
+		while((read = inputStream.read(buffer)) != -1) {
+			outputStream.write(buffer, 0, read);
+		}
+		return outputStream.toByteArray();
+	}
+
+
+	private static class CloseTrackingInputStream extends FilterInputStream {
+
+		boolean mClosed;
+
+
+		CloseTrackingInputStream(InputStream inputStream) {
+			super(inputStream);
+		}
+
+
+		@Override
+		public void close() throws IOException {
+			mClosed = true;
+			super.close();
+		}
+	}
+}
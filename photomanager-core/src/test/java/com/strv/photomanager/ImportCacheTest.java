@@ -0,0 +1,120 @@
+package com.strv.photomanager;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+
+import static org.junit.Assert.*;
+
+
+public class ImportCacheTest {
+
+	@Rule
+	public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+
+	@Test
+	public void createKey_needsMetadata() throws Exception {
+		assertEquals("content://a|10|20", ImportCache.createKey("content://a", 10, 20));
+		assertNull(ImportCache.createKey("content://a", -1, 20));
+		assertNull(ImportCache.createKey("content://a", 10, 0));
+		assertNull(ImportCache.createKey(null, 10, 20));
+	}
+
+
+	@Test
+	public void get_findsImportAfterReload() throws Exception {
+		final File directory = mTemporaryFolder.newFolder();
+		final ImportCache importCache = new ImportCache(directory);
+		final File file = importContent(importCache, "key", "content");
+		assertEquals(file, importCache.get("key", 7));
+
+		final ImportCache reloaded = new ImportCache(directory);
+		assertEquals(file, reloaded.get("key", 7));
+		assertNull(reloaded.get("other", 7));
+	}
+
+
+	@Test
+	public void put_storesSameContentOnce() throws Exception {
+		final ImportCache importCache = new ImportCache(mTemporaryFolder.newFolder());
+		final File first = importContent(importCache, "first", "content");
+		final File second = importContent(importCache, "second", "content");
+		assertEquals(first, second);
+		assertEquals(1, importCache.getHitCount());
+		assertEquals(1, importCache.getMissCount());
+		// only the content and the index are left, the second copy was deleted
+		assertEquals(2, importCache.getDirectory().list().length);
+	}
+
+
+	@Test
+	public void get_removalIsPersisted() throws Exception {
+		final File directory = mTemporaryFolder.newFolder();
+		final ImportCache importCache = new ImportCache(directory);
+		final File file = importContent(importCache, "key", "content");
+		write(file, "changed content");
+		assertNull(importCache.get("key", 7));
+
+		// the entry doesn't come back even though the content is restored
+		write(file, "content");
+		assertNull(new ImportCache(directory).get("key", 7));
+	}
+
+
+	@Test
+	public void loadIndex_compactsIndex() throws Exception {
+		final File directory = mTemporaryFolder.newFolder();
+		final ImportCache importCache = new ImportCache(directory);
+		importContent(importCache, "key", "first");
+		importContent(importCache, "key", "second");
+		importContent(importCache, "key", "third");
+		final File kept = importContent(importCache, "other", "fourth");
+		assertEquals(4, countLines(new File(directory, "index")));
+
+		final ImportCache reloaded = new ImportCache(directory);
+		assertEquals(kept, reloaded.get("other", 6));
+		assertEquals(2, countLines(new File(directory, "index")));
+	}
+
+
+	private static File importContent(ImportCache importCache, String key, String content) throws IOException {
+		final File copy = importCache.createTempFile();
+		write(copy, content);
+		final MessageDigest digest = ImportCache.newDigest();
+		digest.update(content.getBytes("UTF-8"));
+		return importCache.put(copy, digest, key);
+	}
+
+
+	private static void write(File file, String content) throws IOException {
+		final OutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(content.getBytes("UTF-8"));
+		} finally {
+			outputStream.close();
+		}
+	}
+
+
+	private static int countLines(File file) throws IOException {
+		final BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			int count = 0;
+			while(reader.readLine() != null) {
+				count++;
+			}
+			return count;
+		} finally {
+			reader.close();
+		}
+	}
+}
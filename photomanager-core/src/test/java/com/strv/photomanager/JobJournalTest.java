@@ -0,0 +1,177 @@
+package com.strv.photomanager;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+public class JobJournalTest {
+
+	@Rule
+	public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+
+	@Test
+	public void getUnfinishedBatches_replaysProgress() throws Exception {
+		final File journalFile = new File(mTemporaryFolder.getRoot(), "jobs.journal");
+		final JobJournal jobJournal = new JobJournal(journalFile);
+		final String id = jobJournal.beginBatch("scale", Arrays.asList("100", "100"), Arrays.asList("a b.jpg", "c.jpg", "d.jpg"));
+		final File output = createFile(10);
+		assertTrue(jobJournal.complete(id, 0, output));
+		jobJournal.fail(id, 1);
+
+		final List<JobJournal.Batch> batches = new JobJournal(journalFile).getUnfinishedBatches();
+		assertEquals(1, batches.size());
+		final JobJournal.Batch batch = batches.get(0);
+		assertEquals(id, batch.getId());
+		assertEquals("scale", batch.getType());
+		assertEquals(Arrays.asList("100", "100"), batch.getArgs());
+		assertEquals(Arrays.asList("a b.jpg", "c.jpg", "d.jpg"), batch.getInputs());
+		assertEquals(output, batch.getOutput(0));
+		assertTrue(batch.isDone(0));
+		assertTrue(batch.isDone(1));
+		assertNull(batch.getOutput(1));
+		assertFalse(batch.isDone(2));
+		assertEquals(1, batch.getPendingCount());
+	}
+
+
+	@Test
+	public void getUnfinishedBatches_keepsEmptyArgs() throws Exception {
+		final File journalFile = new File(mTemporaryFolder.getRoot(), "jobs.journal");
+		new JobJournal(journalFile).beginBatch("import", Arrays.asList("x", ""), Collections.singletonList("content://a"));
+
+		final JobJournal.Batch batch = new JobJournal(journalFile).getUnfinishedBatches().get(0);
+		assertEquals(Arrays.asList("x", ""), batch.getArgs());
+	}
+
+
+	@Test
+	public void getUnfinishedBatches_dropsEndedBatches() throws Exception {
+		final File journalFile = new File(mTemporaryFolder.getRoot(), "jobs.journal");
+		final JobJournal jobJournal = new JobJournal(journalFile);
+		final String ended = jobJournal.beginBatch("scale", Collections.<String>emptyList(), Collections.singletonList("a.jpg"));
+		final String unfinished = jobJournal.beginBatch("scale", Collections.<String>emptyList(), Collections.singletonList("b.jpg"));
+		jobJournal.endBatch(ended);
+
+		final List<JobJournal.Batch> batches = new JobJournal(journalFile).getUnfinishedBatches();
+		assertEquals(1, batches.size());
+		assertEquals(unfinished, batches.get(0).getId());
+	}
+
+
+	@Test
+	public void getUnfinishedBatches_runsMissingOutputsAgain() throws Exception {
+		final File journalFile = new File(mTemporaryFolder.getRoot(), "jobs.journal");
+		final JobJournal jobJournal = new JobJournal(journalFile);
+		final String id = jobJournal.beginBatch("scale", Collections.<String>emptyList(), Arrays.asList("a.jpg", "b.jpg"));
+		final File swept = createFile(10);
+		assertTrue(jobJournal.complete(id, 0, swept));
+		assertTrue(jobJournal.complete(id, 1, createFile(10)));
+		assertTrue(swept.delete());
+
+		final JobJournal.Batch batch = new JobJournal(journalFile).getUnfinishedBatches().get(0);
+		assertFalse(batch.isDone(0));
+		assertTrue(batch.isDone(1));
+	}
+
+
+	@Test
+	public void complete_verifiesOutput() throws Exception {
+		final JobJournal jobJournal = new JobJournal(new File(mTemporaryFolder.getRoot(), "jobs.journal"));
+		final String id = jobJournal.beginBatch("scale", Collections.<String>emptyList(), Collections.singletonList("a.jpg"));
+		assertFalse(jobJournal.complete(id, 0, new File(mTemporaryFolder.getRoot(), "missing.jpg")));
+		assertFalse(jobJournal.complete(id, 0, createFile(0)));
+		assertFalse(jobJournal.complete(id, 1, createFile(10)));
+		assertFalse(jobJournal.complete("unknown", 0, createFile(10)));
+	}
+
+
+	@Test
+	public void getUnfinishedBatches_ignoresIncompleteLastLine() throws Exception {
+		final File journalFile = new File(mTemporaryFolder.getRoot(), "jobs.journal");
+		final JobJournal jobJournal = new JobJournal(journalFile);
+		final String id = jobJournal.beginBatch("scale", Collections.<String>emptyList(), Collections.singletonList("a.jpg"));
+		append(journalFile, "C " + id + " 0");
+
+		final List<JobJournal.Batch> batches = new JobJournal(journalFile).getUnfinishedBatches();
+		assertEquals(1, batches.size());
+		assertFalse(batches.get(0).isDone(0));
+	}
+
+
+	@Test
+	public void getUnfinishedBatches_offersOnlyRecoveredBatches() throws Exception {
+		final File journalFile = new File(mTemporaryFolder.getRoot(), "jobs.journal");
+		final String recovered = new JobJournal(journalFile).beginBatch("scale", Collections.<String>emptyList(), Collections.singletonList("a.jpg"));
+
+		final JobJournal jobJournal = new JobJournal(journalFile);
+		// a batch of the running process is still running, it must not be resumed
+		jobJournal.beginBatch("scale", Collections.<String>emptyList(), Collections.singletonList("b.jpg"));
+		final List<JobJournal.Batch> batches = jobJournal.getUnfinishedBatches();
+		assertEquals(1, batches.size());
+		assertEquals(recovered, batches.get(0).getId());
+	}
+
+
+	@Test
+	public void takeUnfinishedBatches_returnsBatchesOnce() throws Exception {
+		final File journalFile = new File(mTemporaryFolder.getRoot(), "jobs.journal");
+		new JobJournal(journalFile).beginBatch("scale", Collections.<String>emptyList(), Collections.singletonList("a.jpg"));
+
+		final JobJournal jobJournal = new JobJournal(journalFile);
+		assertEquals(1, jobJournal.takeUnfinishedBatches().size());
+		assertTrue(jobJournal.takeUnfinishedBatches().isEmpty());
+		assertTrue(jobJournal.getUnfinishedBatches().isEmpty());
+		// the taken batch is still in the journal until it ends
+		assertEquals(1, new JobJournal(journalFile).getUnfinishedBatches().size());
+	}
+
+
+	@Test
+	public void endBatch_compactsJournal() throws Exception {
+		final File journalFile = new File(mTemporaryFolder.getRoot(), "jobs.journal");
+		final JobJournal jobJournal = new JobJournal(journalFile);
+		jobJournal.beginBatch("scale", Collections.<String>emptyList(), Collections.singletonList("kept.jpg"));
+		final long initialLength = journalFile.length();
+		for(int i = 0; i < 500; i++) {
+			jobJournal.endBatch(jobJournal.beginBatch("scale", Collections.<String>emptyList(), Collections.singletonList(i + ".jpg")));
+		}
+
+		// only the lines written since the last compaction are left besides the unfinished batch
+		assertTrue(journalFile.length() < initialLength + 200 * 40);
+		assertEquals(1, new JobJournal(journalFile).getUnfinishedBatches().size());
+	}
+
+
+	private File createFile(int size) throws IOException {
+		final File file = mTemporaryFolder.newFile();
+		final OutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(new byte[size]);
+		} finally {
+			outputStream.close();
+		}
+		return file;
+	}
+
+
+	private static void append(File file, String line) throws IOException {
+		final OutputStream outputStream = new FileOutputStream(file, true);
+		try {
+			outputStream.write(line.getBytes("UTF-8"));
+		} finally {
+			outputStream.close();
+		}
+	}
+}
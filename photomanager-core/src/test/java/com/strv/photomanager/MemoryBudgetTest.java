@@ -0,0 +1,141 @@
+package com.strv.photomanager;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.*;
+
+
+public class MemoryBudgetTest {
+
+	private static final long TIMEOUT_MILLIS = 5000;
+
+
+	@Test
+	public void acquire_admitsWhatFits() throws Exception {
+		final MemoryBudget memoryBudget = new MemoryBudget(100);
+		memoryBudget.acquire(40, null);
+		memoryBudget.acquire(60, null);
+		assertEquals(100, memoryBudget.getUsedBytes());
+		assertEquals(0, memoryBudget.getWaitCount());
+
+		memoryBudget.release(60);
+		memoryBudget.release(40);
+		assertEquals(0, memoryBudget.getUsedBytes());
+		assertEquals(100, memoryBudget.getPeakUsedBytes());
+	}
+
+
+	@Test
+	public void acquire_admitsHugeJobAlone() throws Exception {
+		final MemoryBudget memoryBudget = new MemoryBudget(100);
+		memoryBudget.acquire(500, null);
+		assertEquals(500, memoryBudget.getUsedBytes());
+	}
+
+
+	@Test
+	public void acquire_waitsForRelease() throws Exception {
+		final MemoryBudget memoryBudget = new MemoryBudget(100);
+		memoryBudget.acquire(60, null);
+		final Acquirer acquirer = new Acquirer(memoryBudget, 60, null, null);
+		acquirer.start();
+		awaitWaitCount(memoryBudget, 1);
+		assertTrue(acquirer.isAlive());
+
+		memoryBudget.release(60);
+		acquirer.join(TIMEOUT_MILLIS);
+		assertTrue(acquirer.mAdmitted);
+		assertEquals(60, memoryBudget.getUsedBytes());
+	}
+
+
+	@Test
+	public void acquire_admitsInteractiveBeforeBulk() throws Exception {
+		final MemoryBudget memoryBudget = new MemoryBudget(100);
+		memoryBudget.acquire(100, null);
+		final List<PhotoJob.Priority> admitted = Collections.synchronizedList(new ArrayList<PhotoJob.Priority>());
+		final Acquirer bulk = new Acquirer(memoryBudget, 60, new PhotoJob(PhotoJob.Priority.BULK, null, null), admitted);
+		bulk.start();
+		awaitWaitCount(memoryBudget, 1);
+		final Acquirer interactive = new Acquirer(memoryBudget, 60, new PhotoJob(PhotoJob.Priority.INTERACTIVE, null, null), admitted);
+		interactive.start();
+		awaitWaitCount(memoryBudget, 2);
+
+		memoryBudget.release(100);
+		interactive.join(TIMEOUT_MILLIS);
+		assertEquals(Collections.singletonList(PhotoJob.Priority.INTERACTIVE), admitted);
+		// the bulk job doesn't fit next to the interactive one
+		assertTrue(bulk.isAlive());
+
+		memoryBudget.release(60);
+		bulk.join(TIMEOUT_MILLIS);
+		assertEquals(2, admitted.size());
+		assertEquals(PhotoJob.Priority.BULK, admitted.get(1));
+	}
+
+
+	@Test
+	public void acquire_stopsWaitingWhenCancelled() throws Exception {
+		final MemoryBudget memoryBudget = new MemoryBudget(100);
+		memoryBudget.acquire(100, null);
+		final PhotoJob job = new PhotoJob(PhotoJob.Priority.BULK, null, null);
+		final Acquirer acquirer = new Acquirer(memoryBudget, 60, job, null);
+		acquirer.start();
+		awaitWaitCount(memoryBudget, 1);
+
+		job.cancel();
+		acquirer.join(TIMEOUT_MILLIS);
+		assertFalse(acquirer.isAlive());
+		assertTrue(acquirer.mCancelled);
+		assertEquals(100, memoryBudget.getUsedBytes());
+	}
+
+
+	private static void awaitWaitCount(MemoryBudget memoryBudget, int count) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while(memoryBudget.getWaitCount() < count) {
+			assertTrue("the job never started waiting", System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+
+
+	private static class Acquirer extends Thread {
+
+		private final MemoryBudget mMemoryBudget;
+		private final long mBytes;
+		private final PhotoJob mJob;
+		private final List<PhotoJob.Priority> mAdmittedPriorities;
+		volatile boolean mAdmitted;
+		volatile boolean mCancelled;
+
+
+		Acquirer(MemoryBudget memoryBudget, long bytes, PhotoJob job, List<PhotoJob.Priority> admittedPriorities) {
+			mMemoryBudget = memoryBudget;
+			mBytes = bytes;
+			mJob = job;
+			mAdmittedPriorities = admittedPriorities;
+		}
+
+
+		@Override
+		public void run() {
+			try {
+				mMemoryBudget.acquire(mBytes, mJob);
+				mAdmitted = true;
+				if(mAdmittedPriorities != null) {
+					mAdmittedPriorities.add(mJob.getPriority());
+				}
+			} catch(CancellationException e) {
+				mCancelled = true;
+			} catch(Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
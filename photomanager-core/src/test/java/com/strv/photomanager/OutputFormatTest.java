@@ -0,0 +1,38 @@
+package com.strv.photomanager;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+
+public class OutputFormatTest {
+
+	@Test
+	public void fromFile_matchesExtension() throws Exception {
+		assertEquals(OutputFormat.JPEG, OutputFormat.fromFile(new File("photo.jpg")));
+		assertEquals(OutputFormat.JPEG, OutputFormat.fromFile(new File("photo.JPEG")));
+		assertEquals(OutputFormat.WEBP, OutputFormat.fromFile(new File("dir/photo.webp")));
+		assertEquals(OutputFormat.PNG, OutputFormat.fromFile(new File("photo.Png")));
+		assertNull(OutputFormat.fromFile(new File("photo.gif")));
+		assertNull(OutputFormat.fromFile(new File("photo")));
+	}
+
+
+	@Test
+	public void isLossy_onlyPngIsLossless() throws Exception {
+		assertTrue(OutputFormat.JPEG.isLossy());
+		assertTrue(OutputFormat.WEBP.isLossy());
+		assertFalse(OutputFormat.PNG.isLossy());
+	}
+
+
+	@Test
+	public void getExtension_isReadBackByFromFile() throws Exception {
+		for(OutputFormat format : OutputFormat.values()) {
+			assertSame(format, OutputFormat.fromFile(new File("photo" + format.getExtension())));
+			assertTrue(format.getMimeType().startsWith("image/"));
+		}
+	}
+}
@@ -0,0 +1,222 @@
+package com.strv.photomanager;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+
+import static org.junit.Assert.*;
+
+
+public class PhotoJobTest {
+
+	@Test
+	public void compareTo_ordersByPriorityThenStartOrder() throws Exception {
+		final PhotoJob firstBulk = new PhotoJob(PhotoJob.Priority.BULK, null, null);
+		final PhotoJob secondBulk = new PhotoJob(PhotoJob.Priority.BULK, null, null);
+		final PhotoJob firstInteractive = new PhotoJob(PhotoJob.Priority.INTERACTIVE, null, null);
+		final PhotoJob secondInteractive = new PhotoJob(PhotoJob.Priority.INTERACTIVE, null, null);
+		final PriorityBlockingQueue<PhotoJob> queue = new PriorityBlockingQueue<PhotoJob>();
+		queue.add(firstBulk);
+		queue.add(secondBulk);
+		queue.add(firstInteractive);
+		queue.add(secondInteractive);
+
+		assertSame(firstInteractive, queue.poll());
+		assertSame(secondInteractive, queue.poll());
+		assertSame(firstBulk, queue.poll());
+		assertSame(secondBulk, queue.poll());
+	}
+
+
+	@Test
+	public void cancel_parentCancelsChildren() throws Exception {
+		final PhotoJob parent = new PhotoJob(PhotoJob.Priority.BULK, null, null);
+		final PhotoJob child = new PhotoJob(PhotoJob.Priority.BULK, parent, null);
+		final PhotoJob grandchild = new PhotoJob(PhotoJob.Priority.BULK, child, null);
+		assertFalse(grandchild.isCancelled());
+
+		assertTrue(parent.cancel());
+		assertTrue(child.isCancelled());
+		assertTrue(grandchild.isCancelled());
+	}
+
+
+	@Test
+	public void cancel_childDoesNotCancelParent() throws Exception {
+		final PhotoJob parent = new PhotoJob(PhotoJob.Priority.BULK, null, null);
+		final PhotoJob child = new PhotoJob(PhotoJob.Priority.BULK, parent, null);
+		child.cancel();
+		assertTrue(child.isCancelled());
+		assertFalse(parent.isCancelled());
+	}
+
+
+	@Test
+	public void cancel_doneJobIsNotCancelled() throws Exception {
+		final PhotoJob job = new PhotoJob(PhotoJob.Priority.INTERACTIVE, null, null);
+		job.run();
+		assertTrue(job.isDone());
+		assertFalse(job.cancel());
+		assertFalse(job.isCancelled());
+	}
+
+
+	@Test
+	public void run_cancelledJobStillRunsWork() throws Exception {
+		final boolean[] ran = new boolean[1];
+		final PhotoJob job = new PhotoJob(PhotoJob.Priority.INTERACTIVE, null, new PhotoJob.Work() {
+			@Override
+			public void run(PhotoJob job) {
+				// the work releases its resources and stops at its first checkpoint
+				ran[0] = true;
+				job.checkCancelled();
+			}
+		});
+		job.cancel();
+		try {
+			job.run();
+			fail("the cancelled work passed its checkpoint");
+		} catch(CancellationException e) {
+			// expected
+		}
+		assertTrue(ran[0]);
+		assertTrue(job.isDone());
+	}
+
+
+	@Test
+	public void checkCancelled_passesForRunningJob() throws Exception {
+		final PhotoJob parent = new PhotoJob(PhotoJob.Priority.BULK, null, null);
+		final PhotoJob job = new PhotoJob(PhotoJob.Priority.BULK, parent, null);
+		job.checkCancelled();
+		parent.cancel();
+		try {
+			job.checkCancelled();
+			fail("the job of a cancelled parent passed its checkpoint");
+		} catch(CancellationException e) {
+			// expected
+		}
+	}
+
+
+	@Test
+	public void addBytes_throttlesButReportsLastBytes() throws Exception {
+		final RecordingListener listener = new RecordingListener();
+		final PhotoJob job = new PhotoJob(PhotoJob.Priority.INTERACTIVE, null, null).setOnProgressListener(listener, 60 * 1000);
+		job.addTotalBytes(300);
+		job.addBytes(100);
+		job.addBytes(100);
+		job.addBytes(100);
+
+		// the first call opens the interval, the calls inside it are dropped apart from the one completing the copy
+		assertEquals(Arrays.asList(100L, 300L), listener.mBytes);
+		assertEquals(Arrays.asList(300L, 300L), listener.mTotalBytes);
+	}
+
+
+	@Test
+	public void addBytes_withoutIntervalReportsEveryCall() throws Exception {
+		final RecordingListener listener = new RecordingListener();
+		final PhotoJob job = new PhotoJob(PhotoJob.Priority.INTERACTIVE, null, null).setOnProgressListener(listener, 0);
+		job.addTotalBytes(300);
+		job.addBytes(100);
+		job.addBytes(100);
+		job.addBytes(100);
+		assertEquals(Arrays.asList(100L, 200L, 300L), listener.mBytes);
+	}
+
+
+	@Test
+	public void addTotalBytes_unknownSizeReportsUnknownTotal() throws Exception {
+		final RecordingListener listener = new RecordingListener();
+		final PhotoJob job = new PhotoJob(PhotoJob.Priority.INTERACTIVE, null, null).setOnProgressListener(listener, 0);
+		job.addTotalBytes(100);
+		job.addTotalBytes(-1);
+		job.addBytes(50);
+		assertEquals(Arrays.asList(-1L), listener.mTotalBytes);
+	}
+
+
+	@Test
+	public void addBytes_parentAggregatesChildren() throws Exception {
+		final RecordingListener listener = new RecordingListener();
+		final PhotoJob parent = new PhotoJob(PhotoJob.Priority.BULK, null, null).setOnProgressListener(listener, 0);
+		final PhotoJob first = new PhotoJob(PhotoJob.Priority.BULK, parent, null);
+		final PhotoJob second = new PhotoJob(PhotoJob.Priority.BULK, parent, null);
+		first.addTotalBytes(100);
+		second.addTotalBytes(200);
+		first.addBytes(100);
+		second.addBytes(200);
+		first.reportStage(PhotoJob.Stage.COPIED);
+		second.reportStage(PhotoJob.Stage.COPIED);
+
+		assertEquals(Arrays.asList(100L, 300L), listener.mBytes);
+		assertEquals(Arrays.asList(300L, 300L), listener.mTotalBytes);
+		// a batch reports the stage of every file
+		assertEquals(Arrays.asList(PhotoJob.Stage.COPIED, PhotoJob.Stage.COPIED), listener.mStages);
+	}
+
+
+	@Test
+	public void reportStage_cancelledJobIsSilent() throws Exception {
+		final RecordingListener listener = new RecordingListener();
+		final PhotoJob job = new PhotoJob(PhotoJob.Priority.INTERACTIVE, null, null).setOnProgressListener(listener, 0);
+		job.cancel();
+		job.addTotalBytes(100);
+		job.addBytes(100);
+		job.reportStage(PhotoJob.Stage.COPIED);
+		assertTrue(listener.mBytes.isEmpty());
+		assertTrue(listener.mStages.isEmpty());
+	}
+
+
+	@Test
+	public void setCallbackExecutor_deliversOnExecutor() throws Exception {
+		final RecordingListener listener = new RecordingListener();
+		final PhotoJob job = new PhotoJob(PhotoJob.Priority.INTERACTIVE, null, null).setOnProgressListener(listener, 0);
+		final List<Runnable> callbacks = new ArrayList<Runnable>();
+		job.setCallbackExecutor(new Executor() {
+			@Override
+			public void execute(Runnable runnable) {
+				callbacks.add(runnable);
+			}
+		});
+		job.reportStage(PhotoJob.Stage.DECODED);
+		assertTrue(listener.mStages.isEmpty());
+
+		callbacks.get(0).run();
+		assertEquals(Arrays.asList(PhotoJob.Stage.DECODED), listener.mStages);
+
+		// a job cancelled before the callback runs is not reported anymore
+		job.reportStage(PhotoJob.Stage.ENCODED);
+		job.cancel();
+		callbacks.get(1).run();
+		assertEquals(1, listener.mStages.size());
+	}
+
+
+	private static class RecordingListener implements PhotoJob.OnProgressListener {
+
+		final List<Long> mBytes = new ArrayList<Long>();
+		final List<Long> mTotalBytes = new ArrayList<Long>();
+		final List<PhotoJob.Stage> mStages = new ArrayList<PhotoJob.Stage>();
+
+
+		@Override
+		public void onBytesCopied(PhotoJob job, long bytes, long totalBytes) {
+			mBytes.add(bytes);
+			mTotalBytes.add(totalBytes);
+		}
+
+
+		@Override
+		public void onStageCompleted(PhotoJob job, PhotoJob.Stage stage) {
+			mStages.add(stage);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package com.strv.photomanager;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+public class PhotoMetricsTest {
+
+	@Test
+	public void getDurationNanos_skippedStageIsUnknown() throws Exception {
+		final PhotoMetrics metrics = new PhotoMetrics(PhotoMetrics.Type.SCALE, "source.jpg");
+		metrics.setDuration(PhotoJob.Stage.DECODED, 2000000);
+		assertEquals(2000000, metrics.getDurationNanos(PhotoJob.Stage.DECODED));
+		assertEquals(2, metrics.getDecodeMillis(), 0);
+		assertEquals(-1, metrics.getDurationNanos(PhotoJob.Stage.COPIED));
+		assertEquals(-1, metrics.getCopyMillis(), 0);
+	}
+
+
+	@Test
+	public void finish_measuresTotal() throws Exception {
+		final PhotoMetrics metrics = new PhotoMetrics(PhotoMetrics.Type.IMPORT, "content://a");
+		assertEquals(-1, metrics.getTotalNanos());
+		assertFalse(metrics.isSucceeded());
+
+		metrics.finish(true);
+		assertTrue(metrics.getTotalNanos() >= 0);
+		assertTrue(metrics.isSucceeded());
+	}
+
+
+	@Test
+	public void updatePeakBitmapBytes_keepsMaximum() throws Exception {
+		final PhotoMetrics metrics = new PhotoMetrics(PhotoMetrics.Type.SCALE, "source.jpg");
+		metrics.updatePeakBitmapBytes(300);
+		metrics.updatePeakBitmapBytes(100);
+		assertEquals(300, metrics.getPeakBitmapBytes());
+	}
+
+
+	@Test
+	public void toString_listsStagesAndSizes() throws Exception {
+		final PhotoMetrics metrics = new PhotoMetrics(PhotoMetrics.Type.SCALE, "source.jpg");
+		metrics.setDuration(PhotoJob.Stage.ENCODED, 1500000);
+		metrics.setEncodeAttempts(3);
+		metrics.setOutputBytes(1234);
+		metrics.setCached(true);
+		metrics.finish(false);
+
+		final String text = metrics.toString();
+		assertTrue(text, text.startsWith("SCALE source.jpg cached failed"));
+		assertTrue(text, text.contains("copy -"));
+		assertTrue(text, text.contains("(3 attempts)"));
+		assertTrue(text, text.contains("output 1234 B"));
+	}
+}
@@ -0,0 +1,89 @@
+package com.strv.photomanager;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.*;
+
+
+public class QualitySearchTest {
+
+	// every quality point costs 100 bytes, the first byte tells the quality the data was encoded with
+	private static final QualitySearch.Encoder ENCODER = new QualitySearch.Encoder() {
+		@Override
+		public void encode(int quality, OutputStream outputStream) throws IOException {
+			final byte[] data = new byte[quality * 100];
+			data[0] = (byte) quality;
+			outputStream.write(data);
+		}
+	};
+
+
+	@Test
+	public void search_withoutLimitKeepsMaxQuality() throws Exception {
+		final QualitySearch search = new QualitySearch();
+		assertEquals(QualitySearch.MAX_QUALITY, search.search(ENCODER, 0));
+		assertEquals(1, search.getAttempts());
+		assertEquals(QualitySearch.MAX_QUALITY * 100, search.getSize());
+	}
+
+
+	@Test
+	public void search_fittingImageIsEncodedOnce() throws Exception {
+		final QualitySearch search = new QualitySearch();
+		assertEquals(QualitySearch.MAX_QUALITY, search.search(ENCODER, 20000));
+		assertEquals(1, search.getAttempts());
+	}
+
+
+	@Test
+	public void search_keepsHighestFittingQuality() throws Exception {
+		final QualitySearch search = new QualitySearch();
+		assertEquals(55, search.search(ENCODER, 5599));
+		assertEquals(55, search.getQuality());
+		assertEquals(5500, search.getSize());
+		assertEquals(55, search.getBuffer()[0]);
+		// the full quality attempt and a bisection of the remaining 18 levels
+		assertTrue(search.getAttempts() <= 1 + 5);
+	}
+
+
+	@Test
+	public void search_keepsMinQualityIfNothingFits() throws Exception {
+		final QualitySearch search = new QualitySearch();
+		assertEquals(QualitySearch.MIN_QUALITY, search.search(ENCODER, 500));
+		assertEquals(QualitySearch.MIN_QUALITY * 100, search.getSize());
+		assertEquals(QualitySearch.MIN_QUALITY, search.getBuffer()[0]);
+	}
+
+
+	@Test
+	public void search_matchesLinearSearch() throws Exception {
+		final QualitySearch search = new QualitySearch();
+		for(int maxBytes = 1; maxBytes <= 11000; maxBytes += 37) {
+			int expected = QualitySearch.MIN_QUALITY;
+			for(int quality = QualitySearch.MAX_QUALITY; quality >= QualitySearch.MIN_QUALITY; quality -= QualitySearch.QUALITY_STEP) {
+				if(quality * 100 <= maxBytes) {
+					expected = quality;
+					break;
+				}
+			}
+			assertEquals("budget " + maxBytes, expected, search.search(ENCODER, maxBytes));
+			assertEquals("budget " + maxBytes, expected, search.getBuffer()[0]);
+		}
+	}
+
+
+	@Test
+	public void writeTo_writesKeptEncoding() throws Exception {
+		final QualitySearch search = new QualitySearch();
+		search.search(ENCODER, 3000);
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		search.writeTo(output);
+		assertEquals(3000, output.size());
+		assertEquals(30, output.toByteArray()[0]);
+	}
+}
@@ -0,0 +1,183 @@
+package com.strv.photomanager;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.*;
+
+
+public class RenditionCacheTest {
+
+	@Rule
+	public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+
+	@Test
+	public void createKey_dependsOnDecodeVariant() throws Exception {
+		final File source = createFile(10);
+		final String key = RenditionCache.createKey(source, 100, 100, OutputFormat.JPEG, 1000);
+		assertTrue(key.endsWith(OutputFormat.JPEG.getExtension()));
+		assertEquals(key, RenditionCache.createKey(source, 100, 100, OutputFormat.JPEG, 1000, null));
+		assertFalse(key.equals(RenditionCache.createKey(source, 100, 100, OutputFormat.JPEG, 1000, "AUTO")));
+		assertFalse(key.equals(RenditionCache.createKey(source, 100, 101, OutputFormat.JPEG, 1000)));
+	}
+
+
+	@Test
+	public void put_evictsLeastRecentlyUsed() throws Exception {
+		final RenditionCache renditionCache = new RenditionCache(mTemporaryFolder.newFolder(), 100);
+		putAndRelease(renditionCache, "a", 40);
+		putAndRelease(renditionCache, "b", 40);
+		getAndRelease(renditionCache, "a");
+		putAndRelease(renditionCache, "c", 40);
+
+		assertNotNull(getAndRelease(renditionCache, "a"));
+		assertNull(getAndRelease(renditionCache, "b"));
+		assertNotNull(getAndRelease(renditionCache, "c"));
+		assertEquals(80, renditionCache.getSize());
+	}
+
+
+	@Test
+	public void put_keepsPinnedEntries() throws Exception {
+		final RenditionCache renditionCache = new RenditionCache(mTemporaryFolder.newFolder(), 100);
+		putAndRelease(renditionCache, "a", 40);
+		final File pinned = renditionCache.get("a");
+		putAndRelease(renditionCache, "b", 40);
+		putAndRelease(renditionCache, "c", 40);
+
+		// the next least recently used entry is evicted instead
+		assertTrue(pinned.exists());
+		assertNull(getAndRelease(renditionCache, "b"));
+		assertEquals(80, renditionCache.getSize());
+	}
+
+
+	@Test
+	public void release_evictsOnceUnpinned() throws Exception {
+		final RenditionCache renditionCache = new RenditionCache(mTemporaryFolder.newFolder(), 100);
+		final File a = renditionCache.put("a", createFile(40));
+		renditionCache.put("b", createFile(40));
+		renditionCache.put("c", createFile(40));
+
+		// the cache stays over its capacity while all the entries are in use
+		assertTrue(a.exists());
+		assertEquals(120, renditionCache.getSize());
+
+		renditionCache.release("a");
+		assertFalse(a.exists());
+		assertEquals(80, renditionCache.getSize());
+	}
+
+
+	@Test
+	public void put_doesNotCacheOversizedFile() throws Exception {
+		final RenditionCache renditionCache = new RenditionCache(mTemporaryFolder.newFolder(), 100);
+		final File file = createFile(101);
+		assertEquals(file, renditionCache.put("a", file));
+		assertTrue(file.exists());
+		assertEquals(0, renditionCache.getSize());
+		assertNull(renditionCache.get("a"));
+	}
+
+
+	@Test
+	public void get_dropsDeletedFile() throws Exception {
+		final RenditionCache renditionCache = new RenditionCache(mTemporaryFolder.newFolder(), 100);
+		final File cachedFile = putAndRelease(renditionCache, "a", 40);
+		assertTrue(cachedFile.delete());
+		assertNull(renditionCache.get("a"));
+		assertEquals(0, renditionCache.getSize());
+	}
+
+
+	@Test
+	public void journal_restoresEntriesAndOrder() throws Exception {
+		final File directory = mTemporaryFolder.newFolder();
+		final RenditionCache renditionCache = new RenditionCache(directory, 100);
+		putAndRelease(renditionCache, "a", 40);
+		putAndRelease(renditionCache, "b", 40);
+		putAndRelease(renditionCache, "d", 10);
+		getAndRelease(renditionCache, "a");
+		// replaced and removed entries are replayed as well
+		assertTrue(putAndRelease(renditionCache, "d", 20).delete());
+		assertNull(getAndRelease(renditionCache, "d"));
+
+		final RenditionCache restored = new RenditionCache(directory, 100);
+		assertEquals(80, restored.getSize());
+		putAndRelease(restored, "c", 40);
+		assertNotNull(getAndRelease(restored, "a"));
+		assertNull(getAndRelease(restored, "b"));
+		assertNull(getAndRelease(restored, "d"));
+	}
+
+
+	@Test
+	public void journal_ignoresIncompleteLastLine() throws Exception {
+		final File directory = mTemporaryFolder.newFolder();
+		final RenditionCache renditionCache = new RenditionCache(directory, 100);
+		putAndRelease(renditionCache, "a", 40);
+		append(new File(directory, "journal"), "P b");
+
+		final RenditionCache restored = new RenditionCache(directory, 100);
+		assertNotNull(getAndRelease(restored, "a"));
+		assertEquals(40, restored.getSize());
+	}
+
+
+	@Test
+	public void journal_brokenHeaderClearsCache() throws Exception {
+		final File directory = mTemporaryFolder.newFolder();
+		final RenditionCache renditionCache = new RenditionCache(directory, 100);
+		final File cachedFile = putAndRelease(renditionCache, "a", 40);
+		final File journal = new File(directory, "journal");
+		assertTrue(journal.delete());
+		append(journal, "unknown 1");
+
+		final RenditionCache restored = new RenditionCache(directory, 100);
+		assertNull(restored.get("a"));
+		assertFalse(cachedFile.exists());
+	}
+
+
+	private File putAndRelease(RenditionCache renditionCache, String key, int size) throws IOException {
+		final File cachedFile = renditionCache.put(key, createFile(size));
+		renditionCache.release(key);
+		return cachedFile;
+	}
+
+
+	private static File getAndRelease(RenditionCache renditionCache, String key) {
+		final File cachedFile = renditionCache.get(key);
+		renditionCache.release(key);
+		return cachedFile;
+	}
+
+
+	private File createFile(int size) throws IOException {
+		final File file = mTemporaryFolder.newFile();
+		final OutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(new byte[size]);
+		} finally {
+			outputStream.close();
+		}
+		return file;
+	}
+
+
+	private static void append(File file, String line) throws IOException {
+		final OutputStream outputStream = new FileOutputStream(file, true);
+		try {
+			outputStream.write((line + '\n').getBytes("UTF-8"));
+		} finally {
+			outputStream.close();
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package com.strv.photomanager;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+public class ScalePlanTest {
+
+	private static final float DELTA = 1e-3f;
+
+	// a 400x200 image decoded without sampling is scaled to 200x100 before it is oriented
+	private static final int DECODED_WIDTH = 400;
+	private static final int DECODED_HEIGHT = 200;
+
+
+	@Test
+	public void create_landscapeGetsRequiredWidth() throws Exception {
+		final ScalePlan plan = ScalePlan.create(4000, 3000, ScalePlan.ORIENTATION_NORMAL, 1000, 1000);
+		assertEquals(1000, plan.getOutputWidth());
+		assertEquals(750, plan.getOutputHeight());
+		assertEquals(2, plan.getSampleSize());
+		assertFalse(plan.needsReorientation());
+	}
+
+
+	@Test
+	public void create_rotatedImageGetsRequiredHeight() throws Exception {
+		// stored as landscape, displayed as portrait
+		final ScalePlan plan = ScalePlan.create(4000, 3000, ScalePlan.ORIENTATION_ROTATE_90, 1000, 1000);
+		assertEquals(1000, plan.getScaledWidth());
+		assertEquals(750, plan.getScaledHeight());
+		assertEquals(750, plan.getOutputWidth());
+		assertEquals(1000, plan.getOutputHeight());
+		assertTrue(plan.isSwappingDimensions());
+	}
+
+
+	@Test
+	public void calculateInSampleSize_keepsDecodedImageLarger() throws Exception {
+		assertEquals(1, ScalePlan.calculateInSampleSize(1000, 750, 1000, 750));
+		assertEquals(2, ScalePlan.calculateInSampleSize(4000, 3000, 1000, 750));
+		assertEquals(4, ScalePlan.calculateInSampleSize(4000, 3000, 999, 749));
+	}
+
+
+	@Test
+	public void getTransformation_normal() throws Exception {
+		assertOrientation(ScalePlan.ORIENTATION_NORMAL, 200, 100, new float[][]{{0, 0}, {200, 0}, {0, 100}});
+	}
+
+
+	@Test
+	public void getTransformation_flipHorizontal() throws Exception {
+		assertOrientation(ScalePlan.ORIENTATION_FLIP_HORIZONTAL, 200, 100, new float[][]{{200, 0}, {0, 0}, {200, 100}});
+	}
+
+
+	@Test
+	public void getTransformation_rotate180() throws Exception {
+		assertOrientation(ScalePlan.ORIENTATION_ROTATE_180, 200, 100, new float[][]{{200, 100}, {0, 100}, {200, 0}});
+	}
+
+
+	@Test
+	public void getTransformation_flipVertical() throws Exception {
+		assertOrientation(ScalePlan.ORIENTATION_FLIP_VERTICAL, 200, 100, new float[][]{{0, 100}, {200, 100}, {0, 0}});
+	}
+
+
+	@Test
+	public void getTransformation_transpose() throws Exception {
+		assertOrientation(ScalePlan.ORIENTATION_TRANSPOSE, 100, 200, new float[][]{{0, 0}, {0, 200}, {100, 0}});
+	}
+
+
+	@Test
+	public void getTransformation_rotate90() throws Exception {
+		assertOrientation(ScalePlan.ORIENTATION_ROTATE_90, 100, 200, new float[][]{{100, 0}, {100, 200}, {0, 0}});
+	}
+
+
+	@Test
+	public void getTransformation_transverse() throws Exception {
+		assertOrientation(ScalePlan.ORIENTATION_TRANSVERSE, 100, 200, new float[][]{{100, 200}, {100, 0}, {0, 200}});
+	}
+
+
+	@Test
+	public void getTransformation_rotate270() throws Exception {
+		assertOrientation(ScalePlan.ORIENTATION_ROTATE_270, 100, 200, new float[][]{{0, 200}, {0, 0}, {100, 200}});
+	}
+
+
+	@Test
+	public void getTransformation_stripIsMovedToItsPlace() throws Exception {
+		for(int orientation = ScalePlan.ORIENTATION_NORMAL; orientation <= ScalePlan.ORIENTATION_ROTATE_270; orientation++) {
+			final ScalePlan plan = ScalePlan.create(DECODED_WIDTH, DECODED_HEIGHT, orientation, 200, 200);
+			final float[] whole = plan.getTransformation(DECODED_WIDTH, DECODED_HEIGHT, 0);
+			final float[] strip = plan.getTransformation(DECODED_WIDTH, DECODED_HEIGHT, 120);
+			// a point of the strip lands where the same row of the whole image does
+			final float[] expected = map(whole, 37, 120 + 15);
+			final float[] actual = map(strip, 37, 15);
+			assertEquals("orientation " + orientation, expected[0], actual[0], DELTA);
+			assertEquals("orientation " + orientation, expected[1], actual[1], DELTA);
+		}
+	}
+
+
+	/**
+	 * checks where the top left, top right and bottom left corners of the decoded image end up in the output
+	 */
+	private static void assertOrientation(int orientation, int outputWidth, int outputHeight, float[][] expectedCorners) {
+		final ScalePlan plan = ScalePlan.create(DECODED_WIDTH, DECODED_HEIGHT, orientation, 200, 200);
+		assertEquals(200, plan.getScaledWidth());
+		assertEquals(100, plan.getScaledHeight());
+		assertEquals(outputWidth, plan.getOutputWidth());
+		assertEquals(outputHeight, plan.getOutputHeight());
+
+		final float[] matrix = plan.getTransformation(DECODED_WIDTH, DECODED_HEIGHT, 0);
+		final float[][] corners = new float[][]{{0, 0}, {DECODED_WIDTH, 0}, {0, DECODED_HEIGHT}};
+		for(int i = 0; i < corners.length; i++) {
+			final float[] mapped = map(matrix, corners[i][0], corners[i][1]);
+			assertEquals("x of corner " + i, expectedCorners[i][0], mapped[0], DELTA);
+			assertEquals("y of corner " + i, expectedCorners[i][1], mapped[1], DELTA);
+		}
+		assertEquals(0, matrix[6], DELTA);
+		assertEquals(0, matrix[7], DELTA);
+		assertEquals(1, matrix[8], DELTA);
+	}
+
+
+	private static float[] map(float[] matrix, float x, float y) {
+		return new float[]{matrix[0] * x + matrix[1] * y + matrix[2], matrix[3] * x + matrix[4] * y + matrix[5]};
+	}
+}
@@ -0,0 +1,186 @@
+package com.strv.photomanager;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.*;
+
+
+public class StreamCopierTest {
+
+	// larger than a transfer chunk and a buffer, so both copies loop
+	private static final int CONTENT_SIZE = 2 * 1024 * 1024 + 12345;
+
+	@Rule
+	public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+
+	@Test
+	public void transfer_copiesWholeFile() throws Exception {
+		final byte[] content = createContent(CONTENT_SIZE);
+		final File input = writeFile(content);
+		final File output = mTemporaryFolder.newFile();
+		assertEquals(CONTENT_SIZE, transfer(input, output, null));
+		assertArrayEquals(content, readFile(output));
+	}
+
+
+	@Test
+	public void transfer_reportsBytesOfEveryChunk() throws Exception {
+		final File input = writeFile(createContent(CONTENT_SIZE));
+		final List<Long> progress = new ArrayList<Long>();
+		final PhotoJob job = createJob(progress);
+		job.addTotalBytes(CONTENT_SIZE);
+		transfer(input, mTemporaryFolder.newFile(), job);
+
+		assertEquals(Arrays.asList(1024L * 1024, 2L * 1024 * 1024, (long) CONTENT_SIZE), progress);
+	}
+
+
+	@Test
+	public void transfer_cancelledJobStops() throws Exception {
+		final File input = writeFile(createContent(CONTENT_SIZE));
+		final File output = mTemporaryFolder.newFile();
+		final PhotoJob job = new PhotoJob(PhotoJob.Priority.INTERACTIVE, null, null);
+		job.cancel();
+		try {
+			transfer(input, output, job);
+			fail("the cancelled copy was finished");
+		} catch(CancellationException e) {
+			// expected
+		}
+		assertEquals(0, output.length());
+	}
+
+
+	@Test
+	public void transfer_copiesFileToStream() throws Exception {
+		final byte[] content = createContent(CONTENT_SIZE);
+		final File input = writeFile(content);
+		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		final FileInputStream inputStream = new FileInputStream(input);
+		try {
+			final FileChannel inputChannel = inputStream.getChannel();
+			assertEquals(CONTENT_SIZE, StreamCopier.transfer(inputChannel, Channels.newChannel(outputStream), inputChannel.size()));
+		} finally {
+			inputStream.close();
+		}
+		assertArrayEquals(content, outputStream.toByteArray());
+	}
+
+
+	@Test
+	public void copy_updatesDigestWithContent() throws Exception {
+		final byte[] content = createContent(CONTENT_SIZE);
+		final File output = mTemporaryFolder.newFile();
+		final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+		final List<Long> progress = new ArrayList<Long>();
+		final FileOutputStream outputStream = new FileOutputStream(output);
+		try {
+			assertEquals(CONTENT_SIZE, StreamCopier.copy(Channels.newChannel(new ByteArrayInputStream(content)), outputStream.getChannel(), digest, createJob(progress)));
+		} finally {
+			outputStream.close();
+		}
+
+		assertArrayEquals(content, readFile(output));
+		assertArrayEquals(MessageDigest.getInstance("SHA-1").digest(content), digest.digest());
+		assertEquals(Long.valueOf(CONTENT_SIZE), progress.get(progress.size() - 1));
+	}
+
+
+	@Test
+	public void digest_readsWholeFile() throws Exception {
+		final byte[] content = createContent(CONTENT_SIZE);
+		final File input = writeFile(content);
+		final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+		final FileInputStream inputStream = new FileInputStream(input);
+		try {
+			StreamCopier.digest(inputStream.getChannel(), digest);
+		} finally {
+			inputStream.close();
+		}
+		assertArrayEquals(MessageDigest.getInstance("SHA-1").digest(content), digest.digest());
+	}
+
+
+	private static long transfer(File input, File output, PhotoJob job) throws IOException {
+		final FileInputStream inputStream = new FileInputStream(input);
+		try {
+			final FileOutputStream outputStream = new FileOutputStream(output);
+			try {
+				final FileChannel inputChannel = inputStream.getChannel();
+				return StreamCopier.transfer(inputChannel, outputStream.getChannel(), inputChannel.size(), job);
+			} finally {
+				outputStream.close();
+			}
+		} finally {
+			inputStream.close();
+		}
+	}
+
+
+	private static PhotoJob createJob(final List<Long> progress) {
+		return new PhotoJob(PhotoJob.Priority.INTERACTIVE, null, null).setOnProgressListener(new PhotoJob.OnProgressListener() {
+			@Override
+			public void onBytesCopied(PhotoJob job, long bytes, long totalBytes) {
+				progress.add(bytes);
+			}
+
+
+			@Override
+			public void onStageCompleted(PhotoJob job, PhotoJob.Stage stage) {}
+		}, 0);
+	}
+
+
+	private static byte[] createContent(int size) {
+		final byte[] content = new byte[size];
+		for(int i = 0; i < size; i++) {
+			content[i] = (byte) (i * 31);
+		}
+		return content;
+	}
+
+
+	private File writeFile(byte[] content) throws IOException {
+		final File file = mTemporaryFolder.newFile();
+		final FileOutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(content);
+		} finally {
+			outputStream.close();
+		}
+		return file;
+	}
+
+
+	private static byte[] readFile(File file) throws IOException {
+		final byte[] content = new byte[(int) file.length()];
+		final FileInputStream inputStream = new FileInputStream(file);
+		try {
+			int offset = 0;
+			int read;
+			while(offset < content.length && (read = inputStream.read(content, offset, content.length - offset)) != -1) {
+				offset += read;
+			}
+		} finally {
+			inputStream.close();
+		}
+		return content;
+	}
+}
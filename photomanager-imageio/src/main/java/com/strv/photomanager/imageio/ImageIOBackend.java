@@ -0,0 +1,24 @@
+package com.strv.photomanager.imageio;
+
+import com.strv.photomanager.ImageScaler;
+
+import java.awt.image.BufferedImage;
+
+
+/**
+ * javax.imageio backend of the photomanager core, it scales images on a server JVM with the same policy as the library on Android -
+ * the same sample sizes, output sizes, orientation handling and JPEG quality search,
+ * the scaler is stateless, so a single instance can be used from a thread pool with a thread per core
+ */
+public final class ImageIOBackend {
+
+	private ImageIOBackend() {}
+
+
+	/**
+	 * @return scaler decoding, transforming and encoding the images with javax.imageio
+	 */
+	public static ImageScaler<BufferedImage> createScaler() {
+		return new ImageScaler<BufferedImage>(new ImageIODecoder(), new ImageIOTransformer(), new ImageIOEncoder());
+	}
+}
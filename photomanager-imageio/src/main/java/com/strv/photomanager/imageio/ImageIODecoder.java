@@ -0,0 +1,132 @@
+package com.strv.photomanager.imageio;
+
+import com.strv.photomanager.ExifOrientation;
+import com.strv.photomanager.ImageDecoder;
+import com.strv.photomanager.ImageHeader;
+import com.strv.photomanager.ImageSource;
+import com.strv.photomanager.ScalePlan;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+
+/**
+ * decodes images with javax.imageio, the subsampling picks every n-th pixel like BitmapFactory does for formats
+ * that cannot be scaled while decoding, the following transformation smooths the result
+ */
+public class ImageIODecoder implements ImageDecoder<BufferedImage> {
+
+	@Override
+	public ImageHeader decodeHeader(ImageSource source) throws IOException {
+		final ImageReader reader = openReader(source.openStream());
+		final int width;
+		final int height;
+		final boolean opaque;
+		try {
+			width = reader.getWidth(0);
+			height = reader.getHeight(0);
+			opaque = "jpeg".equalsIgnoreCase(reader.getFormatName());
+		} finally {
+			closeReader(reader);
+		}
+		return new ImageHeader(width, height, ExifOrientation.read(source), opaque);
+	}
+
+
+	@Override
+	public BufferedImage decode(ImageSource source, ImageHeader header, ScalePlan plan) throws IOException {
+		return decode(openReader(source.openStream()), plan);
+	}
+
+
+	@Override
+	public BufferedImage decode(byte[] data, int offset, int length, ScalePlan plan) throws IOException {
+		return decode(openReader(new ByteArrayInputStream(data, offset, length)), plan);
+	}
+
+
+	@Override
+	public int getBytesPerPixel(ImageHeader header) {
+		// JPEG is read into three bytes per pixel, images with alpha into four
+		return header.isOpaque() ? 3 : 4;
+	}
+
+
+	@Override
+	public RegionDecoder<BufferedImage> openRegionDecoder(ImageSource source, ImageHeader header) throws IOException {
+		final ImageReader reader = openReader(source.openStream());
+		final int width = reader.getWidth(0);
+		return new RegionDecoder<BufferedImage>() {
+			@Override
+			public BufferedImage decodeStrip(int top, int bottom, int sampleSize) throws IOException {
+				final ImageReadParam param = reader.getDefaultReadParam();
+				param.setSourceRegion(new Rectangle(0, top, width, bottom - top));
+				param.setSourceSubsampling(sampleSize, sampleSize, 0, 0);
+				return reader.read(0, param);
+			}
+
+
+			@Override
+			public void close() {
+				closeReader(reader);
+			}
+		};
+	}
+
+
+	/**
+	 * decodes the whole image with the sample size of the plan and closes the reader
+	 */
+	private static BufferedImage decode(ImageReader reader, ScalePlan plan) throws IOException {
+		try {
+			final ImageReadParam param = reader.getDefaultReadParam();
+			param.setSourceSubsampling(plan.getSampleSize(), plan.getSampleSize(), 0, 0);
+			return reader.read(0, param);
+		} finally {
+			closeReader(reader);
+		}
+	}
+
+
+	/**
+	 * @param input stream of the encoded image
+	 * @return reader with the input as its input
+	 * @throws IOException is thrown if the input cannot be read or there is no reader for its format
+	 */
+	private static ImageReader openReader(InputStream input) throws IOException {
+		final ImageInputStream inputStream = ImageIO.createImageInputStream(input);
+		if(inputStream == null) {
+			throw new IOException("Cannot read the image");
+		}
+		final Iterator<ImageReader> readers = ImageIO.getImageReaders(inputStream);
+		if(!readers.hasNext()) {
+			inputStream.close();
+			throw new IOException("No reader for the format of the image");
+		}
+		final ImageReader reader = readers.next();
+		reader.setInput(inputStream, true, true);
+		return reader;
+	}
+
+
+	private static void closeReader(ImageReader reader) {
+		final Object input = reader.getInput();
+		reader.dispose();
+		if(input instanceof ImageInputStream) {
+			try {
+				((ImageInputStream) input).close();
+			} catch(IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package com.strv.photomanager.imageio;
+
+import com.strv.photomanager.ImageEncoder;
+import com.strv.photomanager.OutputFormat;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+
+/**
+ * encodes images with javax.imageio, the quality of lossy formats maps linearly to the compression quality of the writer
+ * like the quality of Bitmap.compress(), the JDK has no WebP writer, so WebP needs a writer plugin on the class path
+ */
+public class ImageIOEncoder implements ImageEncoder<BufferedImage> {
+
+	@Override
+	public void encode(BufferedImage image, OutputFormat format, int quality, OutputStream outputStream) throws IOException {
+		final Iterator<ImageWriter> writers = ImageIO.getImageWritersByMIMEType(format.getMimeType());
+		if(!writers.hasNext()) {
+			throw new IOException("No " + format + " writer available");
+		}
+		final ImageWriter writer = writers.next();
+		final ImageOutputStream imageOutputStream = ImageIO.createImageOutputStream(outputStream);
+		try {
+			final ImageWriteParam param = writer.getDefaultWriteParam();
+			if(format.isLossy() && param.canWriteCompressed()) {
+				param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				if(param.getCompressionType() == null) {
+					param.setCompressionType(param.getCompressionTypes()[0]);
+				}
+				param.setCompressionQuality(quality / 100f);
+			}
+			writer.setOutput(imageOutputStream);
+			writer.write(null, new IIOImage(image, null, null), param);
+		} finally {
+			imageOutputStream.close();
+			writer.dispose();
+		}
+	}
+}
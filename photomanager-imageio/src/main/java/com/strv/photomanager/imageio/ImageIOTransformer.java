@@ -0,0 +1,53 @@
+package com.strv.photomanager.imageio;
+
+import com.strv.photomanager.ImageTransformer;
+import com.strv.photomanager.ScalePlan;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+
+/**
+ * draws the decoded images with Java2D using the transformation of the plan and bilinear filtering, the same as the filtered
+ * Canvas draw of the Android backend
+ */
+public class ImageIOTransformer implements ImageTransformer<BufferedImage> {
+
+	@Override
+	public BufferedImage createOutput(ScalePlan plan) {
+		// JPEG has no alpha, an opaque output can be encoded as it is
+		return new BufferedImage(plan.getOutputWidth(), plan.getOutputHeight(), BufferedImage.TYPE_INT_RGB);
+	}
+
+
+	@Override
+	public void draw(BufferedImage strip, BufferedImage output, ScalePlan plan, int sourceTop) {
+		final int sampleSize = plan.getSampleSize();
+		final float[] m = plan.getTransformation((float) plan.getSourceWidth() / sampleSize, (float) plan.getSourceHeight() / sampleSize,
+				(float) sourceTop / sampleSize);
+
+		final Graphics2D graphics = output.createGraphics();
+		try {
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			graphics.drawImage(strip, new AffineTransform(m[0], m[3], m[1], m[4], m[2], m[5]), null);
+		} finally {
+			graphics.dispose();
+		}
+	}
+
+
+	@Override
+	public long getByteCount(BufferedImage image) {
+		// the decoded images are packed into ints or bytes, an estimate by the pixel size is close enough for the metrics
+		return (long) image.getWidth() * image.getHeight() * Math.max(1, image.getColorModel().getPixelSize() / 8);
+	}
+
+
+	@Override
+	public void release(BufferedImage image) {
+		image.flush();
+	}
+}
@@ -0,0 +1,131 @@
+package com.strv.photomanager.imageio;
+
+import com.strv.photomanager.ImageScaler;
+import com.strv.photomanager.ImageSink;
+import com.strv.photomanager.ImageSource;
+import com.strv.photomanager.OutputFormat;
+import com.strv.photomanager.ScaleSpec;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+
+public class ImageIOBackendTest {
+
+	@Rule
+	public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+
+	@Test
+	public void scale_stripsMatchWholeDecode() throws Exception {
+		// the decoded image is larger than a single strip
+		final File source = createImage(1600, 1200);
+		final ScaleSpec spec = new ScaleSpec(1000, 1000, 0, OutputFormat.PNG);
+
+		final ImageScaler<BufferedImage> wholeScaler = ImageIOBackend.createScaler();
+		wholeScaler.setTiledDecodeThreshold(Long.MAX_VALUE);
+		final BufferedImage whole = scale(wholeScaler, source, spec);
+
+		final ImageScaler<BufferedImage> stripScaler = ImageIOBackend.createScaler();
+		stripScaler.setTiledDecodeThreshold(0);
+		final BufferedImage strips = scale(stripScaler, source, spec);
+
+		assertEquals(1000, whole.getWidth());
+		assertEquals(750, whole.getHeight());
+		assertEquals(whole.getWidth(), strips.getWidth());
+		assertEquals(whole.getHeight(), strips.getHeight());
+		// only the output row blended across the seam of the two strips may differ, and only slightly
+		int differingRows = 0;
+		for(int y = 0; y < whole.getHeight(); y++) {
+			boolean differs = false;
+			for(int x = 0; x < whole.getWidth(); x++) {
+				final int difference = getDifference(whole.getRGB(x, y), strips.getRGB(x, y));
+				assertTrue("pixel " + x + "x" + y + " differs by " + difference, difference <= 8);
+				differs |= difference > 0;
+			}
+			if(differs) {
+				differingRows++;
+			}
+		}
+		assertTrue(differingRows <= 1);
+	}
+
+
+	@Test
+	public void scaleToSinks_writesEveryRenditionInItsSize() throws Exception {
+		final File source = createImage(1600, 1200);
+		final List<ScaleSpec> specs = Arrays.asList(new ScaleSpec(400, 400, 0, OutputFormat.JPEG), new ScaleSpec(1200, 1200, 0, OutputFormat.PNG), new ScaleSpec(100, 100, 0, OutputFormat.JPEG));
+		final List<ImageSink.MemorySink> sinks = Arrays.asList(ImageSink.toMemory(), ImageSink.toMemory(), ImageSink.toMemory());
+		final ImageSource imageSource = ImageSource.fromFile(source);
+		try {
+			ImageIOBackend.createScaler().scaleToSinks(imageSource, specs, sinks, null);
+		} finally {
+			imageSource.close();
+		}
+
+		final int[][] sizes = {{400, 300}, {1200, 900}, {100, 75}};
+		for(int i = 0; i < sizes.length; i++) {
+			final BufferedImage image = read(sinks.get(i));
+			assertEquals(sizes[i][0], image.getWidth());
+			assertEquals(sizes[i][1], image.getHeight());
+		}
+	}
+
+
+	private static int getDifference(int first, int second) {
+		int difference = 0;
+		for(int shift = 0; shift < 24; shift += 8) {
+			difference = Math.max(difference, Math.abs(((first >> shift) & 0xFF) - ((second >> shift) & 0xFF)));
+		}
+		return difference;
+	}
+
+
+	private static BufferedImage scale(ImageScaler<BufferedImage> scaler, File source, ScaleSpec spec) throws IOException {
+		final ImageSink.MemorySink sink = ImageSink.toMemory();
+		final ImageSource imageSource = ImageSource.fromFile(source);
+		try {
+			scaler.scale(imageSource, spec, sink, null);
+		} finally {
+			imageSource.close();
+		}
+		return read(sink);
+	}
+
+
+	private static BufferedImage read(ImageSink.MemorySink sink) throws IOException {
+		final ByteBuffer data = sink.toByteBuffer();
+		final byte[] bytes = new byte[data.remaining()];
+		data.get(bytes);
+		return ImageIO.read(new ByteArrayInputStream(bytes));
+	}
+
+
+	/**
+	 * @return PNG with a horizontal gradient and vertical waves, so a strip moved by a single row changes the output
+	 */
+	private File createImage(int width, int height) throws IOException {
+		final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for(int y = 0; y < height; y++) {
+			for(int x = 0; x < width; x++) {
+				image.setRGB(x, y, ((x * 255 / width) << 16) | ((int) (127.5 + 127.5 * Math.sin(y / 8.0)) << 8) | (y * 255 / height));
+			}
+		}
+		final File file = mTemporaryFolder.newFile("source.png");
+		ImageIO.write(image, "png", file);
+		return file;
+	}
+}
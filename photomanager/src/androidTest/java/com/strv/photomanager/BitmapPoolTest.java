@@ -0,0 +1,124 @@
+package com.strv.photomanager;
+
+import android.graphics.Bitmap;
+
+import junit.framework.TestCase;
+
+
+public class BitmapPoolTest extends TestCase {
+
+	private static final int MAX_BYTES = 1024 * 1024;
+
+
+	public void testGet_emptyPoolCountsMiss() {
+		final BitmapPool bitmapPool = new BitmapPool(MAX_BYTES);
+		assertNull(bitmapPool.get(100, 100, Bitmap.Config.ARGB_8888));
+		assertEquals(0, bitmapPool.getHitCount());
+		assertEquals(1, bitmapPool.getMissCount());
+	}
+
+
+	public void testGet_returnsPooledBitmapOfSameSize() {
+		final BitmapPool bitmapPool = new BitmapPool(MAX_BYTES);
+		final Bitmap bitmap = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+		bitmapPool.put(bitmap);
+		assertEquals(BitmapPool.getBytes(bitmap), bitmapPool.getCurrentBytes());
+
+		assertSame(bitmap, bitmapPool.get(100, 100, Bitmap.Config.ARGB_8888));
+		assertEquals(1, bitmapPool.getHitCount());
+		assertEquals(0, bitmapPool.getCurrentBytes());
+		assertNull(bitmapPool.get(100, 100, Bitmap.Config.ARGB_8888));
+	}
+
+
+	public void testGet_reconfiguresLargerBitmap() {
+		if(!BitmapPool.canReconfigure()) {
+			return;
+		}
+		final BitmapPool bitmapPool = new BitmapPool(MAX_BYTES);
+		final Bitmap bitmap = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+		bitmapPool.put(bitmap);
+
+		final Bitmap reused = bitmapPool.get(80, 90, Bitmap.Config.ARGB_8888);
+		assertSame(bitmap, reused);
+		assertEquals(80, reused.getWidth());
+		assertEquals(90, reused.getHeight());
+	}
+
+
+	public void testGet_skipsBitmapOverTwiceTheSize() {
+		if(!BitmapPool.canReconfigure()) {
+			return;
+		}
+		final BitmapPool bitmapPool = new BitmapPool(MAX_BYTES);
+		bitmapPool.put(Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888));
+
+		// a quarter of the pooled memory would waste the rest of it
+		assertNull(bitmapPool.get(50, 50, Bitmap.Config.ARGB_8888));
+		assertEquals(1, bitmapPool.getMissCount());
+		// exactly half is still reused
+		assertNotNull(bitmapPool.get(100, 50, Bitmap.Config.ARGB_8888));
+	}
+
+
+	public void testGet_smallerBitmapIsNotUsed() {
+		final BitmapPool bitmapPool = new BitmapPool(MAX_BYTES);
+		bitmapPool.put(Bitmap.createBitmap(50, 50, Bitmap.Config.ARGB_8888));
+		assertNull(bitmapPool.get(100, 100, Bitmap.Config.ARGB_8888));
+	}
+
+
+	public void testGet_exactMatchBeforeKitKat() {
+		if(BitmapPool.canReconfigure()) {
+			return;
+		}
+		final BitmapPool bitmapPool = new BitmapPool(MAX_BYTES);
+		bitmapPool.put(Bitmap.createBitmap(100, 50, Bitmap.Config.ARGB_8888));
+		// same number of bytes but different dimensions
+		assertNull(bitmapPool.get(50, 100, Bitmap.Config.ARGB_8888));
+		assertNotNull(bitmapPool.get(100, 50, Bitmap.Config.ARGB_8888));
+	}
+
+
+	public void testPut_evictsLeastRecentlyAddedOverMaxBytes() {
+		final int bytes = BitmapPool.getBytes(100, 100, Bitmap.Config.ARGB_8888);
+		final BitmapPool bitmapPool = new BitmapPool(bytes * 2);
+		final Bitmap first = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+		final Bitmap second = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+		final Bitmap third = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+		bitmapPool.put(first);
+		bitmapPool.put(second);
+		bitmapPool.put(third);
+
+		assertTrue(first.isRecycled());
+		assertFalse(second.isRecycled());
+		assertFalse(third.isRecycled());
+		assertEquals(1, bitmapPool.getEvictionCount());
+		assertEquals(bytes * 2, bitmapPool.getCurrentBytes());
+	}
+
+
+	public void testPut_recyclesBitmapsThatCannotBeReused() {
+		final BitmapPool bitmapPool = new BitmapPool(MAX_BYTES);
+		final Bitmap immutable = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888).copy(Bitmap.Config.ARGB_8888, false);
+		bitmapPool.put(immutable);
+		assertTrue(immutable.isRecycled());
+
+		final Bitmap tooLarge = Bitmap.createBitmap(1024, 1024, Bitmap.Config.ARGB_8888);
+		bitmapPool.put(tooLarge);
+		assertTrue(tooLarge.isRecycled());
+		assertEquals(0, bitmapPool.getCurrentBytes());
+	}
+
+
+	public void testClear_recyclesPooledBitmaps() {
+		final BitmapPool bitmapPool = new BitmapPool(MAX_BYTES);
+		final Bitmap bitmap = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+		bitmapPool.put(bitmap);
+		bitmapPool.clear();
+
+		assertTrue(bitmap.isRecycled());
+		assertEquals(0, bitmapPool.getCurrentBytes());
+		assertNull(bitmapPool.get(100, 100, Bitmap.Config.ARGB_8888));
+	}
+}
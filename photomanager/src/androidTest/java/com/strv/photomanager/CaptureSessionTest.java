@@ -0,0 +1,113 @@
+package com.strv.photomanager;
+
+import android.app.Activity;
+import android.test.AndroidTestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Collections;
+import java.util.List;
+
+
+public class CaptureSessionTest extends AndroidTestCase {
+
+	private static final String DIR_NAME = "CaptureSessionTest";
+	private static final int PREALLOCATED_FILES = 2;
+	private static final long TIMEOUT_MILLIS = 5000;
+
+	private CaptureSession mCaptureSession;
+
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mCaptureSession = new CaptureSession(getContext(), DIR_NAME, PREALLOCATED_FILES);
+	}
+
+
+	@Override
+	protected void tearDown() throws Exception {
+		for(File file : mCaptureSession.end()) {
+			file.delete();
+		}
+		super.tearDown();
+	}
+
+
+	public void testStart_fillsReadyFiles() throws Exception {
+		mCaptureSession.start();
+		awaitReadyCount(PREALLOCATED_FILES);
+	}
+
+
+	public void testTakeReadyFile_refillsInBackground() throws Exception {
+		mCaptureSession.start();
+		awaitReadyCount(PREALLOCATED_FILES);
+
+		final File file = mCaptureSession.takeReadyFile();
+		assertTrue(file.exists());
+		assertEquals(0, file.length());
+		awaitReadyCount(PREALLOCATED_FILES);
+	}
+
+
+	public void testOnActivityResult_cancelledCaptureKeepsFileReady() throws Exception {
+		final File file = mCaptureSession.takeReadyFile();
+		assertTrue(mCaptureSession.onActivityResult(PhotoManager.REQUEST_IMAGE_CAPTURE, Activity.RESULT_CANCELED));
+		assertTrue(mCaptureSession.getCaptures().isEmpty());
+		// the empty file is handed out for the next capture first
+		assertEquals(file, mCaptureSession.takeReadyFile());
+	}
+
+
+	public void testOnActivityResult_capturedPhotoIsCollected() throws Exception {
+		final File file = mCaptureSession.takeReadyFile();
+		final FileOutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(new byte[]{1, 2, 3});
+		} finally {
+			outputStream.close();
+		}
+		assertTrue(mCaptureSession.onActivityResult(PhotoManager.REQUEST_IMAGE_CAPTURE, Activity.RESULT_OK));
+		assertEquals(Collections.singletonList(file), mCaptureSession.getCaptures());
+
+		// a result without a launched capture is not for the session
+		assertFalse(mCaptureSession.onActivityResult(PhotoManager.REQUEST_IMAGE_CAPTURE, Activity.RESULT_OK));
+	}
+
+
+	public void testOnActivityResult_otherRequestIsIgnored() throws Exception {
+		mCaptureSession.takeReadyFile();
+		assertFalse(mCaptureSession.onActivityResult(PhotoManager.REQUEST_IMAGE_CAPTURE + 1, Activity.RESULT_OK));
+	}
+
+
+	public void testEnd_deletesUnusedFiles() throws Exception {
+		final File file = mCaptureSession.takeReadyFile();
+		assertTrue(mCaptureSession.onActivityResult(PhotoManager.REQUEST_IMAGE_CAPTURE, Activity.RESULT_CANCELED));
+		final List<File> captures = mCaptureSession.end();
+		assertTrue(captures.isEmpty());
+		assertEquals(0, mCaptureSession.getReadyCount());
+
+		final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while(file.exists() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertFalse(file.exists());
+		try {
+			mCaptureSession.takeReadyFile();
+			fail("a file was handed out after the session ended");
+		} catch(IllegalStateException e) {
+			// expected
+		}
+	}
+
+
+	private void awaitReadyCount(int count) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+		while(mCaptureSession.getReadyCount() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, mCaptureSession.getReadyCount());
+	}
+}
@@ -0,0 +1,60 @@
+package com.strv.photomanager;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+
+
+public class DecodeProfileTest extends TestCase {
+
+	@Override
+	protected void tearDown() throws Exception {
+		PhotoManager.setDecodeProfile(null);
+		super.tearDown();
+	}
+
+
+	public void testSetDecodeProfile_autoIsDefault() {
+		assertSame(DecodeProfile.AUTO, PhotoManager.getDecodeProfile());
+		PhotoManager.setDecodeProfile(DecodeProfile.QUALITY);
+		assertSame(DecodeProfile.QUALITY, PhotoManager.getDecodeProfile());
+		PhotoManager.setDecodeProfile(null);
+		assertSame(DecodeProfile.AUTO, PhotoManager.getDecodeProfile());
+	}
+
+
+	public void testGetConfig_autoDecodesOnlyOpaqueImagesInRgb565() {
+		assertEquals(Bitmap.Config.RGB_565, DecodeProfile.AUTO.getConfig(true));
+		assertEquals(Bitmap.Config.ARGB_8888, DecodeProfile.AUTO.getConfig(false));
+		assertEquals(Bitmap.Config.ARGB_8888, DecodeProfile.QUALITY.getConfig(true));
+		// RGB_565 cannot hold the alpha channel
+		assertEquals(Bitmap.Config.ARGB_8888, new DecodeProfile(Bitmap.Config.RGB_565, false, false, false).getConfig(false));
+	}
+
+
+	@SuppressWarnings("deprecation")
+	public void testApply_setsConfigAndFlags() {
+		final BitmapFactory.Options options = new BitmapFactory.Options();
+		DecodeProfile.QUALITY.apply(options, true);
+		assertEquals(Bitmap.Config.ARGB_8888, options.inPreferredConfig);
+		assertTrue(options.inPreferQualityOverSpeed);
+		assertFalse(options.inDither);
+		assertFalse(options.inScaled);
+
+		DecodeProfile.AUTO.apply(options, true);
+		assertEquals(Bitmap.Config.RGB_565, options.inPreferredConfig);
+		assertFalse(options.inPreferQualityOverSpeed);
+		assertTrue(options.inDither);
+	}
+
+
+	public void testToString_profilesHaveSeparateRenditions() {
+		final File source = new File("source.jpg");
+		final String auto = RenditionCache.createKey(source, 100, 100, OutputFormat.JPEG, 1000, DecodeProfile.AUTO.toString());
+		final String quality = RenditionCache.createKey(source, 100, 100, OutputFormat.JPEG, 1000, DecodeProfile.QUALITY.toString());
+		assertFalse(auto.equals(quality));
+	}
+}
@@ -0,0 +1,102 @@
+package com.strv.photomanager;
+
+import android.content.ClipData;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Build;
+import android.test.AndroidTestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+
+public class ImportBatchTest extends AndroidTestCase {
+
+	private static final long TIMEOUT_SECONDS = 5;
+
+
+	public void testGetUrisFromResult_readsAllPickedUris() {
+		if(Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+			return;
+		}
+		final Uri first = Uri.parse("content://media/external/images/media/1");
+		final Uri second = Uri.parse("content://media/external/images/media/2");
+		final ClipData clipData = ClipData.newRawUri(null, first);
+		clipData.addItem(new ClipData.Item(second));
+		final Intent data = new Intent();
+		data.setClipData(clipData);
+
+		assertEquals(Arrays.asList(first, second), PhotoManager.getUrisFromResult(data));
+	}
+
+
+	public void testGetUrisFromResult_readsSingleUri() {
+		final Uri uri = Uri.parse("content://media/external/images/media/1");
+		assertEquals(Collections.singletonList(uri), PhotoManager.getUrisFromResult(new Intent().setData(uri)));
+		assertTrue(PhotoManager.getUrisFromResult(null).isEmpty());
+	}
+
+
+	public void testStart_deliversEveryFileAndBatchInOrder() throws Exception {
+		final List<Uri> uris = new ArrayList<Uri>();
+		for(int i = 0; i < 8; i++) {
+			uris.add(Uri.fromFile(createFile("import" + i + ".jpg")));
+		}
+		// a file that cannot be read fails alone, the rest of the batch goes on
+		uris.add(Uri.fromFile(new File(getContext().getCacheDir(), "missing.jpg")));
+
+		final List<Uri> delivered = Collections.synchronizedList(new ArrayList<Uri>());
+		final List<List<File>> batches = Collections.synchronizedList(new ArrayList<List<File>>());
+		final CountDownLatch done = new CountDownLatch(1);
+		final ThreadPoolExecutor executor = PhotoExecutors.newImportExecutor();
+		try {
+			new ImportBatch(getContext(), uris, PhotoJob.Priority.BULK, new PhotoManager.OnFilesFromUrisExtractedListener() {
+				@Override
+				public void onFileFromUriExtracted(Uri uri, File file) {
+					delivered.add(uri);
+				}
+
+
+				@Override
+				public void onFilesFromUrisExtracted(List<File> files) {
+					batches.add(files);
+					done.countDown();
+				}
+			}).start(executor);
+			assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(uris.size(), delivered.size());
+		assertTrue(delivered.containsAll(uris));
+		assertEquals(1, batches.size());
+		final List<File> files = batches.get(0);
+		assertEquals(uris.size(), files.size());
+		for(int i = 0; i < uris.size() - 1; i++) {
+			// the batch result keeps the order of the picked Uris
+			assertEquals(uris.get(i).getPath(), files.get(i).getPath());
+		}
+		assertNull(files.get(uris.size() - 1));
+	}
+
+
+	private File createFile(String name) throws IOException {
+		final File file = new File(getContext().getCacheDir(), name);
+		final FileOutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(new byte[]{1, 2, 3});
+		} finally {
+			outputStream.close();
+		}
+		return file;
+	}
+}
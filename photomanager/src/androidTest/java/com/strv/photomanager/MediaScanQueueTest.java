@@ -0,0 +1,93 @@
+package com.strv.photomanager;
+
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+
+public class MediaScanQueueTest extends AndroidTestCase {
+
+	private static final long TIMEOUT_SECONDS = 10;
+
+
+	public void testAdd_sameFileIsScannedOnce() throws Exception {
+		final MediaScanQueue mediaScanQueue = new MediaScanQueue(getContext(), 60 * 1000);
+		final File file = createFile("scan.jpg");
+		mediaScanQueue.add(file);
+		mediaScanQueue.add(new File(file.getPath()));
+		assertEquals(1, mediaScanQueue.getPendingCount());
+
+		mediaScanQueue.add(createFile("scan2.jpg"));
+		assertEquals(2, mediaScanQueue.getPendingCount());
+		mediaScanQueue.flush();
+		assertEquals(0, mediaScanQueue.getPendingCount());
+	}
+
+
+	public void testFlush_scansPendingFilesInOneBatch() throws Exception {
+		final MediaScanQueue mediaScanQueue = new MediaScanQueue(getContext(), 60 * 1000);
+		final List<String> scannedPaths = new ArrayList<String>();
+		final List<Uri> scannedUris = new ArrayList<Uri>();
+		final CountDownLatch scanned = new CountDownLatch(1);
+		mediaScanQueue.setOnBatchScannedListener(new MediaScanQueue.OnBatchScannedListener() {
+			@Override
+			public void onBatchScanned(List<String> paths, List<Uri> uris) {
+				scannedPaths.addAll(paths);
+				scannedUris.addAll(uris);
+				scanned.countDown();
+			}
+		});
+		final File first = createFile("batch1.jpg");
+		final File second = createFile("batch2.png");
+		mediaScanQueue.add(first);
+		mediaScanQueue.add(second);
+		mediaScanQueue.flush();
+		// nothing is pending, so a second flush doesn't call the scanner
+		mediaScanQueue.flush();
+
+		assertEquals(1, mediaScanQueue.getBatchCount());
+		assertEquals(2, mediaScanQueue.getFileCount());
+		assertTrue(scanned.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList(first.getAbsolutePath(), second.getAbsolutePath()), scannedPaths);
+		assertEquals(2, scannedUris.size());
+	}
+
+
+	public void testAdd_windowFlushesBatch() throws Exception {
+		final MediaScanQueue mediaScanQueue = new MediaScanQueue(getContext(), 50);
+		final CountDownLatch scanned = new CountDownLatch(1);
+		mediaScanQueue.setOnBatchScannedListener(new MediaScanQueue.OnBatchScannedListener() {
+			@Override
+			public void onBatchScanned(List<String> paths, List<Uri> uris) {
+				scanned.countDown();
+			}
+		});
+		mediaScanQueue.add(createFile("window1.jpg"));
+		mediaScanQueue.add(createFile("window2.jpg"));
+
+		assertTrue(scanned.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		assertEquals(0, mediaScanQueue.getPendingCount());
+		assertEquals(1, mediaScanQueue.getBatchCount());
+		assertEquals(2, mediaScanQueue.getFileCount());
+	}
+
+
+	private File createFile(String name) throws IOException {
+		final File file = new File(getContext().getExternalCacheDir(), name);
+		final FileOutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(new byte[]{1, 2, 3});
+		} finally {
+			outputStream.close();
+		}
+		return file;
+	}
+}
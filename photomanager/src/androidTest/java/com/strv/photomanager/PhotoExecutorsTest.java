@@ -0,0 +1,96 @@
+package com.strv.photomanager;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+
+public class PhotoExecutorsTest extends TestCase {
+
+	private static final long TIMEOUT_SECONDS = 5;
+
+
+	public void testScaleExecutor_hasThreadPerCore() throws Exception {
+		final ThreadPoolExecutor executor = PhotoExecutors.newScaleExecutor();
+		try {
+			assertEquals(Runtime.getRuntime().availableProcessors(), executor.getMaximumPoolSize());
+			assertEquals(executor.getMaximumPoolSize(), executor.getCorePoolSize());
+			assertTrue(executor.allowsCoreThreadTimeOut());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+
+	public void testScaleExecutor_runsInteractiveJobsBeforeQueuedBulkJobs() throws Exception {
+		final ThreadPoolExecutor executor = PhotoExecutors.newScaleExecutor();
+		try {
+			// every thread is kept busy, so the next jobs wait in the queue
+			final CountDownLatch started = new CountDownLatch(executor.getMaximumPoolSize());
+			final CountDownLatch blocker = new CountDownLatch(1);
+			for(int i = 0; i < executor.getMaximumPoolSize(); i++) {
+				executor.execute(new PhotoJob(PhotoJob.Priority.BULK, null, new PhotoJob.Work() {
+					@Override
+					public void run(PhotoJob job) {
+						started.countDown();
+						awaitQuietly(blocker);
+					}
+				}));
+			}
+			assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+			final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+			final CountDownLatch done = new CountDownLatch(3);
+			executor.execute(createRecordingJob(PhotoJob.Priority.BULK, "bulk 1", order, done));
+			executor.execute(createRecordingJob(PhotoJob.Priority.BULK, "bulk 2", order, done));
+			executor.execute(createRecordingJob(PhotoJob.Priority.INTERACTIVE, "interactive", order, done));
+			blocker.countDown();
+			assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+			assertEquals("interactive", order.get(0));
+			if(executor.getMaximumPoolSize() == 1) {
+				// jobs of the same priority run in the order they were started
+				assertEquals("bulk 1", order.get(1));
+				assertEquals("bulk 2", order.get(2));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+
+	public void testImportExecutor_isBounded() throws Exception {
+		final ThreadPoolExecutor executor = PhotoExecutors.newImportExecutor();
+		try {
+			assertTrue(executor.getMaximumPoolSize() > 1);
+			assertEquals(executor.getMaximumPoolSize(), executor.getCorePoolSize());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+
+	private static PhotoJob createRecordingJob(PhotoJob.Priority priority, final String name, final List<String> order, final CountDownLatch done) {
+		return new PhotoJob(priority, null, new PhotoJob.Work() {
+			@Override
+			public void run(PhotoJob job) {
+				order.add(name);
+				done.countDown();
+			}
+		});
+	}
+
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
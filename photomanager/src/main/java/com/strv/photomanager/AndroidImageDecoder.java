@@ -0,0 +1,178 @@
+package com.strv.photomanager;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * decodes images with BitmapFactory, the pixels are decoded into pooled bitmaps whenever the platform allows it,
+ * files and descriptors are read by the native decoder through the single descriptor of the source
+ */
+class AndroidImageDecoder implements ImageDecoder<Bitmap> {
+
+	private static final String JPEG_MIME_TYPE = "image/jpeg";
+
+	private final BitmapPool mBitmapPool;
+	private final DecodeProfile mDecodeProfile;
+
+
+	/**
+	 * @param bitmapPool    pool the decoded bitmaps are taken from, null to allocate a new bitmap for every image
+	 * @param decodeProfile pixel format and flags the images are decoded with
+	 */
+	AndroidImageDecoder(BitmapPool bitmapPool, DecodeProfile decodeProfile) {
+		mBitmapPool = bitmapPool;
+		mDecodeProfile = decodeProfile;
+	}
+
+
+	@Override
+	public ImageHeader decodeHeader(ImageSource source) throws IOException {
+		BitmapFactory.Options bmOptions = new BitmapFactory.Options();
+		bmOptions.inJustDecodeBounds = true;
+		decode(source, bmOptions);
+		// JPEG is the only common format that cannot have alpha, other formats might but don't have to
+		final boolean opaque = JPEG_MIME_TYPE.equals(bmOptions.outMimeType);
+		return new ImageHeader(bmOptions.outWidth, bmOptions.outHeight, ExifOrientation.read(source), opaque);
+	}
+
+
+	/**
+	 * decodes the image with the planned sample size, reusing a pooled bitmap for the pixels if possible - only for sources with a descriptor,
+	 * a decode that rejects the pooled bitmap is retried, which a stream read past its mark cannot be
+	 */
+	@Override
+	public Bitmap decode(ImageSource source, ImageHeader header, ScalePlan plan) throws IOException {
+		BitmapFactory.Options bmOptions = new BitmapFactory.Options();
+		mDecodeProfile.apply(bmOptions, header.isOpaque());
+		bmOptions.inSampleSize = plan.getSampleSize();
+		bmOptions.inMutable = true;
+		bmOptions.inBitmap = source.openFileDescriptor() != null ? getReusableBitmap(plan, bmOptions.inPreferredConfig) : null;
+
+		if(bmOptions.inBitmap != null) {
+			final Bitmap decoded;
+			try {
+				decoded = decode(source, bmOptions);
+			} catch(IllegalArgumentException e) {
+				// the pooled bitmap is not compatible with the decoded image, decode into a new one
+				mBitmapPool.put(bmOptions.inBitmap);
+				bmOptions.inBitmap = null;
+				return decode(source, bmOptions);
+			} catch(IOException e) {
+				mBitmapPool.put(bmOptions.inBitmap);
+				throw e;
+			}
+			if(decoded == null) {
+				// the decoder gave up without using the pooled bitmap, the caller only sees the failure
+				mBitmapPool.put(bmOptions.inBitmap);
+			}
+			return decoded;
+		}
+		return decode(source, bmOptions);
+	}
+
+
+	/**
+	 * decodes an image in memory with the planned sample size, it is small (an embedded thumbnail), so no pooled bitmap is used
+	 */
+	@Override
+	public Bitmap decode(byte[] data, int offset, int length, ScalePlan plan) throws IOException {
+		BitmapFactory.Options bmOptions = new BitmapFactory.Options();
+		mDecodeProfile.apply(bmOptions, true);
+		bmOptions.inSampleSize = plan.getSampleSize();
+		return BitmapFactory.decodeByteArray(data, offset, length, bmOptions);
+	}
+
+
+	@Override
+	public int getBytesPerPixel(ImageHeader header) {
+		return mDecodeProfile.getConfig(header.isOpaque()) == Bitmap.Config.RGB_565 ? 2 : 4;
+	}
+
+
+	/**
+	 * opens the region decoder on the descriptor of the source, streams are not decoded in strips because the region decoder
+	 * would copy the whole stream before it finds out the format is not supported and the stream cannot be rewound after that
+	 */
+	@Override
+	public RegionDecoder<Bitmap> openRegionDecoder(ImageSource source, ImageHeader header) throws IOException {
+		final FileDescriptor fileDescriptor = source.openFileDescriptor();
+		if(fileDescriptor == null) {
+			return null;
+		}
+		final BitmapRegionDecoder decoder;
+		try {
+			decoder = BitmapRegionDecoder.newInstance(fileDescriptor, false);
+		} catch(IOException e) {
+			// the format doesn't support decoding of regions
+			return null;
+		}
+
+		final BitmapFactory.Options options = new BitmapFactory.Options();
+		mDecodeProfile.apply(options, header.isOpaque());
+		return new RegionDecoder<Bitmap>() {
+			private final Rect mRegion = new Rect();
+			private final BitmapFactory.Options mOptions = options;
+
+
+			@Override
+			public Bitmap decodeStrip(int top, int bottom, int sampleSize) {
+				mRegion.set(0, top, decoder.getWidth(), bottom);
+				mOptions.inSampleSize = sampleSize;
+				return decoder.decodeRegion(mRegion, mOptions);
+			}
+
+
+			@Override
+			public void close() {
+				decoder.recycle();
+			}
+		};
+	}
+
+
+	/**
+	 * @param plan   plan computed from the header of the image
+	 * @param config config the image is decoded with
+	 * @return pooled bitmap that can be used as BitmapFactory.Options.inBitmap or null if there is none
+	 */
+	private Bitmap getReusableBitmap(ScalePlan plan, Bitmap.Config config) {
+		if(mBitmapPool == null) {
+			return null;
+		}
+		final int sampleSize = plan.getSampleSize();
+		if(BitmapPool.canReconfigure()) {
+			// sampled dimensions are rounded up at most, so this is always large enough
+			final int width = (plan.getSourceWidth() + sampleSize - 1) / sampleSize;
+			final int height = (plan.getSourceHeight() + sampleSize - 1) / sampleSize;
+			return mBitmapPool.get(width, height, config);
+		} else if(sampleSize == 1) {
+			// before KitKat the bitmap has to match exactly and sampling is not supported
+			return mBitmapPool.get(plan.getSourceWidth(), plan.getSourceHeight(), config);
+		}
+		return null;
+	}
+
+
+	/**
+	 * decodes the image through the descriptor of the source if it has one, so the native decoder reads the file directly
+	 */
+	private static Bitmap decode(ImageSource source, BitmapFactory.Options bmOptions) throws IOException {
+		final FileDescriptor fileDescriptor = source.openFileDescriptor();
+		if(fileDescriptor != null) {
+			return BitmapFactory.decodeFileDescriptor(fileDescriptor, null, bmOptions);
+		}
+		final InputStream inputStream = source.openStream();
+		try {
+			return BitmapFactory.decodeStream(inputStream, null, bmOptions);
+		} finally {
+			inputStream.close();
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package com.strv.photomanager;
+
+import android.graphics.Bitmap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * encodes bitmaps as JPEG, WebP or PNG with Bitmap.compress()
+ */
+class AndroidImageEncoder implements ImageEncoder<Bitmap> {
+
+	@Override
+	public void encode(Bitmap image, OutputFormat format, int quality, OutputStream outputStream) throws IOException {
+		if(!image.compress(getCompressFormat(format), quality, outputStream)) {
+			throw new IOException("Cannot compress bitmap as " + format);
+		}
+	}
+
+
+	private static Bitmap.CompressFormat getCompressFormat(OutputFormat format) {
+		switch(format) {
+			case WEBP:
+				return Bitmap.CompressFormat.WEBP;
+			case PNG:
+				return Bitmap.CompressFormat.PNG;
+			default:
+				return Bitmap.CompressFormat.JPEG;
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package com.strv.photomanager;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+
+
+/**
+ * draws the decoded bitmaps with a filtered Canvas draw, the output bitmaps are taken from the pool and returned to it
+ */
+class AndroidImageTransformer implements ImageTransformer<Bitmap> {
+
+	private final BitmapPool mBitmapPool;
+	private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+
+	/**
+	 * @param bitmapPool pool the output bitmaps are taken from and all the bitmaps are returned to, null to allocate a new bitmap every time
+	 */
+	AndroidImageTransformer(BitmapPool bitmapPool) {
+		mBitmapPool = bitmapPool;
+	}
+
+
+	@Override
+	public Bitmap createOutput(ScalePlan plan) {
+		return mBitmapPool != null
+				? mBitmapPool.getOrCreate(plan.getOutputWidth(), plan.getOutputHeight(), Bitmap.Config.ARGB_8888)
+				: Bitmap.createBitmap(plan.getOutputWidth(), plan.getOutputHeight(), Bitmap.Config.ARGB_8888);
+	}
+
+
+	/**
+	 * scales by the actual size of the decoded bitmap, BitmapFactory rounds the sampled size either way depending on the format,
+	 * only the strips of a tiled decode are placed by the sampled rows as they start at multiples of the sample size
+	 */
+	@Override
+	public void draw(Bitmap strip, Bitmap output, ScalePlan plan, int sourceTop) {
+		final int sampleSize = plan.getSampleSize();
+		// a strip always spans the whole width, it is the whole image if it reaches the last row
+		final boolean wholeImage = sourceTop == 0 && (strip.getHeight() + 1) * sampleSize > plan.getSourceHeight();
+		final float decodedHeight = wholeImage ? strip.getHeight() : (float) plan.getSourceHeight() / sampleSize;
+		final Matrix transformation = new Matrix();
+		transformation.setValues(plan.getTransformation(strip.getWidth(), decodedHeight, (float) sourceTop / sampleSize));
+		new Canvas(output).drawBitmap(strip, transformation, mPaint);
+	}
+
+
+	@Override
+	public long getByteCount(Bitmap image) {
+		return BitmapPool.getBytes(image);
+	}
+
+
+	@Override
+	public void release(Bitmap image) {
+		if(mBitmapPool != null) {
+			mBitmapPool.put(image);
+		} else {
+			image.recycle();
+		}
+	}
+}
@@ -0,0 +1,230 @@
+package com.strv.photomanager;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Build;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * pool of mutable bitmaps bucketed by their allocation size, the bitmaps can be reused for decoding (BitmapFactory.Options.inBitmap)
+ * and as targets of the scaling and rotation, the pool holds at most the configured number of bytes and drops the least recently
+ * added bitmaps when it grows over the limit
+ */
+public class BitmapPool {
+
+	// a pooled bitmap is not handed out for a request that needs less than this fraction of its memory
+	private static final int MAX_SIZE_MULTIPLE = 2;
+
+	private final TreeMap<Integer, LinkedList<Bitmap>> mBuckets = new TreeMap<Integer, LinkedList<Bitmap>>();
+	private final LinkedList<Bitmap> mLruOrder = new LinkedList<Bitmap>();
+	private final long mMaxBytes;
+	private long mCurrentBytes;
+	private int mHitCount;
+	private int mMissCount;
+	private int mEvictionCount;
+
+
+	/**
+	 * @param maxBytes maximum number of bytes held by the bitmaps in the pool
+	 */
+	public BitmapPool(long maxBytes) {
+		mMaxBytes = maxBytes;
+	}
+
+
+	/**
+	 * returns a pooled bitmap of the given size and config, the content of the bitmap is erased
+	 *
+	 * @param width  required width
+	 * @param height required height
+	 * @param config required config
+	 * @return pooled bitmap or null if there is none that can be used
+	 */
+	public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+		final int size = getBytes(width, height, config);
+		Bitmap bitmap = canReconfigure() ? takeReconfigurable(width, height, config, size) : takeExact(width, height, config, size);
+		if(bitmap == null) {
+			mMissCount++;
+			return null;
+		}
+
+		mHitCount++;
+		bitmap.eraseColor(Color.TRANSPARENT);
+		return bitmap;
+	}
+
+
+	/**
+	 * returns a pooled bitmap of the given size and config or creates a new one if there is none in the pool
+	 *
+	 * @param width  required width
+	 * @param height required height
+	 * @param config required config
+	 * @return mutable bitmap of the given size and config
+	 */
+	public Bitmap getOrCreate(int width, int height, Bitmap.Config config) {
+		Bitmap bitmap = get(width, height, config);
+		if(bitmap == null) {
+			bitmap = Bitmap.createBitmap(width, height, config);
+		}
+		return bitmap;
+	}
+
+
+	/**
+	 * returns the bitmap to the pool, the bitmap must not be used by the caller anymore,
+	 * bitmaps that cannot be reused are recycled
+	 *
+	 * @param bitmap bitmap that is not needed anymore
+	 */
+	public synchronized void put(Bitmap bitmap) {
+		if(bitmap == null || bitmap.isRecycled()) {
+			return;
+		}
+		final int size = getBytes(bitmap);
+		if(!bitmap.isMutable() || size > mMaxBytes) {
+			bitmap.recycle();
+			return;
+		}
+
+		LinkedList<Bitmap> bucket = mBuckets.get(size);
+		if(bucket == null) {
+			bucket = new LinkedList<Bitmap>();
+			mBuckets.put(size, bucket);
+		}
+		bucket.addLast(bitmap);
+		mLruOrder.addLast(bitmap);
+		mCurrentBytes += size;
+		trimToSize(mMaxBytes);
+	}
+
+
+	/**
+	 * recycles all the pooled bitmaps
+	 */
+	public synchronized void clear() {
+		trimToSize(0);
+	}
+
+
+	public synchronized int getHitCount() {
+		return mHitCount;
+	}
+
+
+	public synchronized int getMissCount() {
+		return mMissCount;
+	}
+
+
+	public synchronized int getEvictionCount() {
+		return mEvictionCount;
+	}
+
+
+	public synchronized long getCurrentBytes() {
+		return mCurrentBytes;
+	}
+
+
+	public long getMaxBytes() {
+		return mMaxBytes;
+	}
+
+
+	/**
+	 * @return true if decoding into the bitmap is possible even if it doesn't have exactly the size of the decoded image
+	 */
+	public static boolean canReconfigure() {
+		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+	}
+
+
+	/**
+	 * @param bitmap bitmap
+	 * @return number of bytes allocated for the pixels of the bitmap
+	 */
+	public static int getBytes(Bitmap bitmap) {
+		if(canReconfigure()) {
+			return bitmap.getAllocationByteCount();
+		}
+		return bitmap.getByteCount();
+	}
+
+
+	/**
+	 * @return number of bytes needed for the pixels of a bitmap with the given size and config
+	 */
+	public static int getBytes(int width, int height, Bitmap.Config config) {
+		return width * height * getBytesPerPixel(config);
+	}
+
+
+	public static int getBytesPerPixel(Bitmap.Config config) {
+		if(config == Bitmap.Config.ALPHA_8) {
+			return 1;
+		} else if(config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+			return 2;
+		}
+		return 4;
+	}
+
+
+	// since KitKat any bitmap that is large enough can be reconfigured to the required size
+	private Bitmap takeReconfigurable(int width, int height, Bitmap.Config config, int size) {
+		final Map.Entry<Integer, LinkedList<Bitmap>> entry = mBuckets.ceilingEntry(size);
+		if(entry == null || entry.getKey() > (long) size * MAX_SIZE_MULTIPLE) {
+			return null;
+		}
+		final Bitmap bitmap = entry.getValue().removeFirst();
+		remove(entry.getKey(), entry.getValue(), bitmap);
+		bitmap.reconfigure(width, height, config);
+		return bitmap;
+	}
+
+
+	// before KitKat only a bitmap with exactly the same size and config can be reused
+	private Bitmap takeExact(int width, int height, Bitmap.Config config, int size) {
+		final LinkedList<Bitmap> bucket = mBuckets.get(size);
+		if(bucket == null) {
+			return null;
+		}
+		final Iterator<Bitmap> iterator = bucket.iterator();
+		while(iterator.hasNext()) {
+			final Bitmap bitmap = iterator.next();
+			if(bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config) {
+				iterator.remove();
+				remove(size, bucket, bitmap);
+				return bitmap;
+			}
+		}
+		return null;
+	}
+
+
+	private void remove(int size, LinkedList<Bitmap> bucket, Bitmap bitmap) {
+		if(bucket.isEmpty()) {
+			mBuckets.remove(size);
+		}
+		mLruOrder.remove(bitmap);
+		mCurrentBytes -= size;
+	}
+
+
+	private void trimToSize(long maxBytes) {
+		while(mCurrentBytes > maxBytes && !mLruOrder.isEmpty()) {
+			final Bitmap bitmap = mLruOrder.getFirst();
+			final int size = getBytes(bitmap);
+			final LinkedList<Bitmap> bucket = mBuckets.get(size);
+			bucket.remove(bitmap);
+			remove(size, bucket, bitmap);
+			bitmap.recycle();
+			mEvictionCount++;
+		}
+	}
+}
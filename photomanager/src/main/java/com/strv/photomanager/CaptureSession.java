@@ -0,0 +1,291 @@
+package com.strv.photomanager;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.support.annotation.StringRes;
+import android.support.v4.app.Fragment;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * series of photos taken one after another, e.g. by a worker documenting a site - the storage directory is resolved only once
+ * and a few empty output files are kept ready by the import executor, so launching the camera is only a hand-off of a ready file
+ * without any disk access on the main thread
+ *
+ * the session collects the captured photos until it is ended, then they can be post-processed as a single batch,
+ * a session is used from the main thread, only the files are created in the background
+ */
+public class CaptureSession {
+
+	public static final int DEFAULT_PREALLOCATED_FILES = 3;
+
+	private final Context mContext;
+	private final String mDirName;
+	private final int mPreallocatedFiles;
+	private final CacheSweeper mCacheSweeper;
+	// guarded by the storage lock, the format itself is not thread safe
+	private final SimpleDateFormat mTimeStampFormat = new SimpleDateFormat(PhotoManager.CAPTURE_TIME_STAMP_PATTERN, Locale.US);
+	private final Object mStorageLock = new Object();
+	private final AtomicBoolean mRefillPending = new AtomicBoolean();
+	private final ArrayDeque<File> mReadyFiles = new ArrayDeque<File>();
+	private final List<File> mCaptures = new ArrayList<File>();
+	private File mStorageDir;
+	private File mPendingFile;
+	private boolean mEnded;
+
+
+	/**
+	 * @param context           context of the app/activity
+	 * @param dirName           name of the directory where the captured photos are stored
+	 * @param preallocatedFiles number of empty output files kept ready for the next captures
+	 */
+	CaptureSession(Context context, String dirName, int preallocatedFiles) {
+		mContext = context.getApplicationContext();
+		mDirName = dirName;
+		mPreallocatedFiles = preallocatedFiles;
+		mCacheSweeper = PhotoManager.getCacheSweeper(mContext);
+	}
+
+
+	/**
+	 * launches a camera app with the next ready output file, launches an app picker if more options are available,
+	 * the result has to be passed to {@link #onActivityResult(int, int)}
+	 *
+	 * @param fragment           fragment calling the camera intent
+	 * @param cameraChooserTitle title of the camera app chooser
+	 * @return Uri of the file the captured image will be stored in
+	 * @throws IOException is thrown if no output file is ready and it cannot be created
+	 */
+	public Uri launchCamera(Fragment fragment, String cameraChooserTitle) throws IOException {
+		final File file = takeReadyFile();
+		final Uri uri = Uri.fromFile(file);
+		final Intent cameraLauncher = PhotoManager.makeCameraChooserIntent(uri, cameraChooserTitle);
+		fragment.startActivityForResult(cameraLauncher, PhotoManager.REQUEST_IMAGE_CAPTURE);
+		return uri;
+	}
+
+
+	/**
+	 * @param fragment                fragment calling the camera intent
+	 * @param cameraChooserTitleResId string resource id of the title of the camera app chooser
+	 * @return Uri of the file the captured image will be stored in
+	 * @throws IOException is thrown if no output file is ready and it cannot be created
+	 */
+	public Uri launchCamera(Fragment fragment, @StringRes int cameraChooserTitleResId) throws IOException {
+		return launchCamera(fragment, fragment.getString(cameraChooserTitleResId));
+	}
+
+
+	/**
+	 * records the result of the capture launched by {@link #launchCamera(Fragment, String)}, a captured photo is added to the session
+	 * and published to the system gallery, the file of a cancelled capture is kept ready for the next one
+	 *
+	 * @param requestCode request code with which the onActivityResult method in fragment was called
+	 * @param resultCode  result code with which the onActivityResult method in fragment was called
+	 * @return true if the result belonged to a capture of the session
+	 */
+	public boolean onActivityResult(int requestCode, int resultCode) {
+		final File file;
+		synchronized(this) {
+			if(requestCode != PhotoManager.REQUEST_IMAGE_CAPTURE || mPendingFile == null) {
+				return false;
+			}
+			file = mPendingFile;
+			mPendingFile = null;
+		}
+
+		if(resultCode == Activity.RESULT_OK && file.length() > 0) {
+			synchronized(this) {
+				mCaptures.add(file);
+			}
+			mCacheSweeper.release(file);
+			PhotoManager.publishPhotoToSystemGallery(mContext, Uri.fromFile(file));
+			return true;
+		}
+
+		synchronized(this) {
+			if(!mEnded) {
+				// the file is still empty, the next capture can use it
+				mReadyFiles.addFirst(file);
+				return true;
+			}
+		}
+		deleteInBackground(Collections.singletonList(file));
+		return true;
+	}
+
+
+	/**
+	 * @return photos captured so far in the order they were taken
+	 */
+	public synchronized List<File> getCaptures() {
+		return new ArrayList<File>(mCaptures);
+	}
+
+
+	/**
+	 * @return number of output files ready for the next captures
+	 */
+	public synchronized int getReadyCount() {
+		return mReadyFiles.size();
+	}
+
+
+	/**
+	 * ends the session, the unused output files are deleted in the background and the photos waiting for the media scanner are published
+	 *
+	 * @return photos captured during the session in the order they were taken
+	 */
+	public List<File> end() {
+		final List<File> unusedFiles;
+		final List<File> captures;
+		synchronized(this) {
+			if(mEnded) {
+				return new ArrayList<File>(mCaptures);
+			}
+			mEnded = true;
+			unusedFiles = new ArrayList<File>(mReadyFiles);
+			mReadyFiles.clear();
+			captures = new ArrayList<File>(mCaptures);
+		}
+		deleteInBackground(unusedFiles);
+		PhotoManager.flushMediaScans();
+		return captures;
+	}
+
+
+	/**
+	 * ends the session and scales all the captured photos as a single batch
+	 *
+	 * @param spec     required size, byte budget and format of the output images
+	 * @param listener listener that will be used to provide the resulting scaled images
+	 * @return handle of the whole batch that can be used to cancel it, the listener is not called for a cancelled batch
+	 */
+	public PhotoJob end(ScaleSpec spec, PhotoManager.OnFilesScaledListener listener) {
+		return PhotoManager.scaleImageFiles(mContext, end(), spec, PhotoJob.Priority.BULK, listener);
+	}
+
+
+	/**
+	 * starts filling the ready files in the background
+	 */
+	void start() {
+		requestRefill();
+	}
+
+
+	/**
+	 * hands out a ready output file, only if the background thread hasn't created one yet it is created right here
+	 */
+	File takeReadyFile() throws IOException {
+		File file;
+		synchronized(this) {
+			if(mEnded) {
+				throw new IllegalStateException("The capture session has ended");
+			}
+			file = mReadyFiles.pollFirst();
+		}
+		if(file == null) {
+			file = createFile();
+		}
+		synchronized(this) {
+			if(mPendingFile != null) {
+				// the previous capture never returned a result, its file is left to the sweeper as an orphan if it stays empty
+				mCacheSweeper.release(mPendingFile);
+			}
+			mPendingFile = file;
+		}
+		requestRefill();
+		return file;
+	}
+
+
+	private void requestRefill() {
+		if(!mRefillPending.compareAndSet(false, true)) {
+			return;
+		}
+		PhotoManager.getImportExecutor().execute(new PhotoJob(PhotoJob.Priority.INTERACTIVE, null, new PhotoJob.Work() {
+			@Override
+			public void run(PhotoJob job) {
+				mRefillPending.set(false);
+				refill();
+			}
+		}));
+	}
+
+
+	private void refill() {
+		try {
+			while(true) {
+				synchronized(this) {
+					if(mEnded || mReadyFiles.size() >= mPreallocatedFiles) {
+						return;
+					}
+				}
+				final File file = createFile();
+				synchronized(this) {
+					if(!mEnded) {
+						mReadyFiles.addLast(file);
+						continue;
+					}
+				}
+				deleteFile(file);
+				return;
+			}
+		} catch(IOException e) {
+			// the next launch creates its file itself
+			e.printStackTrace();
+		}
+	}
+
+
+	/**
+	 * creates an empty output file retained in the sweeper, so it is not deleted as an orphan while it waits for a capture
+	 */
+	private File createFile() throws IOException {
+		final File file;
+		synchronized(mStorageLock) {
+			if(mStorageDir == null) {
+				mStorageDir = PhotoManager.getCaptureDir(mContext, mDirName, false);
+				if(mStorageDir == null) {
+					throw new IOException("Cannot create the capture directory " + mDirName);
+				}
+			}
+			file = PhotoManager.createCaptureFile(mStorageDir, mTimeStampFormat);
+		}
+		mCacheSweeper.retain(file);
+		return file;
+	}
+
+
+	private void deleteFile(File file) {
+		mCacheSweeper.release(file);
+		file.delete();
+	}
+
+
+	private void deleteInBackground(final List<File> files) {
+		if(files.isEmpty()) {
+			return;
+		}
+		PhotoManager.getImportExecutor().execute(new PhotoJob(PhotoJob.Priority.BULK, null, new PhotoJob.Work() {
+			@Override
+			public void run(PhotoJob job) {
+				for(File file : files) {
+					deleteFile(file);
+				}
+			}
+		}));
+	}
+}
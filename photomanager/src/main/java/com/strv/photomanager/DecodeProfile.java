@@ -0,0 +1,101 @@
+package com.strv.photomanager;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+
+/**
+ * pixel format and BitmapFactory flags the source images are decoded with - the decoded bitmap is the largest one of a scaling,
+ * so decoding opaque images in RGB_565 halves the memory a scaling needs, the scaled output is always drawn in ARGB_8888
+ */
+public final class DecodeProfile {
+
+	/**
+	 * cheapest valid config - opaque images (JPEG) are decoded in dithered RGB_565 and images with alpha in ARGB_8888,
+	 * the decoder prefers speed over quality, the default profile of PhotoManager - RGB_565 loses color depth (visible
+	 * on gradients like the sky) and the dither noise makes the JPEG outputs larger, so a byte budget is met with a lower quality,
+	 * {@link #QUALITY} avoids both at twice the memory
+	 */
+	public static final DecodeProfile AUTO = new DecodeProfile(null, false, true, false);
+
+	/**
+	 * every image is decoded in ARGB_8888 and the decoder prefers quality over speed, e.g. for apps showing photos with smooth gradients
+	 */
+	public static final DecodeProfile QUALITY = new DecodeProfile(Bitmap.Config.ARGB_8888, true, false, false);
+
+	/**
+	 * every image is decoded in ARGB_8888 with the default settings of BitmapFactory
+	 */
+	public static final DecodeProfile DEFAULT = new DecodeProfile(Bitmap.Config.ARGB_8888, false, false, false);
+
+	private final Bitmap.Config mConfig;
+	private final boolean mPreferQualityOverSpeed;
+	private final boolean mDither;
+	private final boolean mScaled;
+
+
+	/**
+	 * @param config                 config of the decoded bitmaps, null to pick the cheapest valid one for every image,
+	 *                               RGB_565 is only used for opaque images, images with alpha are decoded in ARGB_8888
+	 * @param preferQualityOverSpeed value of BitmapFactory.Options.inPreferQualityOverSpeed, a more accurate but slower JPEG decode
+	 * @param dither                 value of BitmapFactory.Options.inDither, dithering reduces banding of RGB_565 bitmaps
+	 * @param scaled                 value of BitmapFactory.Options.inScaled, images are scaled for the density of the screen
+	 *                               only if it is set
+	 */
+	public DecodeProfile(Bitmap.Config config, boolean preferQualityOverSpeed, boolean dither, boolean scaled) {
+		mConfig = config;
+		mPreferQualityOverSpeed = preferQualityOverSpeed;
+		mDither = dither;
+		mScaled = scaled;
+	}
+
+
+	/**
+	 * @param opaque true if the image has no alpha channel
+	 * @return config the image is decoded with
+	 */
+	public Bitmap.Config getConfig(boolean opaque) {
+		if(mConfig == null) {
+			return opaque ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+		}
+		// RGB_565 cannot hold the alpha channel
+		return mConfig == Bitmap.Config.RGB_565 && !opaque ? Bitmap.Config.ARGB_8888 : mConfig;
+	}
+
+
+	public boolean isPreferQualityOverSpeed() {
+		return mPreferQualityOverSpeed;
+	}
+
+
+	public boolean isDither() {
+		return mDither;
+	}
+
+
+	public boolean isScaled() {
+		return mScaled;
+	}
+
+
+	/**
+	 * sets the config and the flags of the profile to the options
+	 *
+	 * @param options options of the decode
+	 * @param opaque  true if the image has no alpha channel
+	 */
+	@SuppressWarnings("deprecation")
+	void apply(BitmapFactory.Options options, boolean opaque) {
+		options.inPreferredConfig = getConfig(opaque);
+		options.inPreferQualityOverSpeed = mPreferQualityOverSpeed;
+		options.inDither = mDither;
+		options.inScaled = mScaled;
+	}
+
+
+	@Override
+	public String toString() {
+		return (mConfig != null ? mConfig.name() : "AUTO") + (mPreferQualityOverSpeed ? " quality" : "") + (mDither ? " dither" : "")
+				+ (mScaled ? " scaled" : "");
+	}
+}
@@ -0,0 +1,159 @@
+package com.strv.photomanager;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.UriPermission;
+import android.net.Uri;
+import android.os.Build;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * imports a list of Uris in parallel on the given executor, every file is delivered on the main thread as soon as it is ready
+ * and the whole batch is reported once the last Uri is done
+ *
+ * the batch is recorded in the job journal, so if the process is killed halfway through it can be resumed with only the Uris
+ * that were not imported yet - the read grant of a content Uri ends with the process, so the batch takes a persistable grant
+ * for every Uri that offers one (e.g. Uris from ACTION_OPEN_DOCUMENT) until the batch ends, other content Uris fail when resumed
+ */
+class ImportBatch extends JournaledBatch<Uri> {
+
+	static final String JOURNAL_TYPE = "import";
+
+	private static final char GRANT_TAKEN = '1';
+	private static final char GRANT_NOT_TAKEN = '0';
+
+	private final PhotoManager.OnFilesFromUrisExtractedListener mListener;
+	// persistable grants taken by the batch, they are released when it ends
+	private final String mGrants;
+
+
+	ImportBatch(Context context, List<Uri> uris, PhotoJob.Priority priority, PhotoManager.OnFilesFromUrisExtractedListener listener) {
+		this(context, uris, null, priority, listener);
+	}
+
+
+	/**
+	 * resumes a batch interrupted by the death of the process, the files imported before are part of the batch result
+	 * but only the remaining Uris are imported and reported one by one
+	 */
+	ImportBatch(Context context, JobJournal.Batch journalBatch, PhotoJob.Priority priority, PhotoManager.OnFilesFromUrisExtractedListener listener) {
+		this(context, parseUris(journalBatch.getInputs()), journalBatch, priority, listener);
+	}
+
+
+	private ImportBatch(Context context, List<Uri> uris, JobJournal.Batch journalBatch, PhotoJob.Priority priority, PhotoManager.OnFilesFromUrisExtractedListener listener) {
+		super(context, JOURNAL_TYPE, uris, journalBatch, priority);
+		mListener = listener;
+		if(journalBatch == null) {
+			mGrants = takePersistableGrants(mContext, mInputs);
+		} else {
+			// batches journaled by older versions have no grants
+			mGrants = journalBatch.getArgs().isEmpty() ? "" : journalBatch.getArgs().get(0);
+		}
+	}
+
+
+	@Override
+	File run(int index, PhotoJob job) throws IOException {
+		return UriImporter.importUri(mContext, mInputs.get(index), job);
+	}
+
+
+	@Override
+	List<String> getJournalArgs() {
+		return Collections.singletonList(mGrants);
+	}
+
+
+	@Override
+	String encodeInput(Uri uri) {
+		return uri.toString();
+	}
+
+
+	@Override
+	void onItemDone(Uri uri, File result) {
+		if(mListener != null) {
+			mListener.onFileFromUriExtracted(uri, result);
+		}
+	}
+
+
+	@Override
+	void onBatchDone(List<File> results) {
+		if(mListener != null) {
+			mListener.onFilesFromUrisExtracted(results);
+		}
+	}
+
+
+	@Override
+	void onBatchEnded() {
+		if(Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+			return;
+		}
+		final ContentResolver contentResolver = mContext.getContentResolver();
+		for(int i = 0; i < mGrants.length() && i < mInputs.size(); i++) {
+			if(mGrants.charAt(i) != GRANT_TAKEN) {
+				continue;
+			}
+			try {
+				contentResolver.releasePersistableUriPermission(mInputs.get(i), Intent.FLAG_GRANT_READ_URI_PERMISSION);
+			} catch(SecurityException e) {
+				// the grant was revoked in the meantime
+			}
+		}
+	}
+
+
+	/**
+	 * takes a persistable read grant for every content Uri that offers one and is not persisted by the app already,
+	 * the grants held by the app itself are left alone when the batch ends
+	 *
+	 * @return one character per Uri telling whether the grant was taken by the batch
+	 */
+	private static String takePersistableGrants(Context context, List<Uri> uris) {
+		final char[] grants = new char[uris.size()];
+		Arrays.fill(grants, GRANT_NOT_TAKEN);
+		if(Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+			return new String(grants);
+		}
+		final ContentResolver contentResolver = context.getContentResolver();
+		final List<Uri> persistedUris = new ArrayList<Uri>();
+		for(UriPermission permission : contentResolver.getPersistedUriPermissions()) {
+			if(permission.isReadPermission()) {
+				persistedUris.add(permission.getUri());
+			}
+		}
+		for(int i = 0; i < uris.size(); i++) {
+			final Uri uri = uris.get(i);
+			if(!"content".equals(uri.getScheme()) || persistedUris.contains(uri)) {
+				continue;
+			}
+			try {
+				contentResolver.takePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+				grants[i] = GRANT_TAKEN;
+			} catch(SecurityException e) {
+				// the Uri was not granted with FLAG_GRANT_PERSISTABLE_URI_PERMISSION, it cannot be read after a restart
+			}
+		}
+		return new String(grants);
+	}
+
+
+	private static List<Uri> parseUris(List<String> inputs) {
+		final List<Uri> uris = new ArrayList<Uri>(inputs.size());
+		for(String input : inputs) {
+			uris.add(Uri.parse(input));
+		}
+		return uris;
+	}
+}
@@ -0,0 +1,239 @@
+package com.strv.photomanager;
+
+import android.content.Context;
+import android.os.Handler;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * runs the items of a batch in parallel on the given executor, every result is delivered on the main thread as soon as it is ready
+ * and the whole batch is reported once the last item is done
+ *
+ * the batch is recorded in the job journal, so if the process is killed halfway through it can be resumed with only the items
+ * that were not done yet, the items done before are part of the batch result without being reported one by one,
+ * all the outputs are retained in the cache sweeper until the batch is delivered
+ *
+ * @param <I> type of the inputs of the items
+ */
+abstract class JournaledBatch<I> {
+
+	private static final String TAG = JournaledBatch.class.getSimpleName();
+
+	final Context mContext;
+	final List<I> mInputs;
+	final File[] mResults;
+	final PhotoJob mJob;
+	private final String mJournalType;
+	private final AtomicInteger mRemaining;
+	private final Handler mMainHandler;
+	private final JobJournal mJournal;
+	private final JobJournal.Batch mJournalBatch;
+	// items done by the process that died, they are not run again
+	private final boolean[] mDoneBefore;
+	// outputs retained in the cache sweeper until the batch is delivered
+	private final boolean[] mRetained;
+	private String mJournalBatchId;
+
+
+	/**
+	 * @param journalType  type the batch is recorded with in the journal
+	 * @param journalBatch batch recorded in the journal by a process that died or null for a new batch
+	 */
+	JournaledBatch(Context context, String journalType, List<I> inputs, JobJournal.Batch journalBatch, PhotoJob.Priority priority) {
+		mContext = context.getApplicationContext();
+		mJournalType = journalType;
+		mInputs = new ArrayList<I>(inputs);
+		mResults = new File[mInputs.size()];
+		mJournal = PhotoManager.getJobJournal(mContext);
+		mJournalBatch = journalBatch;
+		mDoneBefore = new boolean[mInputs.size()];
+		mRetained = new boolean[mInputs.size()];
+		int remaining = mInputs.size();
+		if(journalBatch != null) {
+			final CacheSweeper cacheSweeper = PhotoManager.getCacheSweeper(mContext);
+			for(int i = 0; i < mResults.length; i++) {
+				if(!journalBatch.isDone(i)) {
+					continue;
+				}
+				final File output = journalBatch.getOutput(i);
+				if(output != null) {
+					// the sweep at the end of the batch must not delete the outputs of the process that died before they are delivered
+					cacheSweeper.retain(output);
+					if(!output.exists()) {
+						// swept since the journal was read, the item is run again
+						cacheSweeper.release(output);
+						continue;
+					}
+					mResults[i] = output;
+					mRetained[i] = true;
+				}
+				mDoneBefore[i] = true;
+				remaining--;
+			}
+		}
+		mRemaining = new AtomicInteger(remaining);
+		mMainHandler = PhotoExecutors.getMainHandler();
+		mJob = new PhotoJob(priority, null, null);
+		mJob.setCallbackExecutor(PhotoExecutors.getMainExecutor());
+	}
+
+
+	/**
+	 * @param executor executor the jobs of the batch are run on
+	 * @return job representing the whole batch, cancelling it cancels all the jobs of the batch
+	 */
+	PhotoJob start(Executor executor) {
+		if(mInputs.isEmpty()) {
+			mJob.markDone();
+			deliverBatch();
+			return mJob;
+		}
+		if(mJournalBatch != null) {
+			mJournalBatchId = mJournalBatch.getId();
+		} else {
+			final List<String> inputs = new ArrayList<String>(mInputs.size());
+			for(I input : mInputs) {
+				inputs.add(encodeInput(input));
+			}
+			mJournalBatchId = mJournal.beginBatch(mJournalType, getJournalArgs(), inputs);
+		}
+		if(mRemaining.get() == 0) {
+			endBatch();
+			return mJob;
+		}
+		for(int i = 0; i < mInputs.size(); i++) {
+			if(mDoneBefore[i]) {
+				continue;
+			}
+			final int index = i;
+			executor.execute(new PhotoJob(mJob.getPriority(), mJob, new PhotoJob.Work() {
+				@Override
+				public void run(PhotoJob job) {
+					runItem(index, job);
+				}
+			}));
+		}
+		return mJob;
+	}
+
+
+	/**
+	 * runs a single item, it is called on a thread of the executor
+	 *
+	 * @return output of the item retained in the cache sweeper, the batch releases it once it is delivered, or null if it cannot be made
+	 * @throws IOException           is thrown if the item fails, it is recorded as failed and not run again after a restart
+	 * @throws CancellationException is thrown if the job was cancelled
+	 */
+	abstract File run(int index, PhotoJob job) throws IOException;
+
+
+	/**
+	 * @return parameters shared by all the items that are needed to resume the batch
+	 */
+	abstract List<String> getJournalArgs();
+
+
+	abstract String encodeInput(I input);
+
+
+	/**
+	 * reports the result of a single item on the main thread, it is not called for a cancelled batch
+	 */
+	abstract void onItemDone(I input, File result);
+
+
+	/**
+	 * reports the results of the whole batch on the main thread, it is not called for a cancelled batch
+	 */
+	abstract void onBatchDone(List<File> results);
+
+
+	/**
+	 * called once the batch is dropped from the journal, it will not be resumed anymore
+	 */
+	void onBatchEnded() {
+	}
+
+
+	private void runItem(final int index, PhotoJob job) {
+		final I input = mInputs.get(index);
+		File result = null;
+		boolean cancelled = false;
+		try {
+			result = run(index, job);
+		} catch(CancellationException e) {
+			// the listener is not called for a cancelled batch
+			cancelled = true;
+		} catch(IOException e) {
+			Log.w(TAG, "Cannot " + mJournalType + " " + input, e);
+		} catch(RuntimeException e) {
+			// a single broken item (e.g. a revoked permission) must not stop the rest of the batch
+			Log.w(TAG, "Cannot " + mJournalType + " " + input, e);
+		}
+		mResults[index] = result;
+		mRetained[index] = result != null;
+		if(result != null) {
+			mJournal.complete(mJournalBatchId, index, result);
+		} else if(!cancelled) {
+			// a broken item would fail again after a restart
+			mJournal.fail(mJournalBatchId, index);
+		}
+
+		final File itemResult = result;
+		mMainHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				if(!mJob.isCancelled()) {
+					onItemDone(input, itemResult);
+				}
+			}
+		});
+
+		if(mRemaining.decrementAndGet() == 0) {
+			// a cancelled batch is dropped as well, it is not resumed
+			endBatch();
+			PhotoManager.requestCacheSweep(mContext);
+		}
+	}
+
+
+	private void endBatch() {
+		mJournal.endBatch(mJournalBatchId);
+		onBatchEnded();
+		mJob.markDone();
+		deliverBatch();
+	}
+
+
+	private void deliverBatch() {
+		mMainHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				if(!mJob.isCancelled()) {
+					onBatchDone(Collections.unmodifiableList(Arrays.asList(mResults)));
+				}
+				releaseResults();
+			}
+		});
+	}
+
+
+	private void releaseResults() {
+		final CacheSweeper cacheSweeper = PhotoManager.getCacheSweeper(mContext);
+		for(int i = 0; i < mResults.length; i++) {
+			if(mRetained[i]) {
+				cacheSweeper.release(mResults[i]);
+			}
+		}
+	}
+}
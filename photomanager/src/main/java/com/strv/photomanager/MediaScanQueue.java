@@ -0,0 +1,179 @@
+package com.strv.photomanager;
+
+import android.content.Context;
+import android.media.MediaScannerConnection;
+import android.net.Uri;
+import android.os.Handler;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+
+/**
+ * publishes files to the system gallery in batches - the files added within a short window are passed to a single
+ * MediaScannerConnection.scanFile() call, so a burst of photos costs one scanner connection instead of a broadcast and a scan per file
+ *
+ * the window starts with the first file of a batch and is not extended by the next ones, so no file waits longer than the window,
+ * pending files should be flushed when the app goes away, e.g. in onStop() of the last activity
+ */
+public class MediaScanQueue {
+
+	public static final long DEFAULT_WINDOW_MILLIS = 500;
+
+	private final Context mContext;
+	private final long mWindowMillis;
+	private final Handler mHandler = PhotoExecutors.getMainHandler();
+	private final Runnable mFlushRunnable = new Runnable() {
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+	private LinkedHashSet<String> mPendingPaths = new LinkedHashSet<String>();
+	private OnBatchScannedListener mListener;
+	private int mBatchCount;
+	private int mFileCount;
+
+
+	public MediaScanQueue(Context context) {
+		this(context, DEFAULT_WINDOW_MILLIS);
+	}
+
+
+	/**
+	 * @param context      context of the app/activity
+	 * @param windowMillis time the files are collected for after the first file of a batch is added
+	 */
+	public MediaScanQueue(Context context, long windowMillis) {
+		mContext = context.getApplicationContext();
+		mWindowMillis = windowMillis;
+	}
+
+
+	/**
+	 * sets the listener notified once for every batch when the scanner is done with all its files
+	 *
+	 * @param listener listener called on the main thread, can be null
+	 */
+	public synchronized void setOnBatchScannedListener(OnBatchScannedListener listener) {
+		mListener = listener;
+	}
+
+
+	/**
+	 * adds the file to the current batch, a file added again before the batch is scanned is scanned only once
+	 *
+	 * @param file file that should be made public in the system gallery
+	 */
+	public synchronized void add(File file) {
+		if(mPendingPaths.add(file.getAbsolutePath()) && mPendingPaths.size() == 1) {
+			mHandler.postDelayed(mFlushRunnable, mWindowMillis);
+		}
+	}
+
+
+	/**
+	 * scans the pending files right away without waiting for the end of the window
+	 */
+	public void flush() {
+		final List<String> paths;
+		final OnBatchScannedListener listener;
+		synchronized(this) {
+			mHandler.removeCallbacks(mFlushRunnable);
+			if(mPendingPaths.isEmpty()) {
+				return;
+			}
+			paths = new ArrayList<String>(mPendingPaths);
+			mPendingPaths = new LinkedHashSet<String>();
+			listener = mListener;
+			mBatchCount++;
+			mFileCount += paths.size();
+		}
+
+		final String[] pathArray = paths.toArray(new String[paths.size()]);
+		final String[] mimeTypes = new String[pathArray.length];
+		for(int i = 0; i < pathArray.length; i++) {
+			final OutputFormat format = OutputFormat.fromFile(new File(pathArray[i]));
+			mimeTypes[i] = format != null ? format.getMimeType() : null;
+		}
+		MediaScannerConnection.scanFile(mContext, pathArray, mimeTypes, new Batch(paths, listener));
+	}
+
+
+	/**
+	 * @return number of files waiting for the end of the window
+	 */
+	public synchronized int getPendingCount() {
+		return mPendingPaths.size();
+	}
+
+
+	/**
+	 * @return number of scanner calls made so far
+	 */
+	public synchronized int getBatchCount() {
+		return mBatchCount;
+	}
+
+
+	/**
+	 * @return number of files passed to the scanner so far
+	 */
+	public synchronized int getFileCount() {
+		return mFileCount;
+	}
+
+
+	public interface OnBatchScannedListener {
+		/**
+		 * @param paths paths of the files of the batch
+		 * @param uris  content Uris of the scanned files in the same order as the paths, null for the files the scanner couldn't add
+		 */
+		void onBatchScanned(List<String> paths, List<Uri> uris);
+	}
+
+
+	// collects the callbacks the scanner makes for every file of a batch on its own thread into a single callback
+	private class Batch implements MediaScannerConnection.OnScanCompletedListener {
+
+		private final List<String> mPaths;
+		private final OnBatchScannedListener mListener;
+		private final Uri[] mUris;
+		private int mRemaining;
+
+
+		Batch(List<String> paths, OnBatchScannedListener listener) {
+			mPaths = paths;
+			mListener = listener;
+			mUris = new Uri[paths.size()];
+			mRemaining = paths.size();
+		}
+
+
+		@Override
+		public void onScanCompleted(String path, Uri uri) {
+			synchronized(this) {
+				final int index = mPaths.indexOf(path);
+				if(index >= 0) {
+					mUris[index] = uri;
+				}
+				if(--mRemaining > 0) {
+					return;
+				}
+			}
+			if(mListener != null) {
+				final List<Uri> uris = Collections.unmodifiableList(Arrays.asList(mUris));
+				mHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						mListener.onBatchScanned(Collections.unmodifiableList(mPaths), uris);
+					}
+				});
+			}
+		}
+	}
+}
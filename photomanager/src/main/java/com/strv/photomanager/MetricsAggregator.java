@@ -0,0 +1,193 @@
+package com.strv.photomanager;
+
+import java.util.Locale;
+
+
+/**
+ * metrics listener keeping latency histograms of every stage of the jobs, so the percentiles can be read or dumped as a text report
+ * after a session, e.g. to see whether slow submissions come from the provider, the decode or the encode
+ *
+ * the histograms have a fixed number of logarithmic buckets (about 9 % wide), so the memory used doesn't grow with the number of jobs
+ */
+public class MetricsAggregator implements PhotoManager.OnMetricsListener {
+
+	private final Histogram[] mStages = new Histogram[PhotoJob.Stage.values().length];
+	private final Histogram mImports = new Histogram();
+	private final Histogram mScales = new Histogram();
+	private int mCachedCount;
+	private int mFailedCount;
+	private long mBytesRead;
+	private long mOutputBytes;
+	private long mEncodeAttempts;
+	private long mPeakBitmapBytes;
+
+
+	public MetricsAggregator() {
+		for(int i = 0; i < mStages.length; i++) {
+			mStages[i] = new Histogram();
+		}
+	}
+
+
+	@Override
+	public synchronized void onMetrics(PhotoMetrics metrics) {
+		if(!metrics.isSucceeded()) {
+			mFailedCount++;
+			return;
+		}
+		if(metrics.isCached()) {
+			mCachedCount++;
+		}
+		(metrics.getType() == PhotoMetrics.Type.IMPORT ? mImports : mScales).add(metrics.getTotalNanos());
+		for(PhotoJob.Stage stage : PhotoJob.Stage.values()) {
+			final long nanos = metrics.getDurationNanos(stage);
+			if(nanos >= 0) {
+				mStages[stage.ordinal()].add(nanos);
+			}
+		}
+		mBytesRead += metrics.getBytesRead();
+		mOutputBytes += metrics.getOutputBytes();
+		mEncodeAttempts += metrics.getEncodeAttempts();
+		mPeakBitmapBytes = Math.max(mPeakBitmapBytes, metrics.getPeakBitmapBytes());
+	}
+
+
+	/**
+	 * @param stage      stage of the jobs
+	 * @param percentile percentile from 0 to 100
+	 * @return duration of the stage in milliseconds that the given percentage of the jobs didn't exceed, -1 if there are no records
+	 */
+	public synchronized double getPercentileMillis(PhotoJob.Stage stage, double percentile) {
+		return mStages[stage.ordinal()].getPercentileMillis(percentile);
+	}
+
+
+	/**
+	 * @param type       type of the jobs
+	 * @param percentile percentile from 0 to 100
+	 * @return duration of the whole job in milliseconds that the given percentage of the jobs didn't exceed, -1 if there are no records
+	 */
+	public synchronized double getPercentileMillis(PhotoMetrics.Type type, double percentile) {
+		return (type == PhotoMetrics.Type.IMPORT ? mImports : mScales).getPercentileMillis(percentile);
+	}
+
+
+	public synchronized void reset() {
+		for(Histogram histogram : mStages) {
+			histogram.clear();
+		}
+		mImports.clear();
+		mScales.clear();
+		mCachedCount = 0;
+		mFailedCount = 0;
+		mBytesRead = 0;
+		mOutputBytes = 0;
+		mEncodeAttempts = 0;
+		mPeakBitmapBytes = 0;
+	}
+
+
+	/**
+	 * @return text report with the percentiles of every stage and the totals of all the recorded jobs
+	 */
+	public synchronized String getReport() {
+		final StringBuilder report = new StringBuilder();
+		report.append(String.format(Locale.US, "%d imports, %d scales, %d cached, %d failed%n",
+				mImports.getCount(), mScales.getCount(), mCachedCount, mFailedCount));
+		report.append(String.format(Locale.US, "%-8s %7s %10s %10s %10s %10s%n", "ms", "count", "p50", "p90", "p99", "max"));
+		appendRow(report, "import", mImports);
+		appendRow(report, "scale", mScales);
+		for(PhotoJob.Stage stage : PhotoJob.Stage.values()) {
+			appendRow(report, stage.name().toLowerCase(Locale.US), mStages[stage.ordinal()]);
+		}
+		final int encodes = mStages[PhotoJob.Stage.ENCODED.ordinal()].getCount();
+		report.append(String.format(Locale.US, "read %d B, output %d B, %.2f encode attempts per image, peak bitmaps %d B%n",
+				mBytesRead, mOutputBytes, encodes > 0 ? (double) mEncodeAttempts / encodes : 0d, mPeakBitmapBytes));
+		return report.toString();
+	}
+
+
+	@Override
+	public String toString() {
+		return getReport();
+	}
+
+
+	private static void appendRow(StringBuilder report, String name, Histogram histogram) {
+		if(histogram.getCount() == 0) {
+			return;
+		}
+		report.append(String.format(Locale.US, "%-8s %7d %10.1f %10.1f %10.1f %10.1f%n", name, histogram.getCount(),
+				histogram.getPercentileMillis(50), histogram.getPercentileMillis(90), histogram.getPercentileMillis(99), histogram.getMaxMillis()));
+	}
+
+
+	// histogram of durations from 1 us to about 4.5 hours in buckets growing by 2^(1/8)
+	private static class Histogram {
+
+		private static final int BUCKETS_PER_DOUBLING = 8;
+		private static final int BUCKETS = 34 * BUCKETS_PER_DOUBLING;
+		private static final long MIN_NANOS = 1000;
+
+		private final int[] mCounts = new int[BUCKETS];
+		private int mCount;
+		private long mMaxNanos;
+
+
+		void add(long nanos) {
+			mCounts[getBucket(nanos)]++;
+			mCount++;
+			mMaxNanos = Math.max(mMaxNanos, nanos);
+		}
+
+
+		int getCount() {
+			return mCount;
+		}
+
+
+		double getMaxMillis() {
+			return mMaxNanos / 1000000d;
+		}
+
+
+		double getPercentileMillis(double percentile) {
+			if(mCount == 0) {
+				return -1;
+			}
+			final long rank = Math.max(1, (long) Math.ceil(mCount * percentile / 100));
+			long seen = 0;
+			for(int i = 0; i < BUCKETS; i++) {
+				seen += mCounts[i];
+				if(seen >= rank) {
+					// the upper bound of the bucket, but never more than the largest recorded value
+					return Math.min(getUpperBound(i), mMaxNanos) / 1000000d;
+				}
+			}
+			return getMaxMillis();
+		}
+
+
+		void clear() {
+			for(int i = 0; i < BUCKETS; i++) {
+				mCounts[i] = 0;
+			}
+			mCount = 0;
+			mMaxNanos = 0;
+		}
+
+
+		private static int getBucket(long nanos) {
+			if(nanos <= MIN_NANOS) {
+				return 0;
+			}
+			final int bucket = (int) Math.ceil(Math.log((double) nanos / MIN_NANOS) / Math.log(2) * BUCKETS_PER_DOUBLING);
+			return Math.min(bucket, BUCKETS - 1);
+		}
+
+
+		private static double getUpperBound(int bucket) {
+			return MIN_NANOS * Math.pow(2, (double) bucket / BUCKETS_PER_DOUBLING);
+		}
+	}
+}
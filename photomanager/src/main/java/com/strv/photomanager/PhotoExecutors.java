@@ -0,0 +1,107 @@
+package com.strv.photomanager;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * default executors used by PhotoManager for background work
+ */
+final class PhotoExecutors {
+
+	private static final int KEEP_ALIVE_SECONDS = 30;
+	// imports wait mostly for the storage or the content provider, a few parallel copies keep the storage busy
+	private static final int IMPORT_THREADS = 4;
+
+	private static Handler sMainHandler;
+	private static final Executor sMainExecutor = new Executor() {
+		@Override
+		public void execute(Runnable runnable) {
+			getMainHandler().post(runnable);
+		}
+	};
+
+
+	private PhotoExecutors() {}
+
+
+	/**
+	 * creates a bounded pool for CPU heavy work (decoding, scaling, encoding) with one thread per core, the memory of the jobs
+	 * is limited by the {@link MemoryBudget} they are admitted against rather than by the number of threads,
+	 * idle threads are released after a while so the pool costs nothing when no photos are processed
+	 *
+	 * @return executor for scaling jobs
+	 */
+	static ThreadPoolExecutor newScaleExecutor() {
+		final int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new PriorityBlockingQueue<Runnable>(), new BackgroundThreadFactory("PhotoManager-scale"));
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+
+	/**
+	 * creates a bounded pool for I/O heavy work (copying images from content providers)
+	 *
+	 * @return executor for import jobs
+	 */
+	static ThreadPoolExecutor newImportExecutor() {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(IMPORT_THREADS, IMPORT_THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new PriorityBlockingQueue<Runnable>(), new BackgroundThreadFactory("PhotoManager-import"));
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+
+	/**
+	 * @return handler delivering callbacks on the main thread
+	 */
+	static synchronized Handler getMainHandler() {
+		if(sMainHandler == null) {
+			sMainHandler = new Handler(Looper.getMainLooper());
+		}
+		return sMainHandler;
+	}
+
+
+	/**
+	 * @return executor posting the runnables to the main thread
+	 */
+	static Executor getMainExecutor() {
+		return sMainExecutor;
+	}
+
+
+	// names the threads and lowers their priority so photo processing doesn't compete with the UI thread
+	private static class BackgroundThreadFactory implements ThreadFactory {
+
+		private final String mName;
+		private final AtomicInteger mCount = new AtomicInteger(1);
+
+
+		public BackgroundThreadFactory(String name) {
+			mName = name;
+		}
+
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			return new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+					runnable.run();
+				}
+			}, mName + " #" + mCount.getAndIncrement());
+		}
+	}
+}
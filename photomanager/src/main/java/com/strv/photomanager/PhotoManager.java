@@ -2,13 +2,16 @@ package com.strv.photomanager;
 
 import android.Manifest;
 import android.app.Activity;
+import android.app.ActivityManager;
+import android.content.ClipData;
 import android.content.Context;
 import android.content.Intent;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Environment;
+import android.os.ParcelFileDescriptor;
 import android.provider.MediaStore;
 import android.support.annotation.CheckResult;
 import android.support.annotation.StringRes;
@@ -16,16 +19,19 @@ import android.support.v4.app.Fragment;
 import android.support.v4.content.ContextCompat;
 import android.util.Log;
 
-import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileFilter;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 public class PhotoManager {
@@ -33,6 +39,33 @@ public class PhotoManager {
 	public static final int REQUEST_IMAGE_CAPTURE = 168;
 	public static final int REQUEST_PERMISSION_READ_EXTERNAL_STORAGE = 169;
 
+	private static final String TAG = PhotoManager.class.getSimpleName();
+	private static final String IMPORT_CACHE_DIR_NAME = "photomanager-imports";
+	private static final String RENDITION_CACHE_DIR_NAME = "photomanager-renditions";
+	private static final long DEFAULT_RENDITION_CACHE_BYTES = 64 * 1024 * 1024;
+	private static final long DEFAULT_CACHE_QUOTA_BYTES = 256 * 1024 * 1024;
+	private static final String JOB_JOURNAL_FILE_NAME = "photomanager-jobs.journal";
+	private static final String CAPTURE_FILE_PREFIX = "JPEG_";
+	static final String CAPTURE_TIME_STAMP_PATTERN = "yyyyMMdd_HHmmss";
+	private static final String SCALED_FILE_PREFIX = "photo";
+	// scaling jobs running in parallel may reserve this part of the heap limit for their bitmaps
+	private static final int MEMORY_BUDGET_DIVISOR = 3;
+
+	private static Executor sExecutor;
+	private static Executor sImportExecutor;
+	private static BitmapPool sBitmapPool;
+	private static ImportCache sImportCache;
+	private static RenditionCache sRenditionCache;
+	private static CacheSweeper sCacheSweeper;
+	private static MemoryBudget sMemoryBudget;
+	private static MediaScanQueue sMediaScanQueue;
+	private static JobJournal sJobJournal;
+	private static final AtomicBoolean sCacheSweepPending = new AtomicBoolean();
+	private static long sTiledDecodeThreshold = ImageScaler.DEFAULT_TILED_DECODE_THRESHOLD_PIXELS;
+	private static DecodeProfile sDecodeProfile = DecodeProfile.AUTO;
+	// read for every job without locking, jobs only check it for null when no listener is set
+	private static volatile OnMetricsListener sMetricsListener;
+
 
 	/**
 	 * launches a camera app that is installed on the phone, launches an app picker if more options are available
@@ -85,6 +118,33 @@ public class PhotoManager {
 	}
 
 
+	/**
+	 * starts a session of photos taken one after another, the storage directory is resolved and the output files are created
+	 * in the background, so every launch of the camera by the session is only a hand-off of a ready file
+	 *
+	 * @param context        context of the app/activity
+	 * @param galleryDirName name of directory where the taken pictures are supposed to be stored
+	 * @return session that launches the camera and collects the captured photos until it is ended
+	 */
+	public static CaptureSession startCaptureSession(Context context, String galleryDirName) {
+		final CaptureSession captureSession = new CaptureSession(context, galleryDirName, CaptureSession.DEFAULT_PREALLOCATED_FILES);
+		captureSession.start();
+		return captureSession;
+	}
+
+
+	/**
+	 * starts a session of photos taken one after another,
+	 * the directory name where the images are stored is based on the package name of the app using this PhotoManager
+	 *
+	 * @param context context of the app/activity
+	 * @return session that launches the camera and collects the captured photos until it is ended
+	 */
+	public static CaptureSession startCaptureSession(Context context) {
+		return startCaptureSession(context, getDefaultDir(context));
+	}
+
+
 	/**
 	 * launches an image picker of recently used images
 	 *
@@ -92,7 +152,7 @@ public class PhotoManager {
 	 * @param galleryChooserTitle title of the gallery app chooser
 	 */
 	public static void launchGalleryRecentOnly(Fragment fragment, String galleryChooserTitle) {
-		Intent cameraLauncher = makeGalleryRecentChooserIntent(galleryChooserTitle);
+		Intent cameraLauncher = makeGalleryRecentChooserIntent(galleryChooserTitle, false);
 		fragment.startActivityForResult(cameraLauncher, REQUEST_IMAGE_CAPTURE);
 	}
 
@@ -108,6 +168,30 @@ public class PhotoManager {
 	}
 
 
+	/**
+	 * launches an image picker of recently used images that lets the user pick more images at once (on Jelly Bean MR2 and newer),
+	 * the result should be handled by {@link #onActivityResultMultiple(Fragment, int, int, Intent, Uri, OnFilesFromUrisExtractedListener)}
+	 *
+	 * @param fragment            fragment calling the recent pictures intent
+	 * @param galleryChooserTitle title of the gallery app chooser
+	 */
+	public static void launchGalleryRecentMultiple(Fragment fragment, String galleryChooserTitle) {
+		Intent cameraLauncher = makeGalleryRecentChooserIntent(galleryChooserTitle, true);
+		fragment.startActivityForResult(cameraLauncher, REQUEST_IMAGE_CAPTURE);
+	}
+
+
+	/**
+	 * launches an image picker of recently used images that lets the user pick more images at once (on Jelly Bean MR2 and newer)
+	 *
+	 * @param fragment                 fragment calling the recent pictures intent
+	 * @param galleryChooserTitleResId string resolution id of a title of the gallery app chooser
+	 */
+	public static void launchGalleryRecentMultiple(Fragment fragment, @StringRes int galleryChooserTitleResId) {
+		launchGalleryRecentMultiple(fragment, fragment.getString(galleryChooserTitleResId));
+	}
+
+
 	/**
 	 * creates a camera chooser for camera with all the apps on the device that support taking pictures
 	 *
@@ -115,7 +199,7 @@ public class PhotoManager {
 	 * @param cameraChooserTitle title of the camera app chooser
 	 * @return Intent that when run will initiate an app chooser
 	 */
-	private static Intent makeCameraChooserIntent(Uri outputFileUri, String cameraChooserTitle) {
+	static Intent makeCameraChooserIntent(Uri outputFileUri, String cameraChooserTitle) {
 		return Intent.createChooser(makeCameraIntent(outputFileUri), cameraChooserTitle);
 	}
 
@@ -137,10 +221,11 @@ public class PhotoManager {
 	 * creates an app chooser for picking recent pictures from gallery
 	 *
 	 * @param galleryChooserTitle title of the chooser
+	 * @param allowMultiple       flag if the user can pick more images at once
 	 * @return Intent that when run will initiate a gallery chooser for apps that can display recently used images
 	 */
-	private static Intent makeGalleryRecentChooserIntent(String galleryChooserTitle) {
-		Intent galleryIntent = makeGalleryRecentIntent();
+	private static Intent makeGalleryRecentChooserIntent(String galleryChooserTitle, boolean allowMultiple) {
+		Intent galleryIntent = makeGalleryRecentIntent(allowMultiple);
 		return Intent.createChooser(galleryIntent, galleryChooserTitle);
 	}
 
@@ -148,14 +233,16 @@ public class PhotoManager {
 	/**
 	 * creates an Intent that when run will start an app that lets the user pick from recently used images
 	 *
+	 * @param allowMultiple flag if the user can pick more images at once
 	 * @return Intent that when run will start an app that can display recently used images
 	 */
-	private static Intent makeGalleryRecentIntent() {
+	private static Intent makeGalleryRecentIntent(boolean allowMultiple) {
 		Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
 		// The MIME data type filter
 		intent.setType("image/*");
 		// Only return URIs that can be opened with ContentResolver
 		intent.addCategory(Intent.CATEGORY_OPENABLE);
+		putAllowMultiple(intent, allowMultiple);
 		// Create the chooser Intent
 		return intent;
 	}
@@ -168,7 +255,7 @@ public class PhotoManager {
 	 * @param galleryChooserTitle title of the app chooser for the case when there are more gallery apps installed on the device
 	 */
 	public static void launchGalleryOnly(Fragment fragment, String galleryChooserTitle) {
-		Intent cameraLauncher = makeGalleryChooserIntent(galleryChooserTitle);
+		Intent cameraLauncher = makeGalleryChooserIntent(galleryChooserTitle, false);
 		fragment.startActivityForResult(cameraLauncher, REQUEST_IMAGE_CAPTURE);
 	}
 
@@ -184,29 +271,69 @@ public class PhotoManager {
 	}
 
 
+	/**
+	 * launches gallery from which the user can pick more images at once (on Jelly Bean MR2 and newer),
+	 * the result should be handled by {@link #onActivityResultMultiple(Fragment, int, int, Intent, Uri, OnFilesFromUrisExtractedListener)}
+	 *
+	 * @param fragment            fragment that started the gallery picker
+	 * @param galleryChooserTitle title of the app chooser for the case when there are more gallery apps installed on the device
+	 */
+	public static void launchGalleryMultiple(Fragment fragment, String galleryChooserTitle) {
+		Intent cameraLauncher = makeGalleryChooserIntent(galleryChooserTitle, true);
+		fragment.startActivityForResult(cameraLauncher, REQUEST_IMAGE_CAPTURE);
+	}
+
+
+	/**
+	 * launches gallery from which the user can pick more images at once (on Jelly Bean MR2 and newer)
+	 *
+	 * @param fragment                 fragment that started the gallery picker
+	 * @param galleryChooserTitleResId string resolution id of the title of the app chooser for the case when there are more gallery apps installed on the device
+	 */
+	public static void launchGalleryMultiple(Fragment fragment, @StringRes int galleryChooserTitleResId) {
+		launchGalleryMultiple(fragment, fragment.getString(galleryChooserTitleResId));
+	}
+
+
 	/**
 	 * creates an app chooser for picking pictures from gallery
 	 *
 	 * @param galleryChooserTitle title of the chooser
+	 * @param allowMultiple       flag if the user can pick more images at once
 	 * @return Intent that when run will initiate a gallery chooser for apps that can display recently used images
 	 */
-	private static Intent makeGalleryChooserIntent(String galleryChooserTitle) {
-		return Intent.createChooser(makeGalleryIntent(), galleryChooserTitle);
+	private static Intent makeGalleryChooserIntent(String galleryChooserTitle, boolean allowMultiple) {
+		return Intent.createChooser(makeGalleryIntent(allowMultiple), galleryChooserTitle);
 	}
 
 
 	/**
 	 * creates an Intent that when run will start an app that lets the user pick an image from gallery
 	 *
+	 * @param allowMultiple flag if the user can pick more images at once
 	 * @return Intent that when run will start an app that can display recently used images
 	 */
-	private static Intent makeGalleryIntent() {
+	private static Intent makeGalleryIntent(boolean allowMultiple) {
 		Intent intent = new Intent(Intent.ACTION_PICK, MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
 		intent.setType("image/*");
+		putAllowMultiple(intent, allowMultiple);
 		return intent;
 	}
 
 
+	/**
+	 * lets the picker return more images at once, the images are then returned in ClipData of the result Intent
+	 *
+	 * @param intent        Intent of the picker
+	 * @param allowMultiple flag if the user can pick more images at once
+	 */
+	private static void putAllowMultiple(Intent intent, boolean allowMultiple) {
+		if(allowMultiple && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+			intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+		}
+	}
+
+
 	/**
 	 * launches an app picker with all camera and gallery apps installed on the device
 	 *
@@ -267,7 +394,7 @@ public class PhotoManager {
 	 */
 	private static Intent makeCameraGalleryChooserIntent(Uri outputFileUri, String galleryChooserTitle) {
 		Intent cameraIntent = makeCameraIntent(outputFileUri);
-		Intent galleryIntent = makeGalleryIntent();
+		Intent galleryIntent = makeGalleryIntent(false);
 		// Only return URIs that can be opened with ContentResolver
 		Intent chooserIntent = Intent.createChooser(galleryIntent, galleryChooserTitle);
 		chooserIntent.putExtra(Intent.EXTRA_INITIAL_INTENTS, new Intent[]{cameraIntent});
@@ -327,18 +454,28 @@ public class PhotoManager {
 	 * @throws IOException is thrown if the file creation was not successful because of some I/O failure
 	 */
 	private static File createImageFile(Context context, String dirName, boolean createImageInCache) throws IOException {
-		// Create an image file name
-		String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
-		String imageFileName = "JPEG_" + timeStamp + "_";
+		final File storageDir = getCaptureDir(context, dirName, createImageInCache);
+		if(storageDir == null) {
+			return null;
+		}
+		return createCaptureFile(storageDir, new SimpleDateFormat(CAPTURE_TIME_STAMP_PATTERN, Locale.US));
+	}
+
+
+	/**
+	 * resolves the directory where the captured images are stored and creates it if it doesn't exist yet
+	 *
+	 * @param context            context of the app/activity
+	 * @param dirName            name of the directory where the files should be stored
+	 * @param createImageInCache flag if the directory should be in cache (if set to true) or in external storage (if set to false)
+	 * @return directory of the captured images, null if there is no storage or the directory cannot be created
+	 */
+	static File getCaptureDir(Context context, String dirName, boolean createImageInCache) {
 		final File[] picturesDir;
 		final String externalStorageState = Environment.getExternalStorageState();
 		if(createImageInCache) {
 			picturesDir = new File[1];
-			if(Environment.MEDIA_MOUNTED.equals(externalStorageState)) {
-				picturesDir[0] = context.getExternalCacheDir();
-			} else {
-				picturesDir[0] = context.getCacheDir();
-			}
+			picturesDir[0] = getCacheDir(context);
 		} else {
 			if(Environment.MEDIA_MOUNTED.equals(externalStorageState)) {
 				if(isLollipopOrHigher()) {
@@ -363,7 +500,23 @@ public class PhotoManager {
 		if(!(mkDirsOk || isDir)) {
 			return null;
 		}
+		// the file stays empty if the app dies before the photo is taken
+		getCacheSweeper(context).addOrphanDirectory(storageDir, new PrefixFileFilter(CAPTURE_FILE_PREFIX));
+		return storageDir;
+	}
 
+
+	/**
+	 * creates an empty file with a unique timestamp the camera app writes the captured image to
+	 *
+	 * @param storageDir      directory resolved by {@link #getCaptureDir(Context, String, boolean)}
+	 * @param timeStampFormat format of the timestamp in the name of the file, it is not thread safe
+	 * @return created file
+	 * @throws IOException is thrown if the file creation was not successful because of some I/O failure
+	 */
+	static File createCaptureFile(File storageDir, SimpleDateFormat timeStampFormat) throws IOException {
+		// Create an image file name
+		final String imageFileName = CAPTURE_FILE_PREFIX + timeStampFormat.format(new Date()) + "_";
 		return File.createTempFile(
 				imageFileName,  /* prefix */
 				".jpg",         /* suffix */
@@ -385,6 +538,19 @@ public class PhotoManager {
 	}
 
 
+	/**
+	 * @param context context of the app/activity
+	 * @return external cache directory if the external storage is available, internal cache directory otherwise
+	 */
+	static File getCacheDir(Context context) {
+		if(Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState())) {
+			return context.getExternalCacheDir();
+		} else {
+			return context.getCacheDir();
+		}
+	}
+
+
 	/**
 	 * checks if the device is running on at least Lollipop version of OS
 	 *
@@ -412,10 +578,28 @@ public class PhotoManager {
 	 * @param context  context of the app or activity
 	 * @param uri      Uri from which the File should be extracted
 	 * @param listener listener to provide the resulting File
+	 * @return handle of the job that can be used to cancel the loading, the listener is not called for a cancelled job
+	 * @throws SecurityException is thrown if the user doesn't have a permission to read the Uri (some gallery apps don't give your app correct permission to read the file
+	 *                           on the Uri - this needs to be handled on Marshmallow and newer devices to prompt the user to grant the permission
+	 */
+	public static PhotoJob loadFileFromUri(final Context context, Uri uri, OnFileFromUriExtractedListener listener) throws SecurityException {
+		return loadFileFromUri(context, uri, PhotoJob.Priority.INTERACTIVE, listener);
+	}
+
+
+	/**
+	 * loads File from Uri and returns the result in a listener callback
+	 *
+	 * @param context  context of the app or activity
+	 * @param uri      Uri from which the File should be extracted
+	 * @param priority priority of the job, interactive jobs run before bulk ones
+	 * @param listener listener to provide the resulting File
+	 * @return handle of the job that can be used to cancel the loading, the listener is not called for a cancelled job
 	 * @throws SecurityException is thrown if the user doesn't have a permission to read the Uri (some gallery apps don't give your app correct permission to read the file
 	 *                           on the Uri - this needs to be handled on Marshmallow and newer devices to prompt the user to grant the permission
 	 */
-	public static void loadFileFromUri(final Context context, Uri uri, OnFileFromUriExtractedListener listener) throws SecurityException {
+	public static PhotoJob loadFileFromUri(final Context context, final Uri uri, PhotoJob.Priority priority, final OnFileFromUriExtractedListener listener) throws SecurityException {
+		PhotoJob job = null;
 
 		//in case of the image was saved from camera
 		if(uri.getScheme().equals("file")) {
@@ -425,36 +609,157 @@ public class PhotoManager {
 			if(!file.canRead()) {
 				throw new SecurityException();
 			}
+			job = new PhotoJob(priority, null, null);
+			job.markDone();
 			if(listener != null) {
 				listener.onFileFromUriExtracted(file);
 			}
 
 		} //in case the image was saved from gallery
 		else if(uri.getScheme().equals("content")) {
-			InputStream i = null;
-			try {
-				i = context.getContentResolver().openInputStream(uri);
-			} catch(FileNotFoundException e) {
-				e.printStackTrace();
+			//the source is opened here so that a missing read permission is reported to the caller
+			final ParcelFileDescriptor fileDescriptor = UriImporter.openFileDescriptor(context, uri);
+			InputStream stream = null;
+			if(fileDescriptor == null) {
+				//the provider doesn't hand out file descriptors, it has to be read as a stream
+				try {
+					stream = context.getContentResolver().openInputStream(uri);
+				} catch(FileNotFoundException e) {
+					e.printStackTrace();
+				}
 			}
-			if(i != null) {
-				BufferedInputStream bufferedInputStream = new BufferedInputStream(i);
-				new LoadFileFromInputStreamAsyncTask(context, listener).execute(bufferedInputStream);
+			final InputStream inputStream = stream;
+			if(fileDescriptor != null || inputStream != null) {
+				job = new PhotoJob(priority, null, new PhotoJob.Work() {
+					@Override
+					public void run(final PhotoJob job) {
+						File file = null;
+						try {
+							file = UriImporter.getFileFromInputStream(context, uri, fileDescriptor, inputStream, job);
+						} catch(CancellationException e) {
+							return;
+						} catch(RuntimeException e) {
+							// e.g. a revoked permission, it is reported to the listener like any other failure
+							Log.w(TAG, "Cannot import " + uri, e);
+						}
+						deliver(context, job, file, listener);
+					}
+				});
+				job.setCallbackExecutor(PhotoExecutors.getMainExecutor());
+				getImportExecutor().execute(job);
+			}
+		}
+		return job;
+	}
+
+
+	/**
+	 * loads Files from all the Uris in parallel, every File is provided in the listener callback as soon as it is ready
+	 * and the whole batch is provided once all the Uris are done
+	 *
+	 * @param context  context of the app or activity
+	 * @param uris     Uris from which the Files should be extracted
+	 * @param listener listener to provide the resulting Files, Uris that couldn't be read (e.g. because of a missing permission) result in null
+	 * @return handle of the whole batch that can be used to cancel it, the listener is not called for a cancelled batch
+	 */
+	public static PhotoJob loadFilesFromUris(Context context, List<Uri> uris, OnFilesFromUrisExtractedListener listener) {
+		return loadFilesFromUris(context, uris, PhotoJob.Priority.BULK, listener);
+	}
+
+
+	/**
+	 * loads Files from all the Uris in parallel, every File is provided in the listener callback as soon as it is ready
+	 * and the whole batch is provided once all the Uris are done
+	 *
+	 * @param context  context of the app or activity
+	 * @param uris     Uris from which the Files should be extracted
+	 * @param priority priority of the jobs of the batch, interactive jobs run before bulk ones
+	 * @param listener listener to provide the resulting Files, Uris that couldn't be read (e.g. because of a missing permission) result in null
+	 * @return handle of the whole batch that can be used to cancel it, the listener is not called for a cancelled batch
+	 */
+	public static PhotoJob loadFilesFromUris(Context context, List<Uri> uris, PhotoJob.Priority priority, OnFilesFromUrisExtractedListener listener) {
+		for(Uri uri : uris) {
+			if("file".equals(uri.getScheme())) {
+				publishPhotoToSystemGallery(context, uri);
 			}
 		}
+		return new ImportBatch(context, uris, priority, listener).start(getImportExecutor());
 	}
 
 
 	/**
-	 * publishes photo to phone's photo gallery without a need of permission
+	 * delivers the result of a single import job on the main thread unless the job was cancelled,
+	 * the file is protected from the cache sweeper until then
+	 */
+	private static void deliver(final Context context, final PhotoJob job, final File file, final OnFileFromUriExtractedListener listener) {
+		PhotoExecutors.getMainHandler().post(new Runnable() {
+			@Override
+			public void run() {
+				if(listener != null && !job.isCancelled()) {
+					listener.onFileFromUriExtracted(file);
+				}
+				if(file != null) {
+					getCacheSweeper(context).release(file);
+				}
+			}
+		});
+	}
+
+
+	/**
+	 * publishes photo to phone's photo gallery without a need of permission, the photos published within a short window
+	 * are scanned together by the media scan queue
 	 *
 	 * @param context      context of the app/activity
 	 * @param photoFileUri uri of the file that should be made public in the phone's gallery
 	 */
-	private static void publishPhotoToSystemGallery(Context context, Uri photoFileUri) {
-		Intent mediaScanIntent = new Intent(Intent.ACTION_MEDIA_SCANNER_SCAN_FILE);
-		mediaScanIntent.setData(photoFileUri);
-		context.sendBroadcast(mediaScanIntent);
+	static void publishPhotoToSystemGallery(Context context, Uri photoFileUri) {
+		getMediaScanQueue(context).add(getFileFromUri(photoFileUri));
+	}
+
+
+	/**
+	 * @param context context of the app/activity
+	 * @return queue publishing the captured and imported photos to the system gallery in batches, a listener can be set on it
+	 * to be notified when a batch is scanned
+	 */
+	public static synchronized MediaScanQueue getMediaScanQueue(Context context) {
+		if(sMediaScanQueue == null) {
+			sMediaScanQueue = new MediaScanQueue(context);
+		}
+		return sMediaScanQueue;
+	}
+
+
+	/**
+	 * sets the queue publishing the photos to the system gallery, e.g. to change the window the photos are collected for
+	 *
+	 * @param mediaScanQueue queue of the photos, null to use the default one, photos pending in the replaced queue are flushed
+	 */
+	public static void setMediaScanQueue(MediaScanQueue mediaScanQueue) {
+		final MediaScanQueue previous;
+		synchronized(PhotoManager.class) {
+			previous = sMediaScanQueue;
+			sMediaScanQueue = mediaScanQueue;
+		}
+		if(previous != null && previous != mediaScanQueue) {
+			previous.flush();
+		}
+	}
+
+
+	/**
+	 * publishes the photos waiting in the media scan queue right away, it should be called when the app goes away,
+	 * e.g. in onStop() of the last activity, so that no photo is left unpublished if the process is killed
+	 */
+	public static void flushMediaScans() {
+		final MediaScanQueue mediaScanQueue;
+		synchronized(PhotoManager.class) {
+			mediaScanQueue = sMediaScanQueue;
+		}
+		if(mediaScanQueue != null) {
+			mediaScanQueue.flush();
+		}
 	}
 
 
@@ -522,6 +827,105 @@ public class PhotoManager {
 	}
 
 
+	/**
+	 * helper method that wraps up everything that needs to be done in fragment's onActivityResult after taking a picture/picking more pictures from a gallery
+	 *
+	 * @param fragment    fragment that calls this method
+	 * @param requestCode request code with which the onActivityResult method in fragment was called
+	 * @param resultCode  result code with which the onActivityResult method in fragment was called
+	 * @param data        data of onActivityResult in fragment
+	 * @param photoUri    photo Uri - needs to be stored in the fragment and provided from the fragment if the camera was chosen because this photo Uri is then not provided in the Intent of onActivityResult
+	 * @param listener    callback listener that provides the files as they are imported and then the whole batch (can be null)
+	 * @return list of picked Uris if the files can be created from them, null if something failed or if the permission to read the Uris was not granted (in this case a request for permission was automatically initiated)
+	 */
+	@CheckResult
+	public static List<Uri> onActivityResultMultiple(Fragment fragment, int requestCode, int resultCode, Intent data, Uri photoUri, OnFilesFromUrisExtractedListener listener) {
+		//process request normally if the result was OK, if not, delete the temp file if it was created for a photo
+		if(resultCode == Activity.RESULT_OK) {
+			if(requestCode == PhotoManager.REQUEST_IMAGE_CAPTURE) {
+				final List<Uri> uris = getUrisFromResult(data);
+
+				if(uris.isEmpty()) {
+					//this happens if the picture was taken by camera
+					if(photoUri == null) return null;
+					uris.add(photoUri);
+				} else if(photoUri != null && !uris.contains(photoUri)) {
+					//delete file on this Uri because pictures were chosen from gallery and therefore the temp file where the captured photo was supposed to be saved wasn't used
+					deleteFileForUri(photoUri);
+				}
+
+				//the first Uri is opened right away so that a missing read permission can be requested before the batch starts
+				try {
+					checkUriReadable(fragment.getContext(), uris.get(0));
+				} catch(SecurityException e) {
+					checkReadExternalStoragePermission(fragment, REQUEST_PERMISSION_READ_EXTERNAL_STORAGE);
+					return null;
+				}
+
+				loadFilesFromUris(fragment.getContext(), uris, listener);
+				return uris;
+			} else {
+				return null;
+			}
+		} else {
+			deleteFileForUri(photoUri);
+			return null;
+		}
+	}
+
+
+	/**
+	 * extracts all picked Uris from the result Intent of a picker, pickers that allow picking more images return them in ClipData
+	 *
+	 * @param data data of onActivityResult
+	 * @return list of picked Uris, empty if there are none
+	 */
+	static List<Uri> getUrisFromResult(Intent data) {
+		final List<Uri> uris = new ArrayList<Uri>();
+		if(data == null) {
+			return uris;
+		}
+		if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && data.getClipData() != null) {
+			final ClipData clipData = data.getClipData();
+			for(int i = 0; i < clipData.getItemCount(); i++) {
+				final Uri uri = clipData.getItemAt(i).getUri();
+				if(uri != null) {
+					uris.add(uri);
+				}
+			}
+		}
+		if(uris.isEmpty() && data.getData() != null) {
+			uris.add(data.getData());
+		}
+		return uris;
+	}
+
+
+	/**
+	 * checks that the app is allowed to read the Uri
+	 *
+	 * @param context context of the app/activity
+	 * @param uri     Uri that should be read
+	 * @throws SecurityException is thrown if the app doesn't have a permission to read the Uri
+	 */
+	private static void checkUriReadable(Context context, Uri uri) throws SecurityException {
+		if("file".equals(uri.getScheme())) {
+			if(!getFileFromUri(uri).canRead()) {
+				throw new SecurityException();
+			}
+		} else if("content".equals(uri.getScheme())) {
+			final ParcelFileDescriptor fileDescriptor = UriImporter.openFileDescriptor(context, uri);
+			if(fileDescriptor != null) {
+				try {
+					fileDescriptor.close();
+				} catch(IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+
 	/**
 	 * deletes file at a given uri if the uri is not null and if the file exists
 	 *
@@ -546,9 +950,498 @@ public class PhotoManager {
 	 * @param reqWidth required width of the output image
 	 * @param reqHeight required height of the output image
 	 * @param listener listener that will be used to provide the calling fragment the resulting scaled image
+	 * @return handle of the job that can be used to cancel the scaling, the listener is not called for a cancelled job
+	 */
+	public static PhotoJob scaleImageFile(final Context context, final File imageFile, int reqWidth, int reqHeight, ScaleImageAsyncTask.OnFileScaledListener listener) {
+		return scaleImageFile(context, imageFile, reqWidth, reqHeight, ScaleImageHelper.DEFAULT_MAX_BYTES, listener);
+	}
+
+
+	/**
+	 * scales and if necessary adjusts rotation an image to required width and height and returns result in the listener callback
+	 * @param context context of tha app/activity
+	 * @param imageFile image file that should be scaled
+	 * @param reqWidth required width of the output image
+	 * @param reqHeight required height of the output image
+	 * @param maxBytes maximum size of the output file in bytes, the highest JPEG quality that fits is used
+	 * @param listener listener that will be used to provide the calling fragment the resulting scaled image
+	 * @return handle of the job that can be used to cancel the scaling, the listener is not called for a cancelled job
+	 */
+	public static PhotoJob scaleImageFile(final Context context, final File imageFile, int reqWidth, int reqHeight, int maxBytes, ScaleImageAsyncTask.OnFileScaledListener listener) {
+		return scaleImageFile(context, imageFile, new ScaleSpec(reqWidth, reqHeight, maxBytes), PhotoJob.Priority.INTERACTIVE, listener);
+	}
+
+
+	/**
+	 * scales and if necessary adjusts rotation an image and returns result in the listener callback
+	 * @param context context of tha app/activity
+	 * @param imageFile image file that should be scaled
+	 * @param spec required size, byte budget and format of the output image
+	 * @param priority priority of the job, interactive jobs run before bulk ones
+	 * @param listener listener that will be used to provide the calling fragment the resulting scaled image
+	 * @return handle of the job that can be used to cancel the scaling, the listener is not called for a cancelled job
+	 */
+	public static PhotoJob scaleImageFile(Context context, final File imageFile, final ScaleSpec spec, PhotoJob.Priority priority, final ScaleImageAsyncTask.OnFileScaledListener listener) {
+		final Context appContext = context.getApplicationContext();
+		final PhotoJob job = new PhotoJob(priority, null, new PhotoJob.Work() {
+			@Override
+			public void run(final PhotoJob job) {
+				File scaledFile = null;
+				try {
+					final ScaleImageHelper scaleImageHelper = new ScaleImageHelper(appContext, spec);
+					scaleImageHelper.setJob(job);
+					scaledFile = scaleImageHelper.scaleImageFile(imageFile);
+				} catch(CancellationException e) {
+					return;
+				} catch(IOException e) {
+					Log.w(TAG, "Cannot scale " + imageFile, e);
+				} catch(RuntimeException e) {
+					// a broken image is reported to the listener like any other failure
+					Log.w(TAG, "Cannot scale " + imageFile, e);
+				}
+
+				final File result = scaledFile;
+				PhotoExecutors.getMainHandler().post(new Runnable() {
+					@Override
+					public void run() {
+						if(listener != null && !job.isCancelled()) {
+							listener.onFileScaled(result);
+						}
+					}
+				});
+			}
+		});
+		job.setCallbackExecutor(PhotoExecutors.getMainExecutor());
+		getExecutor().execute(job);
+		return job;
+	}
+
+
+	/**
+	 * scales the image into several renditions from a single decode, e.g. a thumbnail, a feed image and an upload image,
+	 * and provides all of them in the listener callback
+	 *
+	 * @param context   context of the app/activity
+	 * @param imageFile image file that should be scaled
+	 * @param specs     sizes, byte budgets and formats of the renditions
+	 * @param listener  listener that will be used to provide the resulting renditions
+	 * @return handle of the job that can be used to cancel the scaling, the listener is not called for a cancelled job
 	 */
-	public static void scaleImageFile(final Context context, final File imageFile, int reqWidth, int reqHeight, ScaleImageAsyncTask.OnFileScaledListener listener) {
-		new ScaleImageAsyncTask(context, reqWidth, reqHeight, listener).execute(imageFile);
+	public static PhotoJob scaleImageFile(Context context, File imageFile, List<RenditionSpec> specs, OnRenditionsScaledListener listener) {
+		return scaleImageFile(context, imageFile, specs, PhotoJob.Priority.INTERACTIVE, listener);
+	}
+
+
+	/**
+	 * scales the image into several renditions from a single decode, e.g. a thumbnail, a feed image and an upload image,
+	 * and provides all of them in the listener callback
+	 *
+	 * @param context   context of the app/activity
+	 * @param imageFile image file that should be scaled
+	 * @param specs     sizes, byte budgets and formats of the renditions
+	 * @param priority  priority of the job, interactive jobs run before bulk ones
+	 * @param listener  listener that will be used to provide the resulting renditions
+	 * @return handle of the job that can be used to cancel the scaling, the listener is not called for a cancelled job
+	 */
+	public static PhotoJob scaleImageFile(Context context, final File imageFile, final List<RenditionSpec> specs, PhotoJob.Priority priority, final OnRenditionsScaledListener listener) {
+		final Context appContext = context.getApplicationContext();
+		final List<RenditionSpec> specsCopy = new ArrayList<RenditionSpec>(specs);
+		final PhotoJob job = new PhotoJob(priority, null, new PhotoJob.Work() {
+			@Override
+			public void run(final PhotoJob job) {
+				List<File> renditions = null;
+				try {
+					final ScaleImageHelper scaleImageHelper = new ScaleImageHelper(appContext, 0, 0);
+					scaleImageHelper.setJob(job);
+					renditions = scaleImageHelper.scaleImageFile(imageFile, specsCopy);
+				} catch(CancellationException e) {
+					return;
+				} catch(IOException e) {
+					Log.w(TAG, "Cannot scale " + imageFile, e);
+				} catch(RuntimeException e) {
+					// a broken image is reported to the listener like any other failure
+					Log.w(TAG, "Cannot scale " + imageFile, e);
+				}
+
+				final List<File> result = renditions;
+				PhotoExecutors.getMainHandler().post(new Runnable() {
+					@Override
+					public void run() {
+						if(listener != null && !job.isCancelled()) {
+							listener.onRenditionsScaled(imageFile, result);
+						}
+					}
+				});
+			}
+		});
+		job.setCallbackExecutor(PhotoExecutors.getMainExecutor());
+		getExecutor().execute(job);
+		return job;
+	}
+
+
+	/**
+	 * scales and if necessary adjusts rotation of all the images in parallel, every scaled file is provided in the listener callback
+	 * as soon as it is ready and the whole batch is provided once all the files are done
+	 *
+	 * @param context    context of the app/activity
+	 * @param imageFiles image files that should be scaled
+	 * @param spec       required size, byte budget and format of the output images
+	 * @param listener   listener that will be used to provide the resulting scaled images
+	 * @return handle of the whole batch that can be used to cancel it, the listener is not called for a cancelled batch
+	 */
+	public static PhotoJob scaleImageFiles(Context context, List<File> imageFiles, ScaleSpec spec, OnFilesScaledListener listener) {
+		return scaleImageFiles(context, imageFiles, spec, PhotoJob.Priority.BULK, listener);
+	}
+
+
+	/**
+	 * scales and if necessary adjusts rotation of all the images in parallel, every scaled file is provided in the listener callback
+	 * as soon as it is ready and the whole batch is provided once all the files are done
+	 *
+	 * @param context    context of the app/activity
+	 * @param imageFiles image files that should be scaled
+	 * @param spec       required size, byte budget and format of the output images
+	 * @param priority   priority of the jobs of the batch, interactive jobs run before bulk ones
+	 * @param listener   listener that will be used to provide the resulting scaled images
+	 * @return handle of the whole batch that can be used to cancel it, the listener is not called for a cancelled batch
+	 */
+	public static PhotoJob scaleImageFiles(Context context, List<File> imageFiles, ScaleSpec spec, PhotoJob.Priority priority, OnFilesScaledListener listener) {
+		return new ScaleBatch(context, imageFiles, spec, priority, listener).start(getExecutor());
+	}
+
+
+	/**
+	 * resumes the batches of {@link #loadFilesFromUris(Context, List, OnFilesFromUrisExtractedListener)} and
+	 * {@link #scaleImageFiles(Context, List, ScaleSpec, OnFilesScaledListener)} that were interrupted by the death of the process,
+	 * e.g. a long import killed in the background, it should be called once when the app starts again
+	 *
+	 * only the items whose output is not on disk are run again, the items completed before the process died are part of the batch result
+	 * without being reported one by one, the journal is read on the calling thread, every interrupted batch is resumed only once
+	 * and the batches started by the running process are never resumed
+	 *
+	 * a content Uri can be imported after a restart only if it was granted with Intent.FLAG_GRANT_PERSISTABLE_URI_PERMISSION
+	 * (e.g. by ACTION_OPEN_DOCUMENT) on KitKat and newer, other content Uris result in null
+	 *
+	 * @param context        context of the app/activity
+	 * @param importListener listener that will be used to provide the files of the resumed import batches
+	 * @param scaleListener  listener that will be used to provide the scaled images of the resumed scaling batches
+	 * @return handles of the resumed batches that can be used to cancel them, a cancelled batch is not resumed again
+	 */
+	public static List<PhotoJob> resumeBatches(Context context, OnFilesFromUrisExtractedListener importListener, OnFilesScaledListener scaleListener) {
+		final List<PhotoJob> jobs = new ArrayList<PhotoJob>();
+		final JobJournal jobJournal = getJobJournal(context);
+		for(JobJournal.Batch batch : jobJournal.takeUnfinishedBatches()) {
+			if(ImportBatch.JOURNAL_TYPE.equals(batch.getType())) {
+				jobs.add(new ImportBatch(context, batch, PhotoJob.Priority.BULK, importListener).start(getImportExecutor()));
+			} else if(ScaleBatch.JOURNAL_TYPE.equals(batch.getType())) {
+				final ScaleBatch scaleBatch;
+				try {
+					scaleBatch = new ScaleBatch(context, batch, PhotoJob.Priority.BULK, scaleListener);
+				} catch(IllegalArgumentException e) {
+					Log.w(TAG, "Cannot resume " + batch, e);
+					jobJournal.endBatch(batch.getId());
+					continue;
+				}
+				jobs.add(scaleBatch.start(getExecutor()));
+			} else {
+				// written by a newer version of the library, it cannot be resumed
+				jobJournal.endBatch(batch.getId());
+			}
+		}
+		return jobs;
+	}
+
+
+	/**
+	 * sets the executor that runs scaling jobs, by default a bounded pool with one thread per CPU core is used
+	 * that runs interactive jobs before bulk ones, a custom executor runs the jobs in its own order
+	 *
+	 * @param executor executor that should run the scaling jobs, null to use the default one
+	 */
+	public static synchronized void setExecutor(Executor executor) {
+		sExecutor = executor;
+	}
+
+
+	/**
+	 * sets the pool of bitmaps that scaling jobs reuse for decoding, scaling and rotating,
+	 * by default a pool limited to 1/8 of the maximum heap size is used
+	 *
+	 * @param bitmapPool pool of bitmaps, null to use the default one
+	 */
+	public static synchronized void setBitmapPool(BitmapPool bitmapPool) {
+		sBitmapPool = bitmapPool;
+	}
+
+
+	/**
+	 * @return pool of bitmaps reused by scaling jobs, it can be used to read the hit and miss counters
+	 */
+	public static synchronized BitmapPool getBitmapPool() {
+		if(sBitmapPool == null) {
+			sBitmapPool = new BitmapPool(Runtime.getRuntime().maxMemory() / 8);
+		}
+		return sBitmapPool;
+	}
+
+
+	/**
+	 * @param context context of the app/activity
+	 * @return budget of bitmap bytes the scaling jobs are admitted against, a third of the heap limit of the app unless it is replaced
+	 * by {@link #setMemoryBudget(MemoryBudget)}, it can be used to read how often jobs had to wait
+	 */
+	public static synchronized MemoryBudget getMemoryBudget(Context context) {
+		if(sMemoryBudget == null) {
+			sMemoryBudget = new MemoryBudget(getHeapLimit(context) / MEMORY_BUDGET_DIVISOR);
+		}
+		return sMemoryBudget;
+	}
+
+
+	/**
+	 * sets the budget of bitmap bytes the scaling jobs are admitted against, e.g. a smaller one when the app keeps large bitmaps of its own
+	 *
+	 * @param memoryBudget budget of the scaling jobs, null to use the default one
+	 */
+	public static synchronized void setMemoryBudget(MemoryBudget memoryBudget) {
+		sMemoryBudget = memoryBudget;
+	}
+
+
+	/**
+	 * @param context context of the app/activity
+	 * @return cache of images imported from content Uris, it can be used to read the hit rate
+	 */
+	public static synchronized ImportCache getImportCache(Context context) {
+		if(sImportCache == null) {
+			sImportCache = new ImportCache(new File(getCacheDir(context), IMPORT_CACHE_DIR_NAME));
+		}
+		return sImportCache;
+	}
+
+
+	/**
+	 * @param context context of the app/activity
+	 * @return disk cache of scaled images, limited to 64 MB unless it is replaced by {@link #setRenditionCache(RenditionCache)}
+	 */
+	public static synchronized RenditionCache getRenditionCache(Context context) {
+		if(sRenditionCache == null) {
+			sRenditionCache = new RenditionCache(new File(getCacheDir(context), RENDITION_CACHE_DIR_NAME), DEFAULT_RENDITION_CACHE_BYTES);
+		}
+		return sRenditionCache;
+	}
+
+
+	/**
+	 * sets the disk cache of scaled images, e.g. to change its capacity, the directory of the cache must be on the same file system
+	 * as the external cache directory where the scaled images are written
+	 *
+	 * @param renditionCache cache of scaled images, null to use the default one
+	 */
+	public static synchronized void setRenditionCache(RenditionCache renditionCache) {
+		sRenditionCache = renditionCache;
+	}
+
+
+	/**
+	 * @param context context of the app/activity
+	 * @return journal of the import and scaling batches, stored in the internal storage so it survives the clearing of the cache,
+	 * it is read on the first call
+	 */
+	public static synchronized JobJournal getJobJournal(Context context) {
+		if(sJobJournal == null) {
+			sJobJournal = new JobJournal(new File(context.getFilesDir(), JOB_JOURNAL_FILE_NAME));
+		}
+		return sJobJournal;
+	}
+
+
+	/**
+	 * sets the journal the batches are recorded in, e.g. one stored per user account
+	 *
+	 * @param jobJournal journal of the batches, null to use the default one
+	 */
+	public static synchronized void setJobJournal(JobJournal jobJournal) {
+		sJobJournal = jobJournal;
+	}
+
+
+	/**
+	 * @param context context of the app/activity
+	 * @return sweeper keeping the imported and scaled files within 256 MB unless it is replaced by {@link #setCacheSweeper(CacheSweeper)},
+	 * the first call schedules a sweep of the files left behind by the previous runs of the app
+	 */
+	public static synchronized CacheSweeper getCacheSweeper(Context context) {
+		if(sCacheSweeper == null) {
+			sCacheSweeper = createCacheSweeper(context, DEFAULT_CACHE_QUOTA_BYTES);
+			requestCacheSweep(sCacheSweeper);
+		}
+		return sCacheSweeper;
+	}
+
+
+	/**
+	 * creates a sweeper of the directories PhotoManager writes to, e.g. to set a different quota by {@link #setCacheSweeper(CacheSweeper)},
+	 * only the imported files, the scaled files outside of the rendition cache and the unfinished files are swept,
+	 * the rendition cache keeps its own capacity
+	 *
+	 * @param context  context of the app/activity
+	 * @param maxBytes maximum size of the imported and scaled files in bytes
+	 * @return new sweeper
+	 */
+	public static CacheSweeper createCacheSweeper(Context context, long maxBytes) {
+		final CacheSweeper cacheSweeper = new CacheSweeper(maxBytes);
+		cacheSweeper.addDirectory(getCacheDir(context), new PrefixFileFilter(CAPTURE_FILE_PREFIX, SCALED_FILE_PREFIX));
+		cacheSweeper.addDirectory(getImportCache(context).getDirectory(), new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				// the index of the cache is kept, entries of deleted files are dropped when they are looked up
+				return file.getName().endsWith(".jpg") || file.getName().endsWith(".part");
+			}
+		});
+		cacheSweeper.addOrphanDirectory(getRenditionCache(context).getDirectory(), new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.getName().endsWith(".part");
+			}
+		});
+		return cacheSweeper;
+	}
+
+
+	/**
+	 * sets the sweeper of the files written by PhotoManager, e.g. to change the quota
+	 *
+	 * @param cacheSweeper sweeper of the files, null to use the default one
+	 */
+	public static synchronized void setCacheSweeper(CacheSweeper cacheSweeper) {
+		sCacheSweeper = cacheSweeper;
+	}
+
+
+	/**
+	 * @return heap limit of the app in bytes - the memory class of the device (the large one if the app requests a large heap),
+	 * Runtime.maxMemory() can be higher than it on some devices
+	 */
+	private static long getHeapLimit(Context context) {
+		final long maxMemory = Runtime.getRuntime().maxMemory();
+		final ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+		if(activityManager == null) {
+			return maxMemory;
+		}
+		final boolean largeHeap = (context.getApplicationInfo().flags & ApplicationInfo.FLAG_LARGE_HEAP) != 0;
+		final int memoryClass = largeHeap ? activityManager.getLargeMemoryClass() : activityManager.getMemoryClass();
+		return memoryClass > 0 ? Math.min(maxMemory, memoryClass * 1024L * 1024L) : maxMemory;
+	}
+
+
+	/**
+	 * schedules a sweep of the files on the import executor, requests made while a sweep is waiting are merged into it
+	 *
+	 * @param context context of the app/activity
+	 */
+	static void requestCacheSweep(Context context) {
+		requestCacheSweep(getCacheSweeper(context));
+	}
+
+
+	private static void requestCacheSweep(final CacheSweeper cacheSweeper) {
+		if(!sCacheSweepPending.compareAndSet(false, true)) {
+			return;
+		}
+		getImportExecutor().execute(new PhotoJob(PhotoJob.Priority.BULK, null, new PhotoJob.Work() {
+			@Override
+			public void run(PhotoJob job) {
+				sCacheSweepPending.set(false);
+				final long deletedBytes = cacheSweeper.sweep();
+				if(deletedBytes > 0) {
+					Log.d(TAG, "Swept " + deletedBytes + " B of cached files, " + cacheSweeper.getSize() + " B left");
+				}
+			}
+		}));
+	}
+
+
+	/**
+	 * sets the number of source pixels above which images are scaled in strips, so that huge images (panoramas, 100+ MP photos)
+	 * never need to be decoded into a single bitmap, by default it is 24 MP
+	 *
+	 * @param pixels number of pixels of the source image
+	 */
+	public static synchronized void setTiledDecodeThreshold(long pixels) {
+		sTiledDecodeThreshold = pixels;
+	}
+
+
+	static synchronized long getTiledDecodeThreshold() {
+		return sTiledDecodeThreshold;
+	}
+
+
+	/**
+	 * sets the pixel format and the flags source images are decoded with, by default {@link DecodeProfile#AUTO} decodes opaque images
+	 * in RGB_565 with half the memory of the largest bitmap of a scaling, {@link DecodeProfile#QUALITY} can be set to decode every image
+	 * in ARGB_8888, the renditions decoded with different profiles are cached separately
+	 *
+	 * @param decodeProfile profile of the decode, null to use the default one
+	 */
+	public static synchronized void setDecodeProfile(DecodeProfile decodeProfile) {
+		sDecodeProfile = decodeProfile != null ? decodeProfile : DecodeProfile.AUTO;
+	}
+
+
+	static synchronized DecodeProfile getDecodeProfile() {
+		return sDecodeProfile;
+	}
+
+
+	/**
+	 * sets the listener receiving the timing and memory record of every import and scaling job, e.g. a {@link MetricsAggregator},
+	 * without a listener nothing is measured
+	 *
+	 * @param listener listener called on the background thread of the job when the job finishes, it should return quickly,
+	 *                 null to stop measuring
+	 */
+	public static void setMetricsListener(OnMetricsListener listener) {
+		sMetricsListener = listener;
+	}
+
+
+	static OnMetricsListener getMetricsListener() {
+		return sMetricsListener;
+	}
+
+
+	/**
+	 * sets the executor that copies images from content Uris, by default a small bounded pool is used
+	 *
+	 * @param executor executor that should run the import jobs, null to use the default one
+	 */
+	public static synchronized void setImportExecutor(Executor executor) {
+		sImportExecutor = executor;
+	}
+
+
+	/**
+	 * @return executor that runs import jobs
+	 */
+	static synchronized Executor getImportExecutor() {
+		if(sImportExecutor == null) {
+			sImportExecutor = PhotoExecutors.newImportExecutor();
+		}
+		return sImportExecutor;
+	}
+
+
+	/**
+	 * @return executor that runs scaling jobs
+	 */
+	static synchronized Executor getExecutor() {
+		if(sExecutor == null) {
+			sExecutor = PhotoExecutors.newScaleExecutor();
+		}
+		return sExecutor;
 	}
 
 
@@ -558,7 +1451,7 @@ public class PhotoManager {
 	 * @param context context of the application/activity
 	 * @return a String containing a package name of the app using this PhotoManager
 	 */
-	private static String getDefaultDir(Context context) {
+	static String getDefaultDir(Context context) {
 		return context.getString(context.getApplicationInfo().labelRes);
 	}
 
@@ -580,71 +1473,78 @@ public class PhotoManager {
 	}
 
 
-	public interface OnFileFromUriExtractedListener {
-		void onFileFromUriExtracted(File file);
-	}
-
-
-	//asynchronous loading of a File from InputStream
-	private static class LoadFileFromInputStreamAsyncTask extends AsyncTask<BufferedInputStream, Void, File> {
+	/**
+	 * accepts the files whose names start with one of the prefixes
+	 */
+	private static class PrefixFileFilter implements FileFilter {
 
-		private OnFileFromUriExtractedListener mListener;
-		private Context mContext;
+		private final String[] mPrefixes;
 
 
-		public LoadFileFromInputStreamAsyncTask(Context context, OnFileFromUriExtractedListener listener) {
-			mListener = listener;
-			mContext = context;
+		PrefixFileFilter(String... prefixes) {
+			mPrefixes = prefixes;
 		}
 
 
 		@Override
-		protected File doInBackground(BufferedInputStream... params) {
-			return getFileFromInputStream(mContext, params[0]);
+		public boolean accept(File file) {
+			final String name = file.getName();
+			for(String prefix : mPrefixes) {
+				if(name.startsWith(prefix)) {
+					return true;
+				}
+			}
+			return false;
 		}
+	}
 
 
-		@Override
-		protected void onPostExecute(File file) {
-			mListener.onFileFromUriExtracted(file);
-		}
+	public interface OnFileFromUriExtractedListener {
+		void onFileFromUriExtracted(File file);
+	}
 
 
+	public interface OnFilesFromUrisExtractedListener {
 		/**
-		 * creates a file from an inputStream
-		 *
-		 * @param context     context of the app/activity necessary to create a file
-		 * @param inputStream input stream from which the file is supposed to be created
-		 * @return file from the input stream if the process was successful, null otherwise
+		 * @param uri  Uri that was imported
+		 * @param file imported file, null if the import failed
 		 */
-		private File getFileFromInputStream(Context context, BufferedInputStream inputStream) {
+		void onFileFromUriExtracted(Uri uri, File file);
 
-			try {
-				File file = createImageFile(context, true);
+		/**
+		 * @param files imported files in the same order as the Uris, failed imports are null
+		 */
+		void onFilesFromUrisExtracted(List<File> files);
+	}
 
-				OutputStream output = new FileOutputStream(file);
-				byte[] buffer = new byte[4 * 1024];
-				int read;
 
-				while((read = inputStream.read(buffer)) != -1) {
-					output.write(buffer, 0, read);
-				}
-				output.flush();
-				return file;
-
-			} catch(IOException e) {
-				e.printStackTrace();
-			} finally {
-				if(inputStream != null) {
-					try {
-						inputStream.close();
-					} catch(IOException e) {
-						e.printStackTrace();
-					}
-				}
-			}
+	public interface OnFilesScaledListener {
+		/**
+		 * @param source file that was scaled
+		 * @param scaled scaled file, null if the scaling failed
+		 */
+		void onFileScaled(File source, File scaled);
 
-			return null;
-		}
+		/**
+		 * @param scaledFiles scaled files in the same order as the source files, failed files are null
+		 */
+		void onBatchScaled(List<File> scaledFiles);
+	}
+
+
+	public interface OnRenditionsScaledListener {
+		/**
+		 * @param source     file that was scaled
+		 * @param renditions scaled files in the same order as the specs, null if the scaling failed
+		 */
+		void onRenditionsScaled(File source, List<File> renditions);
+	}
+
+
+	public interface OnMetricsListener {
+		/**
+		 * @param metrics record of a finished, failed or cancelled job
+		 */
+		void onMetrics(PhotoMetrics metrics);
 	}
-}
\ No newline at end of file
+}
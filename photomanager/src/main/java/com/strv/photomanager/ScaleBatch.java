@@ -0,0 +1,110 @@
+package com.strv.photomanager;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * scales a list of files in parallel on the given executor, every result is delivered on the main thread as soon as it is ready
+ * and the whole batch is reported once the last file is done
+ *
+ * the batch is recorded in the job journal together with its spec, so if the process is killed halfway through it can be resumed
+ * with only the files that were not scaled yet
+ */
+class ScaleBatch extends JournaledBatch<File> {
+
+	static final String JOURNAL_TYPE = "scale";
+
+	private final ScaleSpec mSpec;
+	private final PhotoManager.OnFilesScaledListener mListener;
+
+
+	ScaleBatch(Context context, List<File> files, ScaleSpec spec, PhotoJob.Priority priority, PhotoManager.OnFilesScaledListener listener) {
+		this(context, files, spec, null, priority, listener);
+	}
+
+
+	/**
+	 * resumes a batch interrupted by the death of the process with the spec it was started with, the files scaled before
+	 * are part of the batch result but only the remaining files are scaled and reported one by one
+	 *
+	 * @throws IllegalArgumentException is thrown if the spec recorded in the journal cannot be read
+	 */
+	ScaleBatch(Context context, JobJournal.Batch journalBatch, PhotoJob.Priority priority, PhotoManager.OnFilesScaledListener listener) {
+		this(context, parseFiles(journalBatch.getInputs()), parseSpec(journalBatch.getArgs()), journalBatch, priority, listener);
+	}
+
+
+	private ScaleBatch(Context context, List<File> files, ScaleSpec spec, JobJournal.Batch journalBatch, PhotoJob.Priority priority, PhotoManager.OnFilesScaledListener listener) {
+		super(context, JOURNAL_TYPE, files, journalBatch, priority);
+		mSpec = spec;
+		mListener = listener;
+	}
+
+
+	@Override
+	File run(int index, PhotoJob job) throws IOException {
+		final ScaleImageHelper scaleImageHelper = new ScaleImageHelper(mContext, mSpec);
+		scaleImageHelper.setJob(job);
+		final File file = scaleImageHelper.scaleImageFile(mInputs.get(index));
+		// the helper releases the file when it returns, the batch keeps it until the result is delivered
+		final CacheSweeper cacheSweeper = PhotoManager.getCacheSweeper(mContext);
+		cacheSweeper.retain(file);
+		if(!file.exists()) {
+			cacheSweeper.release(file);
+			throw new IOException("Scaled file " + file + " was swept before it was delivered");
+		}
+		return file;
+	}
+
+
+	@Override
+	List<String> getJournalArgs() {
+		return Arrays.asList(String.valueOf(mSpec.getWidth()), String.valueOf(mSpec.getHeight()),
+				String.valueOf(mSpec.getMaxBytes()), mSpec.getFormat().name());
+	}
+
+
+	@Override
+	String encodeInput(File file) {
+		return file.getPath();
+	}
+
+
+	@Override
+	void onItemDone(File file, File result) {
+		if(mListener != null) {
+			mListener.onFileScaled(file, result);
+		}
+	}
+
+
+	@Override
+	void onBatchDone(List<File> results) {
+		if(mListener != null) {
+			mListener.onBatchScaled(results);
+		}
+	}
+
+
+	private static List<File> parseFiles(List<String> inputs) {
+		final List<File> files = new ArrayList<File>(inputs.size());
+		for(String input : inputs) {
+			files.add(new File(input));
+		}
+		return files;
+	}
+
+
+	private static ScaleSpec parseSpec(List<String> args) {
+		if(args.size() != 4) {
+			throw new IllegalArgumentException("Unexpected scale spec " + args);
+		}
+		return new ScaleSpec(Integer.parseInt(args.get(0)), Integer.parseInt(args.get(1)), Integer.parseInt(args.get(2)), OutputFormat.valueOf(args.get(3)));
+	}
+}
@@ -11,6 +11,7 @@ public class ScaleImageAsyncTask extends AsyncTask<File, Void, File> {
 
 	private int mReqWidth;
 	private int mReqHeight;
+	private int mMaxBytes;
 	private OnFileScaledListener mListener;
 	private Context mContext;
 
@@ -24,8 +25,17 @@ public class ScaleImageAsyncTask extends AsyncTask<File, Void, File> {
 	this constructor should be used when you want to use the async task and call execute on it
 	 */
 	public ScaleImageAsyncTask(Context context, int width, int height, OnFileScaledListener listener) {
+		this(context, width, height, ScaleImageHelper.DEFAULT_MAX_BYTES, listener);
+	}
+
+
+	/*
+	same as above, maxBytes is the maximum size of the output file in bytes
+	 */
+	public ScaleImageAsyncTask(Context context, int width, int height, int maxBytes, OnFileScaledListener listener) {
 		mReqWidth = width;
 		mReqHeight = height;
+		mMaxBytes = maxBytes;
 		mListener = listener;
 		mContext = context;
 	}
@@ -34,7 +44,7 @@ public class ScaleImageAsyncTask extends AsyncTask<File, Void, File> {
 	@Override
 	protected File doInBackground(File... params) {
 		try {
-			return new ScaleImageHelper(mContext, mReqWidth, mReqHeight).scaleImageFile(params[0]);
+			return new ScaleImageHelper(mContext, mReqWidth, mReqHeight, mMaxBytes).scaleImageFile(params[0]);
 		} catch(IOException e) {
 			e.printStackTrace();
 			return null;
@@ -2,149 +2,642 @@ package com.strv.photomanager;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
-import android.media.ExifInterface;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.system.ErrnoException;
+import android.system.Os;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
-
-
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+
+/**
+ * scales image files on Android - the scaling itself is done by the platform independent {@link ImageScaler} with the Android backend,
+ * this class adds the rendition cache, the metrics and the output files in the app cache, every source is opened only once
+ * and images provided by other apps can be scaled straight from their descriptor or stream,
+ * the scaled image can also be written straight into a stream or memory of the caller, e.g. for an upload
+ */
 public class ScaleImageHelper {
 
+	public static final int DEFAULT_MAX_BYTES = ScaleSpec.DEFAULT_MAX_BYTES;
+	public static final long DEFAULT_TILED_DECODE_THRESHOLD_PIXELS = ImageScaler.DEFAULT_TILED_DECODE_THRESHOLD_PIXELS;
+
 	private int mReqWidth;
 	private int mReqHeight;
+	private int mMaxBytes;
+	private OutputFormat mFormat;
 	private Context mContext;
+	private BitmapPool mBitmapPool = PhotoManager.getBitmapPool();
+	private RenditionCache mRenditionCache;
+	private CacheSweeper mCacheSweeper;
+	private MemoryBudget mMemoryBudget;
+	private long mTiledDecodeThreshold = PhotoManager.getTiledDecodeThreshold();
+	private DecodeProfile mDecodeProfile = PhotoManager.getDecodeProfile();
+	private PhotoJob mJob;
+	// only set while the job is measured for the metrics listener
+	private PhotoMetrics mMetrics;
 
 
 	public ScaleImageHelper(Context context, int width, int height) {
+		this(context, width, height, DEFAULT_MAX_BYTES);
+	}
+
+
+	/**
+	 * @param context  context of the app/activity
+	 * @param width    required width of the output image
+	 * @param height   required height of the output image
+	 * @param maxBytes maximum size of the output file in bytes, 0 or less means the image is always encoded at full quality
+	 */
+	public ScaleImageHelper(Context context, int width, int height, int maxBytes) {
+		this(context, width, height, maxBytes, OutputFormat.JPEG);
+	}
+
+
+	/**
+	 * @param context  context of the app/activity
+	 * @param width    required width of the output image
+	 * @param height   required height of the output image
+	 * @param maxBytes maximum size of the output file in bytes, 0 or less means the image is always encoded at full quality,
+	 *                 the budget of a lossless format is not enforced
+	 * @param format   format of the output file, it also determines the extension of the file
+	 */
+	public ScaleImageHelper(Context context, int width, int height, int maxBytes, OutputFormat format) {
 		mReqWidth = width;
 		mReqHeight = height;
+		mMaxBytes = maxBytes;
+		mFormat = format;
 		mContext = context;
+		mRenditionCache = PhotoManager.getRenditionCache(context);
+		mCacheSweeper = PhotoManager.getCacheSweeper(context);
+		mMemoryBudget = PhotoManager.getMemoryBudget(context);
+	}
+
+
+	public ScaleImageHelper(Context context, ScaleSpec spec) {
+		this(context, spec.getWidth(), spec.getHeight(), spec.getMaxBytes(), spec.getFormat());
+	}
+
+
+	/**
+	 * sets the pool the intermediate and output bitmaps are taken from and returned to, by default the PhotoManager pool is used
+	 *
+	 * @param bitmapPool pool of bitmaps, null to allocate a new bitmap for every stage
+	 */
+	public void setBitmapPool(BitmapPool bitmapPool) {
+		mBitmapPool = bitmapPool;
+	}
+
+
+	/**
+	 * sets the disk cache where the scaled files are stored and looked up, by default the PhotoManager cache is used
+	 *
+	 * @param renditionCache cache of scaled files, null to always scale the image
+	 */
+	public void setRenditionCache(RenditionCache renditionCache) {
+		mRenditionCache = renditionCache;
+	}
+
+
+	/**
+	 * sets the sweeper that must not delete the source and the output files while they are used, by default the PhotoManager sweeper is used
+	 *
+	 * @param cacheSweeper sweeper of the cached files, null if the files are not swept
+	 */
+	public void setCacheSweeper(CacheSweeper cacheSweeper) {
+		mCacheSweeper = cacheSweeper;
+	}
+
+
+	/**
+	 * sets the budget the estimated peak bitmap bytes of the scaling are reserved from before the image is decoded,
+	 * by default the PhotoManager budget shared by all the scaling jobs is used
+	 *
+	 * @param memoryBudget budget of bitmap bytes, null to scale without waiting for other jobs
+	 */
+	public void setMemoryBudget(MemoryBudget memoryBudget) {
+		mMemoryBudget = memoryBudget;
+	}
+
+
+	/**
+	 * sets the number of source pixels above which the image is decoded in strips that are downscaled one by one,
+	 * so that only the output bitmap and a single strip are in memory at the same time
+	 *
+	 * @param pixels number of pixels of the source image, by default the threshold set in PhotoManager is used
+	 */
+	public void setTiledDecodeThreshold(long pixels) {
+		mTiledDecodeThreshold = pixels;
+	}
+
+
+	/**
+	 * sets the pixel format and the flags the source image is decoded with, by default the profile set in PhotoManager is used
+	 *
+	 * @param decodeProfile profile of the decode, e.g. {@link DecodeProfile#QUALITY} to decode every image in ARGB_8888
+	 */
+	public void setDecodeProfile(DecodeProfile decodeProfile) {
+		mDecodeProfile = decodeProfile;
+	}
+
+
+	/**
+	 * sets the job the scaling is done for, the scaling stops between its stages if the job is cancelled
+	 * and every completed stage is reported to the job
+	 *
+	 * @param job job the scaling is done for, can be null
+	 */
+	public void setJob(PhotoJob job) {
+		mJob = job;
 	}
 
 
+	/**
+	 * scales the image file, if the same file was already scaled with the same settings, the cached result is returned instead,
+	 * the returned file belongs to the caller and is never evicted from the rendition cache, it may share its data with the cached
+	 * rendition, so it can be deleted but must not be modified in place
+	 *
+	 * @param file image file that should be scaled
+	 * @return scaled image file
+	 * @throws IOException           is thrown if the image cannot be decoded or the scaled image cannot be written
+	 * @throws CancellationException is thrown if the job set by {@link #setJob(PhotoJob)} was cancelled
+	 */
 	public File scaleImageFile(File file) throws IOException {
-		final String photoPath = file.getAbsolutePath();
-		BitmapFactory.Options bmOptions = new BitmapFactory.Options();
-		bmOptions.inJustDecodeBounds = true;
-		BitmapFactory.decodeFile(photoPath, bmOptions);
+		return scaleImageFile(file, Collections.singletonList(new RenditionSpec(null, mReqWidth, mReqHeight, mMaxBytes, mFormat))).get(0);
+	}
+
+
+	/**
+	 * scales the image file into several renditions from a single decode, the size set in the constructor is not used,
+	 * renditions that were already scaled with the same settings are taken from the cache and only the missing ones are scaled
+	 *
+	 * @param file  image file that should be scaled
+	 * @param specs sizes, byte budgets and formats of the renditions
+	 * @return scaled image files in the same order as the specs
+	 * @throws IOException           is thrown if the image cannot be decoded or a rendition cannot be written
+	 * @throws CancellationException is thrown if the job set by {@link #setJob(PhotoJob)} was cancelled
+	 */
+	public List<File> scaleImageFile(File file, List<RenditionSpec> specs) throws IOException {
+		final ImageSource source = ImageSource.fromFile(file);
+		try {
+			return scaleImageFile(source, specs);
+		} finally {
+			source.close();
+		}
+	}
+
+
+	/**
+	 * scales the image read through the descriptor, e.g. one opened by a ContentResolver, without copying it to a file first
+	 *
+	 * @param fileDescriptor descriptor of the image, seekable files are read in place and pipes as a stream, it is not closed
+	 * @return scaled image file
+	 * @throws IOException           is thrown if the image cannot be decoded or the scaled image cannot be written
+	 * @throws CancellationException is thrown if the job set by {@link #setJob(PhotoJob)} was cancelled
+	 */
+	public File scaleImageFile(ParcelFileDescriptor fileDescriptor) throws IOException {
+		final long statSize = fileDescriptor.getStatSize();
+		final ImageSource source = statSize >= 0
+				? ImageSource.fromFileDescriptor(fileDescriptor.getFileDescriptor(), statSize)
+				: ImageSource.fromInputStream(new FileInputStream(fileDescriptor.getFileDescriptor()));
+		try {
+			return scaleImageFile(source, Collections.singletonList(new RenditionSpec(null, mReqWidth, mReqHeight, mMaxBytes, mFormat))).get(0);
+		} finally {
+			source.close();
+		}
+	}
 
-		bmOptions.inSampleSize = calculateInSampleSize(bmOptions, mReqWidth, mReqHeight);
-		bmOptions.inJustDecodeBounds = false;
 
-		Bitmap bitmap = BitmapFactory.decodeFile(photoPath, bmOptions);
-		double height = bitmap.getHeight();
-		double width = bitmap.getWidth();
-		if(width > height) {
-			// landscape
-			double ratio = width / mReqWidth;
-			width = mReqWidth;
-			height = height / ratio;
-		} else if(height > width) {
-			// portrait
-			double ratio = height / mReqHeight;
-			height = mReqHeight;
-			width = width / ratio;
-		} else {
-			// square
-			height = mReqHeight;
-			width = mReqWidth;
+	/**
+	 * scales the image read from the stream, the header is read again from the marked start of the stream, so the stream
+	 * is read only once and doesn't need to support mark and reset itself
+	 *
+	 * @param inputStream stream of the image, it is not closed
+	 * @return scaled image file
+	 * @throws IOException           is thrown if the image cannot be decoded or the scaled image cannot be written
+	 * @throws CancellationException is thrown if the job set by {@link #setJob(PhotoJob)} was cancelled
+	 */
+	public File scaleImageFile(InputStream inputStream) throws IOException {
+		final ImageSource source = ImageSource.fromInputStream(inputStream);
+		try {
+			return scaleImageFile(source, Collections.singletonList(new RenditionSpec(null, mReqWidth, mReqHeight, mMaxBytes, mFormat))).get(0);
+		} finally {
+			source.close();
 		}
+	}
+
+
+	/**
+	 * scales the image file straight into the stream, e.g. the body of an upload request, without writing and reading back a file,
+	 * a rendition found in the cache is copied into the stream
+	 *
+	 * @param file         image file that should be scaled
+	 * @param outputStream stream the encoded image is written to, it is not closed
+	 * @throws IOException           is thrown if the image cannot be decoded or the scaled image cannot be written
+	 * @throws CancellationException is thrown if the job set by {@link #setJob(PhotoJob)} was cancelled
+	 */
+	public void scaleImageFile(File file, OutputStream outputStream) throws IOException {
+		scaleImageFile(file, ImageSink.toOutputStream(outputStream));
+	}
 
-		bitmap.recycle();
-		Bitmap scaledBitmap = checkOrientationAndSize(photoPath, (int) width, (int) height, mReqWidth, mReqHeight);
 
-		return writeCompressedBitmap(mContext, scaledBitmap);
+	/**
+	 * scales the image file into the file given by the caller instead of a file in the app cache
+	 *
+	 * @param file   image file that should be scaled
+	 * @param output file the scaled image is written to, it appears only when it is complete
+	 * @throws IOException           is thrown if the image cannot be decoded or the scaled image cannot be written
+	 * @throws CancellationException is thrown if the job set by {@link #setJob(PhotoJob)} was cancelled
+	 */
+	public void scaleImageFile(File file, File output) throws IOException {
+		scaleImageFile(file, ImageSink.toFile(output));
 	}
 
 
-	private File writeCompressedBitmap(Context context, Bitmap bitmap) throws IOException {
-		final File cacheDir = context.getExternalCacheDir();
-		final File scaledFile = File.createTempFile("photo", ".jpg", cacheDir);
-		OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(scaledFile));
-		bitmap.compress(Bitmap.CompressFormat.JPEG, 100, outputStream);
+	/**
+	 * scales the image file into memory without any disk write
+	 *
+	 * @param file image file that should be scaled
+	 * @return encoded scaled image
+	 * @throws IOException           is thrown if the image cannot be decoded or encoded
+	 * @throws CancellationException is thrown if the job set by {@link #setJob(PhotoJob)} was cancelled
+	 */
+	public byte[] scaleImageFileToBytes(File file) throws IOException {
+		final ImageSink.MemorySink sink = ImageSink.toMemory();
+		scaleImageFile(file, sink);
+		return sink.toByteArray();
+	}
+
 
-		int size = (int) scaledFile.length() / 1024;
+	/**
+	 * scales the image file into memory without any disk write
+	 *
+	 * @param file image file that should be scaled
+	 * @return read-only buffer of the encoded scaled image
+	 * @throws IOException           is thrown if the image cannot be decoded or encoded
+	 * @throws CancellationException is thrown if the job set by {@link #setJob(PhotoJob)} was cancelled
+	 */
+	public ByteBuffer scaleImageFileToByteBuffer(File file) throws IOException {
+		final ImageSink.MemorySink sink = ImageSink.toMemory();
+		scaleImageFile(file, sink);
+		return sink.toByteBuffer();
+	}
 
-		int quality = 95;
 
-		while(size > 320) {
-			outputStream = new BufferedOutputStream(new FileOutputStream(scaledFile));
-			bitmap.compress(Bitmap.CompressFormat.JPEG, quality, outputStream);
-			size = (int) scaledFile.length() / 1024;
-			quality -= 5;
+	/**
+	 * scales the image file into the sink
+	 *
+	 * @param file image file that should be scaled
+	 * @param sink destination of the encoded image
+	 * @throws IOException           is thrown if the image cannot be decoded or the scaled image cannot be written
+	 * @throws CancellationException is thrown if the job set by {@link #setJob(PhotoJob)} was cancelled
+	 */
+	public void scaleImageFile(File file, ImageSink sink) throws IOException {
+		final ImageSource source = ImageSource.fromFile(file);
+		try {
+			scaleImage(source, sink);
+		} finally {
+			source.close();
 		}
+	}
 
-		return scaledFile;
+
+	/**
+	 * scales the image into the sink, a rendition found in the rendition cache is copied into the sink, a newly scaled one
+	 * is written only into the sink and is not cached, so nothing touches the disk unless the sink is a file
+	 *
+	 * @param source image that should be scaled, it is not closed
+	 * @param sink   destination of the encoded image
+	 * @throws IOException           is thrown if the image cannot be decoded or the scaled image cannot be written
+	 * @throws CancellationException is thrown if the job set by {@link #setJob(PhotoJob)} was cancelled
+	 */
+	public void scaleImage(final ImageSource source, final ImageSink sink) throws IOException {
+		runScaling(source, new Scaling<Void>() {
+			@Override
+			public Void run() throws IOException {
+				scaleImageOrGetCached(source, sink);
+				return null;
+			}
+		});
 	}
 
 
-	private int calculateInSampleSize(BitmapFactory.Options options, int reqWidth, int reqHeight) {
-		// Raw height and width of image
-		final int height = options.outHeight;
-		final int width = options.outWidth;
-		int inSampleSize = 1;
+	/**
+	 * scales the image into several renditions from a single decode, the source is opened only once for the header,
+	 * the EXIF data and the pixels, only sources backed by a file are looked up in the rendition cache
+	 *
+	 * @param source image that should be scaled, it is not closed
+	 * @param specs  sizes, byte budgets and formats of the renditions
+	 * @return scaled image files in the same order as the specs
+	 * @throws IOException           is thrown if the image cannot be decoded or a rendition cannot be written
+	 * @throws CancellationException is thrown if the job set by {@link #setJob(PhotoJob)} was cancelled
+	 */
+	public List<File> scaleImageFile(final ImageSource source, final List<RenditionSpec> specs) throws IOException {
+		return runScaling(source, new Scaling<List<File>>() {
+			@Override
+			public List<File> run() throws IOException {
+				return scaleImageFileOrGetCached(source, specs);
+			}
+		});
+	}
 
-		if(height > reqHeight || width > reqWidth) {
 
-			final int halfHeight = height / 2;
-			final int halfWidth = width / 2;
+	/**
+	 * runs the scaling with the source retained in the cache sweeper, so an imported source is not swept while it is being scaled,
+	 * and reports its metrics if there is a metrics listener
+	 */
+	private <R> R runScaling(ImageSource source, Scaling<R> scaling) throws IOException {
+		final File file = source.getFile();
+		if(file != null && mCacheSweeper != null) {
+			mCacheSweeper.retain(file);
+		}
+		final PhotoManager.OnMetricsListener metricsListener = PhotoManager.getMetricsListener();
+		mMetrics = metricsListener != null ? new PhotoMetrics(PhotoMetrics.Type.SCALE, source.toString()) : null;
+		boolean succeeded = false;
+		try {
+			final R result = scaling.run();
+			succeeded = true;
+			return result;
+		} finally {
+			if(mMetrics != null) {
+				mMetrics.finish(succeeded);
+				metricsListener.onMetrics(mMetrics);
+				mMetrics = null;
+			}
+			if(file != null && mCacheSweeper != null) {
+				mCacheSweeper.release(file);
+			}
+		}
+	}
+
+
+	/**
+	 * the returned files are links or copies of the cached renditions, so a later eviction doesn't delete a file the caller still holds
+	 */
+	private List<File> scaleImageFileOrGetCached(ImageSource source, List<RenditionSpec> specs) throws IOException {
+		final File file = source.getFile();
+		final RenditionCache renditionCache = file != null ? mRenditionCache : null;
+		final File[] scaledFiles = new File[specs.size()];
+		final String[] cacheKeys = new String[specs.size()];
+		final List<RenditionSpec> missingSpecs = new ArrayList<RenditionSpec>();
+		long cachedBytes = 0;
+		for(int i = 0; i < specs.size(); i++) {
+			final RenditionSpec spec = specs.get(i);
+			if(renditionCache != null) {
+				cacheKeys[i] = createCacheKey(file, spec);
+				scaledFiles[i] = getFromCache(renditionCache, cacheKeys[i], spec.getFormat());
+			}
+			if(scaledFiles[i] == null) {
+				missingSpecs.add(spec);
+			} else {
+				cachedBytes += scaledFiles[i].length();
+			}
+		}
+
+		if(missingSpecs.isEmpty()) {
+			reportCached(cachedBytes);
+			return Arrays.asList(scaledFiles);
+		}
 
-			// Calculate the largest inSampleSize value that is a power of 2 and keeps both
-			// height and width larger than the requested height and width.
-			while((halfHeight / inSampleSize) > reqHeight && (halfWidth / inSampleSize) > reqWidth) {
-				inSampleSize *= 2;
+		final List<File> missingFiles = scaleImageFileUncached(source, missingSpecs);
+		for(int i = 0, missing = 0; i < specs.size(); i++) {
+			if(scaledFiles[i] != null) {
+				continue;
 			}
+			scaledFiles[i] = missingFiles.get(missing++);
+			if(renditionCache != null) {
+				addToCache(renditionCache, cacheKeys[i], scaledFiles[i], specs.get(i).getFormat());
+			}
+		}
+		return Arrays.asList(scaledFiles);
+	}
+
+
+	private void scaleImageOrGetCached(ImageSource source, ImageSink sink) throws IOException {
+		final RenditionSpec spec = new RenditionSpec(null, mReqWidth, mReqHeight, mMaxBytes, mFormat);
+		final File file = source.getFile();
+		if(file != null && mRenditionCache != null && copyFromCache(mRenditionCache, createCacheKey(file, spec), sink)) {
+			reportCached(sink.getLength());
+			return;
+		}
+
+		if(mMetrics != null && source.getLength() >= 0) {
+			mMetrics.setBytesRead(source.getLength());
+		}
+		createScaler().scaleToSinks(source, Collections.singletonList(spec), Collections.singletonList(sink), mJob, mMetrics);
+	}
+
+
+	private void reportCached(long outputBytes) {
+		if(mJob != null) {
+			mJob.reportStage(PhotoJob.Stage.ENCODED);
+		}
+		if(mMetrics != null) {
+			mMetrics.setCached(true);
+			mMetrics.setOutputBytes(outputBytes);
 		}
+	}
+
 
-		return inSampleSize;
+	/**
+	 * @return file of the caller with the cached rendition or null if it is not cached, no file is created for a rendition that is not cached
+	 */
+	private File getFromCache(RenditionCache renditionCache, String key, OutputFormat format) throws IOException {
+		final File cachedFile = renditionCache.get(key);
+		if(cachedFile == null) {
+			return null;
+		}
+		File file = null;
+		boolean success = false;
+		try {
+			file = createScaledFile(format);
+			success = linkOrCopy(cachedFile, file);
+			return success ? file : null;
+		} finally {
+			renditionCache.release(key);
+			if(file != null) {
+				if(mCacheSweeper != null) {
+					mCacheSweeper.release(file);
+				}
+				if(!success) {
+					file.delete();
+				}
+			}
+		}
 	}
 
 
-	private Bitmap checkOrientationAndSize(String path, int width, int height, int reqWidth, int reqHeight) {
-		int orientation;
+	/**
+	 * streams the cached rendition into the sink, the rendition is pinned in the cache while it is copied
+	 *
+	 * @return false if the rendition is not cached
+	 */
+	private static boolean copyFromCache(RenditionCache renditionCache, String key, ImageSink sink) throws IOException {
+		final File cachedFile = renditionCache.get(key);
+		if(cachedFile == null) {
+			return false;
+		}
 		try {
-			if(path == null) {
-				return null;
+			return copyFile(cachedFile, sink);
+		} finally {
+			renditionCache.release(key);
+		}
+	}
+
+
+	/**
+	 * adds a link of the scaled file to the cache, so the rendition is written to the disk only once, the scaled file itself stays with the caller
+	 */
+	private void addToCache(RenditionCache renditionCache, String key, File scaledFile, OutputFormat format) {
+		if(scaledFile.length() > renditionCache.getMaxBytes()) {
+			// larger than the whole cache, it would not be cached
+			return;
+		}
+		File entry = null;
+		boolean cached = false;
+		try {
+			entry = createScaledFile(format);
+			if(linkOrCopy(scaledFile, entry)) {
+				// only a file that was moved into the cache is pinned
+				cached = !renditionCache.put(key, entry).equals(entry);
+				if(cached) {
+					renditionCache.release(key);
+				}
+			}
+		} catch(IOException e) {
+			// the scaled file is still fine, it is just not cached
+			e.printStackTrace();
+		} finally {
+			if(entry != null) {
+				if(mCacheSweeper != null) {
+					mCacheSweeper.release(entry);
+				}
+				if(!cached) {
+					entry.delete();
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * @return new empty file in the app cache, it is retained in the sweeper until it is released
+	 */
+	private File createScaledFile(OutputFormat format) throws IOException {
+		final File scaledFile = File.createTempFile("photo", format.getExtension(), PhotoManager.getCacheDir(mContext));
+		if(mCacheSweeper != null) {
+			mCacheSweeper.retain(scaledFile);
+		}
+		return scaledFile;
+	}
+
+
+	/**
+	 * makes the target a hard link of the file, so no data is written and deleting either of the names keeps the data for the other one,
+	 * platforms and file systems without hard links get a copy
+	 *
+	 * @param file   existing file
+	 * @param target file that is replaced by the link or the copy, it appears only when it is complete
+	 * @return false if the file doesn't exist
+	 */
+	private static boolean linkOrCopy(File file, File target) throws IOException {
+		if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+			final File linkFile = new File(target.getPath() + ".part");
+			try {
+				Os.link(file.getPath(), linkFile.getPath());
+				if(linkFile.renameTo(target)) {
+					return true;
+				}
+				linkFile.delete();
+			} catch(ErrnoException e) {
+				// e.g. a file system without hard links, the file is copied instead
 			}
+		}
+		return copyFile(file, ImageSink.toFile(target));
+	}
 
-			BitmapFactory.Options bmOptions = new BitmapFactory.Options();
-			bmOptions.inJustDecodeBounds = true;
-			bmOptions.inSampleSize = calculateInSampleSize(bmOptions, reqWidth, reqHeight);
-			bmOptions.inJustDecodeBounds = false;
 
-			Bitmap bm = BitmapFactory.decodeFile(path, bmOptions);
-			bm = Bitmap.createScaledBitmap(bm, width, height, true);
-			Bitmap bitmap = bm;
+	/**
+	 * streams the file into the sink, files and streams are written by the kernel without passing the data through the app
+	 *
+	 * @return false if the file doesn't exist
+	 */
+	private static boolean copyFile(File file, ImageSink sink) throws IOException {
+		final FileInputStream inputStream;
+		try {
+			inputStream = new FileInputStream(file);
+		} catch(FileNotFoundException e) {
+			return false;
+		}
+		try {
+			final FileChannel channel = inputStream.getChannel();
+			sink.write(channel, channel.size());
+			return true;
+		} finally {
+			inputStream.close();
+		}
+	}
+
+
+	/**
+	 * the decode profile is a part of the key, the same rendition decoded in RGB_565 and in ARGB_8888 differs
+	 */
+	private String createCacheKey(File file, ScaleSpec spec) {
+		return RenditionCache.createKey(file, spec.getWidth(), spec.getHeight(), spec.getFormat(), spec.getMaxBytes(), mDecodeProfile.toString());
+	}
 
-			ExifInterface exif = new ExifInterface(path);
 
-			orientation = exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, 1);
+	private ImageScaler<Bitmap> createScaler() {
+		final ImageScaler<Bitmap> scaler = new ImageScaler<Bitmap>(new AndroidImageDecoder(mBitmapPool, mDecodeProfile), new AndroidImageTransformer(mBitmapPool),
+				new AndroidImageEncoder());
+		scaler.setTiledDecodeThreshold(mTiledDecodeThreshold);
+		scaler.setEncodeExecutor(PhotoManager.getExecutor());
+		scaler.setMemoryBudget(mMemoryBudget);
+		return scaler;
+	}
+
 
-			Matrix m = new Matrix();
+	private List<File> scaleImageFileUncached(ImageSource source, List<RenditionSpec> specs) throws IOException {
+		if(mMetrics != null && source.getLength() >= 0) {
+			mMetrics.setBytesRead(source.getLength());
+		}
 
-			if((orientation == ExifInterface.ORIENTATION_ROTATE_180)) {
-				m.postRotate(180);
-				bitmap = Bitmap.createBitmap(bm, 0, 0, bm.getWidth(), bm.getHeight(), m, true);
-				return bitmap;
-			} else if(orientation == ExifInterface.ORIENTATION_ROTATE_90) {
-				m.postRotate(90);
-				bitmap = Bitmap.createBitmap(bm, 0, 0, bm.getWidth(), bm.getHeight(), m, true);
-				return bitmap;
-			} else if(orientation == ExifInterface.ORIENTATION_ROTATE_270) {
-				m.postRotate(270);
+		final ImageScaler<Bitmap> scaler = createScaler();
 
-				bitmap = Bitmap.createBitmap(bm, 0, 0, bm.getWidth(), bm.getHeight(), m, true);
-				return bitmap;
+		final List<File> scaledFiles = new ArrayList<File>(specs.size());
+		boolean success = false;
+		try {
+			for(int i = 0; i < specs.size(); i++) {
+				scaledFiles.add(createScaledFile(specs.get(i).getFormat()));
+			}
+			scaler.scale(source, specs, scaledFiles, mJob, mMetrics);
+			success = true;
+			return scaledFiles;
+		} finally {
+			for(File scaledFile : scaledFiles) {
+				if(!success) {
+					scaledFile.delete();
+				}
+				if(mCacheSweeper != null) {
+					mCacheSweeper.release(scaledFile);
+				}
 			}
-			return bitmap;
-		} catch(Exception e) {
-			return null;
 		}
 	}
 
+
+	private interface Scaling<R> {
+		R run() throws IOException;
+	}
 }
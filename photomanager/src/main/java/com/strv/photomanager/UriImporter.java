@@ -0,0 +1,244 @@
+package com.strv.photomanager;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract;
+import android.provider.MediaStore;
+import android.provider.OpenableColumns;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.security.MessageDigest;
+import java.util.concurrent.CancellationException;
+
+
+/**
+ * imports images behind content and file Uris into files that the app can read
+ */
+final class UriImporter {
+
+	private UriImporter() {}
+
+
+	/**
+	 * imports the image behind the Uri, must not be called on the main thread
+	 *
+	 * @param context context of the app/activity
+	 * @param uri     Uri with a 'file' or 'content' scheme
+	 * @param job     job the import is done for, can be null
+	 * @return imported file, it is retained in the cache sweeper and has to be released once it is delivered
+	 * @throws IOException           is thrown if the Uri cannot be read or copied
+	 * @throws SecurityException     is thrown if the app doesn't have a permission to read the Uri
+	 * @throws CancellationException is thrown if the job was cancelled
+	 */
+	static File importUri(Context context, Uri uri, PhotoJob job) throws IOException, SecurityException {
+		if("file".equals(uri.getScheme())) {
+			final File file = new File(uri.getPath());
+			if(!file.canRead()) {
+				throw new SecurityException();
+			}
+			PhotoManager.getCacheSweeper(context).retain(file);
+			return file;
+		} else if("content".equals(uri.getScheme())) {
+			final ParcelFileDescriptor fileDescriptor = openFileDescriptor(context, uri);
+			final InputStream inputStream = fileDescriptor == null ? context.getContentResolver().openInputStream(uri) : null;
+			final File file = getFileFromInputStream(context, uri, fileDescriptor, inputStream, job);
+			if(file == null) {
+				throw new IOException("Cannot import " + uri);
+			}
+			return file;
+		}
+		throw new IOException("Unsupported Uri " + uri);
+	}
+
+
+	/**
+	 * @param context context of the app/activity
+	 * @param uri     content Uri
+	 * @return file descriptor of the Uri or null if the provider doesn't hand out file descriptors and the Uri has to be read as a stream
+	 * @throws SecurityException is thrown if the app doesn't have a permission to read the Uri
+	 */
+	static ParcelFileDescriptor openFileDescriptor(Context context, Uri uri) throws SecurityException {
+		try {
+			return context.getContentResolver().openFileDescriptor(uri, "r");
+		} catch(FileNotFoundException e) {
+			return null;
+		}
+	}
+
+
+	/**
+	 * creates a file from a file descriptor or an inputStream, the file descriptor is closed in any case
+	 * if the descriptor points to a regular file, the content is copied by the kernel without passing through the app,
+	 * otherwise it is copied through a large pooled direct buffer,
+	 * the file is stored in the import cache so the same image imported again is not copied again
+	 *
+	 * @param context        context of the app/activity necessary to create a file
+	 * @param uri            content Uri the file descriptor or the input stream was opened for
+	 * @param fileDescriptor file descriptor from which the file is supposed to be created, null if only a stream is available
+	 * @param inputStream    input stream from which the file is supposed to be created if there is no file descriptor
+	 * @param job            job the import is done for, can be null
+	 * @return file from the input stream if the process was successful, null otherwise, the file is retained in the cache sweeper
+	 * so a sweep doesn't delete it before it is delivered, it has to be released then
+	 * @throws CancellationException is thrown if the job was cancelled, the partially copied file is deleted
+	 */
+	static File getFileFromInputStream(Context context, Uri uri, ParcelFileDescriptor fileDescriptor, InputStream inputStream, PhotoJob job) {
+		final ImportCache importCache = PhotoManager.getImportCache(context);
+		final CacheSweeper cacheSweeper = PhotoManager.getCacheSweeper(context);
+		final PhotoManager.OnMetricsListener metricsListener = PhotoManager.getMetricsListener();
+		final PhotoMetrics metrics = metricsListener != null ? new PhotoMetrics(PhotoMetrics.Type.IMPORT, uri.toString()) : null;
+		File file = null;
+		boolean success = false;
+		try {
+			if(fileDescriptor != null) {
+				inputStream = new ParcelFileDescriptor.AutoCloseInputStream(fileDescriptor);
+			}
+			if(job != null) {
+				job.checkCancelled();
+			}
+
+			final long statSize = fileDescriptor != null ? fileDescriptor.getStatSize() : -1;
+			final long[] metadata = queryMetadata(context, uri);
+			final long size = statSize >= 0 ? statSize : metadata[0];
+			final String key = ImportCache.createKey(uri.toString(), size, metadata[1]);
+			if(job != null) {
+				job.addTotalBytes(size);
+			}
+			File cachedFile = importCache.get(key, size);
+			if(cachedFile != null) {
+				cacheSweeper.retain(cachedFile);
+				if(cachedFile.length() != size) {
+					// a sweep deleted it before it was retained
+					cacheSweeper.release(cachedFile);
+					cachedFile = null;
+				}
+			}
+			if(cachedFile != null) {
+				if(job != null) {
+					job.addBytes(Math.max(0, size));
+					job.reportStage(PhotoJob.Stage.COPIED);
+				}
+				if(metrics != null) {
+					metrics.setCached(true);
+					metrics.setOutputBytes(cachedFile.length());
+				}
+				success = true;
+				return cachedFile;
+			}
+
+			final MessageDigest digest = ImportCache.newDigest();
+			file = importCache.createTempFile();
+			cacheSweeper.retain(file);
+			final long copyStart = metrics != null ? System.nanoTime() : 0;
+			final long copied;
+			FileOutputStream output = new FileOutputStream(file);
+			try {
+				if(statSize >= 0) {
+					copied = StreamCopier.transfer(((FileInputStream) inputStream).getChannel(), output.getChannel(), statSize, job);
+				} else {
+					copied = StreamCopier.copy(Channels.newChannel(inputStream), output.getChannel(), digest, job);
+				}
+			} finally {
+				output.close();
+			}
+
+			if(statSize >= 0) {
+				//the kernel copy bypassed the app, the copy is hashed from the page cache
+				FileInputStream copy = new FileInputStream(file);
+				try {
+					StreamCopier.digest(copy.getChannel(), digest);
+				} finally {
+					copy.close();
+				}
+			}
+			final File importedFile = importCache.put(file, digest, key);
+			cacheSweeper.retain(importedFile);
+			if(!importedFile.exists()) {
+				// a sweep deleted the cached content before it was retained
+				cacheSweeper.release(importedFile);
+				throw new IOException("Cannot import " + uri);
+			}
+			success = true;
+			if(metrics != null) {
+				// the hashing of a kernel copy is part of the import, so it is counted into the copy
+				metrics.setDuration(PhotoJob.Stage.COPIED, System.nanoTime() - copyStart);
+				metrics.setBytesRead(copied);
+				metrics.setOutputBytes(copied);
+			}
+			if(job != null) {
+				job.reportStage(PhotoJob.Stage.COPIED);
+			}
+			return importedFile;
+
+		} catch(IOException e) {
+			e.printStackTrace();
+		} finally {
+			if(file != null) {
+				if(!success) {
+					file.delete();
+				}
+				cacheSweeper.release(file);
+			}
+			if(metrics != null) {
+				metrics.finish(success);
+				metricsListener.onMetrics(metrics);
+			}
+			if(inputStream != null) {
+				try {
+					inputStream.close();
+				} catch(IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		return null;
+	}
+
+
+	/**
+	 * queries the size and the last modification time of a content Uri, these are used as the cheap check whether the Uri was imported before
+	 *
+	 * @param context context of the app/activity
+	 * @param uri     content Uri
+	 * @return array with the size and the last modification time, -1 for values the provider doesn't provide
+	 */
+	private static long[] queryMetadata(Context context, Uri uri) {
+		final long[] metadata = new long[]{-1, -1};
+		Cursor cursor = null;
+		try {
+			cursor = context.getContentResolver().query(uri, null, null, null, null);
+			if(cursor != null && cursor.moveToFirst()) {
+				metadata[0] = getLong(cursor, OpenableColumns.SIZE);
+				metadata[1] = getLong(cursor, DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+				if(metadata[1] <= 0) {
+					metadata[1] = getLong(cursor, MediaStore.MediaColumns.DATE_MODIFIED);
+				}
+			}
+		} catch(RuntimeException e) {
+			//some providers cannot be queried, the file is then just not looked up in the cache
+			e.printStackTrace();
+		} finally {
+			if(cursor != null) {
+				cursor.close();
+			}
+		}
+		return metadata;
+	}
+
+
+	private static long getLong(Cursor cursor, String columnName) {
+		final int index = cursor.getColumnIndex(columnName);
+		if(index < 0 || cursor.isNull(index)) {
+			return -1;
+		}
+		return cursor.getLong(index);
+	}
+}
@@ -0,0 +1,72 @@
+package com.strv.photomanager;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+public class MetricsAggregatorTest {
+
+	private static final long MILLI = 1000000;
+
+
+	@Test
+	public void getPercentileMillis_noRecordsIsUnknown() throws Exception {
+		final MetricsAggregator aggregator = new MetricsAggregator();
+		assertEquals(-1, aggregator.getPercentileMillis(PhotoJob.Stage.DECODED, 50), 0);
+		assertEquals(-1, aggregator.getPercentileMillis(PhotoMetrics.Type.SCALE, 50), 0);
+	}
+
+
+	@Test
+	public void getPercentileMillis_isWithinBucketOfRecordedValue() throws Exception {
+		final MetricsAggregator aggregator = new MetricsAggregator();
+		for(int i = 1; i <= 100; i++) {
+			aggregator.onMetrics(createMetrics(PhotoJob.Stage.DECODED, i * MILLI));
+		}
+
+		// the buckets are about 9 % wide and never report more than the largest value
+		assertEquals(50, aggregator.getPercentileMillis(PhotoJob.Stage.DECODED, 50), 50 * 0.1);
+		assertEquals(90, aggregator.getPercentileMillis(PhotoJob.Stage.DECODED, 90), 90 * 0.1);
+		assertEquals(100, aggregator.getPercentileMillis(PhotoJob.Stage.DECODED, 100), 0);
+		assertTrue(aggregator.getPercentileMillis(PhotoJob.Stage.DECODED, 50) >= 50);
+		// stages that were not performed are not recorded
+		assertEquals(-1, aggregator.getPercentileMillis(PhotoJob.Stage.COPIED, 50), 0);
+	}
+
+
+	@Test
+	public void onMetrics_countsFailedAndCachedJobs() throws Exception {
+		final MetricsAggregator aggregator = new MetricsAggregator();
+		final PhotoMetrics failed = new PhotoMetrics(PhotoMetrics.Type.SCALE, "failed.jpg");
+		failed.setDuration(PhotoJob.Stage.DECODED, MILLI);
+		failed.finish(false);
+		aggregator.onMetrics(failed);
+		final PhotoMetrics cached = new PhotoMetrics(PhotoMetrics.Type.IMPORT, "content://a");
+		cached.setCached(true);
+		cached.finish(true);
+		aggregator.onMetrics(cached);
+
+		// a failed job doesn't skew the latencies
+		assertEquals(-1, aggregator.getPercentileMillis(PhotoJob.Stage.DECODED, 50), 0);
+		assertTrue(aggregator.getReport().startsWith("1 imports, 0 scales, 1 cached, 1 failed"));
+	}
+
+
+	@Test
+	public void reset_dropsRecords() throws Exception {
+		final MetricsAggregator aggregator = new MetricsAggregator();
+		aggregator.onMetrics(createMetrics(PhotoJob.Stage.ENCODED, 5 * MILLI));
+		aggregator.reset();
+		assertEquals(-1, aggregator.getPercentileMillis(PhotoJob.Stage.ENCODED, 50), 0);
+		assertTrue(aggregator.getReport().startsWith("0 imports, 0 scales, 0 cached, 0 failed"));
+	}
+
+
+	private static PhotoMetrics createMetrics(PhotoJob.Stage stage, long nanos) {
+		final PhotoMetrics metrics = new PhotoMetrics(PhotoMetrics.Type.SCALE, "source.jpg");
+		metrics.setDuration(stage, nanos);
+		metrics.finish(true);
+		return metrics;
+	}
+}